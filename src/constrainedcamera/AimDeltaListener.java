@@ -0,0 +1,18 @@
+package constrainedcamera;
+
+/**
+ *
+ * Gets the mouse look of a ConstrainedFlyByCamera as turn angles before the
+ * camera is turned, so that they can go somewhere else (e.g. be fused with
+ * the Kinect aim) instead.
+ */
+public interface AimDeltaListener {
+
+    /**
+     * @param yawDelta To the left. (Unit: radians.)
+     * @param pitchDelta Up. (Unit: radians.)
+     * @return True if the listener took the turn, and the camera should not
+     * be turned.
+     */
+    boolean onAimDelta(float yawDelta, float pitchDelta);
+}
@@ -7,11 +7,18 @@ import com.jme3.input.Joystick;
 import com.jme3.input.JoystickAxis;
 import com.jme3.input.KeyInput;
 import com.jme3.input.MouseInput;
+import com.jme3.input.RawInputListener;
 import com.jme3.input.controls.ActionListener;
 import com.jme3.input.controls.AnalogListener;
 import com.jme3.input.controls.KeyTrigger;
 import com.jme3.input.controls.MouseAxisTrigger;
 import com.jme3.input.controls.MouseButtonTrigger;
+import com.jme3.input.event.JoyAxisEvent;
+import com.jme3.input.event.JoyButtonEvent;
+import com.jme3.input.event.KeyInputEvent;
+import com.jme3.input.event.MouseButtonEvent;
+import com.jme3.input.event.MouseMotionEvent;
+import com.jme3.input.event.TouchEvent;
 import com.jme3.math.FastMath;
 import com.jme3.math.Matrix3f;
 import com.jme3.math.Quaternion;
@@ -58,6 +65,44 @@ public class ConstrainedFlyByCamera implements AnalogListener, ActionListener {
     protected boolean canRotate = false;
     protected boolean invertY = false;
     protected InputManager inputManager;
+    /**
+     * Gets mouse look latency stages when set; see setLatencyTracker().
+     */
+    protected InputLatencyTracker latencyTracker = null;
+    protected InputJournal inputJournal = null;
+    /**
+     * Offered mouse look first when set; see setAimDeltaListener().
+     */
+    protected AimDeltaListener aimDeltaListener = null;
+    private final RawInputListener mouseLatencyListener = new RawInputListener() {
+        public void beginInput() {
+        }
+
+        public void endInput() {
+        }
+
+        public void onJoyAxisEvent(JoyAxisEvent evt) {
+        }
+
+        public void onJoyButtonEvent(JoyButtonEvent evt) {
+        }
+
+        public void onMouseMotionEvent(MouseMotionEvent evt) {
+            if (latencyTracker != null && (evt.getDX() != 0 || evt.getDY() != 0)) {
+                // Stamped when jME hands the event over, at the start of the frame
+                latencyTracker.inputReceived(InputLatencyTracker.PATH_MOUSE, System.nanoTime());
+            }
+        }
+
+        public void onMouseButtonEvent(MouseButtonEvent evt) {
+        }
+
+        public void onKeyEvent(KeyInputEvent evt) {
+        }
+
+        public void onTouchEvent(TouchEvent evt) {
+        }
+    };
     
     /**
      * Creates a new FlyByCamera to control the given Camera object.
@@ -76,6 +121,40 @@ public class ConstrainedFlyByCamera implements AnalogListener, ActionListener {
        initialUpVec.set(upVec);
     }
 
+    /**
+     * Reports mouse look to the given tracker: mouse motion received, then
+     * processed and camera turned (InputLatencyTracker.PATH_MOUSE).
+     * @param latencyTracker Null to stop reporting.
+     */
+    public void setLatencyTracker(InputLatencyTracker latencyTracker) {
+        this.latencyTracker = latencyTracker;
+    }
+
+    /**
+     * Journals every input event the camera gets.
+     * @param inputJournal Null to stop journaling.
+     */
+    public void setInputJournal(InputJournal inputJournal) {
+        this.inputJournal = inputJournal;
+    }
+
+    /**
+     * @return Names of the input mappings the camera listens to.
+     */
+    public String[] getMappings() {
+        return mappings.clone();
+    }
+
+    /**
+     * Offers mouse look to the given listener as turn angles (already scaled
+     * by the rotation speed) before turning the camera; the camera is only
+     * turned if the listener doesn't take them.
+     * @param listener Null to always turn the camera.
+     */
+    public void setAimDeltaListener(AimDeltaListener listener) {
+        this.aimDeltaListener = listener;
+    }
+
     public void setMotionAllowedListener(MotionAllowedListener listener){
         this.motionAllowed = listener;
     }
@@ -211,6 +290,7 @@ public class ConstrainedFlyByCamera implements AnalogListener, ActionListener {
         inputManager.addMapping("FLYCAM_Lower", new KeyTrigger(KeyInput.KEY_Z));
 
         inputManager.addListener(this, mappings);
+        inputManager.addRawInputListener(mouseLatencyListener);
         inputManager.setCursorVisible(dragToRotate || !isEnabled());
 
         Joystick[] joysticks = inputManager.getJoysticks();
@@ -268,6 +348,7 @@ public class ConstrainedFlyByCamera implements AnalogListener, ActionListener {
         }
 
         inputManager.removeListener(this);
+        inputManager.removeRawInputListener(mouseLatencyListener);
         inputManager.setCursorVisible(!dragToRotate);
 
         Joystick[] joysticks = inputManager.getJoysticks();
@@ -303,6 +384,19 @@ public class ConstrainedFlyByCamera implements AnalogListener, ActionListener {
         q.normalizeLocal();
 
         cam.setAxes(q);
+        if (latencyTracker != null) {
+            latencyTracker.stageReached(InputLatencyTracker.PATH_MOUSE, InputLatencyTracker.STAGE_CAMERA);
+        }
+    }
+
+    /**
+     * @return True if the aim delta listener took the turn.
+     */
+    protected boolean offerAimDelta(float yawValue, float pitchValue){
+        if (aimDeltaListener == null || (dragToRotate && !canRotate)){
+            return false;
+        }
+        return aimDeltaListener.onAimDelta(rotationSpeed * yawValue, rotationSpeed * pitchValue);
     }
 
     protected void zoomCamera(float value){
@@ -358,19 +452,34 @@ public class ConstrainedFlyByCamera implements AnalogListener, ActionListener {
     }
 
     public void onAnalog(String name, float value, float tpf) {
+        if (inputJournal != null) {
+            inputJournal.recordAnalog(name, value, tpf);
+        }
         if (!enabled)
             return;
 
+        if (latencyTracker != null) {
+            latencyTracker.stageReached(InputLatencyTracker.PATH_MOUSE, InputLatencyTracker.STAGE_PROCESSED);
+        }
+
         if (name.equals("FLYCAM_Left")){
-            rotateCamera(value, initialUpVec);
+            if (!offerAimDelta(value, 0)){
+                rotateCamera(value, initialUpVec);
+            }
         }else if (name.equals("FLYCAM_Right")){
-            rotateCamera(-value, initialUpVec);
+            if (!offerAimDelta(-value, 0)){
+                rotateCamera(-value, initialUpVec);
+            }
         }else if (name.equals("FLYCAM_Up")){
-            if(cam.getDirection().getY()<maxLookUp){
+            if (offerAimDelta(0, value * (invertY ? -1 : 1))){
+                // Taken by the listener
+            }else if(cam.getDirection().getY()<maxLookUp){
                 rotateCamera(-value * (invertY ? -1 : 1), cam.getLeft());
             }
         }else if (name.equals("FLYCAM_Down")){
-            if(cam.getDirection().getY()>maxLookDown){
+            if (offerAimDelta(0, -value * (invertY ? -1 : 1))){
+                // Taken by the listener
+            }else if(cam.getDirection().getY()>maxLookDown){
                 rotateCamera(value * (invertY ? -1 : 1), cam.getLeft());
             }
         }else if (name.equals("FLYCAM_Forward")){
@@ -393,6 +502,9 @@ public class ConstrainedFlyByCamera implements AnalogListener, ActionListener {
     }
 
     public void onAction(String name, boolean value, float tpf) {
+        if (inputJournal != null) {
+            inputJournal.recordAction(name, value, tpf);
+        }
         if (!enabled)
             return;
 
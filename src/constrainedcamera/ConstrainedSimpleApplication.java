@@ -15,6 +15,10 @@ import com.jme3.scene.Spatial.CullHint;
 import com.jme3.system.AppSettings;
 import com.jme3.system.JmeContext.Type;
 import com.jme3.system.JmeSystem;
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 
 /**
  *
@@ -26,6 +30,7 @@ public abstract class ConstrainedSimpleApplication extends Application {
     public static final String INPUT_MAPPING_CAMERA_POS = DebugKeysAppState.INPUT_MAPPING_CAMERA_POS;
     public static final String INPUT_MAPPING_MEMORY = DebugKeysAppState.INPUT_MAPPING_MEMORY;
     public static final String INPUT_MAPPING_HIDE_STATS = "SIMPLEAPP_HideStats";
+    public static final String INPUT_MAPPING_DUMP_JOURNAL = "SIMPLEAPP_DumpInputJournal";
                                                                          
     protected Node rootNode = new Node("Root Node");
     protected Node guiNode = new Node("Gui Node");
@@ -33,6 +38,17 @@ public abstract class ConstrainedSimpleApplication extends Application {
     protected BitmapFont guiFont;
     protected ConstrainedFlyByCamera flyCam;
     protected boolean showSettings = true;
+    /**
+     * Input-to-render latency per input path; see InputLatencyAppState for
+     * the overlay.
+     */
+    protected final InputLatencyTracker inputLatency = new InputLatencyTracker();
+    /**
+     * Every input event of the last few minutes, by frame; dumped on F9 and
+     * when the application dies of an error (see InputJournalReplayer to
+     * play a dump back).
+     */
+    protected final InputJournal inputJournal = new InputJournal();
     private AppActionListener actionListener = new AppActionListener();
     
     private class AppActionListener implements ActionListener {
@@ -44,6 +60,8 @@ public abstract class ConstrainedSimpleApplication extends Application {
 
             if (name.equals(INPUT_MAPPING_EXIT)) {
                 stop();
+            }else if (name.equals(INPUT_MAPPING_DUMP_JOURNAL)){
+                dumpInputJournal();
             }else if (name.equals(INPUT_MAPPING_HIDE_STATS)){
                 if (stateManager.getState(ConstrainedStatsAppState.class) != null) {
                     stateManager.getState(ConstrainedStatsAppState.class).toggleStats();
@@ -53,7 +71,7 @@ public abstract class ConstrainedSimpleApplication extends Application {
     }
 
     public ConstrainedSimpleApplication() {
-        this( new ConstrainedStatsAppState(), new ConstrainedFlyCamAppState(), new DebugKeysAppState() );
+        this( new ConstrainedStatsAppState(), new ConstrainedFlyCamAppState(), new DebugKeysAppState(), new InputLatencyAppState() );
     }
 
     public ConstrainedSimpleApplication( AppState... initialStates ) {
@@ -98,6 +116,42 @@ public abstract class ConstrainedSimpleApplication extends Application {
         return flyCam;
     }
 
+    public InputLatencyTracker getInputLatencyTracker() {
+        return inputLatency;
+    }
+
+    public InputJournal getInputJournal() {
+        return inputJournal;
+    }
+
+    /**
+     * Writes the input journal to input-journal-DATE.injournal in the working
+     * directory.
+     *
+     * @return The file, or null if it couldn't be written.
+     */
+    public File dumpInputJournal() {
+        File file = new File("input-journal-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + InputJournal.FILE_EXTENSION);
+        try {
+            inputJournal.dump(file);
+            System.out.println("Input journal written to " + file.getAbsolutePath() + ": " + inputJournal);
+            return file;
+        } catch (IOException e) {
+            System.err.println("Can't write input journal: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Dumps the input journal first, so whatever led up to the error can be
+     * replayed.
+     */
+    @Override
+    public void handleError(String errMsg, Throwable t) {
+        dumpInputJournal();
+        super.handleError(errMsg, t);
+    }
+
     /**
      * Retrieves guiNode
      * @return guiNode Node object
@@ -158,6 +212,8 @@ public abstract class ConstrainedSimpleApplication extends Application {
             if (stateManager.getState(ConstrainedFlyCamAppState.class) != null) {
                 flyCam = new ConstrainedFlyByCamera(cam);
                 flyCam.setMoveSpeed(1f); // odd to set this here but it did it before
+                flyCam.setLatencyTracker(inputLatency);
+                flyCam.setInputJournal(inputJournal);
                 stateManager.getState(ConstrainedFlyCamAppState.class).setCamera( flyCam ); 
             }
 
@@ -170,7 +226,8 @@ public abstract class ConstrainedSimpleApplication extends Application {
                 inputManager.addListener(actionListener, INPUT_MAPPING_HIDE_STATS);            
             }
             
-            inputManager.addListener(actionListener, INPUT_MAPPING_EXIT);            
+            inputManager.addMapping(INPUT_MAPPING_DUMP_JOURNAL, new KeyTrigger(KeyInput.KEY_F9));
+            inputManager.addListener(actionListener, INPUT_MAPPING_EXIT, INPUT_MAPPING_DUMP_JOURNAL);            
         }
 
         if (stateManager.getState(ConstrainedStatsAppState.class) != null) {
@@ -208,8 +265,10 @@ public abstract class ConstrainedSimpleApplication extends Application {
         // render states
         stateManager.render(renderManager);
         renderManager.render(tpf, context.isRenderable());
+        inputLatency.frameRendered();
         simpleRender(renderManager);
         stateManager.postRender();        
+        inputJournal.endFrame(tpf);
     }
 
     public void setDisplayFps(boolean show) {
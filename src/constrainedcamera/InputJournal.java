@@ -0,0 +1,382 @@
+package constrainedcamera;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import kinect.input.SkeletonFrame;
+
+/**
+ *
+ * Journal of every input event the game got (key and mouse button actions,
+ * analog mouse movement, Kinect readings), each stamped with the frame it
+ * was handled in, in a fixed-size ring of fixed-size records in one direct
+ * (off-heap) buffer. Recording is a handful of absolute puts, with no
+ * allocation and no locking; once the ring is full, the oldest records are
+ * overwritten. dump() writes what's in the ring to a file
+ * (ConstrainedSimpleApplication does on F9 and when the game crashes), and
+ * InputJournalReplayer feeds a dumped journal back into the game frame by
+ * frame.
+ *
+ * <pre>
+ * FILE (little-endian)
+ *   int magic           MAGIC ("INJR")
+ *   int version         VERSION
+ *   int recordSize      RECORD_SIZE
+ *   int bindingCount
+ *   BINDING (bindingCount)
+ *     short length      bytes of the name
+ *     byte  name[]      UTF-8
+ *   int recordCount
+ *   RECORD (recordCount, oldest first)
+ *     long  timestampNanos  System.nanoTime() when recorded (KINECT: when the reading came in)
+ *     int   frame           frame number, from 0 when the journal was created
+ *     byte  type            TYPE_*
+ *     byte  flags           FLAG_PRESSED (ACTION), FLAG_TRACKED (KINECT)
+ *     short binding         index into the bindings (ACTION, ANALOG), player (KINECT)
+ *     float value           analog value (ANALOG), tpf (FRAME), reading age in seconds (KINECT)
+ *     float tpf             the listener's tpf (ACTION, ANALOG)
+ *     JOINTS (KINECT only; SkeletonFrame.JOINT_COUNT)
+ *       byte  state
+ *       short x, y, z       millimeters
+ * </pre>
+ *
+ * A frame's FRAME record is its last one. Meant to be used from the render
+ * thread only.
+ */
+public class InputJournal {
+
+    /*--- SETTINGS ---*/
+    /**
+     * 65536 records of RECORD_SIZE (164) bytes, about 10.7 MB. A 60 FPS
+     * frame record plus 30 kinect readings a second is 90 records a second,
+     * about 12 minutes of play; every analog event (mouse look, held keys)
+     * takes a record too, so with the mouse always moving (say 4 events a
+     * frame, 330 records a second) it's about 3 minutes. (Unit: records.)
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    /*--- END SETTINGS ---*/
+    public static final String FILE_EXTENSION = ".injournal";
+    public static final int MAGIC = 0x524A4E49; // "INJR" when read as little-endian bytes
+    public static final int VERSION = 1;
+    public static final int TIMESTAMP_OFFSET = 0,
+            FRAME_OFFSET = 8,
+            TYPE_OFFSET = 12,
+            FLAGS_OFFSET = 13,
+            BINDING_OFFSET = 14,
+            VALUE_OFFSET = 16,
+            TPF_OFFSET = 20,
+            JOINTS_OFFSET = 24;
+    public static final int JOINT_SIZE = 7;
+    public static final int RECORD_SIZE = JOINTS_OFFSET + SkeletonFrame.JOINT_COUNT * JOINT_SIZE;
+    public static final int TYPE_FRAME = 0,
+            TYPE_ACTION = 1,
+            TYPE_ANALOG = 2,
+            TYPE_KINECT = 3;
+    public static final int FLAG_PRESSED = 1,
+            FLAG_TRACKED = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private final int capacity;
+    private final ByteBuffer records;
+    private final Map<String, Integer> bindingIds = new HashMap<String, Integer>();
+    private final List<String> bindings = new ArrayList<String>();
+    /**
+     * Records ever written; the ring holds the last min(written, capacity).
+     */
+    private long written = 0;
+    private int frame = 0;
+    private boolean enabled = true;
+
+    public InputJournal() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public InputJournal(int capacity) {
+        this.capacity = capacity;
+        records = ByteBuffer.allocateDirect(capacity * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return The frame being recorded.
+     */
+    public int getFrame() {
+        return frame;
+    }
+
+    public void recordAction(String binding, boolean pressed, float tpf) {
+        if (!enabled) {
+            return;
+        }
+        int offset = beginRecord(TYPE_ACTION, System.nanoTime());
+        records.put(offset + FLAGS_OFFSET, (byte) (pressed ? FLAG_PRESSED : 0));
+        records.putShort(offset + BINDING_OFFSET, (short) getBindingId(binding));
+        records.putFloat(offset + TPF_OFFSET, tpf);
+    }
+
+    public void recordAnalog(String binding, float value, float tpf) {
+        if (!enabled) {
+            return;
+        }
+        int offset = beginRecord(TYPE_ANALOG, System.nanoTime());
+        records.putShort(offset + BINDING_OFFSET, (short) getBindingId(binding));
+        records.putFloat(offset + VALUE_OFFSET, value);
+        records.putFloat(offset + TPF_OFFSET, tpf);
+    }
+
+    /**
+     * Records a Kinect reading the game took in this frame.
+     */
+    public void recordKinect(int player, SkeletonFrame reading) {
+        if (!enabled) {
+            return;
+        }
+        long nowNanos = System.nanoTime();
+        int offset = beginRecord(TYPE_KINECT, reading.getTimestampNanos());
+        records.put(offset + FLAGS_OFFSET, (byte) (reading.isTracked() ? FLAG_TRACKED : 0));
+        records.putShort(offset + BINDING_OFFSET, (short) player);
+        records.putFloat(offset + VALUE_OFFSET, (nowNanos - reading.getTimestampNanos()) / 1e9f);
+        int jointOffset = offset + JOINTS_OFFSET;
+        for (int joint = 0; joint < SkeletonFrame.JOINT_COUNT; joint++) {
+            records.put(jointOffset, (byte) reading.get(joint, SkeletonFrame.KJ_STATE));
+            for (int axis = SkeletonFrame.KJ_X; axis <= SkeletonFrame.KJ_Z; axis++) {
+                int value = Math.max(Short.MIN_VALUE, Math.min(reading.get(joint, axis), Short.MAX_VALUE));
+                records.putShort(jointOffset + 1 + (axis - SkeletonFrame.KJ_X) * 2, (short) value);
+            }
+            jointOffset += JOINT_SIZE;
+        }
+    }
+
+    /**
+     * Closes the frame: records its tpf and moves on to the next frame.
+     */
+    public void endFrame(float tpf) {
+        if (enabled) {
+            int offset = beginRecord(TYPE_FRAME, System.nanoTime());
+            records.putFloat(offset + VALUE_OFFSET, tpf);
+        }
+        frame++;
+    }
+
+    private int beginRecord(int type, long timestampNanos) {
+        int offset = (int) (written % capacity) * RECORD_SIZE;
+        records.putLong(offset + TIMESTAMP_OFFSET, timestampNanos);
+        records.putInt(offset + FRAME_OFFSET, frame);
+        records.put(offset + TYPE_OFFSET, (byte) type);
+        records.put(offset + FLAGS_OFFSET, (byte) 0);
+        records.putShort(offset + BINDING_OFFSET, (short) 0);
+        records.putFloat(offset + VALUE_OFFSET, 0);
+        records.putFloat(offset + TPF_OFFSET, 0);
+        written++;
+        return offset;
+    }
+
+    /**
+     * Allocates only the first time a binding is seen.
+     */
+    private int getBindingId(String binding) {
+        Integer id = bindingIds.get(binding);
+        if (id == null) {
+            id = bindings.size();
+            bindingIds.put(binding, id);
+            bindings.add(binding);
+        }
+        return id;
+    }
+
+    /**
+     * @return Records in the ring.
+     */
+    public int getRecordCount() {
+        return (int) Math.min(written, capacity);
+    }
+
+    public long getRecordsWritten() {
+        return written;
+    }
+
+    /**
+     * @return Offset of the index-th oldest record in the ring.
+     */
+    private int getOffset(int index) {
+        long first = written - getRecordCount();
+        return (int) ((first + index) % capacity) * RECORD_SIZE;
+    }
+
+    public int getType(int index) {
+        return records.get(getOffset(index) + TYPE_OFFSET);
+    }
+
+    public int getFrame(int index) {
+        return records.getInt(getOffset(index) + FRAME_OFFSET);
+    }
+
+    public long getTimestampNanos(int index) {
+        return records.getLong(getOffset(index) + TIMESTAMP_OFFSET);
+    }
+
+    /**
+     * @return The binding of an ACTION or ANALOG record.
+     */
+    public String getBinding(int index) {
+        return bindings.get(records.getShort(getOffset(index) + BINDING_OFFSET));
+    }
+
+    /**
+     * @return The player of a KINECT record.
+     */
+    public int getPlayer(int index) {
+        return records.getShort(getOffset(index) + BINDING_OFFSET);
+    }
+
+    public boolean isPressed(int index) {
+        return (records.get(getOffset(index) + FLAGS_OFFSET) & FLAG_PRESSED) != 0;
+    }
+
+    /**
+     * @return ANALOG: the value; FRAME: the frame's tpf; KINECT: how old the
+     * reading was when recorded, in seconds.
+     */
+    public float getValue(int index) {
+        return records.getFloat(getOffset(index) + VALUE_OFFSET);
+    }
+
+    /**
+     * @return The tpf the listener got (ACTION, ANALOG).
+     */
+    public float getTpf(int index) {
+        return records.getFloat(getOffset(index) + TPF_OFFSET);
+    }
+
+    /**
+     * Fills reading's joints and tracked flag from a KINECT record; its
+     * timestamp and sequence are left to the caller.
+     */
+    public void readKinect(int index, SkeletonFrame reading) {
+        int offset = getOffset(index);
+        reading.setTracked((records.get(offset + FLAGS_OFFSET) & FLAG_TRACKED) != 0);
+        int jointOffset = offset + JOINTS_OFFSET;
+        for (int joint = 0; joint < SkeletonFrame.JOINT_COUNT; joint++) {
+            reading.set(joint, SkeletonFrame.KJ_STATE, records.get(jointOffset));
+            for (int axis = SkeletonFrame.KJ_X; axis <= SkeletonFrame.KJ_Z; axis++) {
+                reading.set(joint, axis, records.getShort(jointOffset + 1 + (axis - SkeletonFrame.KJ_X) * 2));
+            }
+            jointOffset += JOINT_SIZE;
+        }
+    }
+
+    /**
+     * Writes the records in the ring, oldest first, to file. Recording can go
+     * on afterwards.
+     */
+    public void dump(File file) throws IOException {
+        int count = getRecordCount();
+        int headerSize = 20;
+        for (String binding : bindings) {
+            headerSize += 2 + binding.getBytes(UTF8).length;
+        }
+        ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(bindings.size());
+        for (String binding : bindings) {
+            byte[] name = binding.getBytes(UTF8);
+            header.putShort((short) name.length).put(name);
+        }
+        header.putInt(count);
+        header.flip();
+
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            FileChannel channel = out.getChannel();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            // Oldest records first: from the write position to the end, then from the start
+            int first = getOffset(0);
+            int end = count * RECORD_SIZE;
+            ByteBuffer view = records.duplicate();
+            view.limit(Math.min(first + end, capacity * RECORD_SIZE)).position(first);
+            while (view.hasRemaining()) {
+                channel.write(view);
+            }
+            if (first + end > capacity * RECORD_SIZE) {
+                view.limit(first + end - capacity * RECORD_SIZE).position(0);
+                while (view.hasRemaining()) {
+                    channel.write(view);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return A journal holding the records of a dumped one, with room for
+     * nothing else (recording into it overwrites them).
+     */
+    public static InputJournal load(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            ByteBuffer data = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while (data.hasRemaining() && channel.read(data) >= 0) {
+                // Read it all
+            }
+            data.flip();
+            if (data.remaining() < 20 || data.getInt() != MAGIC) {
+                throw new IOException("Not an input journal: " + file);
+            }
+            int version = data.getInt();
+            int recordSize = data.getInt();
+            if (version != VERSION || recordSize != RECORD_SIZE) {
+                throw new IOException("Unsupported input journal version " + version + ": " + file);
+            }
+            List<String> bindings = new ArrayList<String>();
+            int bindingCount = data.getInt();
+            for (int i = 0; i < bindingCount; i++) {
+                byte[] name = new byte[data.getShort()];
+                data.get(name);
+                bindings.add(new String(name, UTF8));
+            }
+            int count = data.getInt();
+            if (data.remaining() < count * RECORD_SIZE) {
+                throw new IOException("Input journal is truncated: " + file);
+            }
+
+            InputJournal journal = new InputJournal(Math.max(count, 1));
+            for (String binding : bindings) {
+                journal.getBindingId(binding);
+            }
+            data.limit(data.position() + count * RECORD_SIZE);
+            journal.records.put(data);
+            journal.written = count;
+            journal.frame = (count > 0) ? journal.getFrame(count - 1) + 1 : 0;
+            return journal;
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "InputJournal[capacity=" + capacity
+                + ", recordsWritten=" + written
+                + ", records=" + getRecordCount()
+                + ", frame=" + frame
+                + ", bindings=" + bindings.size() + "]";
+    }
+}
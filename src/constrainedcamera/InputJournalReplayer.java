@@ -0,0 +1,245 @@
+package constrainedcamera;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.input.InputManager;
+import com.jme3.input.controls.ActionListener;
+import com.jme3.input.controls.AnalogListener;
+import com.jme3.system.Timer;
+import java.util.HashMap;
+import java.util.Map;
+import kinect.input.KinectInputSource;
+import kinect.input.SkeletonFrame;
+
+/**
+ *
+ * Plays a dumped InputJournal back into the game, frame by frame: every frame,
+ * the journaled actions and analog events of the matching recorded frame go
+ * to the listeners registered as targets for their bindings (in recorded
+ * order, with the recorded tpf), and the journaled Kinect readings come out
+ * of getKinectSource(). getTimer() hands the application the recorded tpf of
+ * every frame, so time-based code (and physics) steps just like it did.
+ *
+ * Set up before the first frame: application.setTimer(getTimer()), register
+ * the targets, and attach the replayer; once initialized, it takes the
+ * targets off live input, so only journaled input reaches them. Replay starts
+ * at the first whole frame in the journal (the ring may have overwritten the
+ * start of the oldest one) and stops feeding input after the last; see
+ * isFinished(). It only matches the session if the journal starts with the
+ * game's first frame.
+ */
+public class InputJournalReplayer extends AbstractAppState {
+
+    private final InputJournal journal;
+    /**
+     * First record of every replayed frame, plus one past the end.
+     */
+    private final int[] frameStarts;
+    private final float[] frameTpfs;
+    private final Map<String, ActionListener> actionTargets = new HashMap<String, ActionListener>();
+    private final Map<String, AnalogListener> analogTargets = new HashMap<String, AnalogListener>();
+    private final ReplayTimer timer = new ReplayTimer();
+    private final int kinectPlayer;
+    private final SkeletonFrame kinectReading = new SkeletonFrame();
+    private final KinectInputSource kinectSource = new KinectInputSource() {
+        public void start() {
+        }
+
+        public SkeletonFrame getLatestFrame() {
+            return kinectReading;
+        }
+
+        public void stop() {
+        }
+    };
+    /**
+     * Frame being replayed, as an index into frameStarts; -1 before the
+     * first.
+     */
+    private int replayFrame = -1;
+    private long eventsReplayed = 0, kinectReadingsReplayed = 0, untargetedEvents = 0;
+    private boolean finishReported = false;
+
+    /**
+     * @param kinectPlayer Player whose Kinect readings getKinectSource()
+     * replays.
+     */
+    public InputJournalReplayer(InputJournal journal, int kinectPlayer) {
+        this.journal = journal;
+        this.kinectPlayer = kinectPlayer;
+
+        int count = journal.getRecordCount();
+        int first = 0;
+        if (count > 0 && journal.getFrame(0) > 0) {
+            // Starts after the first frame end; that frame may be partial
+            while (first < count && journal.getType(first) != InputJournal.TYPE_FRAME) {
+                first++;
+            }
+            first++;
+        }
+        int frames = 0;
+        for (int i = first; i < count; i++) {
+            if (journal.getType(i) == InputJournal.TYPE_FRAME) {
+                frames++;
+            }
+        }
+        frameStarts = new int[frames + 1];
+        frameTpfs = new float[frames];
+        frameStarts[0] = first;
+        int frame = 0;
+        for (int i = first; i < count; i++) {
+            if (journal.getType(i) == InputJournal.TYPE_FRAME) {
+                frameTpfs[frame] = journal.getValue(i);
+                frameStarts[++frame] = i + 1;
+            }
+        }
+    }
+
+    /**
+     * Has the listener get the journaled actions of these bindings.
+     */
+    public void addActionTarget(ActionListener listener, String... bindings) {
+        for (String binding : bindings) {
+            actionTargets.put(binding, listener);
+        }
+    }
+
+    /**
+     * Has the listener get the journaled analog events of these bindings.
+     */
+    public void addAnalogTarget(AnalogListener listener, String... bindings) {
+        for (String binding : bindings) {
+            analogTargets.put(binding, listener);
+        }
+    }
+
+    /**
+     * @return The application's timer for the replay.
+     */
+    public Timer getTimer() {
+        return timer;
+    }
+
+    /**
+     * @return A source replaying the player's journaled Kinect readings, each
+     * in the frame it was taken in.
+     */
+    public KinectInputSource getKinectSource() {
+        return kinectSource;
+    }
+
+    public int getFrameCount() {
+        return frameTpfs.length;
+    }
+
+    public boolean isFinished() {
+        return replayFrame >= frameTpfs.length;
+    }
+
+    @Override
+    public void initialize(AppStateManager stateManager, Application app) {
+        super.initialize(stateManager, app);
+
+        InputManager inputManager = app.getInputManager();
+        if (inputManager != null) {
+            for (ActionListener target : actionTargets.values()) {
+                inputManager.removeListener(target);
+            }
+            for (AnalogListener target : analogTargets.values()) {
+                inputManager.removeListener(target);
+            }
+        }
+    }
+
+    @Override
+    public void update(float tpf) {
+        if (replayFrame < 0 || isFinished()) {
+            if (isFinished() && !finishReported) {
+                finishReported = true;
+                System.out.println("Input journal replay finished: " + this);
+            }
+            return;
+        }
+        for (int i = frameStarts[replayFrame]; i < frameStarts[replayFrame + 1]; i++) {
+            int type = journal.getType(i);
+            if (type == InputJournal.TYPE_ACTION) {
+                String binding = journal.getBinding(i);
+                ActionListener target = actionTargets.get(binding);
+                if (target != null) {
+                    target.onAction(binding, journal.isPressed(i), journal.getTpf(i));
+                    eventsReplayed++;
+                } else {
+                    untargetedEvents++;
+                }
+            } else if (type == InputJournal.TYPE_ANALOG) {
+                String binding = journal.getBinding(i);
+                AnalogListener target = analogTargets.get(binding);
+                if (target != null) {
+                    target.onAnalog(binding, journal.getValue(i), journal.getTpf(i));
+                    eventsReplayed++;
+                } else {
+                    untargetedEvents++;
+                }
+            } else if (type == InputJournal.TYPE_KINECT && journal.getPlayer(i) == kinectPlayer) {
+                journal.readKinect(i, kinectReading);
+                // Same age as when it was taken, so latency-dependent stages see what they saw
+                long ageNanos = (long) (journal.getValue(i) * 1e9);
+                kinectReading.setTimestampNanos(System.nanoTime() - ageNanos);
+                kinectReading.setSequence(kinectReading.getSequence() + 1);
+                kinectReadingsReplayed++;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "InputJournalReplayer[frame=" + Math.max(replayFrame, 0) + "/" + frameTpfs.length
+                + ", eventsReplayed=" + eventsReplayed
+                + ", kinectReadingsReplayed=" + kinectReadingsReplayed
+                + ", untargetedEvents=" + untargetedEvents + "]";
+    }
+
+    /**
+     * Steps through the recorded frames' tpf; the application updates it once
+     * at the start of every frame.
+     */
+    private class ReplayTimer extends Timer {
+
+        private long timeNanos = 0;
+
+        @Override
+        public long getTime() {
+            return timeNanos;
+        }
+
+        @Override
+        public long getResolution() {
+            return 1000000000L;
+        }
+
+        @Override
+        public float getFrameRate() {
+            return 1 / getTimePerFrame();
+        }
+
+        @Override
+        public float getTimePerFrame() {
+            if (frameTpfs.length == 0) {
+                return 1 / 60f;
+            }
+            return frameTpfs[Math.max(0, Math.min(replayFrame, frameTpfs.length - 1))];
+        }
+
+        @Override
+        public void update() {
+            replayFrame++;
+            timeNanos += (long) (getTimePerFrame() * 1e9);
+        }
+
+        @Override
+        public void reset() {
+            timeNanos = 0;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package constrainedcamera;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.font.BitmapFont;
+import com.jme3.font.BitmapText;
+import com.jme3.input.InputManager;
+import com.jme3.input.KeyInput;
+import com.jme3.input.controls.ActionListener;
+import com.jme3.input.controls.KeyTrigger;
+import com.jme3.math.ColorRGBA;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial.CullHint;
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ *
+ * Shows the input latency histograms of ConstrainedSimpleApplication's
+ * InputLatencyTracker as an overlay (toggled with F6), and dumps them to a
+ * file in the working directory on F7.
+ */
+public class InputLatencyAppState extends AbstractAppState {
+
+    public static final String INPUT_MAPPING_TOGGLE_LATENCY = "SIMPLEAPP_ToggleLatency";
+    public static final String INPUT_MAPPING_DUMP_LATENCY = "SIMPLEAPP_DumpLatency";
+    /**
+     * (Unit: seconds.)
+     */
+    public static final float REFRESH_INTERVAL = 0.5f;
+    private InputLatencyTracker tracker;
+    private InputManager inputManager;
+    private Node guiNode;
+    private BitmapText latencyText;
+    private boolean showLatency = false;
+    private float secondsSinceRefresh = 0;
+    private ActionListener actionListener = new ActionListener() {
+        public void onAction(String name, boolean value, float tpf) {
+            if (!value) {
+                return;
+            }
+            if (name.equals(INPUT_MAPPING_TOGGLE_LATENCY)) {
+                setDisplayLatency(!showLatency);
+            } else if (name.equals(INPUT_MAPPING_DUMP_LATENCY)) {
+                dump();
+            }
+        }
+    };
+
+    @Override
+    public void initialize(AppStateManager stateManager, Application app) {
+        super.initialize(stateManager, app);
+
+        if (!(app instanceof ConstrainedSimpleApplication)) {
+            throw new RuntimeException("InputLatencyAppState needs a ConstrainedSimpleApplication.");
+        }
+        ConstrainedSimpleApplication simpleApp = (ConstrainedSimpleApplication) app;
+        tracker = simpleApp.getInputLatencyTracker();
+        guiNode = simpleApp.getGuiNode();
+        BitmapFont guiFont = simpleApp.guiFont;
+        if (guiFont == null) {
+            guiFont = app.getAssetManager().loadFont("Interface/Fonts/Default.fnt");
+        }
+
+        latencyText = new BitmapText(guiFont, false);
+        latencyText.setColor(ColorRGBA.Yellow);
+        latencyText.setText(tracker.getSummary());
+        latencyText.setLocalTranslation(0, app.getCamera().getHeight() - latencyText.getLineHeight() * 6, 0);
+        latencyText.setCullHint(showLatency ? CullHint.Never : CullHint.Always);
+        guiNode.attachChild(latencyText);
+
+        inputManager = app.getInputManager();
+        if (inputManager != null) {
+            inputManager.addMapping(INPUT_MAPPING_TOGGLE_LATENCY, new KeyTrigger(KeyInput.KEY_F6));
+            inputManager.addMapping(INPUT_MAPPING_DUMP_LATENCY, new KeyTrigger(KeyInput.KEY_F7));
+            inputManager.addListener(actionListener, INPUT_MAPPING_TOGGLE_LATENCY, INPUT_MAPPING_DUMP_LATENCY);
+        }
+    }
+
+    public void setDisplayLatency(boolean show) {
+        showLatency = show;
+        if (latencyText != null) {
+            latencyText.setCullHint(show ? CullHint.Never : CullHint.Always);
+        }
+    }
+
+    /**
+     * Writes the histograms to input-latency-DATE.csv in the working
+     * directory.
+     *
+     * @return The file, or null if it couldn't be written.
+     */
+    public File dump() {
+        File file = new File("input-latency-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".csv");
+        try {
+            tracker.dump(file);
+            System.out.println("Input latency written to " + file.getAbsolutePath());
+            return file;
+        } catch (IOException e) {
+            System.err.println("Can't write input latency: " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void update(float tpf) {
+        if (!showLatency) {
+            return;
+        }
+        secondsSinceRefresh += tpf;
+        if (secondsSinceRefresh >= REFRESH_INTERVAL) {
+            secondsSinceRefresh = 0;
+            latencyText.setText(tracker.getSummary());
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        super.cleanup();
+
+        if (latencyText != null) {
+            guiNode.detachChild(latencyText);
+        }
+        if (inputManager != null) {
+            inputManager.deleteMapping(INPUT_MAPPING_TOGGLE_LATENCY);
+            inputManager.deleteMapping(INPUT_MAPPING_DUMP_LATENCY);
+            inputManager.removeListener(actionListener);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package constrainedcamera;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Date;
+
+/**
+ *
+ * Measures how long input takes to change the rendered view, per input path
+ * (Kinect, mouse). For each path, the oldest input not rendered yet is
+ * remembered with its receipt time; the path's code then marks when it
+ * processed the input and when it moved the camera, and
+ * ConstrainedSimpleApplication calls frameRendered() once
+ * renderManager.render() returns. Every stage is recorded as the latency from
+ * receipt into a LatencyHistogram.
+ *
+ * "Rendered" is when the frame's draw calls have been submitted; the time the
+ * GPU and display then take is not visible from here and not included.
+ * All calls come from the render thread; receipt times from other threads
+ * (e.g. the Kinect sampler's) are passed in as System.nanoTime() values.
+ */
+public class InputLatencyTracker {
+
+    public static final int PATH_KINECT = 0,
+            PATH_MOUSE = 1,
+            PATH_COUNT = 2;
+    public static final int STAGE_PROCESSED = 0,
+            STAGE_CAMERA = 1,
+            STAGE_RENDERED = 2,
+            STAGE_COUNT = 3;
+    private static final String[] PATH_NAMES = {"Kinect", "Mouse"};
+    private static final String[] STAGE_NAMES = {"processed", "camera", "rendered"};
+    private static final long NONE = Long.MIN_VALUE;
+    private final LatencyHistogram[][] histograms = new LatencyHistogram[PATH_COUNT][STAGE_COUNT];
+    private final long[] pendingReceivedNanos = new long[PATH_COUNT];
+    private final long[][] pendingStageNanos = new long[PATH_COUNT][STAGE_COUNT];
+    private boolean enabled = true;
+
+    public InputLatencyTracker() {
+        for (int path = 0; path < PATH_COUNT; path++) {
+            for (int stage = 0; stage < STAGE_COUNT; stage++) {
+                histograms[path][stage] = new LatencyHistogram();
+            }
+        }
+        clearPending();
+    }
+
+    public static String getPathName(int path) {
+        return PATH_NAMES[path];
+    }
+
+    public static String getStageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        clearPending();
+    }
+
+    /**
+     * Input arrived. If earlier input on the path hasn't been rendered yet,
+     * that one keeps counting (latency is measured for the oldest input).
+     *
+     * @param receivedNanos From System.nanoTime().
+     */
+    public void inputReceived(int path, long receivedNanos) {
+        if (enabled && pendingReceivedNanos[path] == NONE) {
+            pendingReceivedNanos[path] = receivedNanos;
+        }
+    }
+
+    /**
+     * The path's pending input got through a stage (the latest call per frame
+     * counts). Does nothing if no input is pending.
+     */
+    public void stageReached(int path, int stage) {
+        if (pendingReceivedNanos[path] != NONE) {
+            pendingStageNanos[path][stage] = System.nanoTime();
+        }
+    }
+
+    /**
+     * The frame has been rendered: records the latencies of all pending input
+     * that made it to the camera.
+     */
+    public void frameRendered() {
+        if (!enabled) {
+            return;
+        }
+        long renderedNanos = System.nanoTime();
+        for (int path = 0; path < PATH_COUNT; path++) {
+            long receivedNanos = pendingReceivedNanos[path];
+            if (receivedNanos == NONE || pendingStageNanos[path][STAGE_CAMERA] == NONE) {
+                continue; // Nothing new, or it didn't move the camera (yet)
+            }
+            pendingStageNanos[path][STAGE_RENDERED] = renderedNanos;
+            for (int stage = 0; stage < STAGE_COUNT; stage++) {
+                if (pendingStageNanos[path][stage] != NONE) {
+                    histograms[path][stage].record(pendingStageNanos[path][stage] - receivedNanos);
+                }
+                pendingStageNanos[path][stage] = NONE;
+            }
+            pendingReceivedNanos[path] = NONE;
+        }
+    }
+
+    private void clearPending() {
+        for (int path = 0; path < PATH_COUNT; path++) {
+            pendingReceivedNanos[path] = NONE;
+            for (int stage = 0; stage < STAGE_COUNT; stage++) {
+                pendingStageNanos[path][stage] = NONE;
+            }
+        }
+    }
+
+    public LatencyHistogram getHistogram(int path, int stage) {
+        return histograms[path][stage];
+    }
+
+    public void reset() {
+        for (int path = 0; path < PATH_COUNT; path++) {
+            for (int stage = 0; stage < STAGE_COUNT; stage++) {
+                histograms[path][stage].reset();
+            }
+        }
+        clearPending();
+    }
+
+    /**
+     * @return One line per path with p50/p95/p99 of every stage, in ms.
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (int path = 0; path < PATH_COUNT; path++) {
+            summary.append(PATH_NAMES[path]).append(" (").append(histograms[path][STAGE_RENDERED].getCount()).append(")");
+            for (int stage = 0; stage < STAGE_COUNT; stage++) {
+                LatencyHistogram histogram = histograms[path][stage];
+                summary.append("  ").append(STAGE_NAMES[stage]).append(" ")
+                        .append(toMillis(histogram.getPercentileNanos(50))).append("/")
+                        .append(toMillis(histogram.getPercentileNanos(95))).append("/")
+                        .append(toMillis(histogram.getPercentileNanos(99)));
+            }
+            summary.append(" ms p50/p95/p99\n");
+        }
+        return summary.toString();
+    }
+
+    private static String toMillis(long nanos) {
+        return String.valueOf(Math.round(nanos / 1e5) / 10.0);
+    }
+
+    /**
+     * Writes the summary followed by every non-empty histogram bucket as CSV
+     * (path, stage, bucketStartMs, count).
+     */
+    public void dump(File file) throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            out.println("# Input latency, " + new Date());
+            for (String line : getSummary().split("\n")) {
+                out.println("# " + line);
+            }
+            out.println("path,stage,count,meanMs,p50Ms,p95Ms,p99Ms,maxMs");
+            for (int path = 0; path < PATH_COUNT; path++) {
+                for (int stage = 0; stage < STAGE_COUNT; stage++) {
+                    LatencyHistogram histogram = histograms[path][stage];
+                    out.println(PATH_NAMES[path] + "," + STAGE_NAMES[stage] + "," + histogram.getCount()
+                            + "," + toMillis(histogram.getMeanNanos())
+                            + "," + toMillis(histogram.getPercentileNanos(50))
+                            + "," + toMillis(histogram.getPercentileNanos(95))
+                            + "," + toMillis(histogram.getPercentileNanos(99))
+                            + "," + toMillis(histogram.getMaxNanos()));
+                }
+            }
+            out.println();
+            out.println("path,stage,bucketStartMs,count");
+            for (int path = 0; path < PATH_COUNT; path++) {
+                for (int stage = 0; stage < STAGE_COUNT; stage++) {
+                    LatencyHistogram histogram = histograms[path][stage];
+                    for (int bucket = 0; bucket <= LatencyHistogram.BUCKET_COUNT; bucket++) {
+                        if (histogram.getBucketCount(bucket) > 0) {
+                            out.println(PATH_NAMES[path] + "," + STAGE_NAMES[stage] + "," + toMillis(bucket * LatencyHistogram.BUCKET_NANOS) + "," + histogram.getBucketCount(bucket));
+                        }
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (out.checkError()) {
+            throw new IOException("Couldn't write " + file);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package constrainedcamera;
+
+/**
+ *
+ * Fixed-size latency histogram: BUCKET_COUNT buckets of BUCKET_NANOS each,
+ * plus one for everything longer. Recording is a single array increment, so
+ * it can run every frame without allocating. Not thread-safe; record from one
+ * thread (the render thread).
+ */
+public class LatencyHistogram {
+
+    /*--- SETTINGS ---*/
+    /**
+     * (Unit: nanoseconds.) 0.1 ms.
+     */
+    public static final long BUCKET_NANOS = 100000L;
+    /**
+     * Covers up to 500 ms.
+     */
+    public static final int BUCKET_COUNT = 5000;
+    /*--- END SETTINGS ---*/
+    private final long[] counts = new long[BUCKET_COUNT + 1];
+    private long count = 0, totalNanos = 0, maxNanos = 0;
+
+    public void record(long latencyNanos) {
+        if (latencyNanos < 0) {
+            latencyNanos = 0;
+        }
+        long bucket = latencyNanos / BUCKET_NANOS;
+        counts[bucket < BUCKET_COUNT ? (int) bucket : BUCKET_COUNT]++;
+        count++;
+        totalNanos += latencyNanos;
+        if (latencyNanos > maxNanos) {
+            maxNanos = latencyNanos;
+        }
+    }
+
+    /**
+     * @param percent E.g. 99 for the 99th percentile.
+     * @return The upper bound of the bucket the percentile falls into, or the
+     * maximum if it's beyond the last bucket. (Unit: nanoseconds.)
+     */
+    public long getPercentileNanos(double percent) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percent / 100 * count);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.min((bucket + 1) * BUCKET_NANOS, maxNanos);
+            }
+        }
+        return maxNanos;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMeanNanos() {
+        return (count > 0) ? totalNanos / count : 0;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * @return How many latencies fell into the bucket; bucket BUCKET_COUNT
+     * holds everything longer than the histogram covers.
+     */
+    public long getBucketCount(int bucket) {
+        return counts[bucket];
+    }
+
+    public void reset() {
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            counts[bucket] = 0;
+        }
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+}
@@ -0,0 +1,415 @@
+package hitscan;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+
+/**
+ *
+ * Bounding volume hierarchy (a dynamic AABB tree) over geometries' world
+ * bounds, for the broad phase of a hit scan: rayCandidates() finds the
+ * geometries whose box a ray goes through, nearest first, so only those get
+ * the (triangle by triangle) narrow phase.
+ *
+ * Leaves store the world bound grown by a margin on every side, so a moving
+ * geometry only has to be taken out and put back in (move()) once it leaves
+ * that box, not every frame. Inserting walks down to the sibling that grows
+ * the tree's surface area the least, then refits the boxes above; there is
+ * no rebalancing, which is fine for the few hundred to thousand scattered
+ * enemies it is meant for.
+ *
+ * Nodes live in parallel primitive arrays indexed by node id (grown by
+ * doubling, freed ids reused), so queries and moves allocate nothing. Not
+ * thread-safe.
+ */
+public class BoundsTree {
+
+    private static final int NULL = -1;
+    private final float margin;
+    /**
+     * minX, minY, minZ, maxX, maxY, maxZ per node.
+     */
+    private float[] boxes;
+    private int[] parents, lefts, rights;
+    private Geometry[] geometries;
+    private int root = NULL;
+    /**
+     * Freed nodes, chained through parents.
+     */
+    private int free = NULL;
+    private int nodeCount = 0, leafCount = 0;
+    /**
+     * rayCandidates() results, and its traversal stack.
+     */
+    private Geometry[] candidates = new Geometry[16];
+    private float[] candidateEntries = new float[16];
+    private int candidateCount = 0;
+    private int[] stack = new int[64];
+    private long reinserts = 0;
+
+    /**
+     * @param margin How far a leaf's box reaches beyond its geometry's world
+     * bound on every side; 0 for geometries that don't move. (Unit: world
+     * units.)
+     */
+    public BoundsTree(float margin) {
+        this.margin = margin;
+        allocate(16);
+    }
+
+    private void allocate(int capacity) {
+        float[] grownBoxes = new float[capacity * 6];
+        int[] grownParents = new int[capacity], grownLefts = new int[capacity], grownRights = new int[capacity];
+        Geometry[] grownGeometries = new Geometry[capacity];
+        if (boxes != null) {
+            System.arraycopy(boxes, 0, grownBoxes, 0, boxes.length);
+            System.arraycopy(parents, 0, grownParents, 0, parents.length);
+            System.arraycopy(lefts, 0, grownLefts, 0, lefts.length);
+            System.arraycopy(rights, 0, grownRights, 0, rights.length);
+            System.arraycopy(geometries, 0, grownGeometries, 0, geometries.length);
+        }
+        int oldCapacity = (parents != null) ? parents.length : 0;
+        boxes = grownBoxes;
+        parents = grownParents;
+        lefts = grownLefts;
+        rights = grownRights;
+        geometries = grownGeometries;
+        for (int node = capacity - 1; node >= oldCapacity; node--) {
+            parents[node] = free;
+            free = node;
+        }
+    }
+
+    private int allocateNode() {
+        if (free == NULL) {
+            allocate(parents.length * 2);
+        }
+        int node = free;
+        free = parents[node];
+        parents[node] = lefts[node] = rights[node] = NULL;
+        geometries[node] = null;
+        nodeCount++;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        geometries[node] = null;
+        parents[node] = free;
+        free = node;
+        nodeCount--;
+    }
+
+    /**
+     * Adds a geometry with its current world bound.
+     *
+     * @return Its leaf id, for move() and remove().
+     */
+    public int insert(Geometry geometry) {
+        int leaf = allocateNode();
+        geometries[leaf] = geometry;
+        setFatBox(leaf, geometry.getWorldBound());
+        insertLeaf(leaf);
+        leafCount++;
+        return leaf;
+    }
+
+    public void remove(int leaf) {
+        removeLeaf(leaf);
+        freeNode(leaf);
+        leafCount--;
+    }
+
+    /**
+     * Call when the leaf's geometry may have moved.
+     *
+     * @return True if it left its box and was put back in.
+     */
+    public boolean move(int leaf) {
+        BoundingVolume bound = geometries[leaf].getWorldBound();
+        int base = leaf * 6;
+        if (bound instanceof BoundingBox) {
+            BoundingBox box = (BoundingBox) bound;
+            Vector3f center = box.getCenter();
+            if (center.x - box.getXExtent() >= boxes[base] && center.y - box.getYExtent() >= boxes[base + 1]
+                    && center.z - box.getZExtent() >= boxes[base + 2] && center.x + box.getXExtent() <= boxes[base + 3]
+                    && center.y + box.getYExtent() <= boxes[base + 4] && center.z + box.getZExtent() <= boxes[base + 5]) {
+                return false;
+            }
+        } else if (bound instanceof BoundingSphere) {
+            float radius = ((BoundingSphere) bound).getRadius();
+            Vector3f center = bound.getCenter();
+            if (center.x - radius >= boxes[base] && center.y - radius >= boxes[base + 1] && center.z - radius >= boxes[base + 2]
+                    && center.x + radius <= boxes[base + 3] && center.y + radius <= boxes[base + 4] && center.z + radius <= boxes[base + 5]) {
+                return false;
+            }
+        }
+        removeLeaf(leaf);
+        setFatBox(leaf, bound);
+        insertLeaf(leaf);
+        reinserts++;
+        return true;
+    }
+
+    private void setFatBox(int leaf, BoundingVolume bound) {
+        float extentX = 0, extentY = 0, extentZ = 0;
+        if (bound instanceof BoundingBox) {
+            BoundingBox box = (BoundingBox) bound;
+            extentX = box.getXExtent();
+            extentY = box.getYExtent();
+            extentZ = box.getZExtent();
+        } else if (bound instanceof BoundingSphere) {
+            extentX = extentY = extentZ = ((BoundingSphere) bound).getRadius();
+        }
+        Vector3f center = bound.getCenter();
+        int base = leaf * 6;
+        boxes[base] = center.x - extentX - margin;
+        boxes[base + 1] = center.y - extentY - margin;
+        boxes[base + 2] = center.z - extentZ - margin;
+        boxes[base + 3] = center.x + extentX + margin;
+        boxes[base + 4] = center.y + extentY + margin;
+        boxes[base + 5] = center.z + extentZ + margin;
+    }
+
+    private void insertLeaf(int leaf) {
+        if (root == NULL) {
+            root = leaf;
+            parents[leaf] = NULL;
+            return;
+        }
+
+        // Walk down to the cheapest sibling
+        int node = root;
+        while (lefts[node] != NULL) {
+            float area = area(node);
+            float combinedArea = combinedArea(node, leaf);
+            float cost = 2 * combinedArea;
+            float inheritanceCost = 2 * (combinedArea - area);
+            float leftCost = descendCost(lefts[node], leaf) + inheritanceCost;
+            float rightCost = descendCost(rights[node], leaf) + inheritanceCost;
+            if (cost < leftCost && cost < rightCost) {
+                break;
+            }
+            node = (leftCost < rightCost) ? lefts[node] : rights[node];
+        }
+
+        // New parent for the sibling and the leaf
+        int sibling = node;
+        int oldParent = parents[sibling];
+        int newParent = allocateNode();
+        parents[newParent] = oldParent;
+        lefts[newParent] = sibling;
+        rights[newParent] = leaf;
+        parents[sibling] = newParent;
+        parents[leaf] = newParent;
+        if (oldParent == NULL) {
+            root = newParent;
+        } else if (lefts[oldParent] == sibling) {
+            lefts[oldParent] = newParent;
+        } else {
+            rights[oldParent] = newParent;
+        }
+        refit(newParent);
+    }
+
+    private float descendCost(int child, int leaf) {
+        float combined = combinedArea(child, leaf);
+        return (lefts[child] == NULL) ? combined : combined - area(child);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL;
+            return;
+        }
+        int parent = parents[leaf];
+        int grandParent = parents[parent];
+        int sibling = (lefts[parent] == leaf) ? rights[parent] : lefts[parent];
+        if (grandParent == NULL) {
+            root = sibling;
+            parents[sibling] = NULL;
+        } else {
+            if (lefts[grandParent] == parent) {
+                lefts[grandParent] = sibling;
+            } else {
+                rights[grandParent] = sibling;
+            }
+            parents[sibling] = grandParent;
+            refit(grandParent);
+        }
+        freeNode(parent);
+    }
+
+    /**
+     * Recomputes the boxes from node up to the root.
+     */
+    private void refit(int node) {
+        while (node != NULL) {
+            int base = node * 6, left = lefts[node] * 6, right = rights[node] * 6;
+            for (int axis = 0; axis < 3; axis++) {
+                boxes[base + axis] = Math.min(boxes[left + axis], boxes[right + axis]);
+                boxes[base + 3 + axis] = Math.max(boxes[left + 3 + axis], boxes[right + 3 + axis]);
+            }
+            node = parents[node];
+        }
+    }
+
+    private float area(int node) {
+        int base = node * 6;
+        float x = boxes[base + 3] - boxes[base], y = boxes[base + 4] - boxes[base + 1], z = boxes[base + 5] - boxes[base + 2];
+        return x * y + y * z + z * x;
+    }
+
+    private float combinedArea(int a, int b) {
+        int baseA = a * 6, baseB = b * 6;
+        float x = Math.max(boxes[baseA + 3], boxes[baseB + 3]) - Math.min(boxes[baseA], boxes[baseB]);
+        float y = Math.max(boxes[baseA + 4], boxes[baseB + 4]) - Math.min(boxes[baseA + 1], boxes[baseB + 1]);
+        float z = Math.max(boxes[baseA + 5], boxes[baseB + 5]) - Math.min(boxes[baseA + 2], boxes[baseB + 2]);
+        return x * y + y * z + z * x;
+    }
+
+    /**
+     * Finds the leaves whose box the ray enters within its limit, sorted by
+     * where it enters them; read them with getCandidate() and
+     * getCandidateEntry().
+     *
+     * @return The number of candidates.
+     */
+    public int rayCandidates(Ray ray) {
+        return rayCandidates(ray, 0);
+    }
+
+    /**
+     * As rayCandidates(Ray), with every box grown by slack on every side
+     * (e.g. for geometries moved since their leaves were last updated).
+     *
+     * @param slack (Unit: world units.)
+     */
+    public int rayCandidates(Ray ray, float slack) {
+        candidateCount = 0;
+        if (root == NULL) {
+            return 0;
+        }
+        Vector3f origin = ray.getOrigin(), direction = ray.getDirection();
+        float inverseX = 1 / direction.x, inverseY = 1 / direction.y, inverseZ = 1 / direction.z;
+        float limit = ray.getLimit();
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            float entry = entryDistance(node, origin, inverseX, inverseY, inverseZ, limit, slack);
+            if (entry < 0) {
+                continue;
+            }
+            if (lefts[node] == NULL) {
+                addCandidate(geometries[node], entry);
+            } else {
+                if (top + 2 > stack.length) {
+                    int[] grown = new int[stack.length * 2];
+                    System.arraycopy(stack, 0, grown, 0, top);
+                    stack = grown;
+                }
+                stack[top++] = lefts[node];
+                stack[top++] = rights[node];
+            }
+        }
+        return candidateCount;
+    }
+
+    /**
+     * Slab test.
+     *
+     * @return Where the ray enters the node's box (0 if it starts inside),
+     * or -1 if it misses it or only gets there past limit.
+     */
+    private float entryDistance(int node, Vector3f origin, float inverseX, float inverseY, float inverseZ, float limit, float slack) {
+        int base = node * 6;
+        float t1 = (boxes[base] - slack - origin.x) * inverseX, t2 = (boxes[base + 3] + slack - origin.x) * inverseX;
+        float near = Math.min(t1, t2), far = Math.max(t1, t2);
+        t1 = (boxes[base + 1] - slack - origin.y) * inverseY;
+        t2 = (boxes[base + 4] + slack - origin.y) * inverseY;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+        t1 = (boxes[base + 2] - slack - origin.z) * inverseZ;
+        t2 = (boxes[base + 5] + slack - origin.z) * inverseZ;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+        if (far < 0 || near > far || near > limit) {
+            return -1;
+        }
+        return Math.max(near, 0);
+    }
+
+    /**
+     * Insertion sort by entry distance; a ray only goes through a few boxes.
+     */
+    private void addCandidate(Geometry geometry, float entry) {
+        if (candidateCount == candidates.length) {
+            Geometry[] grownCandidates = new Geometry[candidateCount * 2];
+            float[] grownEntries = new float[candidateCount * 2];
+            System.arraycopy(candidates, 0, grownCandidates, 0, candidateCount);
+            System.arraycopy(candidateEntries, 0, grownEntries, 0, candidateCount);
+            candidates = grownCandidates;
+            candidateEntries = grownEntries;
+        }
+        int i = candidateCount++;
+        while (i > 0 && candidateEntries[i - 1] > entry) {
+            candidates[i] = candidates[i - 1];
+            candidateEntries[i] = candidateEntries[i - 1];
+            i--;
+        }
+        candidates[i] = geometry;
+        candidateEntries[i] = entry;
+    }
+
+    public Geometry getCandidate(int index) {
+        return candidates[index];
+    }
+
+    /**
+     * (Unit: world units along the ray.)
+     */
+    public float getCandidateEntry(int index) {
+        return candidateEntries[index];
+    }
+
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return How often move() had to take a leaf out and put it back in.
+     */
+    public long getReinserts() {
+        return reinserts;
+    }
+
+    /**
+     * @return Levels from the root to the deepest leaf (0 when empty).
+     */
+    public int getHeight() {
+        return height(root);
+    }
+
+    private int height(int node) {
+        if (node == NULL) {
+            return 0;
+        }
+        return 1 + Math.max(height(lefts[node]), height(rights[node]));
+    }
+
+    @Override
+    public String toString() {
+        return "BoundsTree[leaves=" + leafCount
+                + ", nodes=" + nodeCount
+                + ", height=" + getHeight()
+                + ", margin=" + margin
+                + ", reinserts=" + reinserts + "]";
+    }
+}
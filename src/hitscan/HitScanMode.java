@@ -0,0 +1,41 @@
+package hitscan;
+
+/**
+ *
+ * How FPSGame finds what's in the player's aim.
+ */
+public enum HitScanMode {
+
+    /**
+     * The shootables node's collideWith(): every shootable's bound, then the
+     * triangles of those the ray goes through.
+     */
+    NODE,
+    /**
+     * HitScanner: enemy bounds tree first, then the arena.
+     */
+    BOUNDS,
+    /**
+     * PhysicsHitScanner: a Bullet ray test against the collision shapes.
+     */
+    PHYSICS;
+
+    /**
+     * @return The mode named (any case), or null if there's none.
+     */
+    public static HitScanMode parse(String name) {
+        for (HitScanMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name)) {
+                return mode;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The mode after this one, for cycling through them.
+     */
+    public HitScanMode next() {
+        return values()[(ordinal() + 1) % values().length];
+    }
+}
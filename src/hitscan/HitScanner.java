@@ -0,0 +1,350 @@
+package hitscan;
+
+import com.jme3.collision.CollisionResult;
+import com.jme3.collision.CollisionResults;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ *
+ * Two-phase hit scan for the player's aim ray, in place of colliding the ray
+ * with the whole shootables node (every enemy's bound, and the arena's
+ * triangles, every frame):
+ * 1. Broad phase: a BoundsTree over the enemies' world bounds (refitted only
+ * when an enemy leaves its padded box) gives the enemies whose box the ray
+ * goes through, nearest first.
+ * 2. Narrow phase: only those get their triangles tested (the mesh's BIH
+ * tree), nearest first, stopping at the first box that starts past the
+ * closest hit so far.
+ * Enemies added with a HitboxSet get their hitboxes tested instead of their
+ * triangles: a few capsules and boxes placed from the animated pose, which
+ * also says which HitZone the shot landed on (getLastHitZone()).
+ * The arena (static) goes last, through its own BoundsTree and its meshes'
+ * BIH trees (built up front in addArena() rather than on the first shot), with
+ * the ray cut off at the closest enemy hit, so a ray that hits an enemy only
+ * walks the arena's triangles in front of it.
+ *
+ * Scans allocate nothing of their own (jME's ray/triangle test still makes a
+ * CollisionResult per hit). Not thread-safe: scan from the render thread.
+ */
+public class HitScanner {
+
+    /*--- SETTINGS ---*/
+    /**
+     * How far an enemy can move before its box in the tree has to be
+     * updated. (Unit: world units.)
+     */
+    public static final float ENEMY_BOUNDS_MARGIN = 2f;
+    /*--- END SETTINGS ---*/
+    private final BoundsTree enemyTree = new BoundsTree(ENEMY_BOUNDS_MARGIN);
+    private final BoundsTree arenaTree = new BoundsTree(0);
+    /**
+     * Registered enemies and their leaves, packed (removal moves the last one
+     * into the gap), and where each one is.
+     */
+    private Geometry[] enemies = new Geometry[16];
+    private int[] enemyLeaves = new int[16];
+    private HitboxSet[] enemyHitboxes = new HitboxSet[16];
+    private int enemyCount = 0;
+    private final Map<Geometry, Integer> enemyIndices = new HashMap<Geometry, Integer>();
+    private final Ray ray = new Ray();
+    private final CollisionResults narrowResults = new CollisionResults();
+    /**
+     * Handed out for hitbox hits, and overwritten by the next one.
+     */
+    private final CollisionResult hitboxResult = new CollisionResult();
+    private final Vector3f hitboxContactPoint = new Vector3f(), hitboxContactNormal = new Vector3f();
+    private HitZone lastHitZone = null;
+    /**
+     * How far outside its box any enemy's hitboxes can reach. (Unit: world
+     * units.)
+     */
+    private float hitboxSlack = 0;
+    private long scans = 0, enemyCandidates = 0, narrowTests = 0, enemyHits = 0, arenaHits = 0;
+    private long totalScanNanos = 0, maxScanNanos = 0;
+    private LagCompensator lagCompensator = null;
+    private long rewoundScans = 0, hitboxTests = 0, headHits = 0;
+
+    /**
+     * Adds every geometry under arena as static scenery, and builds their
+     * meshes' collision trees. Call once it's in place (world transforms
+     * final).
+     */
+    public void addArena(Spatial arena) {
+        arena.updateGeometricState();
+        addStatic(arena);
+    }
+
+    private void addStatic(Spatial spatial) {
+        if (spatial instanceof Geometry) {
+            Mesh mesh = ((Geometry) spatial).getMesh();
+            mesh.createCollisionData();
+            arenaTree.insert((Geometry) spatial);
+        } else if (spatial instanceof Node) {
+            for (Spatial child : ((Node) spatial).getChildren()) {
+                addStatic(child);
+            }
+        }
+    }
+
+    /**
+     * Does nothing if enemy is already in.
+     */
+    public void addEnemy(Geometry enemy) {
+        addEnemy(enemy, null);
+    }
+
+    /**
+     * @param hitboxes Tested in place of enemy's triangles; null (or none
+     * bound to bones) for the triangles. Limbs can swing out past the mesh's
+     * bound, so from then on the broad phase widens every enemy's box by
+     * HitboxSet.getBoundSlack().
+     */
+    public void addEnemy(Geometry enemy, HitboxSet hitboxes) {
+        if (enemyIndices.containsKey(enemy)) {
+            return;
+        }
+        if (enemyCount == enemies.length) {
+            Geometry[] grownEnemies = new Geometry[enemyCount * 2];
+            int[] grownLeaves = new int[enemyCount * 2];
+            HitboxSet[] grownHitboxes = new HitboxSet[enemyCount * 2];
+            System.arraycopy(enemies, 0, grownEnemies, 0, enemyCount);
+            System.arraycopy(enemyLeaves, 0, grownLeaves, 0, enemyCount);
+            System.arraycopy(enemyHitboxes, 0, grownHitboxes, 0, enemyCount);
+            enemies = grownEnemies;
+            enemyLeaves = grownLeaves;
+            enemyHitboxes = grownHitboxes;
+        }
+        enemies[enemyCount] = enemy;
+        enemyLeaves[enemyCount] = enemyTree.insert(enemy);
+        enemyHitboxes[enemyCount] = (hitboxes != null && hitboxes.getHitboxCount() > 0) ? hitboxes : null;
+        if (enemyHitboxes[enemyCount] != null) {
+            hitboxSlack = Math.max(hitboxSlack, hitboxes.getBoundSlack());
+        }
+        enemyIndices.put(enemy, enemyCount);
+        enemyCount++;
+    }
+
+    /**
+     * Does nothing if enemy isn't in.
+     */
+    public void removeEnemy(Geometry enemy) {
+        Integer index = enemyIndices.remove(enemy);
+        if (index == null) {
+            return;
+        }
+        enemyTree.remove(enemyLeaves[index]);
+        enemyCount--;
+        if (index != enemyCount) {
+            enemies[index] = enemies[enemyCount];
+            enemyLeaves[index] = enemyLeaves[enemyCount];
+            enemyHitboxes[index] = enemyHitboxes[enemyCount];
+            enemyIndices.put(enemies[index], index);
+        }
+        enemies[enemyCount] = null;
+        enemyHitboxes[enemyCount] = null;
+    }
+
+    public void clearEnemies() {
+        while (enemyCount > 0) {
+            removeEnemy(enemies[enemyCount - 1]);
+        }
+        hitboxSlack = 0;
+    }
+
+    /**
+     * While lagCompensator has the enemies rewound, scans leave the enemy
+     * tree as it is (rather than moving every rewound enemy's leaf there and
+     * back) and widen its boxes by LagCompensator.getRewindSlack() instead;
+     * the triangle tests see the rewound enemies.
+     *
+     * @param lagCompensator Null for none.
+     */
+    public void setLagCompensator(LagCompensator lagCompensator) {
+        this.lagCompensator = lagCompensator;
+    }
+
+    /**
+     * Brings the enemies' boxes up to date with where they are now; scan()
+     * does this first.
+     */
+    public void updateEnemyBounds() {
+        for (int i = 0; i < enemyCount; i++) {
+            enemyTree.move(enemyLeaves[i]);
+        }
+    }
+
+    /**
+     * @param direction Unit length.
+     * @return The closest hit along the ray, enemy or arena, or null if
+     * there's none.
+     */
+    public CollisionResult scan(Vector3f origin, Vector3f direction) {
+        long startNanos = System.nanoTime();
+        lastHitZone = null;
+        float slack = 0;
+        if (lagCompensator != null && lagCompensator.isRewound()) {
+            slack = lagCompensator.getRewindSlack();
+            rewoundScans++;
+        } else {
+            updateEnemyBounds();
+        }
+        ray.setOrigin(origin);
+        ray.setDirection(direction);
+        ray.setLimit(Float.POSITIVE_INFINITY);
+
+        CollisionResult closest = closestHit(enemyTree, slack + hitboxSlack);
+        if (closest != null) {
+            ray.setLimit(closest.getDistance());
+        }
+        // Within the limit, so any arena hit is in front of the enemy
+        CollisionResult arenaHit = closestHit(arenaTree, 0);
+        if (arenaHit != null && (closest == null || arenaHit.getDistance() < closest.getDistance())) {
+            closest = arenaHit;
+            lastHitZone = null;
+            arenaHits++;
+        } else if (closest != null) {
+            enemyHits++;
+            if (lastHitZone == HitZone.HEAD) {
+                headHits++;
+            }
+        }
+
+        long scanNanos = System.nanoTime() - startNanos;
+        scans++;
+        totalScanNanos += scanNanos;
+        maxScanNanos = Math.max(maxScanNanos, scanNanos);
+        return closest;
+    }
+
+    /**
+     * Broad phase then narrow phase against one tree, within the ray's limit.
+     */
+    private CollisionResult closestHit(BoundsTree tree, float slack) {
+        int candidates = tree.rayCandidates(ray, slack);
+        if (tree == enemyTree) {
+            enemyCandidates += candidates;
+        }
+        CollisionResult closest = null;
+        float closestDistance = ray.getLimit();
+        for (int i = 0; i < candidates; i++) {
+            if (tree.getCandidateEntry(i) > closestDistance) {
+                break; // Sorted: nothing further in can be closer
+            }
+            Geometry candidate = tree.getCandidate(i);
+            HitboxSet hitboxes = (tree == enemyTree) ? enemyHitboxes[enemyIndices.get(candidate)] : null;
+            if (hitboxes != null) {
+                if (collideWithHitboxes(hitboxes)) {
+                    closest = hitboxResult;
+                    closestDistance = hitboxResult.getDistance();
+                    ray.setLimit(closestDistance);
+                }
+                continue;
+            }
+            narrowResults.clear();
+            candidate.collideWith(ray, narrowResults);
+            narrowTests++;
+            if (narrowResults.size() > 0) {
+                CollisionResult hit = narrowResults.getClosestCollision();
+                if (hit.getDistance() <= closestDistance) {
+                    closest = hit;
+                    closestDistance = hit.getDistance();
+                    lastHitZone = null;
+                    ray.setLimit(closestDistance); // Prunes the next BIH walks
+                }
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Places hitboxes where the pose has them now and tests them within the
+     * ray's limit.
+     *
+     * @return True if one was hit: hitboxResult and lastHitZone say where.
+     */
+    private boolean collideWithHitboxes(HitboxSet hitboxes) {
+        hitboxes.update();
+        int hit = hitboxes.collideWith(ray);
+        hitboxTests++;
+        if (hit < 0) {
+            return false;
+        }
+        float distance = hitboxes.getHitDistance();
+        hitboxContactPoint.set(ray.getDirection()).multLocal(distance).addLocal(ray.getOrigin());
+        hitboxes.getContactNormal(hit, hitboxContactPoint, hitboxContactNormal);
+        hitboxResult.setContactPoint(hitboxContactPoint);
+        hitboxResult.setContactNormal(hitboxContactNormal);
+        hitboxResult.setDistance(distance);
+        hitboxResult.setGeometry(hitboxes.getModel());
+        lastHitZone = hitboxes.getZone(hit);
+        return true;
+    }
+
+    /**
+     * @return Where on the enemy the last scan's hit landed, if it was on
+     * hitboxes; null otherwise.
+     */
+    public HitZone getLastHitZone() {
+        return lastHitZone;
+    }
+
+    public int getEnemyCount() {
+        return enemyCount;
+    }
+
+    public BoundsTree getEnemyTree() {
+        return enemyTree;
+    }
+
+    public BoundsTree getArenaTree() {
+        return arenaTree;
+    }
+
+    public long getScans() {
+        return scans;
+    }
+
+    /**
+     * (Unit: nanoseconds.)
+     */
+    public double getAverageScanNanos() {
+        return (scans > 0) ? totalScanNanos / (double) scans : 0;
+    }
+
+    public long getMaxScanNanos() {
+        return maxScanNanos;
+    }
+
+    /**
+     * @return Triangle tests (one per candidate geometry) per scan, enemies
+     * and arena.
+     */
+    public double getAverageNarrowTests() {
+        return (scans > 0) ? narrowTests / (double) scans : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "HitScanner[enemies=" + enemyCount
+                + ", scans=" + scans
+                + ", rewoundScans=" + rewoundScans
+                + ", hitboxTests=" + hitboxTests
+                + ", headHits=" + headHits
+                + ", hitboxSlack=" + Math.round(hitboxSlack * 100) / 100.0
+                + ", averageScanMicros=" + Math.round(getAverageScanNanos() / 10) / 100.0
+                + ", maxScanMicros=" + Math.round(maxScanNanos / 10.0) / 100.0
+                + ", averageEnemyCandidates=" + ((scans > 0) ? Math.round(enemyCandidates * 100.0 / scans) / 100.0 : 0)
+                + ", averageNarrowTests=" + Math.round(getAverageNarrowTests() * 100) / 100.0
+                + ", enemyHits=" + enemyHits
+                + ", arenaHits=" + arenaHits
+                + ", enemyTree=" + enemyTree
+                + ", arenaTree=" + arenaTree + "]";
+    }
+}
@@ -0,0 +1,24 @@
+package hitscan;
+
+/**
+ *
+ * Which part of an enemy a shot landed on (see Hitbox), and what it does to
+ * the enemy's hit points.
+ */
+public enum HitZone {
+
+    HEAD(3),
+    BODY(1);
+    private final int damage;
+
+    private HitZone(int damage) {
+        this.damage = damage;
+    }
+
+    /**
+     * @return Hit points a shot here takes off.
+     */
+    public int getDamage() {
+        return damage;
+    }
+}
@@ -0,0 +1,115 @@
+package hitscan;
+
+import com.jme3.math.Vector3f;
+
+/**
+ *
+ * One simple shape hung off a skeleton bone, standing in for part of an
+ * animated model when it's shot at (see HitboxSet), and the HitZone it
+ * counts as:
+ * - a capsule (a segment with a radius) from one bone to another, or between
+ * two points in a bone's space;
+ * - a box in a bone's space, turning with the bone.
+ * Bone space is the bone's model space position, rotation and scale, as the
+ * animation leaves them. Only a description: the same layout serves every
+ * copy of a model.
+ */
+public class Hitbox {
+
+    public enum Shape {
+
+        CAPSULE, BOX
+    }
+    private final Shape shape;
+    private final HitZone zone;
+    private final String boneName, endBoneName;
+    private final Vector3f start, end;
+    private final float radius;
+
+    private Hitbox(Shape shape, HitZone zone, String boneName, String endBoneName, Vector3f start, Vector3f end, float radius) {
+        this.shape = shape;
+        this.zone = zone;
+        this.boneName = boneName;
+        this.endBoneName = endBoneName;
+        this.start = start;
+        this.end = end;
+        this.radius = radius;
+    }
+
+    /**
+     * Capsule from where boneName is to where endBoneName is (e.g. an arm,
+     * from the upper arm bone to the forearm bone).
+     *
+     * @param radius (Unit: model space units, scaled with the model.)
+     */
+    public static Hitbox capsule(HitZone zone, String boneName, String endBoneName, float radius) {
+        return new Hitbox(Shape.CAPSULE, zone, boneName, endBoneName, new Vector3f(), new Vector3f(), radius);
+    }
+
+    /**
+     * Capsule from start to end, in boneName's space.
+     *
+     * @param radius (Unit: model space units, scaled with the model.)
+     */
+    public static Hitbox capsule(HitZone zone, String boneName, Vector3f start, Vector3f end, float radius) {
+        return new Hitbox(Shape.CAPSULE, zone, boneName, null, start.clone(), end.clone(), radius);
+    }
+
+    /**
+     * Box around center, in boneName's space.
+     *
+     * @param halfExtents Along the bone's axes.
+     */
+    public static Hitbox box(HitZone zone, String boneName, Vector3f center, Vector3f halfExtents) {
+        return new Hitbox(Shape.BOX, zone, boneName, null, center.clone(), halfExtents.clone(), 0);
+    }
+
+    public Shape getShape() {
+        return shape;
+    }
+
+    public HitZone getZone() {
+        return zone;
+    }
+
+    public String getBoneName() {
+        return boneName;
+    }
+
+    /**
+     * @return The capsule's other end's bone, or null if it's a box or its
+     * ends are both in getBoneName()'s space.
+     */
+    public String getEndBoneName() {
+        return endBoneName;
+    }
+
+    /**
+     * @return The capsule's start, or the box's center, in bone space (zero
+     * for a capsule between two bones).
+     */
+    public Vector3f getStart() {
+        return start;
+    }
+
+    /**
+     * @return The capsule's end, or the box's half extents, in bone space
+     * (zero for a capsule between two bones).
+     */
+    public Vector3f getEnd() {
+        return end;
+    }
+
+    /**
+     * @return The capsule's radius; 0 for a box.
+     */
+    public float getRadius() {
+        return radius;
+    }
+
+    @Override
+    public String toString() {
+        return "Hitbox[" + shape + ", zone=" + zone + ", bone=" + boneName
+                + ((endBoneName != null) ? ", endBone=" + endBoneName : "") + "]";
+    }
+}
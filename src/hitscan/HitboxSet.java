@@ -0,0 +1,346 @@
+package hitscan;
+
+import com.jme3.animation.Bone;
+import com.jme3.animation.Skeleton;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Ray;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * One animated model's hitboxes: a Hitbox layout bound to the model's
+ * skeleton, so shots can be tested against a handful of capsules and boxes
+ * that follow the bones as the animation poses them, instead of the mesh's
+ * triangles (whose collision tree is built from the bind pose, and costs a
+ * tree walk per shot).
+ *
+ * update() places every hitbox from its bones' current model space
+ * transforms and the model's world transform; collideWith() then gives the
+ * closest one the ray enters. World shapes are kept in one primitive array,
+ * and neither allocates. Hitboxes on bones the skeleton doesn't have are
+ * reported and left out. Not thread-safe: use from the render thread.
+ */
+public class HitboxSet {
+
+    /**
+     * Floats per hitbox in world space: a capsule's ends (3 each) and radius,
+     * or a box's center, axes (3 each, unit length) and half extents.
+     */
+    private static final int STRIDE = 15;
+    private final Geometry model;
+    private final Skeleton skeleton;
+    private final Hitbox[] hitboxes;
+    private final int[] bones, endBones;
+    private final float[] world;
+    /**
+     * How far from the model bound's center any hitbox can get, whatever the
+     * pose. (Unit: model space units.)
+     */
+    private final float reach;
+    private float hitDistance = Float.POSITIVE_INFINITY;
+    private final Vector3f point = new Vector3f(), endPoint = new Vector3f(), axis = new Vector3f();
+    private final Quaternion boxRotation = new Quaternion();
+
+    /**
+     * @param model The geometry skinned by skeleton, whose world transform
+     * places the bones' model space.
+     */
+    public HitboxSet(Geometry model, Skeleton skeleton, Hitbox[] layout) {
+        this.model = model;
+        this.skeleton = skeleton;
+        List<Hitbox> found = new ArrayList<Hitbox>();
+        for (Hitbox hitbox : layout) {
+            if (findBone(hitbox.getBoneName()) && (hitbox.getEndBoneName() == null || findBone(hitbox.getEndBoneName()))) {
+                found.add(hitbox);
+            }
+        }
+        hitboxes = found.toArray(new Hitbox[found.size()]);
+        bones = new int[hitboxes.length];
+        endBones = new int[hitboxes.length];
+        for (int i = 0; i < hitboxes.length; i++) {
+            bones[i] = skeleton.getBoneIndex(hitboxes[i].getBoneName());
+            endBones[i] = (hitboxes[i].getEndBoneName() != null) ? skeleton.getBoneIndex(hitboxes[i].getEndBoneName()) : -1;
+        }
+        world = new float[hitboxes.length * STRIDE];
+
+        Vector3f center = model.getModelBound().getCenter();
+        float maxReach = 0;
+        for (int i = 0; i < hitboxes.length; i++) {
+            Hitbox hitbox = hitboxes[i];
+            float boneReach = getReach(skeleton.getBone(bones[i]), center);
+            if (endBones[i] >= 0) {
+                boneReach = Math.max(boneReach, getReach(skeleton.getBone(endBones[i]), center));
+            } else if (hitbox.getShape() == Hitbox.Shape.CAPSULE) {
+                boneReach += Math.max(hitbox.getStart().length(), hitbox.getEnd().length());
+            } else {
+                boneReach += hitbox.getStart().length() + hitbox.getEnd().length();
+            }
+            maxReach = Math.max(maxReach, boneReach + hitbox.getRadius());
+        }
+        reach = maxReach;
+    }
+
+    /**
+     * @return How far from center bone can get with its bones only turning:
+     * its root's bind position, plus every bone's length on the way out.
+     */
+    private static float getReach(Bone bone, Vector3f center) {
+        float reach = 0;
+        while (bone.getParent() != null) {
+            reach += bone.getBindPosition().length();
+            bone = bone.getParent();
+        }
+        return reach + bone.getBindPosition().distance(center);
+    }
+
+    private boolean findBone(String boneName) {
+        if (skeleton.getBoneIndex(boneName) < 0) {
+            System.err.println("No bone " + boneName + " in " + model.getName() + "'s skeleton; its hitbox is left out.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Places every hitbox where its bones are now; call before collideWith()
+     * whenever the model or its pose may have changed.
+     */
+    public void update() {
+        Transform modelTransform = model.getWorldTransform();
+        Vector3f modelScale = modelTransform.getScale();
+        float scale = Math.max(Math.abs(modelScale.x), Math.max(Math.abs(modelScale.y), Math.abs(modelScale.z)));
+        for (int i = 0; i < hitboxes.length; i++) {
+            Hitbox hitbox = hitboxes[i];
+            Bone bone = skeleton.getBone(bones[i]);
+            int base = i * STRIDE;
+            if (hitbox.getShape() == Hitbox.Shape.CAPSULE) {
+                if (endBones[i] >= 0) {
+                    point.set(bone.getModelSpacePosition());
+                    endPoint.set(skeleton.getBone(endBones[i]).getModelSpacePosition());
+                } else {
+                    toModelSpace(bone, hitbox.getStart(), point);
+                    toModelSpace(bone, hitbox.getEnd(), endPoint);
+                }
+                modelTransform.transformVector(point, point);
+                modelTransform.transformVector(endPoint, endPoint);
+                put(base, point);
+                put(base + 3, endPoint);
+                world[base + 6] = hitbox.getRadius() * scale;
+            } else {
+                toModelSpace(bone, hitbox.getStart(), point);
+                modelTransform.transformVector(point, point);
+                put(base, point);
+                boxRotation.set(modelTransform.getRotation()).multLocal(bone.getModelSpaceRotation());
+                Vector3f boneScale = bone.getModelSpaceScale();
+                Vector3f halfExtents = hitbox.getEnd();
+                for (int a = 0; a < 3; a++) {
+                    put(base + 3 + a * 3, boxRotation.getRotationColumn(a, axis));
+                    world[base + 12 + a] = Math.abs(halfExtents.get(a) * boneScale.get(a)) * scale;
+                }
+            }
+        }
+    }
+
+    private static void toModelSpace(Bone bone, Vector3f boneSpace, Vector3f store) {
+        store.set(boneSpace).multLocal(bone.getModelSpaceScale());
+        bone.getModelSpaceRotation().multLocal(store);
+        store.addLocal(bone.getModelSpacePosition());
+    }
+
+    private void put(int base, Vector3f v) {
+        world[base] = v.x;
+        world[base + 1] = v.y;
+        world[base + 2] = v.z;
+    }
+
+    /**
+     * Tests ray (unit direction) against the hitboxes as last placed by
+     * update(), up to its limit. Hitboxes the ray starts in don't count.
+     *
+     * @return Index of the closest hitbox hit (see getHitDistance()), or -1.
+     */
+    public int collideWith(Ray ray) {
+        Vector3f origin = ray.getOrigin(), direction = ray.getDirection();
+        int closest = -1;
+        float closestDistance = ray.getLimit();
+        for (int i = 0; i < hitboxes.length; i++) {
+            float distance = (hitboxes[i].getShape() == Hitbox.Shape.CAPSULE)
+                    ? capsuleEntry(i * STRIDE, origin, direction)
+                    : boxEntry(i * STRIDE, origin, direction);
+            if (distance >= 0 && distance <= closestDistance) {
+                closest = i;
+                closestDistance = distance;
+            }
+        }
+        hitDistance = (closest >= 0) ? closestDistance : Float.POSITIVE_INFINITY;
+        return closest;
+    }
+
+    /**
+     * @return Distance along the ray to the capsule, or -1: the first of
+     * where it enters the cylinder between the ends, and the ends' balls.
+     */
+    private float capsuleEntry(int base, Vector3f origin, Vector3f direction) {
+        float ax = world[base], ay = world[base + 1], az = world[base + 2];
+        float abx = world[base + 3] - ax, aby = world[base + 4] - ay, abz = world[base + 5] - az;
+        float aox = origin.x - ax, aoy = origin.y - ay, aoz = origin.z - az;
+        float radius = world[base + 6];
+        float abab = abx * abx + aby * aby + abz * abz;
+        float abd = abx * direction.x + aby * direction.y + abz * direction.z;
+        float abao = abx * aox + aby * aoy + abz * aoz;
+        float k2 = abab - abd * abd;
+        if (k2 > FastMath.ZERO_TOLERANCE * abab) { // Not along the axis
+            float k1 = abab * (direction.x * aox + direction.y * aoy + direction.z * aoz) - abao * abd;
+            float k0 = abab * (aox * aox + aoy * aoy + aoz * aoz) - abao * abao - radius * radius * abab;
+            float h = k1 * k1 - k2 * k0;
+            if (h < 0) {
+                return -1; // Misses the infinite cylinder the capsule is in
+            }
+            float t = (-k1 - FastMath.sqrt(h)) / k2;
+            float along = abao + t * abd;
+            if (t >= 0 && along > 0 && along < abab) {
+                return t;
+            }
+        }
+        float tA = sphereEntry(ax, ay, az, radius, origin, direction);
+        float tB = sphereEntry(ax + abx, ay + aby, az + abz, radius, origin, direction);
+        return (tA < 0 || (tB >= 0 && tB < tA)) ? tB : tA;
+    }
+
+    private static float sphereEntry(float cx, float cy, float cz, float radius, Vector3f origin, Vector3f direction) {
+        float ox = origin.x - cx, oy = origin.y - cy, oz = origin.z - cz;
+        float b = ox * direction.x + oy * direction.y + oz * direction.z;
+        float h = b * b - (ox * ox + oy * oy + oz * oz - radius * radius);
+        if (h < 0) {
+            return -1;
+        }
+        float t = -b - FastMath.sqrt(h);
+        return (t >= 0) ? t : -1;
+    }
+
+    /**
+     * @return Distance along the ray to the box, or -1 (slab test along the
+     * box's axes).
+     */
+    private float boxEntry(int base, Vector3f origin, Vector3f direction) {
+        float ox = origin.x - world[base], oy = origin.y - world[base + 1], oz = origin.z - world[base + 2];
+        float near = Float.NEGATIVE_INFINITY, far = Float.POSITIVE_INFINITY;
+        for (int a = 0; a < 3; a++) {
+            int axisBase = base + 3 + a * 3;
+            float localOrigin = ox * world[axisBase] + oy * world[axisBase + 1] + oz * world[axisBase + 2];
+            float localDirection = direction.x * world[axisBase] + direction.y * world[axisBase + 1] + direction.z * world[axisBase + 2];
+            float halfExtent = world[base + 12 + a];
+            if (Math.abs(localDirection) < FastMath.ZERO_TOLERANCE) {
+                if (Math.abs(localOrigin) > halfExtent) {
+                    return -1; // Parallel to the slab, and outside it
+                }
+                continue;
+            }
+            float t1 = (-halfExtent - localOrigin) / localDirection, t2 = (halfExtent - localOrigin) / localDirection;
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+            if (near > far) {
+                return -1;
+            }
+        }
+        return (near >= 0) ? near : -1;
+    }
+
+    /**
+     * @return Distance to the hitbox the last collideWith() hit. (Unit: world
+     * units.)
+     */
+    public float getHitDistance() {
+        return hitDistance;
+    }
+
+    /**
+     * Writes the outward surface normal of hitbox index at contactPoint (on
+     * its surface).
+     */
+    public Vector3f getContactNormal(int index, Vector3f contactPoint, Vector3f store) {
+        int base = index * STRIDE;
+        float px = contactPoint.x - world[base], py = contactPoint.y - world[base + 1], pz = contactPoint.z - world[base + 2];
+        if (hitboxes[index].getShape() == Hitbox.Shape.CAPSULE) {
+            // Away from the closest point on the segment
+            float abx = world[base + 3] - world[base], aby = world[base + 4] - world[base + 1], abz = world[base + 5] - world[base + 2];
+            float abab = abx * abx + aby * aby + abz * abz;
+            float s = (abab > 0) ? FastMath.clamp((px * abx + py * aby + pz * abz) / abab, 0, 1) : 0;
+            store.set(px - s * abx, py - s * aby, pz - s * abz);
+        } else {
+            // Along the axis the point is furthest out on
+            int outermost = 0;
+            float outermostRatio = -1, outermostSide = 1;
+            for (int a = 0; a < 3; a++) {
+                int axisBase = base + 3 + a * 3;
+                float local = px * world[axisBase] + py * world[axisBase + 1] + pz * world[axisBase + 2];
+                float ratio = Math.abs(local) / Math.max(world[base + 12 + a], FastMath.ZERO_TOLERANCE);
+                if (ratio > outermostRatio) {
+                    outermost = a;
+                    outermostRatio = ratio;
+                    outermostSide = Math.signum(local);
+                }
+            }
+            int axisBase = base + 3 + outermost * 3;
+            store.set(world[axisBase], world[axisBase + 1], world[axisBase + 2]).multLocal(outermostSide);
+        }
+        return store.normalizeLocal();
+    }
+
+    /**
+     * @return How far outside the model's world bound (as it is now) the
+     * hitboxes can reach in any pose that only turns bones (as skeletal
+     * animation does); a bounds tree of the models can be queried with this
+     * much slack. (Unit: world units.)
+     */
+    public float getBoundSlack() {
+        Vector3f scale = model.getWorldScale();
+        float worldReach = reach * Math.max(Math.abs(scale.x), Math.max(Math.abs(scale.y), Math.abs(scale.z)));
+        BoundingVolume bound = model.getWorldBound();
+        float minExtent = 0;
+        if (bound instanceof BoundingBox) {
+            BoundingBox box = (BoundingBox) bound;
+            minExtent = Math.min(box.getXExtent(), Math.min(box.getYExtent(), box.getZExtent()));
+        } else if (bound instanceof BoundingSphere) {
+            minExtent = ((BoundingSphere) bound).getRadius();
+        }
+        return Math.max(0, worldReach - minExtent);
+    }
+
+    public Geometry getModel() {
+        return model;
+    }
+
+    public Skeleton getSkeleton() {
+        return skeleton;
+    }
+
+    /**
+     * @return Hitboxes bound to bones (the layout's, less any on missing
+     * bones).
+     */
+    public int getHitboxCount() {
+        return hitboxes.length;
+    }
+
+    public Hitbox getHitbox(int index) {
+        return hitboxes[index];
+    }
+
+    public HitZone getZone(int index) {
+        return hitboxes[index].getZone();
+    }
+
+    @Override
+    public String toString() {
+        return "HitboxSet[model=" + model.getName() + ", hitboxes=" + hitboxes.length + "]";
+    }
+}
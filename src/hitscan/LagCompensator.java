@@ -0,0 +1,270 @@
+package hitscan;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ *
+ * Lag compensation for hit scans: keeps a TransformHistory per enemy
+ * (record() once per frame, after the enemies moved), and for a shot puts
+ * every enemy back where it was when the input that aimed the shot came in
+ * (rewind()), so the scan sees what the player was aiming at rather than
+ * where a dodging enemy has got to since; restore() then puts them back.
+ *
+ * How far back a shot can go is capped at maxRewindNanos (and by how much
+ * history there is). Only the spatials move, so this works with the scene
+ * graph scans (HitScanMode.NODE and BOUNDS), not with Bullet's bodies; a
+ * HitScanner given this compensator tests the rewound enemies without
+ * updating its tree for them.
+ * Nothing is allocated per frame or per shot once the enemies are in. Not
+ * thread-safe: use from the render thread.
+ */
+public class LagCompensator {
+
+    /*--- SETTINGS ---*/
+    /**
+     * Records per enemy: about half a second at 60 FPS.
+     */
+    public static final int DEFAULT_HISTORY_CAPACITY = 32;
+    public static final long DEFAULT_MAX_REWIND_NANOS = 250000000L;
+    /**
+     * Rotations closer than this (absolute quaternion dot product) count as
+     * unchanged.
+     */
+    private static final float ROTATION_DOT_EPSILON = 0.99999f;
+    /*--- END SETTINGS ---*/
+    private final int historyCapacity;
+    private final long maxRewindNanos;
+    /**
+     * Registered enemies, their histories, and where they are while rewound
+     * (translation x, y, z and rotation x, y, z, w each), packed as in
+     * HitScanner.
+     */
+    private Geometry[] enemies = new Geometry[16];
+    private TransformHistory[] histories = new TransformHistory[16];
+    private float[] saved = new float[16 * 7];
+    private int enemyCount = 0;
+    private final Map<Geometry, Integer> enemyIndices = new HashMap<Geometry, Integer>();
+    private boolean rewound = false;
+    private float rewindSlack = 0;
+    private final Vector3f translation = new Vector3f();
+    private final Quaternion rotation = new Quaternion();
+    private long rewinds = 0, totalRewindNanos = 0, maxRewindNanosSeen = 0, capped = 0;
+    private long totalCostNanos = 0, maxCostNanos = 0;
+    private long costStartNanos;
+
+    public LagCompensator() {
+        this(DEFAULT_HISTORY_CAPACITY, DEFAULT_MAX_REWIND_NANOS);
+    }
+
+    /**
+     * @param maxRewindNanos (Unit: nanoseconds.)
+     */
+    public LagCompensator(int historyCapacity, long maxRewindNanos) {
+        this.historyCapacity = historyCapacity;
+        this.maxRewindNanos = maxRewindNanos;
+    }
+
+    /**
+     * Starts enemy with an empty history (e.g. after a respawn elsewhere).
+     */
+    public void addEnemy(Geometry enemy) {
+        Integer index = enemyIndices.get(enemy);
+        if (index != null) {
+            histories[index].clear();
+            return;
+        }
+        if (enemyCount == enemies.length) {
+            Geometry[] grownEnemies = new Geometry[enemyCount * 2];
+            TransformHistory[] grownHistories = new TransformHistory[enemyCount * 2];
+            float[] grownSaved = new float[enemyCount * 2 * 7];
+            System.arraycopy(enemies, 0, grownEnemies, 0, enemyCount);
+            System.arraycopy(histories, 0, grownHistories, 0, enemyCount);
+            enemies = grownEnemies;
+            histories = grownHistories;
+            saved = grownSaved;
+        }
+        enemies[enemyCount] = enemy;
+        if (histories[enemyCount] == null) {
+            histories[enemyCount] = new TransformHistory(historyCapacity);
+        } else {
+            histories[enemyCount].clear(); // Left by a removed enemy
+        }
+        enemyIndices.put(enemy, enemyCount);
+        enemyCount++;
+    }
+
+    /**
+     * Does nothing if enemy isn't in. Not while rewound.
+     */
+    public void removeEnemy(Geometry enemy) {
+        Integer index = enemyIndices.remove(enemy);
+        if (index == null) {
+            return;
+        }
+        enemyCount--;
+        if (index != enemyCount) {
+            // Swap histories, so the removed one is reused by the next add
+            TransformHistory history = histories[index];
+            enemies[index] = enemies[enemyCount];
+            histories[index] = histories[enemyCount];
+            histories[enemyCount] = history;
+            enemyIndices.put(enemies[index], index);
+        }
+        enemies[enemyCount] = null;
+    }
+
+    public void clearEnemies() {
+        while (enemyCount > 0) {
+            removeEnemy(enemies[enemyCount - 1]);
+        }
+    }
+
+    /**
+     * Records where every enemy is as of nowNanos; once per frame, after
+     * they moved.
+     */
+    public void record(long nowNanos) {
+        for (int i = 0; i < enemyCount; i++) {
+            histories[i].record(nowNanos, enemies[i]);
+        }
+    }
+
+    /**
+     * Moves every enemy back to where it was at inputNanos (no further back
+     * than maxRewindNanos before nowNanos). Must be followed by restore().
+     */
+    public void rewind(long inputNanos, long nowNanos) {
+        costStartNanos = System.nanoTime();
+        long rewindNanos = Math.max(0, nowNanos - inputNanos);
+        if (rewindNanos > maxRewindNanos) {
+            rewindNanos = maxRewindNanos;
+            capped++;
+        }
+        long timeNanos = nowNanos - rewindNanos;
+        float slack = 0;
+        for (int i = 0; i < enemyCount; i++) {
+            Geometry enemy = enemies[i];
+            Vector3f currentTranslation = enemy.getLocalTranslation();
+            Quaternion currentRotation = enemy.getLocalRotation();
+            int base = i * 7;
+            saved[base] = currentTranslation.x;
+            saved[base + 1] = currentTranslation.y;
+            saved[base + 2] = currentTranslation.z;
+            saved[base + 3] = currentRotation.getX();
+            saved[base + 4] = currentRotation.getY();
+            saved[base + 5] = currentRotation.getZ();
+            saved[base + 6] = currentRotation.getW();
+            if (histories[i].sample(timeNanos, translation, rotation)) {
+                slack = Math.max(slack, getSlack(enemy, currentTranslation, currentRotation));
+                enemy.setLocalTranslation(translation);
+                enemy.setLocalRotation(rotation);
+            }
+        }
+        rewindSlack = slack;
+        rewound = true;
+        rewinds++;
+        totalRewindNanos += rewindNanos;
+        maxRewindNanosSeen = Math.max(maxRewindNanosSeen, rewindNanos);
+        totalCostNanos += System.nanoTime() - costStartNanos;
+    }
+
+    /**
+     * @return How far outside its current world bound enemy can be once
+     * moved to translation and rotation: how far it moves, plus, if it
+     * turns, how far a box around everything the bound can turn into (a ball
+     * about the origin) reaches past the bound.
+     */
+    private float getSlack(Geometry enemy, Vector3f currentTranslation, Quaternion currentRotation) {
+        float slack = currentTranslation.distance(translation);
+        float dot = Math.abs(currentRotation.dot(rotation));
+        if (dot < ROTATION_DOT_EPSILON) {
+            BoundingVolume bound = enemy.getWorldBound();
+            float offset = bound.getCenter().distance(enemy.getWorldTranslation());
+            if (bound instanceof BoundingBox) {
+                BoundingBox box = (BoundingBox) bound;
+                float x = box.getXExtent(), y = box.getYExtent(), z = box.getZExtent();
+                slack += 2 * offset + FastMath.sqrt(x * x + y * y + z * z) - Math.min(x, Math.min(y, z));
+            } else {
+                slack += 2 * offset; // A ball turns into itself
+            }
+        }
+        return slack;
+    }
+
+    /**
+     * Puts every enemy back where it was before rewind().
+     */
+    public void restore() {
+        if (!rewound) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < enemyCount; i++) {
+            int base = i * 7;
+            enemies[i].setLocalTranslation(saved[base], saved[base + 1], saved[base + 2]);
+            rotation.set(saved[base + 3], saved[base + 4], saved[base + 5], saved[base + 6]);
+            enemies[i].setLocalRotation(rotation);
+        }
+        rewound = false;
+        rewindSlack = 0;
+        long endNanos = System.nanoTime();
+        totalCostNanos += endNanos - startNanos;
+        maxCostNanos = Math.max(maxCostNanos, endNanos - costStartNanos);
+    }
+
+    public boolean isRewound() {
+        return rewound;
+    }
+
+    /**
+     * @return While rewound, how far outside its current world bound any
+     * enemy may be (see HitScanner.setLagCompensator()); 0 otherwise. (Unit:
+     * world units.)
+     */
+    public float getRewindSlack() {
+        return rewindSlack;
+    }
+
+    public int getEnemyCount() {
+        return enemyCount;
+    }
+
+    public long getRewinds() {
+        return rewinds;
+    }
+
+    /**
+     * @return How far back shots went on average. (Unit: milliseconds.)
+     */
+    public double getAverageRewindMillis() {
+        return (rewinds > 0) ? totalRewindNanos / 1e6 / rewinds : 0;
+    }
+
+    /**
+     * @return Time spent moving enemies back and forth per shot, scan not
+     * included. (Unit: nanoseconds.)
+     */
+    public double getAverageCostNanos() {
+        return (rewinds > 0) ? totalCostNanos / (double) rewinds : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "LagCompensator[enemies=" + enemyCount
+                + ", historyCapacity=" + historyCapacity
+                + ", maxRewindMillis=" + maxRewindNanos / 1000000
+                + ", rewinds=" + rewinds
+                + ", averageRewindMillis=" + Math.round(getAverageRewindMillis() * 100) / 100.0
+                + ", maxRewindMillisSeen=" + maxRewindNanosSeen / 1000000
+                + ", capped=" + capped
+                + ", averageCostMicros=" + Math.round(getAverageCostNanos() / 10) / 100.0
+                + ", maxCostMicros=" + Math.round(maxCostNanos / 10.0) / 100.0 + "]";
+    }
+}
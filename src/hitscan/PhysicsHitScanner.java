@@ -0,0 +1,241 @@
+package hitscan;
+
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.collision.PhysicsCollisionObject;
+import com.jme3.bullet.collision.PhysicsRayTestResult;
+import com.jme3.bullet.control.RigidBodyControl;
+import com.jme3.collision.CollisionResult;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * Hit scan through Bullet: a PhysicsSpace.rayTest() against the collision
+ * shapes the game already keeps there (the arena's landscape, and a
+ * kinematic RigidBodyControl on each enemy), instead of the render meshes.
+ * Bullet walks its own broadphase tree and tests the mesh shapes' triangle
+ * trees, so the scene graph isn't touched at all.
+ *
+ * What can be hit is picked by collision group: addEnemy() and addScenery()
+ * move the bodies into ENEMY_GROUP and SCENERY_GROUP (still colliding with
+ * everything they did before, see joinGroup()), and hits on anything outside
+ * HIT_GROUPS (the player's own capsule the ray starts in, bombs, ...) are
+ * passed over. A hit body is mapped back to its enemy geometry (or the
+ * geometry standing for the scenery), so the result reads like the scene
+ * graph's.
+ *
+ * Bodies follow their spatials once per physics tick, so hits may be a frame
+ * behind where the enemies are drawn. Not thread-safe: scan from the render
+ * thread (with BulletAppState's SEQUENTIAL threading, as FPSGame uses).
+ */
+public class PhysicsHitScanner {
+
+    /*--- SETTINGS ---*/
+    public static final int ENEMY_GROUP = PhysicsCollisionObject.COLLISION_GROUP_02,
+            SCENERY_GROUP = PhysicsCollisionObject.COLLISION_GROUP_03;
+    /**
+     * Groups that stop a shot; anything left in the default group
+     * (COLLISION_GROUP_01) is shot through.
+     */
+    public static final int HIT_GROUPS = ENEMY_GROUP | SCENERY_GROUP;
+    /**
+     * How far rays go (Bullet's rays have an end). (Unit: world units.)
+     */
+    public static final float DEFAULT_RANGE = 2000;
+    /*--- END SETTINGS ---*/
+    private final PhysicsSpace physicsSpace;
+    private final float range;
+    private final Map<PhysicsCollisionObject, Geometry> hitGeometries = new HashMap<PhysicsCollisionObject, Geometry>();
+    private final List<PhysicsRayTestResult> rayResults = new ArrayList<PhysicsRayTestResult>();
+    private final Vector3f rayEnd = new Vector3f();
+    /**
+     * Handed out by scan(), and overwritten by the next one.
+     */
+    private final CollisionResult result = new CollisionResult();
+    private final Vector3f contactPoint = new Vector3f(), contactNormal = new Vector3f();
+    private int enemyCount = 0;
+    private long scans = 0, rayHits = 0, filteredHits = 0, enemyHits = 0, sceneryHits = 0;
+    private long totalScanNanos = 0, maxScanNanos = 0;
+
+    public PhysicsHitScanner(PhysicsSpace physicsSpace) {
+        this(physicsSpace, DEFAULT_RANGE);
+    }
+
+    /**
+     * @param range (Unit: world units.)
+     */
+    public PhysicsHitScanner(PhysicsSpace physicsSpace, float range) {
+        this.physicsSpace = physicsSpace;
+        this.range = range;
+    }
+
+    /**
+     * Puts body in group, colliding with everything it collided with before
+     * (the default group and both hit-scan groups), so grouping changes what
+     * rays stop at and nothing else.
+     */
+    public static void joinGroup(PhysicsCollisionObject body, int group) {
+        body.setCollisionGroup(group);
+        body.setCollideWithGroups(PhysicsCollisionObject.COLLISION_GROUP_01 | ENEMY_GROUP | SCENERY_GROUP);
+    }
+
+    /**
+     * @param scenery What body's shape was made from. Hits on body are
+     * reported as its first geometry: a mesh shape made from a whole node
+     * doesn't say which part was hit.
+     * @return False if scenery has no geometry, and can't be hit through
+     * Bullet.
+     */
+    public boolean addScenery(PhysicsCollisionObject body, Spatial scenery) {
+        Geometry reported = getFirstGeometry(scenery);
+        if (reported == null) {
+            System.err.println("Scenery " + scenery.getName() + " has no geometry; physics hit scans can't hit it.");
+            return false;
+        }
+        joinGroup(body, SCENERY_GROUP);
+        hitGeometries.put(body, reported);
+        return true;
+    }
+
+    private static Geometry getFirstGeometry(Spatial spatial) {
+        if (spatial instanceof Geometry) {
+            return (Geometry) spatial;
+        } else if (spatial instanceof Node) {
+            for (Spatial child : ((Node) spatial).getChildren()) {
+                Geometry geometry = getFirstGeometry(child);
+                if (geometry != null) {
+                    return geometry;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param enemy Has its RigidBodyControl already (see
+     * FPSGame.enableRigidBodyControl()).
+     * @return False if it has none, and can't be hit through Bullet.
+     */
+    public boolean addEnemy(Geometry enemy) {
+        RigidBodyControl body = enemy.getControl(RigidBodyControl.class);
+        if (body == null) {
+            System.err.println("Enemy " + enemy.getName() + " has no RigidBodyControl; physics hit scans can't hit it.");
+            return false;
+        }
+        joinGroup(body, ENEMY_GROUP);
+        if (hitGeometries.put(body, enemy) == null) {
+            enemyCount++;
+        }
+        return true;
+    }
+
+    public void removeEnemy(Geometry enemy) {
+        RigidBodyControl body = enemy.getControl(RigidBodyControl.class);
+        if (body != null && hitGeometries.get(body) == enemy) {
+            hitGeometries.remove(body);
+            enemyCount--;
+        }
+    }
+
+    /**
+     * @param direction Unit length.
+     * @return The closest hit within range on a body in HIT_GROUPS that was
+     * added here, or null. Reused: read it before the next scan.
+     */
+    public CollisionResult scan(Vector3f origin, Vector3f direction) {
+        long startNanos = System.nanoTime();
+        rayEnd.set(direction).multLocal(range).addLocal(origin);
+        rayResults.clear();
+        physicsSpace.rayTest(origin, rayEnd, rayResults);
+
+        // Unsorted, and may hold anything in the space
+        PhysicsRayTestResult closest = null;
+        Geometry closestGeometry = null;
+        for (int i = 0; i < rayResults.size(); i++) {
+            PhysicsRayTestResult rayResult = rayResults.get(i);
+            PhysicsCollisionObject body = rayResult.getCollisionObject();
+            rayHits++;
+            if ((body.getCollisionGroup() & HIT_GROUPS) == 0) {
+                filteredHits++;
+                continue;
+            }
+            Geometry geometry = hitGeometries.get(body);
+            if (geometry != null && (closest == null || rayResult.getHitFraction() < closest.getHitFraction())) {
+                closest = rayResult;
+                closestGeometry = geometry;
+            }
+        }
+
+        CollisionResult hit = null;
+        if (closest != null) {
+            float distance = closest.getHitFraction() * range;
+            contactPoint.set(direction).multLocal(distance).addLocal(origin);
+            contactNormal.set(closest.getHitNormalLocal());
+            result.setContactPoint(contactPoint);
+            result.setContactNormal(contactNormal);
+            result.setDistance(distance);
+            result.setGeometry(closestGeometry);
+            if ((closest.getCollisionObject().getCollisionGroup() & ENEMY_GROUP) != 0) {
+                enemyHits++;
+            } else {
+                sceneryHits++;
+            }
+            hit = result;
+        }
+
+        long scanNanos = System.nanoTime() - startNanos;
+        scans++;
+        totalScanNanos += scanNanos;
+        maxScanNanos = Math.max(maxScanNanos, scanNanos);
+        return hit;
+    }
+
+    public PhysicsSpace getPhysicsSpace() {
+        return physicsSpace;
+    }
+
+    public int getEnemyCount() {
+        return enemyCount;
+    }
+
+    public long getScans() {
+        return scans;
+    }
+
+    /**
+     * (Unit: nanoseconds.)
+     */
+    public double getAverageScanNanos() {
+        return (scans > 0) ? totalScanNanos / (double) scans : 0;
+    }
+
+    public long getMaxScanNanos() {
+        return maxScanNanos;
+    }
+
+    /**
+     * @return Bodies Bullet reported per scan, before filtering.
+     */
+    public double getAverageRayHits() {
+        return (scans > 0) ? rayHits / (double) scans : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "PhysicsHitScanner[enemies=" + enemyCount
+                + ", range=" + range
+                + ", scans=" + scans
+                + ", averageScanMicros=" + Math.round(getAverageScanNanos() / 10) / 100.0
+                + ", maxScanMicros=" + Math.round(maxScanNanos / 10.0) / 100.0
+                + ", averageRayHits=" + Math.round(getAverageRayHits() * 100) / 100.0
+                + ", filteredHits=" + filteredHits
+                + ", enemyHits=" + enemyHits
+                + ", sceneryHits=" + sceneryHits + "]";
+    }
+}
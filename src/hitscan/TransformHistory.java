@@ -0,0 +1,138 @@
+package hitscan;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Spatial;
+
+/**
+ *
+ * Fixed-size ring of one spatial's recent local transforms (translation and
+ * rotation; scale is left alone), each stamped with the System.nanoTime() it
+ * was recorded at, so where the spatial was at some recent moment can be
+ * looked up: sample() blends the two records around that moment.
+ *
+ * Records live in primitive arrays allocated up front; once full, each new
+ * record overwrites the oldest. Recording and sampling allocate nothing.
+ * Not thread-safe.
+ */
+public class TransformHistory {
+
+    /**
+     * Floats per record: translation x, y, z, then rotation x, y, z, w.
+     */
+    private static final int STRIDE = 7;
+    private final long[] timestamps;
+    private final float[] transforms;
+    /**
+     * Slot of the newest record.
+     */
+    private int newest = -1;
+    private int count = 0;
+
+    /**
+     * @param capacity Records kept, e.g. render frames' worth.
+     */
+    public TransformHistory(int capacity) {
+        timestamps = new long[capacity];
+        transforms = new float[capacity * STRIDE];
+    }
+
+    /**
+     * Records spatial's local transform as of timeNanos; times should only
+     * go up.
+     */
+    public void record(long timeNanos, Spatial spatial) {
+        record(timeNanos, spatial.getLocalTranslation(), spatial.getLocalRotation());
+    }
+
+    public void record(long timeNanos, Vector3f translation, Quaternion rotation) {
+        newest = (newest + 1) % timestamps.length;
+        count = Math.min(count + 1, timestamps.length);
+        timestamps[newest] = timeNanos;
+        int base = newest * STRIDE;
+        transforms[base] = translation.x;
+        transforms[base + 1] = translation.y;
+        transforms[base + 2] = translation.z;
+        transforms[base + 3] = rotation.getX();
+        transforms[base + 4] = rotation.getY();
+        transforms[base + 5] = rotation.getZ();
+        transforms[base + 6] = rotation.getW();
+    }
+
+    public void clear() {
+        newest = -1;
+        count = 0;
+    }
+
+    /**
+     * Writes the transform as of timeNanos, blended between the records
+     * around it (rotations normalized-lerped: records are a frame apart);
+     * before the oldest record gives the oldest, after the newest the newest.
+     *
+     * @return False if there are no records (the stores are left untouched).
+     */
+    public boolean sample(long timeNanos, Vector3f translationStore, Quaternion rotationStore) {
+        if (count == 0) {
+            return false;
+        }
+        // Walk back from the newest: rewinds only go a few records back
+        int later = newest;
+        for (int i = 1; i < count && timestamps[later] > timeNanos; i++) {
+            int earlier = (later - 1 + timestamps.length) % timestamps.length;
+            if (timestamps[earlier] <= timeNanos) {
+                float alpha = (float) (timeNanos - timestamps[earlier]) / (timestamps[later] - timestamps[earlier]);
+                blend(earlier, later, alpha, translationStore, rotationStore);
+                return true;
+            }
+            later = earlier;
+        }
+        // Past the newest, or before the oldest
+        blend(later, later, 0, translationStore, rotationStore);
+        return true;
+    }
+
+    private void blend(int from, int to, float alpha, Vector3f translationStore, Quaternion rotationStore) {
+        int a = from * STRIDE, b = to * STRIDE;
+        translationStore.set(transforms[a] + alpha * (transforms[b] - transforms[a]),
+                transforms[a + 1] + alpha * (transforms[b + 1] - transforms[a + 1]),
+                transforms[a + 2] + alpha * (transforms[b + 2] - transforms[a + 2]));
+        float dot = transforms[a + 3] * transforms[b + 3] + transforms[a + 4] * transforms[b + 4]
+                + transforms[a + 5] * transforms[b + 5] + transforms[a + 6] * transforms[b + 6];
+        float sign = (dot < 0) ? -1 : 1; // Take the short way round
+        float x = transforms[a + 3] + alpha * (sign * transforms[b + 3] - transforms[a + 3]),
+                y = transforms[a + 4] + alpha * (sign * transforms[b + 4] - transforms[a + 4]),
+                z = transforms[a + 5] + alpha * (sign * transforms[b + 5] - transforms[a + 5]),
+                w = transforms[a + 6] + alpha * (sign * transforms[b + 6] - transforms[a + 6]);
+        float length = (float) Math.sqrt(x * x + y * y + z * z + w * w);
+        rotationStore.set(x / length, y / length, z / length, w / length);
+    }
+
+    public int getCapacity() {
+        return timestamps.length;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return Time of the oldest record kept, or 0 if there's none.
+     */
+    public long getOldestNanos() {
+        return (count > 0) ? timestamps[(newest - count + 1 + timestamps.length) % timestamps.length] : 0;
+    }
+
+    /**
+     * @return Time of the newest record, or 0 if there's none.
+     */
+    public long getNewestNanos() {
+        return (count > 0) ? timestamps[newest] : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "TransformHistory[capacity=" + timestamps.length
+                + ", count=" + count
+                + ", spanMillis=" + (getNewestNanos() - getOldestNanos()) / 1000000 + "]";
+    }
+}
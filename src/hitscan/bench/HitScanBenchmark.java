@@ -0,0 +1,263 @@
+package hitscan.bench;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.asset.DesktopAssetManager;
+import com.jme3.asset.plugins.FileLocator;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.control.RigidBodyControl;
+import com.jme3.bullet.util.CollisionShapeFactory;
+import com.jme3.collision.CollisionResult;
+import com.jme3.collision.CollisionResults;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.shape.Sphere;
+import hitscan.HitScanMode;
+import hitscan.HitScanner;
+import hitscan.PhysicsHitScanner;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ *
+ * Aims one ray per frame through FPSGame's arena (FPSarena2.0, placed as the
+ * game places it) with ENEMY_COUNTS enemies scattered in it, MOVING_FRACTION
+ * of them moving every frame, in each HitScanMode:
+ * - node: a new Ray and CollisionResults, then shootables.collideWith() (what
+ * FPSGame did before HitScanner);
+ * - bounds: HitScanner.scan();
+ * - physics: PhysicsHitScanner.scan(), with the arena's mesh shape and a
+ * kinematic RigidBodyControl on each enemy, as in the game.
+ * Half the rays are aimed at an enemy, half go anywhere. Reports per shot
+ * (one scan: average, max and bytes allocated) and per frame (the shot plus
+ * what the mode needs every frame whether anyone shoots or not: refitting
+ * the bounds tree, or moving the enemies' bodies and stepping the physics
+ * space), and checks every mode finds the closest hit the node mode does.
+ *
+ * Enemies are Oto models when jme3-test-data is on the classpath, otherwise
+ * spheres of about Oto's size and triangle count. Without Bullet (natives
+ * missing), the physics mode is skipped.
+ *
+ * Usage: java hitscan.bench.HitScanBenchmark [assetsDirectory] [frames]
+ */
+public class HitScanBenchmark {
+
+    public static final String DEFAULT_ASSETS = "assets";
+    public static final int DEFAULT_FRAMES = 2000;
+    public static final int WARM_UP_FRAMES = 300;
+    public static final int[] ENEMY_COUNTS = {8, 100, 1000};
+    public static final float MOVING_FRACTION = 0.25f;
+    /**
+     * (Unit: world units per frame.)
+     */
+    public static final float ENEMY_SPEED = 0.5f;
+    public static final float FRAME_SECONDS = 1 / 60f;
+    /**
+     * Bullet's distances are through its own shapes, so allow some slack.
+     * (Unit: world units.)
+     */
+    public static final float PHYSICS_DISTANCE_TOLERANCE = 0.1f;
+    private static boolean bulletMissing = false;
+
+    public static void main(String[] args) {
+        String assets = (args.length > 0) ? args[0] : DEFAULT_ASSETS;
+        int frames = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_FRAMES;
+        AssetManager assetManager = new DesktopAssetManager(true);
+        assetManager.registerLocator(assets, FileLocator.class);
+
+        // As in FPSGame.simpleInitApp()
+        Spatial arena = assetManager.loadModel("Models/FPSarena2.0.j3o");
+        arena.setLocalTranslation(0.0f, 20.0f, -87f);
+        arena.setLocalScale(0.7f);
+        Spatial enemyModel = loadEnemyModel(assetManager);
+        System.out.println("Enemy: " + enemyModel.getName() + ", " + ((Geometry) enemyModel).getMesh().getTriangleCount() + " triangles");
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int enemyCount : ENEMY_COUNTS) {
+            Random random = new Random(enemyCount);
+            Node shootables = new Node("Shootables");
+            shootables.attachChild(arena);
+            shootables.updateGeometricState();
+            BoundingBox arenaBound = (BoundingBox) arena.getWorldBound();
+            Vector3f min = arenaBound.getMin(null), max = arenaBound.getMax(null);
+
+            HitScanner scanner = new HitScanner();
+            scanner.addArena(arena);
+            Geometry[] enemies = new Geometry[enemyCount];
+            for (int i = 0; i < enemyCount; i++) {
+                enemies[i] = (Geometry) enemyModel.clone();
+                enemies[i].setLocalTranslation(randomPoint(random, min, max));
+                shootables.attachChild(enemies[i]);
+            }
+            shootables.updateGeometricState();
+            for (Geometry enemy : enemies) {
+                scanner.addEnemy(enemy);
+            }
+            PhysicsHitScanner physicsScanner = createPhysicsScanner(arena, enemies);
+            PhysicsSpace physicsSpace = (physicsScanner != null) ? physicsScanner.getPhysicsSpace() : null;
+
+            // Per mode: {shot nanos, max shot nanos, shot bytes, frame nanos, max frame nanos, mismatches}
+            long[][] costs = new long[HitScanMode.values().length][6];
+            int enemyHits = 0;
+            Vector3f origin = new Vector3f(), direction = new Vector3f();
+            for (int frame = -WARM_UP_FRAMES; frame < frames; frame++) {
+                for (int i = 0; i < enemyCount * MOVING_FRACTION; i++) {
+                    Geometry enemy = enemies[random.nextInt(enemyCount)];
+                    enemy.move((random.nextFloat() - 0.5f) * 2 * ENEMY_SPEED, 0, (random.nextFloat() - 0.5f) * 2 * ENEMY_SPEED);
+                }
+                shootables.updateGeometricState();
+
+                origin.set(randomPoint(random, min, max));
+                if (frame % 2 == 0) {
+                    direction.set(enemies[random.nextInt(enemyCount)].getWorldTranslation()).subtractLocal(origin).normalizeLocal();
+                } else {
+                    direction.set(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, random.nextFloat() - 0.5f).normalizeLocal();
+                }
+
+                // Node
+                long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+                long startNanos = System.nanoTime();
+                CollisionResults results = new CollisionResults();
+                shootables.collideWith(new Ray(origin, direction), results);
+                CollisionResult nodeHit = results.getClosestCollision();
+                long shotNanos = System.nanoTime() - startNanos;
+                long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+                if (frame >= 0) {
+                    add(costs[HitScanMode.NODE.ordinal()], shotNanos, allocatedBytes, shotNanos, true);
+                }
+
+                // Bounds
+                startNanos = System.nanoTime();
+                scanner.updateEnemyBounds();
+                long upkeepNanos = System.nanoTime() - startNanos;
+                allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+                startNanos = System.nanoTime();
+                CollisionResult boundsHit = scanner.scan(origin, direction);
+                shotNanos = System.nanoTime() - startNanos;
+                allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+                if (frame >= 0) {
+                    add(costs[HitScanMode.BOUNDS.ordinal()], shotNanos, allocatedBytes, upkeepNanos + shotNanos, sameHit(nodeHit, boundsHit, 1e-3f));
+                    if (boundsHit != null && boundsHit.getGeometry().getMesh() == ((Geometry) enemyModel).getMesh()) {
+                        enemyHits++;
+                    }
+                }
+
+                // Physics: the bodies follow the enemies in the controls' update, then a step
+                if (physicsScanner != null) {
+                    startNanos = System.nanoTime();
+                    for (Geometry enemy : enemies) {
+                        enemy.getControl(RigidBodyControl.class).update(FRAME_SECONDS);
+                    }
+                    physicsSpace.update(FRAME_SECONDS);
+                    upkeepNanos = System.nanoTime() - startNanos;
+                    allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+                    startNanos = System.nanoTime();
+                    CollisionResult physicsHit = physicsScanner.scan(origin, direction);
+                    shotNanos = System.nanoTime() - startNanos;
+                    allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+                    if (frame >= 0) {
+                        add(costs[HitScanMode.PHYSICS.ordinal()], shotNanos, allocatedBytes, upkeepNanos + shotNanos,
+                                sameHit(nodeHit, physicsHit, PHYSICS_DISTANCE_TOLERANCE));
+                    }
+                }
+            }
+
+            System.out.println(enemyCount + " enemies (" + enemyHits * 100 / frames + "% of rays hit one):");
+            for (HitScanMode mode : HitScanMode.values()) {
+                if (mode == HitScanMode.PHYSICS && physicsScanner == null) {
+                    continue;
+                }
+                long[] cost = costs[mode.ordinal()];
+                System.out.println("  " + mode.name().toLowerCase() + ": shot " + format(cost[0] / 1e3 / frames) + " us average, "
+                        + format(cost[1] / 1e3) + " us max, " + cost[2] / frames + " bytes; frame " + format(cost[3] / 1e3 / frames)
+                        + " us average, " + format(cost[4] / 1e3) + " us max; " + cost[5] + " closest-hit mismatches");
+            }
+            System.out.println("  " + scanner);
+            if (physicsScanner != null) {
+                System.out.println("  " + physicsScanner);
+            }
+            shootables.detachAllChildren();
+        }
+    }
+
+    private static void add(long[] cost, long shotNanos, long allocatedBytes, long frameNanos, boolean match) {
+        cost[0] += shotNanos;
+        cost[1] = Math.max(cost[1], shotNanos);
+        cost[2] += allocatedBytes;
+        cost[3] += frameNanos;
+        cost[4] = Math.max(cost[4], frameNanos);
+        if (!match) {
+            cost[5]++;
+        }
+    }
+
+    /**
+     * @return A scanner over a new physics space holding the arena and the
+     * enemies, as FPSGame sets them up, or null without Bullet.
+     */
+    private static PhysicsHitScanner createPhysicsScanner(Spatial arena, Geometry[] enemies) {
+        if (bulletMissing) {
+            return null;
+        }
+        PhysicsSpace physicsSpace;
+        try {
+            physicsSpace = new PhysicsSpace(new Vector3f(-10000f, -10000f, -10000f), new Vector3f(10000f, 10000f, 10000f), PhysicsSpace.BroadphaseType.DBVT);
+        } catch (LinkageError e) {
+            System.err.println("Bullet isn't available (" + e + "); skipping the physics mode.");
+            bulletMissing = true;
+            return null;
+        }
+        RigidBodyControl landscape = arena.getControl(RigidBodyControl.class);
+        if (landscape == null) {
+            landscape = new RigidBodyControl(CollisionShapeFactory.createMeshShape((Node) arena), 0);
+            arena.addControl(landscape);
+        }
+        physicsSpace.add(landscape);
+        PhysicsHitScanner physicsScanner = new PhysicsHitScanner(physicsSpace);
+        physicsScanner.addScenery(landscape, arena);
+        for (Geometry enemy : enemies) {
+            // As FPSGame.enableRigidBodyControl() and GroundMovingAI
+            RigidBodyControl body = new RigidBodyControl(0.0f);
+            enemy.addControl(body);
+            body.setKinematic(true);
+            physicsSpace.add(body);
+            physicsScanner.addEnemy(enemy);
+        }
+        physicsSpace.update(FRAME_SECONDS);
+        return physicsScanner;
+    }
+
+    private static Spatial loadEnemyModel(AssetManager assetManager) {
+        try {
+            Spatial oto = assetManager.loadModel("Models/Oto/Oto.mesh.xml");
+            return ((Node) oto).getChild(0);
+        } catch (RuntimeException e) {
+            Mesh mesh = new Sphere(24, 40, 1); // About Oto's 1800 triangles
+            Geometry stand = new Geometry("Oto stand-in", mesh);
+            stand.setLocalScale(2.5f, 5f, 2f); // About Oto's size
+            return stand;
+        }
+    }
+
+    private static Vector3f randomPoint(Random random, Vector3f min, Vector3f max) {
+        return new Vector3f(min.x + random.nextFloat() * (max.x - min.x),
+                min.y + random.nextFloat() * (max.y - min.y),
+                min.z + random.nextFloat() * (max.z - min.z));
+    }
+
+    private static boolean sameHit(CollisionResult a, CollisionResult b, float tolerance) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.getGeometry() == b.getGeometry() && Math.abs(a.getDistance() - b.getDistance()) < tolerance;
+    }
+
+    private static String format(double value) {
+        return String.valueOf(Math.round(value * 1000) / 1000.0);
+    }
+}
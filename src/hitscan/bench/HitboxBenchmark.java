@@ -0,0 +1,201 @@
+package hitscan.bench;
+
+import com.jme3.animation.Bone;
+import com.jme3.animation.Skeleton;
+import com.jme3.collision.CollisionResult;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.shape.Sphere;
+import hitscan.HitScanner;
+import hitscan.HitZone;
+import hitscan.Hitbox;
+import hitscan.HitboxSet;
+import java.lang.management.ManagementFactory;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+/**
+ *
+ * Oto stand-ins (a sphere mesh of about Oto's size and triangle count, with
+ * a skeleton of Oto's bone names laid out in it) shot at two ways:
+ * - mesh: HitScanner testing the triangles, as before hitboxes;
+ * - hitboxes: HitScanner testing a HitboxSet of LAYOUT, placed from the pose.
+ * Reports, per enemy count, the cost per shot (average and bytes allocated)
+ * and how many shots hit the enemy aimed at (and its head), with half the
+ * shots aimed at the body and half at the head.
+ * Then waves one stand-in's right arm up and down and aims at its hand: how
+ * many shots its hitboxes hit, against hitboxes left in the bind pose (as the
+ * mesh's collision tree is, however the animation skins the mesh).
+ *
+ * Usage: java hitscan.bench.HitboxBenchmark [shots]
+ */
+public class HitboxBenchmark {
+
+    public static final int DEFAULT_SHOTS = 20000;
+    public static final int[] ENEMY_COUNTS = {8, 100, 1000};
+    public static final float ARENA_SIZE = 600;
+    /**
+     * Bones of the stand-in, in model space: name, parent, position.
+     */
+    private static final String[] BONE_NAMES = {"Root", "spinehigh", "head",
+        "uparm.left", "arm.left", "hand.left", "uparm.right", "arm.right", "hand.right",
+        "hip.left", "leg.left", "foot.left", "hip.right", "leg.right", "foot.right"};
+    private static final int[] BONE_PARENTS = {-1, 0, 1, 1, 3, 4, 1, 6, 7, 0, 9, 10, 0, 12, 13};
+    private static final float[] BONE_POSITIONS = {0, -1, 0, 0, 2.5f, 0, 0, 3.5f, 0,
+        1.8f, 2.5f, 0, 2.2f, 0, 0, 2.4f, -2, 0, -1.8f, 2.5f, 0, -2.2f, 0, 0, -2.4f, -2, 0,
+        1, -1.5f, 0, 1, -3.5f, 0, 1, -5, 0, -1, -1.5f, 0, -1, -3.5f, 0, -1, -5, 0};
+    public static final Hitbox[] LAYOUT = {
+        Hitbox.capsule(HitZone.HEAD, "head", new Vector3f(0, 0.8f, 0), new Vector3f(0, 1.2f, 0), 1.2f),
+        Hitbox.capsule(HitZone.BODY, "Root", "spinehigh", 2f),
+        Hitbox.capsule(HitZone.BODY, "uparm.left", "arm.left", 0.6f),
+        Hitbox.capsule(HitZone.BODY, "arm.left", "hand.left", 0.5f),
+        Hitbox.capsule(HitZone.BODY, "uparm.right", "arm.right", 0.6f),
+        Hitbox.capsule(HitZone.BODY, "arm.right", "hand.right", 0.5f),
+        Hitbox.capsule(HitZone.BODY, "hip.left", "leg.left", 0.8f),
+        Hitbox.capsule(HitZone.BODY, "leg.left", "foot.left", 0.7f),
+        Hitbox.capsule(HitZone.BODY, "hip.right", "leg.right", 0.8f),
+        Hitbox.capsule(HitZone.BODY, "leg.right", "foot.right", 0.7f)
+    };
+
+    public static void main(String[] args) {
+        int shots = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_SHOTS;
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        Mesh mesh = new Sphere(24, 40, 1); // About Oto's 1800 triangles
+        scaleMesh(mesh, 2.5f, 5f, 2f); // About Oto's size, in model space as Oto's is
+        mesh.createCollisionData();
+
+        for (int enemyCount : ENEMY_COUNTS) {
+            Random random = new Random(enemyCount);
+            Node shootables = new Node("Shootables");
+            Geometry[] enemies = new Geometry[enemyCount];
+            HitboxSet[] hitboxes = new HitboxSet[enemyCount];
+            for (int i = 0; i < enemyCount; i++) {
+                enemies[i] = new Geometry("Oto stand-in " + i, mesh);
+                enemies[i].setLocalTranslation((random.nextFloat() - 0.5f) * ARENA_SIZE, 0, (random.nextFloat() - 0.5f) * ARENA_SIZE);
+                enemies[i].setLocalRotation(new Quaternion().fromAngleAxis(random.nextFloat() * FastMath.TWO_PI, Vector3f.UNIT_Y));
+                hitboxes[i] = new HitboxSet(enemies[i], createSkeleton(), LAYOUT);
+                shootables.attachChild(enemies[i]);
+            }
+            shootables.updateGeometricState();
+            HitScanner meshScanner = new HitScanner(), hitboxScanner = new HitScanner();
+            for (int i = 0; i < enemyCount; i++) {
+                meshScanner.addEnemy(enemies[i]);
+                hitboxScanner.addEnemy(enemies[i], hitboxes[i]);
+            }
+
+            // Same shots both ways: aimed from 50 to 150 away at a body or head point
+            Vector3f[] origins = new Vector3f[shots], directions = new Vector3f[shots];
+            int[] targets = new int[shots];
+            for (int s = 0; s < shots; s++) {
+                int target = random.nextInt(enemyCount);
+                targets[s] = target;
+                Vector3f aimPoint = enemies[target].localToWorld(new Vector3f(0, (s % 2 == 0) ? 1 : 4.8f, 0), null);
+                float angle = random.nextFloat() * FastMath.TWO_PI, distance = 50 + random.nextFloat() * 100;
+                origins[s] = aimPoint.add(distance * FastMath.cos(angle), 2, distance * FastMath.sin(angle));
+                directions[s] = aimPoint.subtract(origins[s]).normalizeLocal();
+            }
+
+            System.out.println(enemyCount + " enemies:");
+            runShots("mesh", meshScanner, enemies, origins, directions, targets, threadBean, threadId);
+            runShots("hitboxes", hitboxScanner, enemies, origins, directions, targets, threadBean, threadId);
+            System.out.println("  " + hitboxScanner);
+        }
+
+        waveArm(mesh, shots);
+    }
+
+    private static void runShots(String name, HitScanner scanner, Geometry[] enemies, Vector3f[] origins, Vector3f[] directions, int[] targets,
+            com.sun.management.ThreadMXBean threadBean, long threadId) {
+        int warmUpShots = origins.length / 10;
+        for (int s = 0; s < warmUpShots; s++) {
+            scanner.scan(origins[s], directions[s]);
+        }
+        long bytesBefore = threadBean.getThreadAllocatedBytes(threadId);
+        long startNanos = System.nanoTime();
+        int hits = 0, headHits = 0;
+        for (int s = 0; s < origins.length; s++) {
+            CollisionResult hit = scanner.scan(origins[s], directions[s]);
+            if (hit != null && hit.getGeometry() == enemies[targets[s]]) {
+                hits++;
+                if (scanner.getLastHitZone() == HitZone.HEAD) {
+                    headHits++;
+                }
+            }
+        }
+        long nanos = System.nanoTime() - startNanos;
+        long bytes = threadBean.getThreadAllocatedBytes(threadId) - bytesBefore;
+        System.out.println("  " + name + ": " + format(nanos / 1e3 / origins.length) + " us/shot, " + bytes / origins.length + " bytes/shot; "
+                + format(hits * 100.0 / origins.length) + "% hit the target, " + format(headHits * 100.0 / origins.length) + "% in the head");
+    }
+
+    /**
+     * Raises one stand-in's right arm from hanging to straight up and back,
+     * a little per shot, shooting at its hand from the front.
+     */
+    private static void waveArm(Mesh mesh, int shots) {
+        Geometry enemy = new Geometry("Waving Oto stand-in", mesh);
+        Skeleton skeleton = createSkeleton();
+        enemy.updateGeometricState();
+        HitScanner bindPoseScanner = new HitScanner(), hitboxScanner = new HitScanner();
+        bindPoseScanner.addEnemy(enemy, new HitboxSet(enemy, createSkeleton(), LAYOUT));
+        hitboxScanner.addEnemy(enemy, new HitboxSet(enemy, skeleton, LAYOUT));
+        Bone upperArm = skeleton.getBone(skeleton.getBoneIndex("uparm.right"));
+        Bone hand = skeleton.getBone(skeleton.getBoneIndex("hand.right"));
+        upperArm.setUserControl(true);
+        Quaternion raise = new Quaternion();
+        Vector3f origin = new Vector3f(), direction = new Vector3f();
+        int bindPoseHits = 0, hitboxHits = 0;
+        for (int s = 0; s < shots; s++) {
+            float raised = FastMath.PI * (0.5f - 0.5f * FastMath.cos(s * 0.01f));
+            raise.fromAngleAxis(-raised, Vector3f.UNIT_Z);
+            upperArm.setUserTransforms(Vector3f.ZERO, raise, Vector3f.UNIT_XYZ);
+            skeleton.updateWorldVectors();
+            Vector3f handLocation = enemy.localToWorld(hand.getModelSpacePosition(), null);
+            origin.set(handLocation.x, handLocation.y, 40);
+            direction.set(handLocation).subtractLocal(origin).normalizeLocal();
+            if (bindPoseScanner.scan(origin, direction) != null) {
+                bindPoseHits++;
+            }
+            if (hitboxScanner.scan(origin, direction) != null) {
+                hitboxHits++;
+            }
+        }
+        System.out.println("Waving arm, shots at the hand: bind pose " + format(bindPoseHits * 100.0 / shots) + "% hit, following the pose "
+                + format(hitboxHits * 100.0 / shots) + "% hit");
+    }
+
+    private static Skeleton createSkeleton() {
+        Bone[] bones = new Bone[BONE_NAMES.length];
+        for (int i = 0; i < bones.length; i++) {
+            bones[i] = new Bone(BONE_NAMES[i]);
+            Vector3f position = new Vector3f(BONE_POSITIONS[i * 3], BONE_POSITIONS[i * 3 + 1], BONE_POSITIONS[i * 3 + 2]);
+            int parent = BONE_PARENTS[i];
+            if (parent >= 0) {
+                bones[parent].addChild(bones[i]);
+                position.subtractLocal(BONE_POSITIONS[parent * 3], BONE_POSITIONS[parent * 3 + 1], BONE_POSITIONS[parent * 3 + 2]);
+            }
+            bones[i].setBindTransforms(position, Quaternion.IDENTITY, Vector3f.UNIT_XYZ);
+        }
+        return new Skeleton(bones);
+    }
+
+    private static void scaleMesh(Mesh mesh, float x, float y, float z) {
+        FloatBuffer positions = (FloatBuffer) mesh.getBuffer(VertexBuffer.Type.Position).getData();
+        for (int i = 0; i < positions.limit(); i += 3) {
+            positions.put(i, positions.get(i) * x);
+            positions.put(i + 1, positions.get(i + 1) * y);
+            positions.put(i + 2, positions.get(i + 2) * z);
+        }
+        mesh.updateBound();
+    }
+
+    private static String format(double value) {
+        return String.valueOf(Math.round(value * 1000) / 1000.0);
+    }
+}
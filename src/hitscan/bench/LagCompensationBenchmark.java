@@ -0,0 +1,176 @@
+package hitscan.bench;
+
+import com.jme3.collision.CollisionResult;
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.shape.Sphere;
+import hitscan.HitScanner;
+import hitscan.LagCompensator;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ *
+ * Dodging enemies (ENEMY_COUNTS of them, Oto-sized spheres turning every
+ * half second or so at DODGE_SPEED) on a 60 Hz game clock, with a
+ * LagCompensator recording them every frame. Every SHOT_INTERVAL_FRAMES, a
+ * shot aimed straight at an enemy as it was AIM_LAG_FRAMES ago (the view
+ * lagging the kinect) is scanned with a HitScanner two ways:
+ * - plain: against the enemies where they are now;
+ * - rewound: LagCompensator.rewind() to the aim time, scan, restore().
+ * Reports, per enemy count and lag, the cost per shot (rewind and restore on
+ * their own, and with the scan), bytes the rewind and restore allocated,
+ * record() per frame, and how many shots hit the enemy aimed at.
+ *
+ * Usage: java hitscan.bench.LagCompensationBenchmark [shots]
+ */
+public class LagCompensationBenchmark {
+
+    public static final int DEFAULT_SHOTS = 2000;
+    public static final int[] ENEMY_COUNTS = {8, 100, 1000, 5000};
+    public static final int[] AIM_LAG_FRAMES = {3, 6};
+    public static final int SHOT_INTERVAL_FRAMES = 4;
+    public static final long FRAME_NANOS = 1000000000L / 60;
+    /**
+     * (Unit: world units per second.)
+     */
+    public static final float DODGE_SPEED = 30;
+    public static final float ARENA_SIZE = 600;
+
+    public static void main(String[] args) {
+        int shots = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_SHOTS;
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        Geometry enemyModel = new Geometry("Oto stand-in", new Sphere(12, 16, 1));
+        enemyModel.setLocalScale(2.5f, 5f, 2f); // About Oto's size
+
+        for (int enemyCount : ENEMY_COUNTS) {
+            for (int lagFrames : AIM_LAG_FRAMES) {
+                Random random = new Random(enemyCount * 31 + lagFrames);
+                Node shootables = new Node("Shootables");
+                Geometry[] enemies = new Geometry[enemyCount];
+                Vector3f[] velocities = new Vector3f[enemyCount];
+                HitScanner scanner = new HitScanner();
+                LagCompensator compensator = new LagCompensator();
+                scanner.setLagCompensator(compensator);
+                for (int i = 0; i < enemyCount; i++) {
+                    enemies[i] = enemyModel.clone();
+                    enemies[i].setLocalTranslation((random.nextFloat() - 0.5f) * ARENA_SIZE, 0, (random.nextFloat() - 0.5f) * ARENA_SIZE);
+                    velocities[i] = new Vector3f();
+                    shootables.attachChild(enemies[i]);
+                }
+                shootables.updateGeometricState();
+                for (Geometry enemy : enemies) {
+                    scanner.addEnemy(enemy);
+                    compensator.addEnemy(enemy);
+                }
+
+                // Pending shots, by the frame they're fired in: target, ray
+                int pendingSlots = lagFrames + 1;
+                int[] pendingTargets = new int[pendingSlots];
+                Vector3f[] pendingOrigins = new Vector3f[pendingSlots], pendingDirections = new Vector3f[pendingSlots];
+                for (int slot = 0; slot < pendingSlots; slot++) {
+                    pendingTargets[slot] = -1;
+                    pendingOrigins[slot] = new Vector3f();
+                    pendingDirections[slot] = new Vector3f();
+                }
+
+                long recordNanos = 0, plainNanos = 0, rewoundNanos = 0, rewindRestoreNanos = 0, maxRewindRestoreNanos = 0, rewindBytes = 0;
+                int fired = 0, plainHits = 0, rewoundHits = 0, frames = 0;
+                int warmUpShots = shots / 10;
+                long nowNanos = 0;
+                for (int frame = 0; fired < shots + warmUpShots; frame++) {
+                    nowNanos += FRAME_NANOS;
+                    moveEnemies(enemies, velocities, random);
+                    shootables.updateGeometricState();
+                    long startNanos = System.nanoTime();
+                    compensator.record(nowNanos);
+                    recordNanos += System.nanoTime() - startNanos;
+                    frames++;
+
+                    // Aim now at an enemy as it is now, fire lagFrames later
+                    if (frame % SHOT_INTERVAL_FRAMES == 0) {
+                        int slot = (frame + lagFrames) % pendingSlots;
+                        int target = random.nextInt(enemyCount);
+                        pendingTargets[slot] = target;
+                        Vector3f targetLocation = enemies[target].getWorldTranslation();
+                        float angle = random.nextFloat() * FastMath.TWO_PI, distance = 50 + random.nextFloat() * 100;
+                        pendingOrigins[slot].set(targetLocation.x + distance * FastMath.cos(angle), 5, targetLocation.z + distance * FastMath.sin(angle));
+                        pendingDirections[slot].set(targetLocation).subtractLocal(pendingOrigins[slot]).normalizeLocal();
+                    }
+                    int slot = frame % pendingSlots;
+                    if (pendingTargets[slot] < 0) {
+                        continue;
+                    }
+                    int target = pendingTargets[slot];
+                    pendingTargets[slot] = -1;
+                    long aimNanos = nowNanos - lagFrames * FRAME_NANOS;
+
+                    startNanos = System.nanoTime();
+                    CollisionResult plainHit = scanner.scan(pendingOrigins[slot], pendingDirections[slot]);
+                    long plainEndNanos = System.nanoTime();
+                    boolean plainHitTarget = plainHit != null && plainHit.getGeometry() == enemies[target];
+
+                    long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+                    long rewindStartNanos = System.nanoTime();
+                    compensator.rewind(aimNanos, nowNanos);
+                    long rewindEndNanos = System.nanoTime();
+                    long allocatedAfterRewind = threadBean.getThreadAllocatedBytes(threadId);
+                    CollisionResult rewoundHit = scanner.scan(pendingOrigins[slot], pendingDirections[slot]);
+                    boolean rewoundHitTarget = rewoundHit != null && rewoundHit.getGeometry() == enemies[target];
+                    long restoreStartNanos = System.nanoTime();
+                    long allocatedBeforeRestore = threadBean.getThreadAllocatedBytes(threadId);
+                    compensator.restore();
+                    long restoreEndNanos = System.nanoTime();
+                    long allocatedAfterRestore = threadBean.getThreadAllocatedBytes(threadId);
+
+                    fired++;
+                    if (fired <= warmUpShots) {
+                        continue;
+                    }
+                    plainNanos += plainEndNanos - startNanos;
+                    rewoundNanos += restoreEndNanos - rewindStartNanos;
+                    long ownNanos = (rewindEndNanos - rewindStartNanos) + (restoreEndNanos - restoreStartNanos);
+                    rewindRestoreNanos += ownNanos;
+                    maxRewindRestoreNanos = Math.max(maxRewindRestoreNanos, ownNanos);
+                    rewindBytes += (allocatedAfterRewind - allocatedBefore) + (allocatedAfterRestore - allocatedBeforeRestore);
+                    if (plainHitTarget) {
+                        plainHits++;
+                    }
+                    if (rewoundHitTarget) {
+                        rewoundHits++;
+                    }
+                }
+
+                System.out.println(enemyCount + " enemies, aim " + lagFrames + " frames (" + lagFrames * FRAME_NANOS / 1000000 + " ms) behind:");
+                System.out.println("  plain: " + format(plainNanos / 1e3 / shots) + " us/shot, " + format(plainHits * 100.0 / shots) + "% hit the target");
+                System.out.println("  rewound: " + format(rewoundNanos / 1e3 / shots) + " us/shot, of which rewind and restore "
+                        + format(rewindRestoreNanos / 1e3 / shots) + " us average, " + format(maxRewindRestoreNanos / 1e3) + " us max, "
+                        + rewindBytes / shots + " bytes; " + format(rewoundHits * 100.0 / shots) + "% hit the target");
+                System.out.println("  record: " + format(recordNanos / 1e3 / frames) + " us/frame; " + compensator);
+            }
+        }
+    }
+
+    /**
+     * Each enemy keeps a heading for a while, then dodges off another way.
+     */
+    private static void moveEnemies(Geometry[] enemies, Vector3f[] velocities, Random random) {
+        float frameSeconds = FRAME_NANOS / 1e9f;
+        for (int i = 0; i < enemies.length; i++) {
+            Vector3f velocity = velocities[i];
+            if (velocity.x == 0 && velocity.z == 0 || random.nextInt(30) == 0) {
+                float angle = random.nextFloat() * FastMath.TWO_PI;
+                velocity.set(DODGE_SPEED * FastMath.cos(angle), 0, DODGE_SPEED * FastMath.sin(angle));
+            }
+            enemies[i].move(velocity.x * frameSeconds, 0, velocity.z * frameSeconds);
+            enemies[i].rotate(0, frameSeconds, 0);
+        }
+    }
+
+    private static String format(double value) {
+        return String.valueOf(Math.round(value * 1000) / 1000.0);
+    }
+}
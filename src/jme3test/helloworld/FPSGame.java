@@ -4,6 +4,7 @@ import ai.competitor.dodgeshooter.DodgeShooterAI;
 import ai.defense.dodging.AerialDodgingAI;
 import ai.defense.dodging.DodgingAI;
 import ai.defense.dodging.WalkingGroundDodgingAI;
+import com.jme3.animation.SkeletonControl;
 import com.jme3.asset.plugins.ZipLocator;
 import com.jme3.audio.AudioNode;
 import com.jme3.bullet.BulletAppState;
@@ -37,6 +38,8 @@ import com.jme3.math.Ray;
 import com.jme3.math.Vector3f;
 import com.jme3.post.FilterPostProcessor;
 import com.jme3.post.filters.BloomFilter;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.ViewPort;
 import com.jme3.scene.CameraNode;
 import com.jme3.scene.Geometry;
 import com.jme3.scene.Node;
@@ -47,16 +50,58 @@ import com.jme3.scene.shape.Sphere;
 import com.jme3.system.AppSettings;
 import com.jme3.texture.Texture;
 import com.jme3.util.SkyFactory;
+import constrainedcamera.AimDeltaListener;
 import constrainedcamera.ConstrainedSimpleApplication;
+import constrainedcamera.InputJournal;
+import constrainedcamera.InputJournalReplayer;
+import constrainedcamera.InputLatencyTracker;
+import hitscan.HitScanMode;
+import hitscan.HitScanner;
+import hitscan.HitZone;
+import hitscan.Hitbox;
+import hitscan.HitboxSet;
+import hitscan.LagCompensator;
+import hitscan.PhysicsHitScanner;
 import java.awt.Dimension;
 import java.awt.Toolkit;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.TimeUnit;
-import poormocap.Mocap;
+import kinect.depth.DepthFrameSource;
+import kinect.depth.DepthSilhouetteAppState;
+import kinect.depth.KinectTCPDepthSource;
+import kinect.depth.SyntheticDepthSource;
+import kinect.gesture.GestureListener;
+import kinect.gesture.GestureRecognizer;
+import kinect.gesture.GestureTemplate;
+import kinect.input.AimFusionFilter;
+import kinect.input.KinectAimMapping;
+import kinect.input.KinectInputSource;
+import kinect.input.KinectTCPInputSource;
+import kinect.input.MocapInputSource;
+import kinect.input.MultiSkeletonSampler;
+import kinect.input.OneEuroSkeletonFilter;
+import kinect.input.PredictionSkeletonFilter;
+import kinect.input.SkeletonFrame;
+import kinect.input.SkeletonInterpolator;
+import kinect.input.SkeletonsSource;
+import kinect.input.SyntheticSkeletonGenerator;
+import kinect.input.SyntheticSkeletonSource;
+import kinect.player.KinectPlayerPipeline;
+import kinect.pipeline.AimMappingStage;
+import kinect.pipeline.SkeletonSourcePump;
+import kinect.pipeline.SkeletonStageChain;
+import kinect.pipeline.ValidationStage;
+import kinect.player.KinectPlayerWorker;
+import kinect.recording.ReplayInputSource;
+import kinect.recording.SessionRecorder;
+import kinect.transport.SharedMemorySkeletonInputSource;
+import kinect.transport.UdpSkeletonInputSource;
 
 /**
  * Based on jMonkeyEngine 3 Example 9 by normen, with edits by Zathras.
@@ -129,6 +174,53 @@ public class FPSGame extends ConstrainedSimpleApplication
      * be attempted.
      */
     private static final boolean ENABLE_KINECT_INPUT = true;
+    /**
+     * Startup options (program arguments) selecting where kinect skeletons
+     * come from. --kinect-source=live (default) reads the Kinect,
+     * --kinect-source=tcp[:HOST:PORT] reads a KinectTCP server directly,
+     * without PoorMoCap, and reconnects if the connection drops (e.g. against
+     * kinect.server.KinectStandInServer), --kinect-source=udp[:PORT] receives
+     * skeleton datagrams (e.g. from kinect.transport.UdpSkeletonSender),
+     * --kinect-source=shm[:FILE] reads a shared memory ring written by another
+     * process (kinect.transport.SharedMemorySkeletonRing),
+     * --kinect-source=synthetic[:RATE_HZ[:BODIES]] makes up a player sweeping
+     * their arm (kinect.input.SyntheticSkeletonGenerator) at any rate, for
+     * load tests, --kinect-source=none disables it, and --kinect-source=FILE replays a
+     * recorded session (.skrec or .poormocap). Replays also take
+     * --kinect-replay-speed=FACTOR (1 = original timing, 0 = as fast as
+     * possible) and --kinect-replay-loop.
+     * --kinect-record=FILE records every skeleton frame of the session,
+     * whatever the source, to a compressed session recording (.sksession).
+     * --kinect-gesture=ACTION:FILE[:THRESHOLD] (repeatable) adds a gesture
+     * template, where ACTION is shoot or jump and FILE a recording of the
+     * gesture; without any, KINECT_DEFAULT_GESTURES are used (none).
+     * --kinect-players=2 tracks two skeletons at once, split screen, with the
+     * second player aiming (and shooting) from the same body; it needs a
+     * source that reports every skeleton (tcp).
+     * --kinect-stage-worker runs the one player's per-reading stages
+     * (validation, smoothing, gestures, prediction) on a worker thread fed by
+     * a kinect.pipeline.SkeletonSourcePump, as with two players, instead of
+     * on the game loop; the session isn't recorded or journaled then.
+     * --input-journal-replay=FILE plays a dumped input journal (see
+     * constrainedcamera.InputJournal; F9 dumps one) back instead of live
+     * keyboard, mouse and kinect input, with the recorded frame times.
+     * --kinect-depth=tcp[:HOST:PORT] shows the player's silhouette from the
+     * KinectTCP server's depth stream in the HUD (against
+     * kinect.server.KinectStandInServer, give it --depth), and
+     * --kinect-depth=synthetic draws it from a made-up scene instead.
+     * --hit-scan=node|bounds|physics picks how shots find what's in the aim
+     * (see hitscan.HitScanMode; HIT_SCAN_DEFAULT_MODE without it).
+     */
+    public static final String KINECT_SOURCE_OPTION = "--kinect-source=",
+            KINECT_REPLAY_SPEED_OPTION = "--kinect-replay-speed=",
+            KINECT_REPLAY_LOOP_OPTION = "--kinect-replay-loop",
+            KINECT_RECORD_OPTION = "--kinect-record=",
+            KINECT_GESTURE_OPTION = "--kinect-gesture=",
+            KINECT_PLAYERS_OPTION = "--kinect-players=",
+            KINECT_STAGE_WORKER_OPTION = "--kinect-stage-worker",
+            INPUT_JOURNAL_REPLAY_OPTION = "--input-journal-replay=",
+            KINECT_DEPTH_OPTION = "--kinect-depth=",
+            HIT_SCAN_OPTION = "--hit-scan=";
     /**
      * This effectively controls kinect movement sensitivity. Example values:
      * 0.001 = 1 mm (original); 1 = 1 meter (jMonkey unit); 10 = 10 meters; ...
@@ -137,24 +229,114 @@ public class FPSGame extends ConstrainedSimpleApplication
      * the game move 300 km (or 300,000 meters)!
      */
     private static float kinectTurnLeftRightMultiplier = 10000;
+    /**
+     * Toggle One-Euro smoothing of the kinect joints (see
+     * OneEuroSkeletonFilter). Cutoffs are in Hz and beta in Hz per mm/s;
+     * kinect.bench.SmoothingBenchmark reports jitter reduction versus added
+     * latency for other values. Only the joints the camera mapping reads get
+     * filtered unless KINECT_SMOOTHING_ALL_JOINTS is true.
+     */
+    private static final boolean KINECT_SMOOTHING = true;
+    private static final boolean KINECT_SMOOTHING_ALL_JOINTS = false;
+    private static final float KINECT_SMOOTHING_MIN_CUTOFF_HZ = 1.0f,
+            KINECT_SMOOTHING_BETA = 0.01f,
+            KINECT_SMOOTHING_DERIVATIVE_CUTOFF_HZ = 1.0f;
+    /**
+     * Latency compensation: extrapolate the right wrist and shoulder this far
+     * ahead, capping the estimated joint speed (see PredictionSkeletonFilter).
+     * Runs after smoothing and can be toggled in game with
+     * KINECT_PREDICTION_TOGGLE_KEY. kinect.bench.PredictionBenchmark reports
+     * prediction error for other horizons.
+     */
+    private static final boolean KINECT_PREDICTION = true;
+    private static final float KINECT_PREDICTION_HORIZON_MILLIS = 50,
+            KINECT_PREDICTION_MAX_SPEED_MM_PER_SEC = 3000;
+    private static final int KINECT_PREDICTION_TOGGLE_KEY = KeyInput.KEY_F8;
+    /**
+     * Interpolate the skeleton pose to every render frame instead of stepping
+     * whenever a reading arrives (see SkeletonInterpolator). The render rate
+     * (60 FPS) is about twice the Kinect's.
+     */
+    private static final boolean KINECT_INTERPOLATION = true;
+    /**
+     * Kinect gestures (see GestureRecognizer): each is ACTION:FILE[:THRESHOLD]
+     * like KINECT_GESTURE_OPTION, with the threshold being the highest
+     * average wrist distance from the template that still counts, in mm.
+     * Recognition gets at most KINECT_GESTURE_BUDGET_MICROS per reading.
+     * There are no default gestures: the recordings shipped are all aiming
+     * movements, and a gesture made from one (say, LookUpOnly as jump) would
+     * fire whenever the player aims that way. Gestures need recordings of
+     * their own, given with KINECT_GESTURE_OPTION.
+     */
+    private static final boolean KINECT_GESTURES = true;
+    private static final String[] KINECT_DEFAULT_GESTURES = {};
+    private static final float KINECT_GESTURE_DEFAULT_THRESHOLD = 60;
+    private static final int KINECT_GESTURE_BUDGET_MICROS = 200;
+    /**
+     * While the kinect skeleton is tracked, fuse its aim with mouse look (a
+     * handheld wireless mouse) instead of letting the two fight over the
+     * camera (see AimFusionFilter): the mouse nudges the aim by up to
+     * KINECT_AIM_FUSION_MAX_MOUSE_OFFSET_DEGREES, and the kinect aim is
+     * followed with the given time constant. kinect.bench.AimFusionBenchmark
+     * reports the cost and aim stability.
+     */
+    private static final boolean KINECT_AIM_FUSION = true;
+    private static final float KINECT_AIM_FUSION_TIME_CONSTANT_SECONDS = AimFusionFilter.DEFAULT_TIME_CONSTANT,
+            KINECT_AIM_FUSION_MAX_MOUSE_OFFSET_DEGREES = 30;
     private static float kinectLookUpDownMultiplier = 10000;
+    /**
+     * How shots find what's in the aim, unless HIT_SCAN_OPTION says
+     * otherwise: HitScanMode.BOUNDS (HitScanner) tests enemy bounds first and
+     * only then triangles, HitScanMode.PHYSICS (PhysicsHitScanner) asks Bullet
+     * instead, and HitScanMode.NODE tests every shootable. HIT_SCAN_TOGGLE_KEY
+     * cycles through them in game; hitscan.bench.HitScanBenchmark reports
+     * the cost of each.
+     */
+    private static final HitScanMode HIT_SCAN_DEFAULT_MODE = HitScanMode.BOUNDS;
+    private static final int HIT_SCAN_TOGGLE_KEY = KeyInput.KEY_F10;
+    /**
+     * While the kinect aims, shots are checked against where the enemies
+     * were when the kinect reading behind the aim came in, not where they
+     * are by the time the view caught up (see hitscan.LagCompensator; scene
+     * graph hit scans only). hitscan.bench.LagCompensationBenchmark reports
+     * the cost per shot and the hits it wins back.
+     */
+    private static final boolean LAG_COMPENSATION = true;
+    /**
+     * What the Oto golems are shot through in HitScanMode.BOUNDS, in place
+     * of their mesh (see hitscan.HitboxSet): capsules along the bones of
+     * Oto's skeleton, following its pose. A head shot does
+     * HitZone.HEAD.getDamage(). (Unit: Oto's model space.)
+     */
+    private static final Hitbox[] OTO_HITBOXES = {
+        Hitbox.capsule(HitZone.HEAD, "head", new Vector3f(0, 0.3f, 0), new Vector3f(0, 1.2f, 0), 1.3f),
+        Hitbox.capsule(HitZone.BODY, "Root", "spinehigh", 2.4f),
+        Hitbox.capsule(HitZone.BODY, "uparm.left", "arm.left", 0.9f),
+        Hitbox.capsule(HitZone.BODY, "arm.left", "hand.left", 0.8f),
+        Hitbox.capsule(HitZone.BODY, "uparm.right", "arm.right", 0.9f),
+        Hitbox.capsule(HitZone.BODY, "arm.right", "hand.right", 0.8f),
+        Hitbox.capsule(HitZone.BODY, "hip.left", "leg.left", 1.1f),
+        Hitbox.capsule(HitZone.BODY, "leg.left", "foot.left", 0.9f),
+        Hitbox.capsule(HitZone.BODY, "hip.right", "leg.right", 1.1f),
+        Hitbox.capsule(HitZone.BODY, "leg.right", "foot.right", 0.9f)
+    };
     /**
      * Mapping for KinectTCP's skeleton Joint [Array] Index System
      */
-    public static final int SPINE = 1,
-            SHOULDER_LEFT = 4,
-            WRIST_LEFT = 6,
-            SHOULDER_CENTER = 2,
-            SHOULDER_RIGHT = 8,
-            WRIST_RIGHT = 10;
+    public static final int SPINE = SkeletonFrame.SPINE,
+            SHOULDER_LEFT = SkeletonFrame.SHOULDER_LEFT,
+            WRIST_LEFT = SkeletonFrame.WRIST_LEFT,
+            SHOULDER_CENTER = SkeletonFrame.SHOULDER_CENTER,
+            SHOULDER_RIGHT = SkeletonFrame.SHOULDER_RIGHT,
+            WRIST_RIGHT = SkeletonFrame.WRIST_RIGHT;
     /**
      * Mapping for any KinectTCP's Joint's X, Y, and Z coordinates' array
-     * indexes. E.g., joints[WRIST_RIGHT][KJ_X] gets you right wrist Kinect
-     * Joint position's x coordinate.
+     * indexes. E.g., kinectFrame.get(WRIST_RIGHT, KJ_X) gets you right wrist
+     * Kinect Joint position's x coordinate.
      */
-    public static final int KJ_X = 1,
-            KJ_Y = 2,
-            KJ_Z = 3;
+    public static final int KJ_X = SkeletonFrame.KJ_X,
+            KJ_Y = SkeletonFrame.KJ_Y,
+            KJ_Z = SkeletonFrame.KJ_Z;
     /*--- END SETTINGS ---*/
     // TODO: Also use a variable to remember highest score ever for any round. Even save to/read from a text file for highest score ever on the local machine!
     private long remainingRoundTimeSec;
@@ -178,14 +360,79 @@ public class FPSGame extends ConstrainedSimpleApplication
      * to false.
      */
     private static boolean kinectSkeletonActive = false;
-    private int[][] joints;
-    private int spine[], spineX, spineY, spineZ,
-            leftShoulder[], leftShoulderX, leftShoulderY, leftShoulderZ,
-            leftWrist[], leftWristX, leftWristY, leftWristZ,
-            centerShoulder[], centerShoulderX, centerShoulderY, centerShoulderZ,
-            rightShoulder[], rightShoulderX, rightShoulderY, rightShoulderZ,
-            rightWrist[], rightWristX, rightWristY, rightWristZ;
-    private static Mocap kinect = null;
+    /**
+     * Drop kinect readings with lost or out-of-range aim joints before they
+     * reach smoothing (see ValidationStage); the aim stays where the last good
+     * reading put it.
+     */
+    private static final boolean KINECT_VALIDATION = true;
+    /**
+     * Each kinect player's stages (validation, smoothing, gestures,
+     * prediction, interpolation) and activation state; kinectPlayers[0] is player 1. The
+     * camera mapping reads kinectPlayers[i].getFrame(), the pose for the
+     * current render frame.
+     */
+    private KinectPlayerPipeline[] kinectPlayers = null;
+    /**
+     * With more than one player, or KINECT_STAGE_WORKER_OPTION, runs each
+     * player's per-reading stages off the game loop; otherwise null and they
+     * run in updateKinectJointsActions().
+     */
+    private KinectPlayerWorker[] kinectPlayerWorkers = null;
+    private static int kinectPlayerCount = 1;
+    private static boolean kinectStageWorker = false;
+    /**
+     * Feeds player 1's worker from kinectInput with
+     * KINECT_STAGE_WORKER_OPTION and one player; otherwise null.
+     */
+    private SkeletonSourcePump kinectSourcePump = null;
+    /**
+     * Player 1's per-render-frame stages, on the game loop: aim mapping
+     * (kinectAimStage).
+     */
+    private final SkeletonStageChain kinectFrameStages = new SkeletonStageChain("camera");
+    private AimMappingStage kinectAimStage = null;
+    /**
+     * Splits the source's skeletons between players; null with one player.
+     */
+    private static MultiSkeletonSampler kinectMultiSampler = null;
+    /**
+     * Player 2's camera (right half of the screen) and aim; null with one
+     * player.
+     */
+    private Camera kinectCoopCam = null;
+    private AimFusionFilter kinectCoopAim = null;
+    private static String[] kinectGestureDefinitions = KINECT_DEFAULT_GESTURES;
+    /**
+     * Fuses the kinect aim with mouse look; null if KINECT_AIM_FUSION is off.
+     */
+    private AimFusionFilter kinectAimFusion = null;
+    /**
+     * Reusable buffers for the kinect camera mapping, so no vectors get
+     * allocated per frame.
+     */
+    private final Vector3f kinectCurCamDir = new Vector3f(), kinectLookDir = new Vector3f();
+    /**
+     * Where kinect skeletons come from (live Kinect, a replayed recording,
+     * ...). Null if kinect input is disabled. Sources never make
+     * updateKinectJointsActions() wait.
+     */
+    private static KinectInputSource kinectInput = null;
+    /**
+     * Records the session's skeleton frames if KINECT_RECORD_OPTION is given;
+     * otherwise null. Disk writes happen on the recorder's own thread.
+     */
+    private static SessionRecorder kinectRecorder = null;
+    /**
+     * Plays a dumped input journal back if INPUT_JOURNAL_REPLAY_OPTION is
+     * given; otherwise null.
+     */
+    private static InputJournalReplayer inputJournalReplayer = null;
+    /**
+     * Shows the depth silhouette if KINECT_DEPTH_OPTION is given; otherwise
+     * null.
+     */
+    private static DepthSilhouetteAppState kinectDepthSilhouette = null;
     private Material kinectControlsStatusTextBackgroundMaterial;
     private Spatial sceneModel, weapon;
     /**
@@ -197,6 +444,10 @@ public class FPSGame extends ConstrainedSimpleApplication
      * Stores remaining hit points (health) of enemies
      */
     private Map<Geometry, Integer> enemyHitPoints = new HashMap<Geometry, Integer>();
+    /**
+     * Hitboxes of the enemies that have them (the animated ones).
+     */
+    private Map<Geometry, HitboxSet> enemyHitboxes = new HashMap<Geometry, HitboxSet>();
     /**
      * List of enemy objects that are also dodging AIs. Used to keep tracking of
      * the mapping of the spatials and dodging AI logic.
@@ -281,10 +532,60 @@ public class FPSGame extends ConstrainedSimpleApplication
         long maxAvailMemorySize = JVMRuntime.maxMemory();
         System.out.println("Maximum Available Memory/Heap Size = " + maxAvailMemorySize + " bytes");
 
-        if (ENABLE_KINECT_INPUT) {
-            kinect = new Mocap();
+        hitScanMode = parseHitScanMode(args);
+        inputJournalReplayer = createInputJournalReplayer(args);
+        if (inputJournalReplayer != null) {
+            // Single player, no recording: kinect input comes from the journal as well
+            kinectInput = ENABLE_KINECT_INPUT ? inputJournalReplayer.getKinectSource() : null;
+            args = new String[0];
+        } else if (ENABLE_KINECT_INPUT) {
+            kinectInput = createKinectInputSource(args);
         } else {
-            kinect = null;
+            kinectInput = null;
+        }
+        if (kinectInput != null) {
+            List<String> gestureDefinitions = new ArrayList<String>();
+            for (String arg : args) {
+                if (arg.startsWith(KINECT_GESTURE_OPTION)) {
+                    gestureDefinitions.add(arg.substring(KINECT_GESTURE_OPTION.length()));
+                } else if (arg.startsWith(KINECT_PLAYERS_OPTION)) {
+                    kinectPlayerCount = Math.max(1, Math.min(2, Integer.parseInt(arg.substring(KINECT_PLAYERS_OPTION.length()))));
+                } else if (arg.equals(KINECT_STAGE_WORKER_OPTION)) {
+                    kinectStageWorker = true;
+                }
+            }
+            if (!gestureDefinitions.isEmpty()) {
+                kinectGestureDefinitions = gestureDefinitions.toArray(new String[gestureDefinitions.size()]);
+            }
+            if (kinectPlayerCount > 1 && !(kinectInput instanceof SkeletonsSource)) {
+                System.err.println("This kinect source only reports one skeleton; playing with one player.");
+                kinectPlayerCount = 1;
+            }
+            if (kinectPlayerCount > 1) {
+                // Started in simpleInitApp(), once the players' workers are up
+                kinectMultiSampler = new MultiSkeletonSampler((SkeletonsSource) kinectInput, kinectPlayerCount);
+                for (String arg : args) {
+                    if (arg.startsWith(KINECT_RECORD_OPTION)) {
+                        System.err.println("Kinect session recording only works with one player; not recording.");
+                    }
+                }
+            } else {
+                if (!kinectStageWorker) {
+                    kinectRecorder = createKinectRecorder(args);
+                } else {
+                    for (String arg : args) {
+                        if (arg.startsWith(KINECT_RECORD_OPTION)) {
+                            System.err.println("Kinect session recording doesn't work with the stage worker; not recording.");
+                        }
+                    }
+                }
+                kinectInput.start();
+            }
+        }
+
+        DepthFrameSource depthSource = createKinectDepthSource(args);
+        if (depthSource != null) {
+            kinectDepthSilhouette = new DepthSilhouetteAppState(depthSource);
         }
 
         app = new FPSGame();
@@ -300,13 +601,170 @@ public class FPSGame extends ConstrainedSimpleApplication
         // settings.setFullscreen(true);
         app.setSettings(settings);
         app.setShowSettings(false); // Don't show startup settings box
+        if (inputJournalReplayer != null) {
+            app.setTimer(inputJournalReplayer.getTimer());
+        }
         // flyCam.setMoveSpeed(25); // Move this to inside simpleInitApp()
 
         app.start();
     }
+
+    /**
+     * Picks the kinect input source from the startup options (see
+     * KINECT_SOURCE_OPTION).
+     *
+     * @return The source, or null if kinect input is turned off or the
+     * recording to replay can't be opened.
+     */
+    private static KinectInputSource createKinectInputSource(String[] args) {
+        String source = "live";
+        float replaySpeed = 1;
+        boolean replayLoop = false;
+        for (String arg : args) {
+            if (arg.startsWith(KINECT_SOURCE_OPTION)) {
+                source = arg.substring(KINECT_SOURCE_OPTION.length());
+            } else if (arg.startsWith(KINECT_REPLAY_SPEED_OPTION)) {
+                replaySpeed = Float.parseFloat(arg.substring(KINECT_REPLAY_SPEED_OPTION.length()));
+            } else if (arg.equals(KINECT_REPLAY_LOOP_OPTION)) {
+                replayLoop = true;
+            }
+        }
+
+        if (source.equals("none")) {
+            return null;
+        } else if (source.equals("live")) {
+            return new MocapInputSource();
+        } else if (source.equals("tcp")) {
+            return new KinectTCPInputSource();
+        } else if (source.startsWith("tcp:")) {
+            String[] address = source.split(":");
+            return new KinectTCPInputSource(address[1], Integer.parseInt(address[2]));
+        } else if (source.equals("udp")) {
+            return new UdpSkeletonInputSource();
+        } else if (source.startsWith("udp:")) {
+            return new UdpSkeletonInputSource(Integer.parseInt(source.substring("udp:".length())), 0);
+        } else if (source.equals("shm")) {
+            return new SharedMemorySkeletonInputSource();
+        } else if (source.startsWith("shm:")) {
+            return new SharedMemorySkeletonInputSource(new File(source.substring("shm:".length())), 0);
+        } else if (source.equals("synthetic") || source.startsWith("synthetic:")) {
+            String[] parameters = source.split(":");
+            SyntheticSkeletonGenerator generator = new SyntheticSkeletonGenerator();
+            if (parameters.length > 2) {
+                generator.setBodies(Integer.parseInt(parameters[2]));
+            }
+            return new SyntheticSkeletonSource(generator, (parameters.length > 1) ? Double.parseDouble(parameters[1]) : SyntheticSkeletonSource.DEFAULT_RATE_HZ);
+        }
+
+        try {
+            return new ReplayInputSource(ReplayInputSource.openRecording(new File(source)), replaySpeed, replayLoop);
+        } catch (IOException e) {
+            System.err.println("Can't replay kinect recording " + source + " (" + e.getMessage() + "); kinect input is disabled.");
+            return null;
+        }
+    }
+
+    /**
+     * @return The depth source given with KINECT_DEPTH_OPTION, or null if
+     * there's none.
+     */
+    private static DepthFrameSource createKinectDepthSource(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith(KINECT_DEPTH_OPTION)) {
+                String source = arg.substring(KINECT_DEPTH_OPTION.length());
+                if (source.equals("synthetic")) {
+                    return new SyntheticDepthSource();
+                } else if (source.equals("tcp")) {
+                    return new KinectTCPDepthSource();
+                } else if (source.startsWith("tcp:")) {
+                    String[] address = source.split(":");
+                    return new KinectTCPDepthSource(address[1], Integer.parseInt(address[2]));
+                }
+                System.err.println("Unknown kinect depth source " + source + "; not showing the depth silhouette.");
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The mode given with HIT_SCAN_OPTION, or HIT_SCAN_DEFAULT_MODE.
+     */
+    private static HitScanMode parseHitScanMode(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith(HIT_SCAN_OPTION)) {
+                String name = arg.substring(HIT_SCAN_OPTION.length());
+                HitScanMode mode = HitScanMode.parse(name);
+                if (mode != null) {
+                    return mode;
+                }
+                System.err.println("Unknown hit scan mode " + name + "; using " + HIT_SCAN_DEFAULT_MODE + ".");
+            }
+        }
+        return HIT_SCAN_DEFAULT_MODE;
+    }
+
+    /**
+     * @return A replayer for the journal given with
+     * INPUT_JOURNAL_REPLAY_OPTION, or null if there's none or it can't be
+     * loaded.
+     */
+    private static InputJournalReplayer createInputJournalReplayer(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith(INPUT_JOURNAL_REPLAY_OPTION)) {
+                String file = arg.substring(INPUT_JOURNAL_REPLAY_OPTION.length());
+                try {
+                    InputJournal journal = InputJournal.load(new File(file));
+                    if (journal.getRecordCount() > 0 && journal.getFrame(0) > 0) {
+                        System.err.println("Input journal " + file + " starts at frame " + journal.getFrame(0)
+                                + ", not at the start of the game; the replay won't match the session.");
+                    }
+                    InputJournalReplayer replayer = new InputJournalReplayer(journal, 0);
+                    System.out.println("Replaying " + replayer.getFrameCount() + " frames of input journal " + file + ".");
+                    return replayer;
+                } catch (IOException e) {
+                    System.err.println("Can't replay input journal " + file + " (" + e.getMessage() + "); playing live.");
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return A recorder for the file given with KINECT_RECORD_OPTION, or null
+     * if there's none or it can't be created.
+     */
+    private static SessionRecorder createKinectRecorder(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith(KINECT_RECORD_OPTION)) {
+                String file = arg.substring(KINECT_RECORD_OPTION.length());
+                try {
+                    return new SessionRecorder(new File(file));
+                } catch (IOException e) {
+                    System.err.println("Can't record kinect session to " + file + " (" + e.getMessage() + "); not recording.");
+                }
+            }
+        }
+        return null;
+    }
     private Geometry hitMarker;
     private Node shootables;
     private CollisionResults collisionResultsOfShootablesWithinPlayerAim = null;
+    /**
+     * Where on the enemy the closest hit in the aim landed, if the scan could
+     * tell (hitboxes); null otherwise.
+     */
+    private HitZone hitZoneOfShootableWithinPlayerAim = null;
+    /**
+     * Finds what's in the player's aim (the enemies attached to shootables,
+     * then the arena) without testing every shootable every frame.
+     */
+    private final HitScanner hitScanner = new HitScanner();
+    /**
+     * Set up with the physics space in simpleInitApp().
+     */
+    private PhysicsHitScanner physicsHitScanner;
+    private final LagCompensator lagCompensator = new LagCompensator();
+    private static HitScanMode hitScanMode = HIT_SCAN_DEFAULT_MODE;
     private CameraNode camNode;
     private RigidBodyControl golem_phy;
     private RigidBodyControl ninja_phy;
@@ -320,6 +778,9 @@ public class FPSGame extends ConstrainedSimpleApplication
 
         initAudio();
         initHUD();
+        if (kinectDepthSilhouette != null) {
+            stateManager.attach(kinectDepthSilhouette);
+        }
         initSkyBox();
 
         //create the camera Node
@@ -344,6 +805,7 @@ public class FPSGame extends ConstrainedSimpleApplication
         flyCam.setMoveSpeed(100);
         setUpKeys();
         setUpLight();
+        initKinectFilters();
 
 //        // We load the scene from the zip file and adjust its size.
 //        assetManager.registerLocator("town.zip", ZipLocator.class);
@@ -396,6 +858,10 @@ public class FPSGame extends ConstrainedSimpleApplication
         rootNode.attachChild(shootables);
 
         shootables.attachChild(sceneModel);
+        hitScanner.addArena(sceneModel);
+        hitScanner.setLagCompensator(lagCompensator);
+        physicsHitScanner = new PhysicsHitScanner(physicsSpace);
+        physicsHitScanner.addScenery(landscape, sceneModel);
 
 //        golem_phy = new RigidBodyControl(0.0f);
 //        ninja_phy = new RigidBodyControl(0.0f);
@@ -418,6 +884,12 @@ public class FPSGame extends ConstrainedSimpleApplication
         golemSpatial5 = golemSpatial.clone();
         golemGeom5 = getGeomFromSpatial(golemSpatial5);
 
+        addOtoHitboxes(golemSpatial, golemGeom);
+        addOtoHitboxes(golemSpatial2, golemGeom2);
+        addOtoHitboxes(golemSpatial3, golemGeom3);
+        addOtoHitboxes(golemSpatial4, golemGeom4);
+        addOtoHitboxes(golemSpatial5, golemGeom5);
+
 //        golemAnimControl = golemSpatial.getControl(AnimControl.class);
 //        control.addListener(this);
 //        golemAnimChannel = golemAnimControl.createChannel();
@@ -586,6 +1058,8 @@ public class FPSGame extends ConstrainedSimpleApplication
                 put("shoot", KeyInput.KEY_SPACE);
                 put("enemyShoot", KeyInput.KEY_X);
                 put("Jump", KeyInput.KEY_LCONTROL);
+                put("toggleKinectPrediction", KINECT_PREDICTION_TOGGLE_KEY);
+                put("toggleHitScan", HIT_SCAN_TOGGLE_KEY);
             }
         };
 
@@ -612,6 +1086,15 @@ public class FPSGame extends ConstrainedSimpleApplication
             inputManager.addListener(analogListener, curMouseInputMappingName);
         }
 
+        if (inputJournalReplayer != null) {
+            // Takes them off live input once initialized
+            inputJournalReplayer.addActionTarget(this, keyboardInputMappings.keySet().toArray(new String[0]));
+            inputJournalReplayer.addAnalogTarget(analogListener, mouseInputMappings.keySet().toArray(new String[0]));
+            inputJournalReplayer.addActionTarget(flyCam, flyCam.getMappings());
+            inputJournalReplayer.addAnalogTarget(flyCam, flyCam.getMappings());
+            stateManager.attach(inputJournalReplayer);
+        }
+
 //            inputManager.addListener(analogListener, new String[]{"shoot"});
 
 //        inputManager.addMapping("Left", new KeyTrigger(KeyInput.KEY_A));
@@ -634,6 +1117,7 @@ public class FPSGame extends ConstrainedSimpleApplication
      * yet, we just keep track of the direction the user pressed.
      */
     public void onAction(String binding, boolean keyPressed, float tpf) {
+        inputJournal.recordAction(binding, keyPressed, tpf);
         if (binding.equals("Left")) {
             inputIsMoveLeft = keyPressed;
         } else if (binding.equals("Right")) {
@@ -649,6 +1133,17 @@ public class FPSGame extends ConstrainedSimpleApplication
             shoot();
         } else if (binding.equals("enemyShoot") && !keyPressed) {
             makeCannonBall();
+        } else if (binding.equals("toggleKinectPrediction") && !keyPressed) {
+            for (int playerIndex = 0; kinectPlayers != null && playerIndex < kinectPlayers.length; playerIndex++) {
+                PredictionSkeletonFilter predictionFilter = kinectPlayers[playerIndex].getPredictionFilter();
+                if (predictionFilter != null) {
+                    predictionFilter.setEnabled(!predictionFilter.isEnabled());
+                    System.out.println("Kinect prediction, player " + (playerIndex + 1) + ", " + (predictionFilter.isEnabled() ? "on" : "off") + ": " + predictionFilter);
+                }
+            }
+        } else if (binding.equals("toggleHitScan") && !keyPressed) {
+            hitScanMode = hitScanMode.next();
+            System.out.println("Hit scan: " + hitScanMode);
         }
     }
     private ActionListener actionListener = new ActionListener() {
@@ -675,6 +1170,7 @@ public class FPSGame extends ConstrainedSimpleApplication
      */
     private AnalogListener analogListener = new AnalogListener() {
         public void onAnalog(String name, float value, float tpf) {
+            inputJournal.recordAnalog(name, value, tpf);
             if (inputIsShooting) {
                 if (name.equals("shoot")) {
                     shoot();
@@ -856,23 +1352,24 @@ public class FPSGame extends ConstrainedSimpleApplication
         kinectControlsStatusTextBackgroundMaterial.setColor("Color", new ColorRGBA(0, 0, 0, 0.5f));
         kinectControlsStatusTextBackgroundMaterial.getAdditionalRenderState().setBlendMode(RenderState.BlendMode.Alpha);
 
-        kinectControlsStatusTextBackground = new Geometry("KinectControlsStatusTextBackground");
-        kinectControlsStatusTextBackground.setMaterial(kinectControlsStatusTextBackgroundMaterial);
-
-        // Don't attach text & background to guiNode as to not show the text right away
-    }
-
-    private void showKinectControlsStatusText() {
-
+        // The text never changes, so text and background are laid out once
+        // here, and showing/hiding them only attaches/detaches them
+        kinectControlsStatusText.setText("Kinect Controls Active");
         float fpsTextLineHeight = fpsText.getLineHeight(),
                 kinectControlsStatusTextLineWidth = kinectControlsStatusText.getLineWidth(),
                 kinectControlsStatusTextLineHeight = kinectControlsStatusText.getLineHeight();
 
-        kinectControlsStatusTextBackground.setMesh(new Quad(kinectControlsStatusTextLineWidth, kinectControlsStatusTextLineHeight));
+        kinectControlsStatusTextBackground = new Geometry("KinectControlsStatusTextBackground",
+                new Quad(kinectControlsStatusTextLineWidth, kinectControlsStatusTextLineHeight));
+        kinectControlsStatusTextBackground.setMaterial(kinectControlsStatusTextBackgroundMaterial);
         kinectControlsStatusTextBackground.setLocalTranslation(0f, fpsTextLineHeight, 0f);
 
         kinectControlsStatusText.setLocalTranslation(0f, fpsTextLineHeight + kinectControlsStatusTextLineHeight, 0f); // position
 
+        // Don't attach text & background to guiNode as to not show the text right away
+    }
+
+    private void showKinectControlsStatusText() {
         guiNode.attachChild(kinectControlsStatusTextBackground);
         guiNode.attachChild(kinectControlsStatusText);
     }
@@ -950,6 +1447,15 @@ public class FPSGame extends ConstrainedSimpleApplication
     }
 
     private void shoot() {
+        shoot(cam, 0);
+    }
+
+    /**
+     * @param shooterCam The camera the shot goes along (cam, or player 2's),
+     * which the aim results are for.
+     * @param playerIndex The kinect player aiming shooterCam.
+     */
+    private void shoot(Camera shooterCam, int playerIndex) {
 
         if (gameOver) {
             return; // Don't shoot at all
@@ -960,6 +1466,14 @@ public class FPSGame extends ConstrainedSimpleApplication
             return;
         }
 
+        if (LAG_COMPENSATION) {
+            long aimNanos = getKinectAimNanos(playerIndex);
+            if (aimNanos != 0) {
+                // Against the enemies as the player saw them when aiming
+                updateCollisionResultsOfShootablesWithinPlayerAim(shooterCam, aimNanos);
+            }
+        }
+
         // 5. Use the results (we mark the hit object)
         if (aShootableIsWithinPlayerAim()) {
 
@@ -990,7 +1504,8 @@ public class FPSGame extends ConstrainedSimpleApplication
             if (dist <= maxShootRange && curHitGeom.getParent() != null && enemyGeoms.contains(curHitGeom)) {
                 long scoreBonus = 0; // Award bonuses depending on how the enemy is shot
 
-                int newCurHitEnemyHP = enemyHitPoints.get(curHitGeom) - 1;
+                HitZone hitZone = (hitZoneOfShootableWithinPlayerAim != null) ? hitZoneOfShootableWithinPlayerAim : HitZone.BODY;
+                int newCurHitEnemyHP = enemyHitPoints.get(curHitGeom) - hitZone.getDamage();
                 enemyHitPoints.put(curHitGeom, newCurHitEnemyHP);
                 audio_impact.playInstance();
 
@@ -1014,6 +1529,9 @@ public class FPSGame extends ConstrainedSimpleApplication
                 if (newCurHitEnemyHP <= 0) { // Enemy is dead
                     disableRigidBodyControl(curHitGeom);
                     curHitGeom.removeFromParent();
+                    hitScanner.removeEnemy(curHitGeom);
+                    lagCompensator.removeEnemy(curHitGeom);
+                    physicsHitScanner.removeEnemy(curHitGeom);
                     hideHitMarker();
                     // Previously: createExplosion(curHitGeom.getLocalTranslation())
                     createExplosion(hitLocation);
@@ -1087,12 +1605,181 @@ public class FPSGame extends ConstrainedSimpleApplication
     }
     public static final int KINECT_JOINT_POSITIONS_OFFSET_MILLIMETERS = 32768;
 
+    /**
+     * Sets up the stages kinect readings go through before the camera mapping,
+     * one pipeline per player.
+     */
+    private void initKinectFilters() {
+        kinectPlayers = new KinectPlayerPipeline[kinectPlayerCount];
+        for (int playerIndex = 0; playerIndex < kinectPlayerCount; playerIndex++) {
+            kinectPlayers[playerIndex] = createKinectPlayerPipeline(playerIndex);
+        }
+        if (KINECT_AIM_FUSION) {
+            kinectAimFusion = new AimFusionFilter(KINECT_AIM_FUSION_TIME_CONSTANT_SECONDS, KINECT_AIM_FUSION_MAX_MOUSE_OFFSET_DEGREES * FastMath.DEG_TO_RAD);
+            flyCam.setAimDeltaListener(new AimDeltaListener() {
+                public boolean onAimDelta(float yawDelta, float pitchDelta) {
+                    if (!kinectSkeletonActive) {
+                        return false; // Plain mouse look
+                    }
+                    kinectAimFusion.addMouseDelta(yawDelta, pitchDelta);
+                    return true;
+                }
+            });
+        }
+        kinectAimStage = new AimMappingStage(kinectAimFusion);
+        kinectFrameStages.setStages(kinectAimStage);
+        if (kinectMultiSampler != null) {
+            // Per-reading stages run on a worker per player, in parallel
+            kinectPlayerWorkers = new KinectPlayerWorker[kinectPlayerCount];
+            for (int playerIndex = 0; playerIndex < kinectPlayerCount; playerIndex++) {
+                kinectPlayerWorkers[playerIndex] = new KinectPlayerWorker(kinectPlayers[playerIndex], kinectMultiSampler);
+                kinectPlayerWorkers[playerIndex].start();
+            }
+            kinectMultiSampler.start();
+        } else if (kinectStageWorker && kinectInput != null) {
+            kinectSourcePump = new SkeletonSourcePump(kinectInput);
+            kinectPlayerWorkers = new KinectPlayerWorker[]{new KinectPlayerWorker(kinectPlayers[0], kinectSourcePump)};
+            kinectPlayerWorkers[0].start();
+            kinectSourcePump.start();
+        }
+        if (kinectPlayerCount > 1) {
+            initKinectCoopView();
+        }
+    }
+
+    /**
+     * @param playerIndex 0 for player 1, 1 for player 2.
+     */
+    private KinectPlayerPipeline createKinectPlayerPipeline(final int playerIndex) {
+        KinectPlayerPipeline pipeline = new KinectPlayerPipeline(playerIndex);
+        if (KINECT_VALIDATION) {
+            pipeline.setValidationStage(new ValidationStage());
+        }
+        if (KINECT_SMOOTHING) {
+            OneEuroSkeletonFilter smoothingFilter = new OneEuroSkeletonFilter(KINECT_SMOOTHING_MIN_CUTOFF_HZ, KINECT_SMOOTHING_BETA, KINECT_SMOOTHING_DERIVATIVE_CUTOFF_HZ);
+            if (!KINECT_SMOOTHING_ALL_JOINTS) {
+                smoothingFilter.setAllJointsFiltered(false);
+                smoothingFilter.setJointFiltered(SHOULDER_RIGHT, true);
+                smoothingFilter.setJointFiltered(WRIST_RIGHT, true);
+                smoothingFilter.setJointFiltered(SHOULDER_CENTER, true);
+            }
+            pipeline.setSmoothingFilter(smoothingFilter);
+        }
+        if (KINECT_PREDICTION) {
+            pipeline.setPredictionFilter(new PredictionSkeletonFilter(KINECT_PREDICTION_HORIZON_MILLIS, KINECT_PREDICTION_MAX_SPEED_MM_PER_SEC));
+        }
+        if (KINECT_INTERPOLATION) {
+            pipeline.setInterpolator(new SkeletonInterpolator());
+        }
+        if (KINECT_GESTURES && kinectGestureDefinitions.length > 0) {
+            pipeline.setGestureRecognizer(createKinectGestures());
+            pipeline.setGestureListener(new GestureListener() {
+                public void onGesture(GestureTemplate gesture, float averageDistance) {
+                    if (gameOver) {
+                        return;
+                    }
+                    if (gesture.getName().equals("shoot")) {
+                        if (playerIndex == 0) {
+                            shoot();
+                        } else {
+                            shootFromKinectCoopCam();
+                        }
+                    } else if (gesture.getName().equals("jump")) {
+                        player.jump(); // Both players share the body
+                    }
+                }
+            });
+        }
+        return pipeline;
+    }
+
+    /**
+     * Split screen for two kinect players: player 1 keeps cam on the left
+     * half, player 2 gets kinectCoopCam on the right half. Both see from the
+     * same body; player 2 only aims and shoots.
+     */
+    private void initKinectCoopView() {
+        kinectCoopCam = cam.clone();
+        cam.setViewPort(0f, 0.5f, 0f, 1f);
+        kinectCoopCam.setViewPort(0.5f, 1f, 0f, 1f);
+        float aspect = (cam.getWidth() * 0.5f) / cam.getHeight();
+        cam.setFrustumPerspective(45f, aspect, cam.getFrustumNear(), cam.getFrustumFar());
+        kinectCoopCam.setFrustumPerspective(45f, aspect, cam.getFrustumNear(), cam.getFrustumFar());
+
+        ViewPort coopView = renderManager.createMainView("Kinect player 2", kinectCoopCam);
+        coopView.setClearFlags(true, true, true);
+        coopView.setBackgroundColor(viewPort.getBackgroundColor());
+        coopView.attachScene(rootNode);
+
+        kinectCoopAim = new AimFusionFilter(KINECT_AIM_FUSION_TIME_CONSTANT_SECONDS, 0); // No mouse for player 2
+    }
+
+    /**
+     * Loads the gesture templates in kinectGestureDefinitions into a new
+     * recognizer (templates keep matching state, so every player gets their
+     * own).
+     */
+    private GestureRecognizer createKinectGestures() {
+        GestureRecognizer gestures = new GestureRecognizer();
+        gestures.setBudgetNanos(KINECT_GESTURE_BUDGET_MICROS * 1000L);
+        for (String definition : kinectGestureDefinitions) {
+            // ACTION:FILE[:THRESHOLD]; the file name may contain colons
+            int actionEnd = definition.indexOf(':');
+            int fileEnd = definition.lastIndexOf(':');
+            String action = definition.substring(0, Math.max(actionEnd, 0));
+            String file = definition.substring(actionEnd + 1);
+            float threshold = KINECT_GESTURE_DEFAULT_THRESHOLD;
+            if (fileEnd > actionEnd) {
+                try {
+                    threshold = Float.parseFloat(definition.substring(fileEnd + 1));
+                    file = definition.substring(actionEnd + 1, fileEnd);
+                } catch (NumberFormatException e) {
+                    // No threshold given
+                }
+            }
+            if (!action.equals("shoot") && !action.equals("jump")) {
+                System.err.println("Unknown kinect gesture action in " + definition + "; use shoot or jump.");
+                continue;
+            }
+            try {
+                GestureTemplate template = GestureTemplate.fromRecording(action, ReplayInputSource.openRecording(new File(file)), threshold);
+                if (template.getPointCount() == 0) {
+                    System.err.println("Kinect gesture " + definition + " has no tracked frames; skipping it.");
+                    continue;
+                }
+                gestures.addTemplate(template);
+            } catch (IOException e) {
+                System.err.println("Can't load kinect gesture " + definition + " (" + e.getMessage() + "); skipping it.");
+            }
+        }
+        return gestures;
+    }
+
     private void updateKinectJointsActions() {
-        if (!ENABLE_KINECT_INPUT || kinect == null) {
+        if (!ENABLE_KINECT_INPUT || kinectInput == null) {
             return;
         }
-
-        joints = kinect.getJoints();
+        long renderNanos = System.nanoTime();
+
+        // Wait-free read of whatever the input source (or player 1's worker) got last
+        SkeletonFrame latestFrame = (kinectPlayerWorkers != null) ? kinectPlayerWorkers[0].getLatestFrame() : kinectInput.getLatestFrame();
+        int changes = kinectPlayers[0].update(latestFrame, renderNanos); // May shoot or jump
+        if ((changes & KinectPlayerPipeline.NEW_READING) != 0) {
+            if (latestFrame.isTracked()) {
+                // Stamped by the input source when the reading came in
+                inputLatency.inputReceived(InputLatencyTracker.PATH_KINECT, latestFrame.getTimestampNanos());
+            }
+            if (kinectPlayerWorkers == null) {
+                // Raw readings only: workers hand out processed frames, so
+                // there's no recorder (see main()) and no journaling then
+                if (kinectRecorder != null) {
+                    kinectRecorder.record(latestFrame); // Never waits on the disk
+                }
+                inputJournal.recordKinect(0, latestFrame);
+            }
+        }
+        inputLatency.stageReached(InputLatencyTracker.PATH_KINECT, InputLatencyTracker.STAGE_PROCESSED);
+        SkeletonFrame kinectFrame = kinectPlayers[0].getFrame();
 
 //        if (joints != null) {
 //            // Readings' units are in millimeters (mm)
@@ -1110,64 +1797,34 @@ public class FPSGame extends ConstrainedSimpleApplication
 ////            }
 //        }
 
-        if (joints != null) {
-            if (!kinectSkeletonActive) {
-                // Kinect skeleton reading has just become available,
-                // when the readings are previously NOT available.
-                onKinectSkeletonActivated(); // Invoke listener
+        if ((changes & KinectPlayerPipeline.ACTIVATED) != 0) {
+            // Kinect skeleton reading has just become available,
+            // when the readings are previously NOT available.
+            onKinectSkeletonActivated(); // Invoke listener
+            if (kinectAimFusion != null) {
+                kinectAimFusion.reset(cam.getDirection(kinectCurCamDir)); // Turn from where the mouse left off
             }
+        } else if ((changes & KinectPlayerPipeline.DEACTIVATED) != 0) {
+            // Kinect skeleton reading has just become NOT available,
+            // when the readings are previously available.
+            onKinectSkeletonDeactivated(); // Invoke listener
+            if (kinectAimFusion != null) {
+                kinectAimFusion.clearKinectAim(); // Mouse look turns the camera again
+            }
+        }
 
-            // Save needed readings to buffers
-            spine = joints[SPINE];
-            spineX = spine[KJ_X];
-            spineY = spine[KJ_Y];
-            spineZ = spine[KJ_Z];
-
-            leftShoulder = joints[SHOULDER_LEFT];
-            leftShoulderX = leftShoulder[KJ_X];
-            leftShoulderY = leftShoulder[KJ_Y];
-            leftShoulderZ = leftShoulder[KJ_Z];
-
-            leftWrist = joints[WRIST_LEFT];
-            leftWristX = leftWrist[KJ_X];
-            leftWristY = leftWrist[KJ_Y];
-            leftWristZ = leftWrist[KJ_Z];
-
-            centerShoulder = joints[SHOULDER_CENTER];
-            centerShoulderX = centerShoulder[KJ_X];
-            centerShoulderY = centerShoulder[KJ_Y];
-            centerShoulderZ = centerShoulder[KJ_Z];
-
-            rightShoulder = joints[SHOULDER_RIGHT];
-            rightShoulderX = rightShoulder[KJ_X];
-            rightShoulderY = rightShoulder[KJ_Y];
-            rightShoulderZ = rightShoulder[KJ_Z];
-
-            rightWrist = joints[WRIST_RIGHT];
-            rightWristX = rightWrist[KJ_X];
-            rightWristY = rightWrist[KJ_Y];
-            rightWristZ = rightWrist[KJ_Z];
-
-//            float rightHandX = ((float) (rightWrist[1])),// * kinectLookUpDownMultiplier,
-//                    rightHandY = ((float) (rightWrist[2])),// * kinectLookUpDownMultiplier,
-//                    rightHandZ = ((float) -(rightWrist[3]));// * kinectTurnLeftRightMultiplier;  // Negated reading to get matching turn left/right directions
-//System.out.println(rightHandZ);
-//            System.out.println("rightHandX = "+rightHandX+" | rightHandY = "+rightHandY+" | rightHandZ = "+rightHandZ);
-
-            Vector3f curCamDir = cam.getDirection();
-
-            int xRightWristOffsetFromRightShoulder = (rightWristX - rightShoulderX), // *kinectTurnLeftRightMultiplier
-                    yRightWristOffsetFromRightShoulder = (rightWristY - rightShoulderY),
-                    zRightWristOffsetFromRightShoulder = (rightWristZ - rightShoulderZ);
+        if (kinectPlayers[0].isActive() && kinectFrame.isTracked()) {
 
-            Vector3f kinectLoc = new Vector3f(curCamDir.x + xRightWristOffsetFromRightShoulder, curCamDir.y + yRightWristOffsetFromRightShoulder, curCamDir.z + zRightWristOffsetFromRightShoulder);
+            // Joints are read straight out of kinectFrame (no per-frame copies),
+            // e.g. kinectFrame.get(WRIST_RIGHT, KJ_X).
+            kinectAimStage.setFrame(tpf, cam.getDirection(kinectCurCamDir));
+            kinectFrameStages.process(kinectFrame); // Tracked, so kept
+            kinectLookDir.set(kinectAimStage.getLookDirection());
 
 //                    hitMarker.setLocalTranslation(newLoc);
 //                    showHitMarker();
 
-            int xRightWristOffsetFromCenterShoulder = (rightWristX - centerShoulderX),
-                    yRightWristOffsetFromCenterShoulder = (rightWristY - centerShoulderY),
-                    zRightWristOffsetFromCenterShoulder = (rightWristZ - centerShoulderZ);
+            int xRightWristOffsetFromCenterShoulder = KinectAimMapping.getRightWristXOffsetFromCenterShoulder(kinectFrame);
 
 //            int xRightWristOffsetFromSpine = (rightWristX-spineX),
 //                yRightWristOffsetFromSpine = (rightWristY-spineY),
@@ -1185,14 +1842,58 @@ public class FPSGame extends ConstrainedSimpleApplication
 //                    shoot();
 //                }
 
-            cam.lookAtDirection(kinectLoc, Vector3f.UNIT_Y);
-        } else {
-            if (kinectSkeletonActive) {
-                // Kinect skeleton reading has just become NOT available,
-                // when the readings are previously available.
-                onKinectSkeletonDeactivated(); // Invoke listener
+            cam.lookAtDirection(kinectLookDir, Vector3f.UNIT_Y);
+            inputLatency.stageReached(InputLatencyTracker.PATH_KINECT, InputLatencyTracker.STAGE_CAMERA);
+            if (kinectAimFusion != null) {
+                // Mouse look, if any, went into the fused aim
+                inputLatency.stageReached(InputLatencyTracker.PATH_MOUSE, InputLatencyTracker.STAGE_CAMERA);
             }
         }
+
+        if (kinectPlayerCount > 1) {
+            updateKinectCoopPlayer(renderNanos);
+        }
+    }
+
+    /**
+     * Player 2 aims kinectCoopCam; see initKinectCoopView().
+     */
+    private void updateKinectCoopPlayer(long renderNanos) {
+        int changes = kinectPlayers[1].update(kinectPlayerWorkers[1].getLatestFrame(), renderNanos); // May shoot or jump
+        SkeletonFrame coopFrame = kinectPlayers[1].getFrame();
+        kinectCoopCam.setLocation(cam.getLocation());
+        if ((changes & KinectPlayerPipeline.ACTIVATED) != 0) {
+            kinectCoopAim.reset(kinectCoopCam.getDirection(kinectCurCamDir));
+        } else if ((changes & KinectPlayerPipeline.DEACTIVATED) != 0) {
+            kinectCoopAim.clearKinectAim();
+        }
+        if (kinectPlayers[1].isActive() && coopFrame.isTracked()) {
+            kinectCoopAim.setKinectAim(coopFrame);
+            kinectCoopAim.update(tpf);
+            kinectCoopCam.lookAtDirection(kinectCoopAim.getDirection(kinectLookDir), Vector3f.UNIT_Y);
+        }
+    }
+
+    /**
+     * Player 2 shoots along kinectCoopCam; the fire rate limit is shared.
+     */
+    private void shootFromKinectCoopCam() {
+        updateCollisionResultsOfShootablesWithinPlayerAim(kinectCoopCam);
+        shoot(kinectCoopCam, 1);
+        updateCollisionResultsOfShootablesWithinPlayerAim(cam);
+    }
+
+    /**
+     * @return When the kinect reading behind the player's current aim came
+     * in (System.nanoTime(), as stamped by the input source), or 0 if the
+     * kinect isn't aiming for them.
+     */
+    private long getKinectAimNanos(int playerIndex) {
+        if (kinectPlayers == null || playerIndex >= kinectPlayers.length || !kinectPlayers[playerIndex].isActive()) {
+            return 0;
+        }
+        SkeletonFrame aimFrame = kinectPlayers[playerIndex].getFrame();
+        return aimFrame.isTracked() ? aimFrame.getTimestampNanos() : 0;
     }
     /**
      * This is the main event loop--walking happens here. We check in which
@@ -1226,7 +1927,7 @@ public class FPSGame extends ConstrainedSimpleApplication
 
         updateHUD();
 
-        updateCollisionResultsOfShootablesWithinPlayerAim();
+        updateCollisionResultsOfShootablesWithinPlayerAim(cam);
 
         updateHitMarker();
 
@@ -1236,12 +1937,59 @@ public class FPSGame extends ConstrainedSimpleApplication
 
         makeEnemiesDodgePlayerAim();
         updateDodgeShooterAIs();
+        lagCompensator.record(System.nanoTime());
 
         loadWeapon();
         loadLaser();
     }
     private int restartGameOverTimer = 0;
 
+    @Override
+    public void destroy() {
+        if (kinectMultiSampler != null) {
+            kinectMultiSampler.shutdown();
+            System.out.println(kinectMultiSampler);
+        }
+        if (kinectSourcePump != null) {
+            kinectSourcePump.shutdown();
+            System.out.println(kinectSourcePump);
+        }
+        for (int playerIndex = 0; kinectPlayerWorkers != null && playerIndex < kinectPlayerWorkers.length; playerIndex++) {
+            kinectPlayerWorkers[playerIndex].shutdown();
+            System.out.println(kinectPlayerWorkers[playerIndex]);
+        }
+        if (kinectInput != null) {
+            kinectInput.stop();
+            System.out.println(kinectInput);
+        }
+        for (int playerIndex = 0; kinectPlayers != null && playerIndex < kinectPlayers.length; playerIndex++) {
+            System.out.println(kinectPlayers[playerIndex]);
+        }
+        if (kinectAimStage != null) {
+            System.out.println(kinectFrameStages);
+        }
+        if (kinectRecorder != null) {
+            try {
+                kinectRecorder.close();
+            } catch (IOException e) {
+                System.err.println("Kinect session recording " + kinectRecorder.getFile() + " may be incomplete: " + e.getMessage());
+            }
+            System.out.println(kinectRecorder);
+        }
+        System.out.print("Input latency:\n" + inputLatency.getSummary());
+        System.out.println(inputJournal);
+        if (inputJournalReplayer != null) {
+            System.out.println(inputJournalReplayer);
+        }
+        if (kinectDepthSilhouette != null) {
+            System.out.println(kinectDepthSilhouette);
+        }
+        System.out.println(hitScanner);
+        System.out.println(physicsHitScanner);
+        System.out.println(lagCompensator);
+        super.destroy();
+    }
+
     /**
      * Place stuff to update every one second in here
      */
@@ -1338,6 +2086,9 @@ public class FPSGame extends ConstrainedSimpleApplication
             enemyHitPoints.put(curEnemy, DEFAULT_ENEMY_HIT_POINTS);
             enableRigidBodyControl(curEnemy);
             shootables.attachChild(curEnemy);
+            hitScanner.addEnemy(curEnemy, enemyHitboxes.get(curEnemy));
+            physicsHitScanner.addEnemy(curEnemy);
+            lagCompensator.addEnemy(curEnemy); // Histories start over at the spawn points
         }
     }
 
@@ -1345,7 +2096,10 @@ public class FPSGame extends ConstrainedSimpleApplication
         for (Geometry curEnemy : enemyGeoms) {
             disableRigidBodyControl(curEnemy);
             curEnemy.removeFromParent();
+            physicsHitScanner.removeEnemy(curEnemy);
         }
+        hitScanner.clearEnemies();
+        lagCompensator.clearEnemies();
     }
 
     private void loadWeapon() {
@@ -1744,6 +2498,19 @@ public class FPSGame extends ConstrainedSimpleApplication
         return ((Geometry) ((Node) spatial).getChild(0));
     }
 
+    /**
+     * Binds OTO_HITBOXES to the skeleton golemSpatial was loaded with; its
+     * SkeletonControl stays there after golemGeom moves to the shootables.
+     */
+    private void addOtoHitboxes(Spatial golemSpatial, Geometry golemGeom) {
+        SkeletonControl skeletonControl = golemSpatial.getControl(SkeletonControl.class);
+        if (skeletonControl == null) {
+            System.err.println(golemSpatial.getName() + " has no skeleton; it's shot through its mesh.");
+            return;
+        }
+        enemyHitboxes.put(golemGeom, new HitboxSet(golemGeom, skeletonControl.getSkeleton(), OTO_HITBOXES));
+    }
+
     private Geometry loadModelToGeom(String modelFilePath) {
         return getGeomFromSpatial(assetManager.loadModel(modelFilePath));
     }
@@ -1771,12 +2538,12 @@ public class FPSGame extends ConstrainedSimpleApplication
     /**
      * This is a kinect event listener. This is run whenever kinect skeleton
      * reading becomes available, when the readings are previously NOT
-     * available.
+     * available. Debounced (see KinectPlayerPipeline), so a flickering
+     * skeleton doesn't call this every few frames.
      */
     private void onKinectSkeletonActivated() {
         kinectSkeletonActive = true;
 
-        kinectControlsStatusText.setText("Kinect Controls Active");
         showKinectControlsStatusText();
 
         // Decrease the difficulty since aiming with kinect is harder (than mouse)
@@ -1848,14 +2615,53 @@ public class FPSGame extends ConstrainedSimpleApplication
         return maxShootRange;
     }
 
-    private void updateCollisionResultsOfShootablesWithinPlayerAim() {
-        // 1. Reset results list.
-        collisionResultsOfShootablesWithinPlayerAim = new CollisionResults();
-        // 2. Aim the ray from cam loc to cam direction.
-        Ray ray = new Ray(cam.getLocation(), cam.getDirection());
+    /**
+     * @param shooterCam The camera the shot goes along (cam, or player 2's).
+     */
+    private void updateCollisionResultsOfShootablesWithinPlayerAim(Camera shooterCam) {
+        updateCollisionResultsOfShootablesWithinPlayerAim(shooterCam, 0);
+    }
 
-        // 3. Collect intersections between Ray and Shootables in results list.
-        shootables.collideWith(ray, collisionResultsOfShootablesWithinPlayerAim);
+    /**
+     * @param aimNanos When the shooter aimed, to check against the enemies
+     * as they were then (see LAG_COMPENSATION), or 0 for as they are now.
+     */
+    private void updateCollisionResultsOfShootablesWithinPlayerAim(Camera shooterCam, long aimNanos) {
+        if (aimNanos != 0 && hitScanMode != HitScanMode.PHYSICS) {
+            lagCompensator.rewind(aimNanos, System.nanoTime());
+        }
+        try {
+            scanShootablesWithinPlayerAim(shooterCam);
+        } finally {
+            lagCompensator.restore();
+        }
+    }
+
+    private void scanShootablesWithinPlayerAim(Camera shooterCam) {
+        // 1. Reset results list.
+        if (collisionResultsOfShootablesWithinPlayerAim == null) {
+            collisionResultsOfShootablesWithinPlayerAim = new CollisionResults();
+        }
+        collisionResultsOfShootablesWithinPlayerAim.clear();
+        hitZoneOfShootableWithinPlayerAim = null;
+
+        // 2. Scan along the ray from cam loc in cam direction; only the
+        // closest hit is ever used, so that's all the scanners put in the list.
+        CollisionResult closest;
+        switch (hitScanMode) {
+            case NODE:
+                shootables.collideWith(new Ray(shooterCam.getLocation(), shooterCam.getDirection()), collisionResultsOfShootablesWithinPlayerAim);
+                return;
+            case PHYSICS:
+                closest = physicsHitScanner.scan(shooterCam.getLocation(), shooterCam.getDirection());
+                break;
+            default:
+                closest = hitScanner.scan(shooterCam.getLocation(), shooterCam.getDirection());
+                hitZoneOfShootableWithinPlayerAim = hitScanner.getLastHitZone();
+        }
+        if (closest != null) {
+            collisionResultsOfShootablesWithinPlayerAim.addCollision(closest);
+        }
     }
 
     private boolean aShootableIsWithinPlayerAim() {
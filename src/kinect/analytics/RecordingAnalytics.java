@@ -0,0 +1,284 @@
+package kinect.analytics;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import kinect.input.SkeletonFrame;
+import kinect.recording.PoorMocapConverter;
+import kinect.recording.RecordingFrameReader;
+import kinect.recording.SessionRecordingFormat;
+import kinect.recording.SessionRecordingReader;
+
+/**
+ *
+ * Offline motion statistics (see RecordingStats) over directories of
+ * recordings, for tuning the kinect aim multipliers and the AI difficulty.
+ * Files are analyzed in parallel on a fork/join pool, one file per task, each
+ * streamed through once; the per-file results are merged into a total on the
+ * way back up. The report is CSV (a per-file table, then a per-joint table) or
+ * JSON.
+ *
+ * A .poormocap or .sksession file that has already been converted to a .skrec
+ * next to it is skipped, so a recording isn't counted twice.
+ *
+ * Usage: java kinect.analytics.RecordingAnalytics [--format=csv|json]
+ * [--out=FILE] [--threads=N] directory-or-file...
+ */
+public class RecordingAnalytics {
+
+    public static final String TOTAL_NAME = "TOTAL";
+
+    public static void main(String[] args) throws IOException {
+        String format = "csv";
+        File out = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<File> inputs = new ArrayList<File>();
+        for (String arg : args) {
+            if (arg.startsWith("--format=")) {
+                format = arg.substring("--format=".length());
+            } else if (arg.startsWith("--out=")) {
+                out = new File(arg.substring("--out=".length()));
+            } else if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            } else {
+                inputs.add(new File(arg));
+            }
+        }
+        if (inputs.isEmpty() || !(format.equals("csv") || format.equals("json"))) {
+            System.err.println("Usage: java " + RecordingAnalytics.class.getName() + " [--format=csv|json] [--out=FILE] [--threads=N] directory-or-file...");
+            System.exit(2);
+        }
+
+        List<File> files = findRecordings(inputs);
+        long startNanos = System.nanoTime();
+        RecordingStats[] results = new RecordingStats[files.size()];
+        RecordingStats total = analyze(files, results, threads);
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        PrintWriter writer = (out != null) ? new PrintWriter(new FileWriter(out)) : new PrintWriter(System.out);
+        try {
+            if (format.equals("json")) {
+                writeJson(writer, results, total);
+            } else {
+                writeCsv(writer, results, total);
+            }
+        } finally {
+            writer.flush();
+            if (out != null) {
+                writer.close();
+            }
+        }
+        for (RecordingStats stats : results) {
+            if (stats.getError() != null) {
+                System.err.println("Couldn't read " + stats.getName() + ": " + stats.getError());
+            }
+        }
+        System.err.println("Analyzed " + files.size() + " recordings (" + total.getFrames() + " frames) in " + (elapsedNanos / 1000000) + " ms on " + threads + " threads = " + Math.round(total.getFrames() / (elapsedNanos / 1e9)) + " frames/s");
+    }
+
+    /**
+     * Lists the recordings in the given directories (not recursively) and
+     * files, sorted by name per directory.
+     */
+    public static List<File> findRecordings(List<File> inputs) {
+        List<File> files = new ArrayList<File>();
+        for (File input : inputs) {
+            if (input.isDirectory()) {
+                File[] children = input.listFiles();
+                Arrays.sort(children);
+                for (File child : children) {
+                    if (child.isFile() && RecordingFrameReader.isRecording(child) && !hasConvertedCopy(child)) {
+                        files.add(child);
+                    }
+                }
+            } else {
+                files.add(input);
+            }
+        }
+        return files;
+    }
+
+    private static boolean hasConvertedCopy(File file) {
+        String name = file.getName();
+        String converted;
+        if (name.endsWith(PoorMocapConverter.POORMOCAP_FILE_EXTENSION)) {
+            converted = PoorMocapConverter.toOutputName(file);
+        } else if (name.endsWith(SessionRecordingFormat.FILE_EXTENSION)) {
+            converted = SessionRecordingReader.toOutputName(file);
+        } else {
+            return false;
+        }
+        return new File(file.getParentFile(), converted).isFile();
+    }
+
+    /**
+     * Analyzes every file on a pool of the given size.
+     *
+     * @param results Receives each file's stats, in the files' order.
+     * @return All files' stats merged.
+     */
+    public static RecordingStats analyze(List<File> files, RecordingStats[] results, int threads) {
+        if (files.isEmpty()) {
+            return new RecordingStats(TOTAL_NAME);
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(new AnalyzeTask(files, results, 0, files.size()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Analyzes files [from, to): splits in halves down to one file per task.
+     */
+    private static class AnalyzeTask extends RecursiveTask<RecordingStats> {
+
+        private static final long serialVersionUID = 1L;
+        private final List<File> files;
+        private final RecordingStats[] results;
+        private final int from, to;
+
+        AnalyzeTask(List<File> files, RecordingStats[] results, int from, int to) {
+            this.files = files;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected RecordingStats compute() {
+            if (to - from == 1) {
+                RecordingStats stats = RecordingStats.analyze(files.get(from));
+                results[from] = stats;
+                RecordingStats total = new RecordingStats(TOTAL_NAME);
+                total.merge(stats);
+                return total;
+            }
+            int middle = (from + to) >>> 1;
+            AnalyzeTask first = new AnalyzeTask(files, results, from, middle);
+            first.fork();
+            RecordingStats total = new AnalyzeTask(files, results, middle, to).compute();
+            total.merge(first.join());
+            return total;
+        }
+    }
+
+    public static void writeCsv(PrintWriter out, RecordingStats[] results, RecordingStats total) {
+        out.println("file,frames,trackedFrames,durationSec,trackingLosses,trackingLossesPerMin,untrackedSec,longestDropoutMs,gaps,longestIntervalMs,"
+                + "aimXp5Mm,aimXp50Mm,aimXp95Mm,aimYp5Mm,aimYp50Mm,aimYp95Mm,error");
+        for (RecordingStats stats : results) {
+            writeCsvSummary(out, stats);
+        }
+        writeCsvSummary(out, total);
+        out.println();
+        out.println("file,joint,frames,minXMm,maxXMm,minYMm,maxYMm,minZMm,maxZMm,speedMeanMmPerSec,speedP50,speedP95,speedP99,speedMax");
+        for (RecordingStats stats : results) {
+            writeCsvJoints(out, stats);
+        }
+        writeCsvJoints(out, total);
+    }
+
+    private static void writeCsvSummary(PrintWriter out, RecordingStats stats) {
+        out.println(csvField(stats.getName()) + "," + stats.getFrames() + "," + stats.getTrackedFrames()
+                + "," + format(stats.getDurationSeconds()) + "," + stats.getTrackingLosses()
+                + "," + format(stats.getTrackingLossesPerMinute()) + "," + format(stats.getUntrackedSeconds())
+                + "," + stats.getLongestDropoutMillis() + "," + stats.getGaps() + "," + stats.getLongestIntervalMillis()
+                + "," + stats.getAimXOffsets().getPercentile(5) + "," + stats.getAimXOffsets().getPercentile(50) + "," + stats.getAimXOffsets().getPercentile(95)
+                + "," + stats.getAimYOffsets().getPercentile(5) + "," + stats.getAimYOffsets().getPercentile(50) + "," + stats.getAimYOffsets().getPercentile(95)
+                + "," + (stats.getError() != null ? csvField(stats.getError()) : ""));
+    }
+
+    private static void writeCsvJoints(PrintWriter out, RecordingStats stats) {
+        for (int joint = 0; joint < SkeletonFrame.JOINT_COUNT; joint++) {
+            ValueHistogram speeds = stats.getSpeeds(joint);
+            out.println(csvField(stats.getName()) + "," + RecordingStats.JOINT_NAMES[joint]
+                    + "," + stats.getJointFrames(joint) + "," + stats.getMin(joint, 0) + "," + stats.getMax(joint, 0)
+                    + "," + stats.getMin(joint, 1) + "," + stats.getMax(joint, 1)
+                    + "," + stats.getMin(joint, 2) + "," + stats.getMax(joint, 2)
+                    + "," + format(speeds.getMean()) + "," + speeds.getPercentile(50) + "," + speeds.getPercentile(95)
+                    + "," + speeds.getPercentile(99) + "," + speeds.getMax());
+        }
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    public static void writeJson(PrintWriter out, RecordingStats[] results, RecordingStats total) {
+        out.println("{");
+        out.println("  \"files\": [");
+        for (int i = 0; i < results.length; i++) {
+            writeJsonStats(out, results[i], "    ");
+            out.println(i < results.length - 1 ? "," : "");
+        }
+        out.println("  ],");
+        out.print("  \"total\": ");
+        writeJsonStats(out, total, "  ");
+        out.println();
+        out.println("}");
+    }
+
+    private static void writeJsonStats(PrintWriter out, RecordingStats stats, String indent) {
+        out.println(indent + "{");
+        out.println(indent + "  \"file\": " + jsonString(stats.getName()) + ",");
+        if (stats.getError() != null) {
+            out.println(indent + "  \"error\": " + jsonString(stats.getError()) + ",");
+        }
+        out.println(indent + "  \"frames\": " + stats.getFrames() + ", \"trackedFrames\": " + stats.getTrackedFrames()
+                + ", \"durationSec\": " + format(stats.getDurationSeconds()) + ",");
+        out.println(indent + "  \"trackingLosses\": " + stats.getTrackingLosses() + ", \"trackingLossesPerMin\": " + format(stats.getTrackingLossesPerMinute())
+                + ", \"untrackedSec\": " + format(stats.getUntrackedSeconds()) + ", \"longestDropoutMs\": " + stats.getLongestDropoutMillis() + ",");
+        out.println(indent + "  \"gaps\": " + stats.getGaps() + ", \"longestIntervalMs\": " + stats.getLongestIntervalMillis() + ",");
+        out.println(indent + "  \"aimXOffsetMm\": " + jsonDistribution(stats.getAimXOffsets()) + ",");
+        out.println(indent + "  \"aimYOffsetMm\": " + jsonDistribution(stats.getAimYOffsets()) + ",");
+        out.println(indent + "  \"joints\": {");
+        for (int joint = 0; joint < SkeletonFrame.JOINT_COUNT; joint++) {
+            out.println(indent + "    " + jsonString(RecordingStats.JOINT_NAMES[joint]) + ": {"
+                    + "\"frames\": " + stats.getJointFrames(joint) + ", "
+                    + "\"rangeMm\": [[" + stats.getMin(joint, 0) + ", " + stats.getMax(joint, 0) + "], ["
+                    + stats.getMin(joint, 1) + ", " + stats.getMax(joint, 1) + "], ["
+                    + stats.getMin(joint, 2) + ", " + stats.getMax(joint, 2) + "]], "
+                    + "\"speedMmPerSec\": " + jsonDistribution(stats.getSpeeds(joint)) + "}"
+                    + (joint < SkeletonFrame.JOINT_COUNT - 1 ? "," : ""));
+        }
+        out.println(indent + "  }");
+        out.print(indent + "}");
+    }
+
+    private static String jsonDistribution(ValueHistogram histogram) {
+        return "{\"count\": " + histogram.getCount() + ", \"mean\": " + format(histogram.getMean())
+                + ", \"min\": " + histogram.getMin() + ", \"p5\": " + histogram.getPercentile(5)
+                + ", \"p50\": " + histogram.getPercentile(50) + ", \"p95\": " + histogram.getPercentile(95)
+                + ", \"p99\": " + histogram.getPercentile(99) + ", \"max\": " + histogram.getMax() + "}";
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder json = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+}
@@ -0,0 +1,328 @@
+package kinect.analytics;
+
+import java.io.File;
+import java.io.IOException;
+import kinect.input.SkeletonFrame;
+import kinect.recording.RecordingFrameReader;
+
+/**
+ *
+ * Motion statistics of one recording (or, merged, of many), gathered while
+ * streaming through its frames once in constant memory:
+ * - tracking: tracked frames, tracking losses (tracked to untracked) per
+ * minute, untracked time and the longest dropout;
+ * - gaps: intervals between frames longer than GAP_MILLIS, and the longest;
+ * - per joint: how often it was tracked, the range of x, y and z, and the
+ * speed distribution;
+ * - aiming: the distribution of the right wrist's x and y offset from the
+ * right shoulder, which is what the kinect turn and look multipliers scale.
+ * Joints in state JOINT_NOT_TRACKED (reported at 0, 0, 0) are left out of
+ * ranges, speeds and offsets.
+ */
+public class RecordingStats {
+
+    /*--- SETTINGS ---*/
+    /**
+     * A longer interval between two frames counts as a gap; about three
+     * frames at 30 Hz, two at PoorMoCap's 20 Hz. (Unit: milliseconds.)
+     */
+    public static final long GAP_MILLIS = 100;
+    /**
+     * Speeds are only computed between tracked frames at most this far apart.
+     * (Unit: milliseconds.)
+     */
+    public static final long MAX_SPEED_INTERVAL_MILLIS = 250;
+    /**
+     * Speed histogram buckets. (Unit: mm/s.)
+     */
+    public static final int SPEED_BUCKET_WIDTH = 25, SPEED_BUCKET_COUNT = 400;
+    /**
+     * Aim offset histogram buckets, centered on 0. (Unit: millimeters.)
+     */
+    public static final int OFFSET_BUCKET_WIDTH = 10, OFFSET_BUCKET_COUNT = 300;
+    /*--- END SETTINGS ---*/
+    /**
+     * KinectTCP's joint index system, see SkeletonFrame.
+     */
+    public static final String[] JOINT_NAMES = {
+        "HIP_CENTER", "SPINE", "SHOULDER_CENTER", "HEAD",
+        "SHOULDER_LEFT", "ELBOW_LEFT", "WRIST_LEFT", "HAND_LEFT",
+        "SHOULDER_RIGHT", "ELBOW_RIGHT", "WRIST_RIGHT", "HAND_RIGHT",
+        "HIP_LEFT", "KNEE_LEFT", "ANKLE_LEFT", "FOOT_LEFT",
+        "HIP_RIGHT", "KNEE_RIGHT", "ANKLE_RIGHT", "FOOT_RIGHT"
+    };
+    /**
+     * KinectTCP's joint tracking states (inferred joints are still used).
+     */
+    public static final int JOINT_NOT_TRACKED = 0, JOINT_INFERRED = 1, JOINT_TRACKED = 2;
+    public static final int AXES = 3;
+    private final String name;
+    private String error = null;
+    private int files = 0;
+    private long frames = 0, trackedFrames = 0;
+    private long durationNanos = 0, untrackedNanos = 0, longestDropoutNanos = 0;
+    private long trackingLosses = 0, gaps = 0, longestIntervalNanos = 0;
+    private final long[] jointFrames = new long[SkeletonFrame.JOINT_COUNT];
+    private final int[] minValues = new int[SkeletonFrame.JOINT_COUNT * AXES];
+    private final int[] maxValues = new int[SkeletonFrame.JOINT_COUNT * AXES];
+    private final ValueHistogram[] speeds = new ValueHistogram[SkeletonFrame.JOINT_COUNT];
+    private final ValueHistogram aimXOffsets, aimYOffsets;
+    /**
+     * Streaming state while reading one recording.
+     */
+    private final int[] previousValues = new int[SkeletonFrame.VALUE_COUNT];
+    private boolean havePrevious = false, previousTracked = false;
+    private long firstTimestampNanos, previousTimestampNanos, dropoutStartNanos;
+
+    public RecordingStats(String name) {
+        this.name = name;
+        for (int i = 0; i < minValues.length; i++) {
+            minValues[i] = Integer.MAX_VALUE;
+            maxValues[i] = Integer.MIN_VALUE;
+        }
+        for (int joint = 0; joint < SkeletonFrame.JOINT_COUNT; joint++) {
+            speeds[joint] = new ValueHistogram(0, SPEED_BUCKET_WIDTH, SPEED_BUCKET_COUNT);
+        }
+        int offsetLowest = -OFFSET_BUCKET_WIDTH * OFFSET_BUCKET_COUNT / 2;
+        aimXOffsets = new ValueHistogram(offsetLowest, OFFSET_BUCKET_WIDTH, OFFSET_BUCKET_COUNT);
+        aimYOffsets = new ValueHistogram(offsetLowest, OFFSET_BUCKET_WIDTH, OFFSET_BUCKET_COUNT);
+    }
+
+    /**
+     * Reads a whole recording. A recording that can't be read gives stats
+     * with getError() set (and whatever was read before the problem).
+     */
+    public static RecordingStats analyze(File file) {
+        RecordingStats stats = new RecordingStats(file.getName());
+        SkeletonFrame frame = new SkeletonFrame();
+        try {
+            RecordingFrameReader reader = RecordingFrameReader.open(file);
+            while (reader.next(frame)) {
+                stats.add(frame);
+            }
+        } catch (IOException e) {
+            stats.error = e.getMessage();
+        } catch (RuntimeException e) {
+            // E.g. a corrupt file read past its end
+            stats.error = e.toString();
+        }
+        stats.finish();
+        return stats;
+    }
+
+    /**
+     * Adds the next frame of the recording being read.
+     */
+    public void add(SkeletonFrame frame) {
+        long timestampNanos = frame.getTimestampNanos();
+        int[] values = frame.getValues();
+        frames++;
+        if (!havePrevious) {
+            firstTimestampNanos = timestampNanos;
+        } else {
+            long intervalNanos = timestampNanos - previousTimestampNanos;
+            if (intervalNanos > GAP_MILLIS * 1000000L) {
+                gaps++;
+            }
+            if (intervalNanos > longestIntervalNanos) {
+                longestIntervalNanos = intervalNanos;
+            }
+        }
+
+        if (frame.isTracked()) {
+            trackedFrames++;
+            if (havePrevious && !previousTracked) {
+                endDropout(timestampNanos);
+            }
+            for (int joint = 0; joint < SkeletonFrame.JOINT_COUNT; joint++) {
+                if (values[SkeletonFrame.index(joint, SkeletonFrame.KJ_STATE)] == JOINT_NOT_TRACKED) {
+                    continue;
+                }
+                jointFrames[joint]++;
+                for (int axis = 0; axis < AXES; axis++) {
+                    int value = values[SkeletonFrame.index(joint, SkeletonFrame.KJ_X + axis)];
+                    int i = joint * AXES + axis;
+                    if (value < minValues[i]) {
+                        minValues[i] = value;
+                    }
+                    if (value > maxValues[i]) {
+                        maxValues[i] = value;
+                    }
+                }
+            }
+            long intervalNanos = timestampNanos - previousTimestampNanos;
+            if (havePrevious && previousTracked && intervalNanos > 0 && intervalNanos <= MAX_SPEED_INTERVAL_MILLIS * 1000000L) {
+                for (int joint = 0; joint < SkeletonFrame.JOINT_COUNT; joint++) {
+                    int stateIndex = SkeletonFrame.index(joint, SkeletonFrame.KJ_STATE);
+                    if (values[stateIndex] != JOINT_NOT_TRACKED && previousValues[stateIndex] != JOINT_NOT_TRACKED) {
+                        speeds[joint].record((int) (distance(values, previousValues, joint) * 1e9 / intervalNanos));
+                    }
+                }
+            }
+            if (frame.get(SkeletonFrame.WRIST_RIGHT, SkeletonFrame.KJ_STATE) != JOINT_NOT_TRACKED
+                    && frame.get(SkeletonFrame.SHOULDER_RIGHT, SkeletonFrame.KJ_STATE) != JOINT_NOT_TRACKED) {
+                aimXOffsets.record(frame.get(SkeletonFrame.WRIST_RIGHT, SkeletonFrame.KJ_X) - frame.get(SkeletonFrame.SHOULDER_RIGHT, SkeletonFrame.KJ_X));
+                aimYOffsets.record(frame.get(SkeletonFrame.WRIST_RIGHT, SkeletonFrame.KJ_Y) - frame.get(SkeletonFrame.SHOULDER_RIGHT, SkeletonFrame.KJ_Y));
+            }
+            System.arraycopy(values, 0, previousValues, 0, SkeletonFrame.VALUE_COUNT);
+        } else if (!havePrevious || previousTracked) {
+            if (havePrevious) {
+                trackingLosses++;
+            }
+            dropoutStartNanos = timestampNanos;
+        }
+
+        havePrevious = true;
+        previousTracked = frame.isTracked();
+        previousTimestampNanos = timestampNanos;
+    }
+
+    private static double distance(int[] values, int[] previousValues, int joint) {
+        double squared = 0;
+        for (int axis = 0; axis < AXES; axis++) {
+            int i = SkeletonFrame.index(joint, SkeletonFrame.KJ_X + axis);
+            double difference = values[i] - previousValues[i];
+            squared += difference * difference;
+        }
+        return Math.sqrt(squared);
+    }
+
+    private void endDropout(long timestampNanos) {
+        long dropoutNanos = timestampNanos - dropoutStartNanos;
+        untrackedNanos += dropoutNanos;
+        if (dropoutNanos > longestDropoutNanos) {
+            longestDropoutNanos = dropoutNanos;
+        }
+    }
+
+    /**
+     * Ends the recording being read; a dropout still going on counts up to
+     * the last frame.
+     */
+    public void finish() {
+        if (havePrevious) {
+            if (!previousTracked) {
+                endDropout(previousTimestampNanos);
+            }
+            durationNanos += previousTimestampNanos - firstTimestampNanos;
+            files++;
+        }
+        havePrevious = false;
+    }
+
+    /**
+     * Adds another (finished) recording's stats to these.
+     */
+    public void merge(RecordingStats other) {
+        files += other.files;
+        frames += other.frames;
+        trackedFrames += other.trackedFrames;
+        durationNanos += other.durationNanos;
+        untrackedNanos += other.untrackedNanos;
+        longestDropoutNanos = Math.max(longestDropoutNanos, other.longestDropoutNanos);
+        trackingLosses += other.trackingLosses;
+        gaps += other.gaps;
+        longestIntervalNanos = Math.max(longestIntervalNanos, other.longestIntervalNanos);
+        for (int joint = 0; joint < SkeletonFrame.JOINT_COUNT; joint++) {
+            jointFrames[joint] += other.jointFrames[joint];
+        }
+        for (int i = 0; i < minValues.length; i++) {
+            minValues[i] = Math.min(minValues[i], other.minValues[i]);
+            maxValues[i] = Math.max(maxValues[i], other.maxValues[i]);
+        }
+        for (int joint = 0; joint < SkeletonFrame.JOINT_COUNT; joint++) {
+            speeds[joint].merge(other.speeds[joint]);
+        }
+        aimXOffsets.merge(other.aimXOffsets);
+        aimYOffsets.merge(other.aimYOffsets);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Why the recording couldn't be read (completely), or null.
+     */
+    public String getError() {
+        return error;
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getTrackedFrames() {
+        return trackedFrames;
+    }
+
+    public double getDurationSeconds() {
+        return durationNanos / 1e9;
+    }
+
+    public long getTrackingLosses() {
+        return trackingLosses;
+    }
+
+    public double getTrackingLossesPerMinute() {
+        return (durationNanos > 0) ? trackingLosses / (durationNanos / 60e9) : 0;
+    }
+
+    public double getUntrackedSeconds() {
+        return untrackedNanos / 1e9;
+    }
+
+    public long getLongestDropoutMillis() {
+        return longestDropoutNanos / 1000000;
+    }
+
+    public long getGaps() {
+        return gaps;
+    }
+
+    public long getLongestIntervalMillis() {
+        return longestIntervalNanos / 1000000;
+    }
+
+    /**
+     * @return Tracked frames in which the joint was tracked or inferred.
+     */
+    public long getJointFrames(int joint) {
+        return jointFrames[joint];
+    }
+
+    /**
+     * @param axis 0, 1, 2 for x, y, z.
+     * @return The smallest value seen; 0 if the joint was never tracked.
+     * (Unit: millimeters.)
+     */
+    public int getMin(int joint, int axis) {
+        return (jointFrames[joint] > 0) ? minValues[joint * AXES + axis] : 0;
+    }
+
+    public int getMax(int joint, int axis) {
+        return (jointFrames[joint] > 0) ? maxValues[joint * AXES + axis] : 0;
+    }
+
+    /**
+     * (Unit: mm/s.)
+     */
+    public ValueHistogram getSpeeds(int joint) {
+        return speeds[joint];
+    }
+
+    /**
+     * Right wrist x minus right shoulder x. (Unit: millimeters.)
+     */
+    public ValueHistogram getAimXOffsets() {
+        return aimXOffsets;
+    }
+
+    public ValueHistogram getAimYOffsets() {
+        return aimYOffsets;
+    }
+}
@@ -0,0 +1,98 @@
+package kinect.analytics;
+
+/**
+ *
+ * Fixed-bucket histogram of int values, for distributions (speeds, offsets)
+ * over arbitrarily long recordings in constant memory. Values outside the
+ * covered range are counted in an underflow/overflow bucket; min, max and
+ * mean are exact. Histograms with the same buckets can be merged.
+ */
+public class ValueHistogram {
+
+    private final int lowest, bucketWidth;
+    /**
+     * Bucket 0 is the underflow, the last one the overflow.
+     */
+    private final long[] counts;
+    private long count = 0, sum = 0;
+    private int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+
+    /**
+     * Covers lowest up to lowest + bucketWidth * bucketCount.
+     */
+    public ValueHistogram(int lowest, int bucketWidth, int bucketCount) {
+        this.lowest = lowest;
+        this.bucketWidth = bucketWidth;
+        counts = new long[bucketCount + 2];
+    }
+
+    public void record(int value) {
+        int offset = value - lowest;
+        int bucket = (offset < 0) ? 0 : 1 + offset / bucketWidth;
+        counts[Math.min(bucket, counts.length - 1)]++;
+        count++;
+        sum += value;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * @param other Must have the same buckets.
+     */
+    public void merge(ValueHistogram other) {
+        if (other.lowest != lowest || other.bucketWidth != bucketWidth || other.counts.length != counts.length) {
+            throw new IllegalArgumentException("Histograms have different buckets");
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * @param percent E.g. 95 for the 95th percentile.
+     * @return The middle of the bucket the percentile falls into, clamped to
+     * the recorded min/max; 0 if nothing was recorded.
+     */
+    public int getPercentile(double percent) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percent / 100 * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                int middle = lowest + (bucket - 1) * bucketWidth + bucketWidth / 2;
+                return Math.max(min, Math.min(middle, max));
+            }
+        }
+        return max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return (count > 0) ? (double) sum / count : 0;
+    }
+
+    /**
+     * @return The smallest value recorded; 0 if nothing was recorded.
+     */
+    public int getMin() {
+        return (count > 0) ? min : 0;
+    }
+
+    public int getMax() {
+        return (count > 0) ? max : 0;
+    }
+}
@@ -0,0 +1,145 @@
+package kinect.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import kinect.input.SkeletonFrame;
+import kinect.player.KinectPlayerPipeline;
+import kinect.recording.ReplayInputSource;
+import kinect.recording.SkeletonRecording;
+
+/**
+ *
+ * Plays a recording through KinectPlayerPipeline.update() the way FPSGame
+ * does (60 render frames per second, a reading every other frame), with
+ * tracking made to flicker: at each reading, with the given probability, the
+ * skeleton drops out for 1 to MAX_DROPOUT_READINGS readings. For each
+ * flicker rate, compares following the tracked flag exactly (1 reading in, 0
+ * ms out: what FPSGame did before) with the default hysteresis, and reports:
+ * - raw transitions (tracked flag flips) and reported transitions, i.e.
+ * calls to FPSGame's onKinectSkeletonActivated()/Deactivated();
+ * - readings spent in the wrong state compared to the recording without
+ * flicker (what the hysteresis costs in responsiveness);
+ * - time and bytes allocated per update().
+ * Then loses the skeleton for good the way input sources report it (one
+ * untracked reading, then no new ones) and reports how long it took to be
+ * deactivated; it fails if that's not within a render frame of the
+ * deactivation time.
+ *
+ * Usage: java kinect.bench.ActivationDebounceBenchmark recording [passes]
+ */
+public class ActivationDebounceBenchmark {
+
+    public static final int DEFAULT_PASSES = 20;
+    public static final int MAX_DROPOUT_READINGS = 4;
+    public static final double[] FLICKER_PROBABILITIES = {0, 0.01, 0.03, 0.1, 0.2};
+    public static final long GAME_FRAME_NANOS = 1000000000L / 60;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java " + ActivationDebounceBenchmark.class.getName() + " recording [passes]");
+            System.exit(2);
+        }
+        SkeletonRecording recording = ReplayInputSource.openRecording(new File(args[0]));
+        int passes = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_PASSES;
+        SkeletonFrame[] readings = new SkeletonFrame[recording.getFrameCount()];
+        for (int i = 0; i < readings.length; i++) {
+            readings[i] = new SkeletonFrame();
+            recording.readFrame(i, readings[i]);
+        }
+
+        for (double probability : FLICKER_PROBABILITIES) {
+            System.out.println("Flicker " + format(probability * 100) + "% of readings:");
+            run(readings, passes, probability, 1, 0);
+            run(readings, passes, probability, KinectPlayerPipeline.DEFAULT_ACTIVATE_READINGS, KinectPlayerPipeline.DEFAULT_DEACTIVATE_MILLIS);
+        }
+        System.out.println("Sustained loss:");
+        sustainedLoss(readings, 1, 0);
+        sustainedLoss(readings, KinectPlayerPipeline.DEFAULT_ACTIVATE_READINGS, KinectPlayerPipeline.DEFAULT_DEACTIVATE_MILLIS);
+    }
+
+    private static void run(SkeletonFrame[] readings, int passes, double probability, int activateReadings, long deactivateMillis) {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+        KinectPlayerPipeline pipeline = new KinectPlayerPipeline(0);
+        pipeline.setActivationHysteresis(activateReadings, deactivateMillis);
+        Random random = new Random(1); // Same flicker for every configuration
+        SkeletonFrame latest = new SkeletonFrame();
+        int dropoutLeft = 0;
+        long sequence = 0, wrongState = 0, reported = 0, updates = 0;
+        long renderNanos = System.nanoTime();
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        long startNanos = System.nanoTime();
+        for (int pass = 0; pass < passes; pass++) {
+            for (SkeletonFrame reading : readings) {
+                if (dropoutLeft == 0 && random.nextDouble() < probability) {
+                    dropoutLeft = 1 + random.nextInt(MAX_DROPOUT_READINGS);
+                }
+                latest.copyFrom(reading);
+                if (dropoutLeft > 0) {
+                    latest.setTracked(false);
+                    dropoutLeft--;
+                }
+                latest.setSequence(++sequence);
+                latest.setTimestampNanos(renderNanos);
+                for (int frame = 0; frame < 2; frame++, updates++) {
+                    int changes = pipeline.update(latest, renderNanos);
+                    if ((changes & (KinectPlayerPipeline.ACTIVATED | KinectPlayerPipeline.DEACTIVATED)) != 0) {
+                        reported++;
+                    }
+                    renderNanos += GAME_FRAME_NANOS;
+                }
+                if (pipeline.isActive() != reading.isTracked()) {
+                    wrongState++;
+                }
+            }
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        System.out.println("  " + activateReadings + " in/" + deactivateMillis + " ms out: "
+                + pipeline.getActivation().getRawTransitions() + " raw transitions, " + reported + " reported, "
+                + format(wrongState * 100.0 / sequence) + "% of readings in the wrong state, "
+                + format((double) elapsedNanos / updates) + " ns and " + format((double) allocatedBytes / updates) + " bytes per update()");
+    }
+
+    /**
+     * Tracked readings until the player is active, then one untracked
+     * reading and render frames without new readings, for up to a second.
+     */
+    private static void sustainedLoss(SkeletonFrame[] readings, int activateReadings, long deactivateMillis) {
+        KinectPlayerPipeline pipeline = new KinectPlayerPipeline(0);
+        pipeline.setActivationHysteresis(activateReadings, deactivateMillis);
+        SkeletonFrame latest = new SkeletonFrame();
+        long sequence = 0;
+        long renderNanos = System.nanoTime();
+        for (int i = 0; !pipeline.isActive(); i++) {
+            latest.copyFrom(readings[i % readings.length]);
+            latest.setTracked(true);
+            latest.setSequence(++sequence);
+            pipeline.update(latest, renderNanos);
+            renderNanos += 2 * GAME_FRAME_NANOS;
+        }
+        latest.setTracked(false);
+        latest.setSequence(++sequence);
+        long lostNanos = renderNanos;
+        long deactivatedNanos = -1;
+        for (int frame = 0; frame < 60 && deactivatedNanos < 0; frame++) {
+            if ((pipeline.update(latest, renderNanos) & KinectPlayerPipeline.DEACTIVATED) != 0) {
+                deactivatedNanos = renderNanos - lostNanos;
+            }
+            renderNanos += GAME_FRAME_NANOS;
+        }
+        System.out.println("  " + activateReadings + " in/" + deactivateMillis + " ms out: "
+                + ((deactivatedNanos < 0) ? "still active after 1 s" : "deactivated " + format(deactivatedNanos / 1e6) + " ms after the loss"));
+        if (deactivatedNanos < 0 || deactivatedNanos > deactivateMillis * 1000000L + GAME_FRAME_NANOS) {
+            System.err.println("FAILED: a lost skeleton wasn't deactivated in time.");
+            System.exit(1);
+        }
+    }
+
+    private static String format(double value) {
+        return String.valueOf(Math.round(value * 1000) / 1000.0);
+    }
+}
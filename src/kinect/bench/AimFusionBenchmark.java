@@ -0,0 +1,220 @@
+package kinect.bench;
+
+import com.jme3.math.Vector3f;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import kinect.input.AimFusionFilter;
+import kinect.input.SkeletonFrame;
+import kinect.recording.ReplayInputSource;
+import kinect.recording.SkeletonRecording;
+import kinect.recording.SkeletonRecordingFormat;
+
+/**
+ *
+ * Replays recorded sessions through AimFusionFilter as the game loop would,
+ * rendering at 60 FPS with readings coming in at 30 per second on a virtual
+ * clock, while a scripted mouse nudges the aim every MOUSE_NUDGE_INTERVAL
+ * frames. Reports, per time constant (0 = follow the kinect aim exactly) and
+ * for the old behaviour (kinect aim overwrites the camera, mouse look lost):
+ * - jitter: RMS of the render-frame-to-render-frame second difference of yaw
+ * and pitch, in degrees;
+ * - error: mean angle between the aim and the intended aim (kinect aim plus
+ * the mouse nudges so far), in degrees, so the filter's lag counts too;
+ * - cost: time per render frame and bytes allocated.
+ *
+ * Usage: java kinect.bench.AimFusionBenchmark [recording|directory]...
+ * (defaults to the bundled "!PoorMoCap Recordings" directory)
+ */
+public class AimFusionBenchmark {
+
+    public static final String DEFAULT_RECORDINGS_DIRECTORY = "!PoorMoCap Recordings";
+    public static final long RENDER_INTERVAL_NANOS = 1000000000L / 60;
+    public static final long READING_INTERVAL_NANOS = 1000000000L / 30;
+    /**
+     * Time constants tried. (Unit: seconds.)
+     */
+    public static final float[] TIME_CONSTANTS = {0, 0.04f, 0.08f, 0.12f, 0.2f};
+    /**
+     * A nudge every this many render frames, spread over MOUSE_NUDGE_FRAMES
+     * frames, alternating left-up and right-down.
+     */
+    public static final int MOUSE_NUDGE_INTERVAL = 90, MOUSE_NUDGE_FRAMES = 6;
+    /**
+     * (Unit: degrees.)
+     */
+    public static final float MOUSE_NUDGE_YAW = 4, MOUSE_NUDGE_PITCH = 1.5f;
+    public static final int TIMING_PASSES = 2000;
+
+    public static void main(String[] args) throws IOException {
+        List<SkeletonRecording> recordings = openRecordings(args.length > 0 ? args : new String[]{DEFAULT_RECORDINGS_DIRECTORY});
+        if (recordings.isEmpty()) {
+            System.err.println("No recordings found.");
+            System.exit(2);
+        }
+
+        System.out.println("recording, timeConstantSec, jitterDeg, errorDeg");
+        for (SkeletonRecording recording : recordings) {
+            double[] overwrite = run(recording, null);
+            System.out.println(recording.getFile().getName() + ", overwrite, " + format(overwrite[0]) + ", " + format(overwrite[1]));
+            for (float timeConstant : TIME_CONSTANTS) {
+                double[] fused = run(recording, new AimFusionFilter(timeConstant, AimFusionFilter.DEFAULT_MAX_MOUSE_OFFSET));
+                System.out.println(recording.getFile().getName() + ", " + timeConstant + ", " + format(fused[0]) + ", " + format(fused[1]));
+            }
+        }
+
+        time(recordings.get(0));
+    }
+
+    private static List<SkeletonRecording> openRecordings(String[] paths) throws IOException {
+        List<SkeletonRecording> recordings = new ArrayList<SkeletonRecording>();
+        for (String path : paths) {
+            File file = new File(path);
+            if (file.isDirectory()) {
+                File[] files = file.listFiles();
+                java.util.Arrays.sort(files);
+                for (File child : files) {
+                    if (child.getName().endsWith(SkeletonRecordingFormat.FILE_EXTENSION)) {
+                        recordings.add(new SkeletonRecording(child));
+                    }
+                }
+            } else {
+                recordings.add(ReplayInputSource.openRecording(file));
+            }
+        }
+        return recordings;
+    }
+
+    /**
+     * @param fusion Null for the old behaviour.
+     * @return {jitter, error}, in degrees.
+     */
+    private static double[] run(SkeletonRecording recording, AimFusionFilter fusion) {
+        SkeletonFrame reading = new SkeletonFrame();
+        AimFusionFilter kinectOnly = new AimFusionFilter(0, 0); // Raw kinect aim
+        float tpf = RENDER_INTERVAL_NANOS / 1e9f;
+        float nudgeYaw = MOUSE_NUDGE_YAW * (float) Math.PI / 180 / MOUSE_NUDGE_FRAMES,
+                nudgePitch = MOUSE_NUDGE_PITCH * (float) Math.PI / 180 / MOUSE_NUDGE_FRAMES;
+        double intendedYawOffset = 0, intendedPitchOffset = 0;
+        long nextReadingNanos = 0;
+        int readingIndex = 0, renderFrame = 0;
+        boolean started = false;
+        double[] history = new double[4];
+        double jitterSum = 0, errorSum = 0;
+        long jitterCount = 0, errorCount = 0;
+
+        for (long renderNanos = 0; readingIndex < recording.getFrameCount(); renderNanos += RENDER_INTERVAL_NANOS, renderFrame++) {
+            boolean newReading = false;
+            while (nextReadingNanos <= renderNanos && readingIndex < recording.getFrameCount()) {
+                recording.readFrame(readingIndex++, reading);
+                nextReadingNanos += READING_INTERVAL_NANOS;
+                newReading = true;
+            }
+            if (newReading && reading.isTracked()) {
+                kinectOnly.setKinectAim(reading);
+                kinectOnly.update(tpf);
+                if (fusion != null) {
+                    fusion.setKinectAim(reading);
+                }
+            }
+            if (!kinectOnly.hasKinectAim()) {
+                continue;
+            }
+
+            // Scripted mouse look
+            int phase = renderFrame % MOUSE_NUDGE_INTERVAL;
+            if (phase < MOUSE_NUDGE_FRAMES) {
+                float sign = ((renderFrame / MOUSE_NUDGE_INTERVAL) % 2 == 0) ? 1 : -1;
+                intendedYawOffset += sign * nudgeYaw;
+                intendedPitchOffset += sign * nudgePitch;
+                if (fusion != null) {
+                    fusion.addMouseDelta(sign * nudgeYaw, sign * nudgePitch);
+                }
+            }
+
+            double yaw, pitch;
+            if (fusion != null) {
+                if (!started) {
+                    fusion.reset(kinectOnly.getDirection(new Vector3f()));
+                    fusion.setKinectAim(reading);
+                    started = true;
+                }
+                fusion.update(tpf);
+                yaw = fusion.getYaw();
+                pitch = fusion.getPitch();
+            } else {
+                yaw = kinectOnly.getYaw(); // Mouse look gets overwritten
+                pitch = kinectOnly.getPitch();
+            }
+
+            double errorYaw = AimFusionFilter.wrapAngle((float) (kinectOnly.getYaw() + intendedYawOffset - yaw)),
+                    errorPitch = kinectOnly.getPitch() + intendedPitchOffset - pitch;
+            errorSum += Math.sqrt(errorYaw * errorYaw + errorPitch * errorPitch);
+            errorCount++;
+            if (errorCount > 2) {
+                double ddYaw = AimFusionFilter.wrapAngle((float) (yaw - history[0])) - AimFusionFilter.wrapAngle((float) (history[0] - history[2])),
+                        ddPitch = pitch - 2 * history[1] + history[3];
+                jitterSum += ddYaw * ddYaw + ddPitch * ddPitch;
+                jitterCount++;
+            }
+            history[2] = history[0];
+            history[3] = history[1];
+            history[0] = yaw;
+            history[1] = pitch;
+        }
+        double toDegrees = 180 / Math.PI;
+        return new double[]{
+            (jitterCount > 0) ? Math.sqrt(jitterSum / jitterCount) * toDegrees : 0,
+            (errorCount > 0) ? errorSum / errorCount * toDegrees : 0
+        };
+    }
+
+    /**
+     * Times a render frame's worth of fusion: new kinect aim, a mouse delta,
+     * update, direction out.
+     */
+    private static void time(SkeletonRecording recording) {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+        SkeletonFrame[] frames = new SkeletonFrame[recording.getFrameCount()];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new SkeletonFrame();
+            recording.readFrame(i, frames[i]);
+        }
+        AimFusionFilter fusion = new AimFusionFilter();
+        Vector3f direction = new Vector3f();
+        float tpf = RENDER_INTERVAL_NANOS / 1e9f;
+        runFusion(fusion, frames, direction, tpf, TIMING_PASSES / 10); // Warm up
+
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        long startNanos = System.nanoTime();
+        double checksum = runFusion(fusion, frames, direction, tpf, TIMING_PASSES);
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        long renderFrames = (long) frames.length * TIMING_PASSES;
+        System.out.println("Cost: " + format((double) elapsedNanos / renderFrames) + " ns/frame, "
+                + format((double) allocatedBytes / renderFrames) + " bytes/frame allocated (checksum " + format(checksum) + ")");
+    }
+
+    private static double runFusion(AimFusionFilter fusion, SkeletonFrame[] frames, Vector3f direction, float tpf, int passes) {
+        double checksum = 0;
+        for (int pass = 0; pass < passes; pass++) {
+            for (int i = 0; i < frames.length; i++) {
+                if (frames[i].isTracked()) {
+                    fusion.setKinectAim(frames[i]);
+                }
+                fusion.addMouseDelta(0.001f, -0.0005f);
+                fusion.update(tpf);
+                checksum += fusion.getDirection(direction).x;
+            }
+        }
+        return checksum;
+    }
+
+    private static String format(double value) {
+        return String.valueOf(Math.round(value * 100) / 100.0);
+    }
+}
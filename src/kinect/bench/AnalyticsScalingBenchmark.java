@@ -0,0 +1,74 @@
+package kinect.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import kinect.analytics.RecordingAnalytics;
+import kinect.analytics.RecordingStats;
+
+/**
+ *
+ * Copies the recordings of a directory into a temporary directory until there
+ * are the given number of files, then runs RecordingAnalytics over it with 1,
+ * 2, 4, ... threads up to the number of cores and reports the speedup.
+ *
+ * Usage: java kinect.bench.AnalyticsScalingBenchmark [directory] [files]
+ */
+public class AnalyticsScalingBenchmark {
+
+    public static final String DEFAULT_RECORDINGS_DIRECTORY = "!PoorMoCap Recordings";
+    public static final int DEFAULT_FILES = 300;
+    public static final int RUNS = 3;
+
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args.length > 0 ? args[0] : DEFAULT_RECORDINGS_DIRECTORY);
+        int fileCount = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_FILES;
+
+        List<File> sources = RecordingAnalytics.findRecordings(Collections.singletonList(directory));
+        if (sources.isEmpty()) {
+            System.err.println("No recordings in " + directory);
+            System.exit(2);
+        }
+        File copies = Files.createTempDirectory("recording-analytics").toFile();
+        List<File> files = new ArrayList<File>();
+        try {
+            for (int i = 0; i < fileCount; i++) {
+                File source = sources.get(i % sources.size());
+                File copy = new File(copies, String.format("%04d-", i) + source.getName());
+                Files.copy(source.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                files.add(copy);
+            }
+
+            int cores = Runtime.getRuntime().availableProcessors();
+            double singleThreadMillis = 0;
+            for (int threads = 1; threads <= cores; threads = (threads * 2 <= cores || threads == cores) ? threads * 2 : cores) {
+                long bestNanos = Long.MAX_VALUE;
+                long frames = 0;
+                for (int run = 0; run < RUNS; run++) {
+                    long startNanos = System.nanoTime();
+                    RecordingStats total = RecordingAnalytics.analyze(files, new RecordingStats[files.size()], threads);
+                    bestNanos = Math.min(bestNanos, System.nanoTime() - startNanos);
+                    frames = total.getFrames();
+                }
+                double millis = bestNanos / 1e6;
+                if (threads == 1) {
+                    singleThreadMillis = millis;
+                }
+                System.out.println(threads + " threads: " + files.size() + " files, " + frames + " frames in " + Math.round(millis) + " ms = "
+                        + Math.round(frames / (millis / 1000)) + " frames/s, speedup " + String.format("%.2f", singleThreadMillis / millis) + "x");
+                if (threads == cores) {
+                    break;
+                }
+            }
+        } finally {
+            for (File copy : files) {
+                copy.delete();
+            }
+            copies.delete();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package kinect.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import kinect.depth.DepthFrameFormat;
+import kinect.depth.DepthFrameReceiver;
+import kinect.depth.DepthSilhouetteAppState;
+import kinect.depth.DepthSilhouetteWorker;
+import kinect.depth.DirectBufferTripleBuffer;
+import kinect.depth.KinectTCPDepthSource;
+import kinect.depth.SyntheticDepthSource;
+import kinect.recording.ReplayInputSource;
+import kinect.server.KinectStandInServer;
+
+/**
+ *
+ * Measures the depth silhouette path:
+ * - DepthSilhouetteWorker.process() alone, per Kinect resolution: time and
+ * bytes allocated per depth frame;
+ * - the whole pipeline as the HUD runs it, a SyntheticDepthSource at the
+ * Kinect's 30 frames per second through DepthFrameReceiver and
+ * DepthSilhouetteWorker, with a 60 Hz loop copying the newest silhouette out
+ * DepthSilhouetteAppState.UPLOADS_PER_SECOND times a second: CPU time per
+ * frame on each thread, and the copy's cost;
+ * - with a recording given, KinectTCPDepthSource against a
+ * KinectStandInServer serving depth, read as fast as it goes: frames per
+ * second, and CPU time and bytes allocated per frame on the reading thread
+ * (the server's drawing runs on its own threads).
+ *
+ * Usage: java kinect.bench.DepthSilhouetteBenchmark [seconds] [recording]
+ */
+public class DepthSilhouetteBenchmark {
+
+    public static final int DEFAULT_SECONDS = 10;
+    public static final int PROCESS_FRAMES = 2000;
+    public static final long GAME_FRAME_NANOS = 1000000000L / 60;
+    /**
+     * Away from the stand-in server's default, so a running one doesn't get
+     * in the way.
+     */
+    public static final int PORT = 18004;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int seconds = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_SECONDS;
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        // process() alone
+        ByteBuffer silhouette = ByteBuffer.allocateDirect(DepthSilhouetteWorker.SILHOUETTE_SIZE);
+        for (int resolution = 0; resolution < DepthFrameFormat.WIDTHS.length; resolution++) {
+            int width = DepthFrameFormat.WIDTHS[resolution], height = DepthFrameFormat.HEIGHTS[resolution];
+            ByteBuffer[] frames = new ByteBuffer[30];
+            for (int i = 0; i < frames.length; i++) {
+                frames[i] = DepthFrameFormat.allocate();
+                frames[i].limit(DepthFrameFormat.getFrameSize(width, height));
+                SyntheticDepthSource.render(frames[i], width, height, i / 30.0, i);
+            }
+            long coverage = 0;
+            for (int i = 0; i < PROCESS_FRAMES / 4; i++) {
+                coverage += DepthSilhouetteWorker.process(frames[i % frames.length], silhouette, 0, 0); // Warm up
+            }
+            long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+            long cpuBefore = threadBean.getCurrentThreadCpuTime();
+            long startNanos = System.nanoTime();
+            for (int i = 0; i < PROCESS_FRAMES; i++) {
+                coverage += DepthSilhouetteWorker.process(frames[i % frames.length], silhouette, 0, 0);
+            }
+            long elapsedNanos = System.nanoTime() - startNanos;
+            long cpuNanos = threadBean.getCurrentThreadCpuTime() - cpuBefore;
+            long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            System.out.println("process() " + width + "x" + height + ": " + format(elapsedNanos / 1e3 / PROCESS_FRAMES) + " us/frame, "
+                    + format(cpuNanos / 1e3 / PROCESS_FRAMES) + " us CPU/frame, "
+                    + format((double) allocatedBytes / PROCESS_FRAMES) + " bytes/frame allocated (coverage " + coverage + ")");
+        }
+
+        // Whole pipeline, synthetic source
+        DepthFrameReceiver receiver = new DepthFrameReceiver(new SyntheticDepthSource(), 0);
+        DepthSilhouetteWorker worker = new DepthSilhouetteWorker(receiver);
+        worker.start();
+        receiver.start();
+        DirectBufferTripleBuffer silhouettes = worker.getOutput();
+        ByteBuffer textureData = ByteBuffer.allocateDirect(DepthSilhouetteWorker.SILHOUETTE_SIZE);
+        long uploads = 0, uploadNanos = 0, nextUploadNanos = System.nanoTime();
+        long uploadIntervalNanos = (long) (1e9 / DepthSilhouetteAppState.UPLOADS_PER_SECOND);
+        long endNanos = System.nanoTime() + seconds * 1000000000L;
+        long nextFrameNanos = System.nanoTime();
+        while (System.nanoTime() < endNanos) {
+            long nowNanos = System.nanoTime();
+            if (nowNanos >= nextUploadNanos && silhouettes.update()) {
+                ByteBuffer front = silhouettes.getFrontBuffer();
+                front.clear().limit(DepthSilhouetteWorker.SILHOUETTE_SIZE);
+                textureData.clear();
+                textureData.put(front);
+                uploadNanos += System.nanoTime() - nowNanos;
+                uploads++;
+                nextUploadNanos = nowNanos + uploadIntervalNanos;
+            }
+            nextFrameNanos += GAME_FRAME_NANOS;
+            long sleepNanos = nextFrameNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                Thread.sleep(sleepNanos / 1000000, (int) (sleepNanos % 1000000));
+            }
+        }
+        receiver.shutdown();
+        worker.shutdown();
+        System.out.println("Pipeline, synthetic 320x240 at " + SyntheticDepthSource.FRAME_RATE_HZ + " Hz: "
+                + format(receiver.getFramesReceived() / (double) seconds) + " frames/s received, receiver "
+                + format(receiver.getAverageCpuNanos() / 1e3) + " us CPU/frame (drawing the scene), worker "
+                + format(worker.getAverageCpuNanos() / 1e3) + " us CPU/frame; " + uploads + " uploads at "
+                + format(uploadNanos / 1e3 / Math.max(1, uploads)) + " us per copy");
+        System.out.println(receiver);
+        System.out.println(worker);
+
+        if (args.length < 2) {
+            return;
+        }
+        // KinectTCP
+        KinectStandInServer server = new KinectStandInServer(ReplayInputSource.openRecording(new File(args[1])), PORT);
+        server.setServeDepth(true);
+        server.start();
+        KinectTCPDepthSource source = new KinectTCPDepthSource("127.0.0.1", PORT);
+        source.start();
+        ByteBuffer frame = DepthFrameFormat.allocate();
+        for (int i = 0; i < 20; i++) {
+            source.readFrame(frame); // Connect and warm up
+        }
+        long framesBefore = source.getFramesRead();
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        long cpuBefore = threadBean.getCurrentThreadCpuTime();
+        long startNanos = System.nanoTime();
+        endNanos = startNanos + seconds * 1000000000L / 2;
+        while (System.nanoTime() < endNanos) {
+            source.readFrame(frame);
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long cpuNanos = threadBean.getCurrentThreadCpuTime() - cpuBefore;
+        long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        long frames = Math.max(1, source.getFramesRead() - framesBefore);
+        System.out.println("KinectTCP, flat out: " + format(frames / (elapsedNanos / 1e9)) + " frames/s ("
+                + format(frames * (double) frame.limit() / (elapsedNanos / 1e9) / 1e6) + " MB/s), reader "
+                + format(cpuNanos / 1e3 / frames) + " us CPU/frame, "
+                + format((double) allocatedBytes / frames) + " bytes/frame allocated");
+        System.out.println(source);
+        source.stop();
+        server.stop();
+    }
+
+    private static String format(double value) {
+        return String.valueOf(Math.round(value * 1000) / 1000.0);
+    }
+}
@@ -0,0 +1,94 @@
+package kinect.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import kinect.gesture.GestureListener;
+import kinect.gesture.GestureRecognizer;
+import kinect.gesture.GestureTemplate;
+import kinect.input.SkeletonFrame;
+import kinect.recording.SkeletonRecording;
+import kinect.recording.SkeletonRecordingFormat;
+
+/**
+ *
+ * Loads every recording in a directory as gesture templates (each one whole,
+ * plus its first and second half, so the bundled recordings give 18), feeds a
+ * recording through the GestureRecognizer reading by reading and reports the
+ * cost per reading, with no CPU budget and with the given one, and what was
+ * recognized.
+ *
+ * Usage: java kinect.bench.GestureBenchmark [directory] [input recording] [budgetMicros] [threshold]
+ */
+public class GestureBenchmark {
+
+    public static final String DEFAULT_RECORDINGS_DIRECTORY = "!PoorMoCap Recordings";
+    public static final int DEFAULT_BUDGET_MICROS = 20;
+    public static final float DEFAULT_THRESHOLD = 60;
+    public static final int PASSES = 50;
+
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args.length > 0 ? args[0] : DEFAULT_RECORDINGS_DIRECTORY);
+        long budgetNanos = 1000L * ((args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_BUDGET_MICROS);
+        float threshold = (args.length > 3) ? Float.parseFloat(args[3]) : DEFAULT_THRESHOLD;
+
+        List<SkeletonRecording> recordings = new ArrayList<SkeletonRecording>();
+        File[] files = directory.listFiles();
+        java.util.Arrays.sort(files);
+        for (File file : files) {
+            if (file.getName().endsWith(SkeletonRecordingFormat.FILE_EXTENSION)) {
+                recordings.add(new SkeletonRecording(file));
+            }
+        }
+        if (recordings.isEmpty()) {
+            System.err.println("No recordings in " + directory);
+            System.exit(2);
+        }
+        SkeletonRecording input = (args.length > 1) ? new SkeletonRecording(new File(args[1])) : recordings.get(0);
+
+        for (int budgeted = 0; budgeted <= 1; budgeted++) {
+            GestureRecognizer recognizer = new GestureRecognizer();
+            for (SkeletonRecording recording : recordings) {
+                String name = recording.getFile().getName().replace(SkeletonRecordingFormat.FILE_EXTENSION, "");
+                int half = recording.getFrameCount() / 2;
+                recognizer.addTemplate(GestureTemplate.fromRecording(name, recording, threshold));
+                recognizer.addTemplate(GestureTemplate.fromRecording(name + " (1st half)", recording, 0, half, threshold));
+                recognizer.addTemplate(GestureTemplate.fromRecording(name + " (2nd half)", recording, half, recording.getFrameCount(), threshold));
+            }
+            recognizer.setBudgetNanos(budgeted == 1 ? budgetNanos : GestureRecognizer.UNLIMITED_BUDGET);
+            final int[] recognized = new int[1];
+            recognizer.setListener(new GestureListener() {
+                public void onGesture(GestureTemplate gesture, float averageDistance) {
+                    recognized[0]++;
+                }
+            });
+
+            // Readings stamped as if live at the input recording's own rate, looped
+            SkeletonFrame frame = new SkeletonFrame();
+            long frameIntervalNanos = input.getDurationNanos() / Math.max(1, input.getFrameCount() - 1);
+            long timestampNanos = 0;
+            for (int pass = 0; pass < PASSES; pass++) {
+                for (int i = 0; i < input.getFrameCount(); i++) {
+                    input.readFrame(i, frame);
+                    frame.setTimestampNanos(timestampNanos += frameIntervalNanos);
+                    recognizer.update(frame);
+                }
+            }
+
+            int points = 0;
+            for (GestureTemplate template : recognizer.getTemplates()) {
+                points += template.getPointCount();
+            }
+            System.out.println((budgeted == 1 ? "Budget " + (budgetNanos / 1000) + " us" : "No budget")
+                    + ": " + recognizer.getTemplates().size() + " templates (" + points + " points), input " + input.getFile().getName() + " x" + PASSES);
+            System.out.println("  " + recognizer);
+            System.out.println("  Recognized " + recognized[0] + " gestures:");
+            for (GestureTemplate template : recognizer.getTemplates()) {
+                if (template.getMatches() > 0) {
+                    System.out.println("    " + template);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package kinect.bench;
+
+import com.jme3.input.controls.ActionListener;
+import com.jme3.input.controls.AnalogListener;
+import com.jme3.system.Timer;
+import constrainedcamera.InputJournal;
+import constrainedcamera.InputJournalReplayer;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import kinect.input.KinectInputSource;
+import kinect.input.SkeletonFrame;
+import kinect.recording.ReplayInputSource;
+import kinect.recording.SkeletonRecording;
+
+/**
+ *
+ * Plays a scripted session into an InputJournal the way FPSGame feeds it (60
+ * frames per second with mouse look every frame, keys and mouse buttons every
+ * so often, and a recording's Kinect readings at 30 per second), and reports
+ * the recording cost per event and the bytes allocated. Then dumps a session
+ * that fits the ring, loads it back, plays it through an InputJournalReplayer
+ * into listeners that journal again, and checks the second journal holds
+ * exactly the same events in the same frames.
+ *
+ * Usage: java kinect.bench.InputJournalBenchmark recording [frames]
+ */
+public class InputJournalBenchmark {
+
+    public static final int DEFAULT_FRAMES = 20000;
+    public static final float TPF = 1 / 60f;
+    public static final int TIMING_PASSES = 20;
+    private static final String[] LOOK_BINDINGS = {"FLYCAM_Left", "FLYCAM_Up"};
+    private static final String[] KEY_BINDINGS = {"Up", "Left", "shoot", "Jump"};
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java " + InputJournalBenchmark.class.getName() + " recording [frames]");
+            System.exit(2);
+        }
+        SkeletonRecording recording = ReplayInputSource.openRecording(new File(args[0]));
+        int frames = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_FRAMES;
+        SkeletonFrame[] readings = new SkeletonFrame[recording.getFrameCount()];
+        for (int i = 0; i < readings.length; i++) {
+            readings[i] = new SkeletonFrame();
+            recording.readFrame(i, readings[i]);
+            readings[i].setTimestampNanos(System.nanoTime());
+        }
+
+        time(readings, frames);
+        checkReplay(readings, Math.min(frames, 4000));
+    }
+
+    private static void time(SkeletonFrame[] readings, int frames) {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+        InputJournal journal = new InputJournal();
+        playSession(journal, readings, frames); // Warm up, and the ring wraps from here on
+
+        long writtenBefore = journal.getRecordsWritten();
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        long startNanos = System.nanoTime();
+        for (int pass = 0; pass < TIMING_PASSES; pass++) {
+            playSession(journal, readings, frames);
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        long records = journal.getRecordsWritten() - writtenBefore;
+        long gameFrames = (long) frames * TIMING_PASSES;
+        System.out.println("Recording: " + format((double) elapsedNanos / records) + " ns/record, "
+                + format((double) elapsedNanos / gameFrames) + " ns/frame (" + format((double) records / gameFrames) + " records/frame), "
+                + format((double) allocatedBytes / records) + " bytes/record allocated");
+        System.out.println("Ring: " + journal + ", " + (InputJournal.DEFAULT_CAPACITY * InputJournal.RECORD_SIZE / 1024) + " KB off-heap, holds "
+                + format(InputJournal.DEFAULT_CAPACITY / ((double) records / gameFrames) / 60 / 60) + " minutes at this rate");
+    }
+
+    /**
+     * Mouse look every frame, a key press or release every 7 frames, a mouse
+     * button event every 11, and a Kinect reading every other frame.
+     */
+    private static void playSession(InputJournal journal, SkeletonFrame[] readings, int frames) {
+        for (int frame = 0; frame < frames; frame++) {
+            journal.recordAnalog(LOOK_BINDINGS[frame % 2], (frame % 13) * 0.001f, TPF);
+            if (frame % 7 == 0) {
+                journal.recordAction(KEY_BINDINGS[(frame / 7) % KEY_BINDINGS.length], (frame / 7) % 2 == 0, TPF);
+            }
+            if (frame % 11 == 0) {
+                journal.recordAnalog("shoot", 1, TPF);
+            }
+            if (frame % 2 == 0) {
+                journal.recordKinect(0, readings[(frame / 2) % readings.length]);
+            }
+            journal.endFrame(TPF + (frame % 5) * 0.0001f);
+        }
+    }
+
+    private static void checkReplay(SkeletonFrame[] readings, int frames) throws IOException {
+        InputJournal original = new InputJournal();
+        playSession(original, readings, frames);
+        File file = File.createTempFile("journal-benchmark", InputJournal.FILE_EXTENSION);
+        file.deleteOnExit();
+        long startNanos = System.nanoTime();
+        original.dump(file);
+        long dumpNanos = System.nanoTime() - startNanos;
+        startNanos = System.nanoTime();
+        InputJournal loaded = InputJournal.load(file);
+        long loadNanos = System.nanoTime() - startNanos;
+        System.out.println("Dump: " + frames + " frames, " + (file.length() / 1024) + " KB in " + format(dumpNanos / 1e6)
+                + " ms, loaded in " + format(loadNanos / 1e6) + " ms");
+
+        // Replay into listeners that journal what they get, like FPSGame's
+        final InputJournal replayed = new InputJournal();
+        InputJournalReplayer replayer = new InputJournalReplayer(loaded, 0);
+        ActionListener actions = new ActionListener() {
+            public void onAction(String name, boolean isPressed, float tpf) {
+                replayed.recordAction(name, isPressed, tpf);
+            }
+        };
+        AnalogListener analogs = new AnalogListener() {
+            public void onAnalog(String name, float value, float tpf) {
+                replayed.recordAnalog(name, value, tpf);
+            }
+        };
+        replayer.addActionTarget(actions, KEY_BINDINGS);
+        replayer.addAnalogTarget(analogs, LOOK_BINDINGS);
+        replayer.addAnalogTarget(analogs, "shoot");
+        Timer timer = replayer.getTimer();
+        KinectInputSource kinect = replayer.getKinectSource();
+        long lastSequence = kinect.getLatestFrame().getSequence();
+        startNanos = System.nanoTime();
+        while (true) {
+            timer.update();
+            if (replayer.isFinished()) {
+                break;
+            }
+            replayer.update(timer.getTimePerFrame());
+            SkeletonFrame reading = kinect.getLatestFrame();
+            if (reading.getSequence() != lastSequence) {
+                replayed.recordKinect(0, reading);
+                lastSequence = reading.getSequence();
+            }
+            replayed.endFrame(timer.getTimePerFrame());
+        }
+        long replayNanos = System.nanoTime() - startNanos;
+        System.out.println("Replay: " + replayer + " in " + format(replayNanos / 1e6) + " ms");
+        System.out.println("Replay matches the session: " + (compare(original, replayed) ? "yes" : "NO"));
+    }
+
+    /**
+     * @return True if both hold the same events, frames and values.
+     */
+    private static boolean compare(InputJournal expected, InputJournal actual) {
+        if (expected.getRecordCount() != actual.getRecordCount()) {
+            System.out.println("Record counts differ: " + expected.getRecordCount() + " vs " + actual.getRecordCount());
+            return false;
+        }
+        SkeletonFrame expectedReading = new SkeletonFrame(), actualReading = new SkeletonFrame();
+        for (int i = 0; i < expected.getRecordCount(); i++) {
+            int type = expected.getType(i);
+            boolean same = type == actual.getType(i) && expected.getFrame(i) == actual.getFrame(i);
+            if (type == InputJournal.TYPE_KINECT) {
+                // The reading age is measured again on replay; the joints must match
+                expected.readKinect(i, expectedReading);
+                actual.readKinect(i, actualReading);
+                same = same && expectedReading.isTracked() == actualReading.isTracked()
+                        && Arrays.equals(expectedReading.getValues(), actualReading.getValues());
+            } else {
+                same = same && expected.getValue(i) == actual.getValue(i);
+            }
+            if (type == InputJournal.TYPE_ACTION || type == InputJournal.TYPE_ANALOG) {
+                same = same && expected.getBinding(i).equals(actual.getBinding(i))
+                        && expected.isPressed(i) == actual.isPressed(i)
+                        && expected.getTpf(i) == actual.getTpf(i);
+            }
+            if (!same) {
+                System.out.println("Record " + i + " differs (frame " + expected.getFrame(i) + ", type " + type + ")");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String format(double value) {
+        return String.valueOf(Math.round(value * 1000) / 1000.0);
+    }
+}
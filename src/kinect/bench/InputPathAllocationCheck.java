@@ -0,0 +1,83 @@
+package kinect.bench;
+
+import com.jme3.math.Vector3f;
+import java.lang.management.ManagementFactory;
+import kinect.input.KinectAimMapping;
+import kinect.input.SkeletonFrame;
+import kinect.input.SkeletonFrameBuffer;
+
+/**
+ *
+ * Checks that the per-frame Kinect input path allocates nothing: filling a
+ * SkeletonFrame in place, publishing it through the SkeletonFrameBuffer,
+ * reading it back and mapping it to a look direction.
+ * (The int[][] PoorMoCap itself hands out is outside of our control and is not
+ * counted.) Exits with status 1 if any bytes at all were allocated over the
+ * measured frames (after a warm-up run).
+ *
+ * Usage: java kinect.bench.InputPathAllocationCheck [frames]
+ * Needs a HotSpot-based JVM for per-thread allocation counters.
+ */
+public class InputPathAllocationCheck {
+
+    public static final int DEFAULT_FRAMES = 1000000;
+
+    public static void main(String[] args) {
+        int frames = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_FRAMES;
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threadBean.isThreadAllocatedMemorySupported()) {
+            System.err.println("This JVM can't count allocated bytes per thread.");
+            System.exit(2);
+        }
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        // Sensor-side input, as Mocap would hand it out (allocated up front)
+        int[][][] sensorJoints = new int[2][SkeletonFrame.JOINT_COUNT][SkeletonFrame.JOINT_STRIDE];
+        for (int joint = 0; joint < SkeletonFrame.JOINT_COUNT; joint++) {
+            for (int axis = SkeletonFrame.KJ_X; axis <= SkeletonFrame.KJ_Z; axis++) {
+                sensorJoints[0][joint][axis] = joint * 10 + axis;
+                sensorJoints[1][joint][axis] = joint * 10 - axis;
+            }
+        }
+
+        SkeletonFrameBuffer frameBuffer = new SkeletonFrameBuffer();
+        Vector3f camDir = new Vector3f(0, 0, -1), lookDir = new Vector3f();
+
+        // Warm up first, so JIT compilation and class loading aren't counted
+        float checksum = runInputPath(frameBuffer, sensorJoints, camDir, lookDir, frames);
+
+        threadBean.getThreadAllocatedBytes(threadId); // Its first call allocates
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        checksum += runInputPath(frameBuffer, sensorJoints, camDir, lookDir, frames);
+        long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        double bytesPerFrame = (double) allocatedBytes / frames;
+        System.out.println("Frames: " + frames + " | Allocated: " + allocatedBytes + " bytes | Per frame: " + bytesPerFrame + " bytes | (checksum " + checksum + ")");
+
+        if (allocatedBytes > 0) {
+            System.err.println("FAILED: the Kinect input path allocated " + allocatedBytes + " bytes over " + frames + " frames.");
+            System.exit(1);
+        }
+        System.out.println("OK: zero bytes allocated over " + frames + " frames on the Kinect input path.");
+    }
+
+    private static float runInputPath(SkeletonFrameBuffer frameBuffer, int[][][] sensorJoints, Vector3f camDir, Vector3f lookDir, int frames) {
+        float checksum = 0;
+        for (int i = 0; i < frames; i++) {
+            // Sampler thread side
+            frameBuffer.getBackFrame().setFrom(sensorJoints[i & 1], System.nanoTime(), i);
+            frameBuffer.publish();
+
+            // Game loop side
+            frameBuffer.update();
+            SkeletonFrame frame = frameBuffer.getFrontFrame();
+            if (frame.isTracked()) {
+                KinectAimMapping.computeLookDirection(frame, camDir, lookDir);
+                checksum += lookDir.x + KinectAimMapping.getRightWristXOffsetFromCenterShoulder(frame);
+            }
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,164 @@
+package kinect.bench;
+
+import java.io.File;
+import java.io.IOException;
+import kinect.input.KinectInputSource;
+import kinect.input.KinectSampler;
+import kinect.input.KinectTCPInputSource;
+import kinect.input.OneEuroSkeletonFilter;
+import kinect.input.PredictionSkeletonFilter;
+import kinect.input.SkeletonFrame;
+import kinect.input.SkeletonInterpolator;
+import kinect.input.SyntheticSkeletonGenerator;
+import kinect.input.SyntheticSkeletonSource;
+import kinect.pipeline.SkeletonSourcePump;
+import kinect.pipeline.ValidationStage;
+import kinect.player.KinectPlayerPipeline;
+import kinect.player.KinectPlayerWorker;
+import kinect.recording.ReplayInputSource;
+import kinect.recording.SyntheticRecordingWriter;
+import kinect.server.KinectStandInServer;
+
+/**
+ *
+ * Ramps synthetic skeletons (SyntheticSkeletonGenerator, sweeping with some
+ * shake, noise and joint loss) from the Kinect's 30 Hz up to RATES_HZ's
+ * highest through three input paths, each read by FPSGame's 60 Hz kinect loop
+ * (validation, smoothing, prediction, interpolation):
+ * - sampler: SyntheticSkeletonSource drained by a KinectSampler (Mocap's
+ * polling path), stages on the game loop;
+ * - worker: the same source pumped into a KinectPlayerWorker, so every
+ * reading goes through the stages off the game loop;
+ * - tcp: the motion written to a recording and served by a
+ * KinectStandInServer (KinectTCP framing) to a KinectTCPInputSource.
+ * For each rate, reports readings per second that made it (into the sampler
+ * or through the worker's stages), the game loop's kinect time, and frames
+ * that started more than LATE_FACTOR frame intervals after the previous
+ * one, i.e. where input load starts making the render loop lag.
+ *
+ * Usage: java kinect.bench.InputThroughputBenchmark [secondsPerRate]
+ */
+public class InputThroughputBenchmark {
+
+    public static final int DEFAULT_SECONDS = 2;
+    public static final double[] RATES_HZ = {30, 120, 500, 1000, 2000, 5000, 10000};
+    public static final long GAME_FRAME_NANOS = 1000000000L / 60;
+    public static final double LATE_FACTOR = 1.5;
+    /**
+     * Away from the stand-in server's default, so a running one doesn't get
+     * in the way.
+     */
+    public static final int PORT = 18005;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int seconds = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_SECONDS;
+        File recordingFile = File.createTempFile("synthetic", ".skrec");
+        recordingFile.deleteOnExit();
+
+        for (double rateHz : RATES_HZ) {
+            System.out.println(format(rateHz) + " Hz:");
+
+            // Sampler, stages on the game loop
+            SyntheticSkeletonSource source = new SyntheticSkeletonSource(createGenerator(), rateHz);
+            source.start();
+            KinectPlayerPipeline player = createPipeline();
+            long[] cost = runGameLoop(player, null, source, seconds);
+            source.stop();
+            KinectSampler sampler = source.getSampler();
+            System.out.println("  sampler: " + format(sampler.getFramesReceived() / (double) seconds) + " readings/s in, "
+                    + format(source.getReadingsSkipped() * 100.0 / Math.max(1, source.getReadingsGenerated() + source.getReadingsSkipped()))
+                    + "% skipped, " + format(cost));
+
+            // Every reading through the stages on a worker
+            source = new SyntheticSkeletonSource(createGenerator(), rateHz);
+            source.start();
+            SkeletonSourcePump pump = new SkeletonSourcePump(source);
+            player = createPipeline();
+            KinectPlayerWorker worker = new KinectPlayerWorker(player, pump);
+            worker.start();
+            pump.start();
+            cost = runGameLoop(player, worker, null, seconds);
+            pump.shutdown();
+            worker.shutdown();
+            source.stop();
+            System.out.println("  worker: " + format(worker.getReadingsProcessed() / (double) seconds) + " readings/s through the stages, "
+                    + "backlog " + format(player.getStages().getAverageBacklog()) + " avg, " + format(cost));
+
+            // KinectTCP
+            SyntheticRecordingWriter.write(createGenerator(), rateHz, 10, recordingFile);
+            KinectStandInServer server = new KinectStandInServer(ReplayInputSource.openRecording(recordingFile), PORT);
+            server.setRateMultiplier((float) (rateHz / KinectStandInServer.FRAME_RATE_HZ));
+            server.start();
+            KinectTCPInputSource tcp = new KinectTCPInputSource(KinectTCPInputSource.DEFAULT_HOST, PORT);
+            tcp.start();
+            player = createPipeline();
+            cost = runGameLoop(player, null, tcp, seconds);
+            tcp.stop();
+            server.stop();
+            System.out.println("  tcp: " + format(tcp.getSampler().getFramesReceived() / (double) seconds) + " readings/s in, "
+                    + format(server.getSkeletonRequests() / (double) seconds) + " requests/s, " + format(cost));
+        }
+    }
+
+    private static SyntheticSkeletonGenerator createGenerator() {
+        SyntheticSkeletonGenerator generator = new SyntheticSkeletonGenerator();
+        generator.setShake(20, 8);
+        generator.setNoise(5);
+        generator.setJointLoss(2);
+        return generator;
+    }
+
+    private static KinectPlayerPipeline createPipeline() {
+        KinectPlayerPipeline pipeline = new KinectPlayerPipeline(0);
+        pipeline.setValidationStage(new ValidationStage());
+        pipeline.setSmoothingFilter(new OneEuroSkeletonFilter());
+        pipeline.setPredictionFilter(new PredictionSkeletonFilter());
+        pipeline.setInterpolator(new SkeletonInterpolator());
+        return pipeline;
+    }
+
+    /**
+     * @param worker Null to read source on the game loop.
+     * @return {frames, total kinect nanos, max kinect nanos per frame, late
+     * frames, new readings seen}.
+     */
+    private static long[] runGameLoop(KinectPlayerPipeline player, KinectPlayerWorker worker, KinectInputSource source, int seconds) throws InterruptedException {
+        long frames = 0, totalNanos = 0, maxNanos = 0, late = 0, newReadings = 0;
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + seconds * 1000000000L;
+        long nextFrameNanos = startNanos;
+        long lastFrameStartNanos = 0;
+        while (System.nanoTime() < endNanos) {
+            long frameStartNanos = System.nanoTime();
+            if (lastFrameStartNanos != 0 && frameStartNanos - lastFrameStartNanos > LATE_FACTOR * GAME_FRAME_NANOS) {
+                late++;
+            }
+            lastFrameStartNanos = frameStartNanos;
+            SkeletonFrame latest = (worker != null) ? worker.getLatestFrame() : source.getLatestFrame();
+            if ((player.update(latest, frameStartNanos) & KinectPlayerPipeline.NEW_READING) != 0) {
+                newReadings++;
+            }
+            long kinectNanos = System.nanoTime() - frameStartNanos;
+            frames++;
+            totalNanos += kinectNanos;
+            maxNanos = Math.max(maxNanos, kinectNanos);
+
+            nextFrameNanos += GAME_FRAME_NANOS;
+            long sleepNanos = nextFrameNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                Thread.sleep(sleepNanos / 1000000, (int) (sleepNanos % 1000000));
+            }
+        }
+        return new long[]{frames, totalNanos, maxNanos, late, newReadings};
+    }
+
+    private static String format(long[] cost) {
+        long frames = Math.max(1, cost[0]);
+        return "game loop " + cost[0] + " frames (" + cost[3] + " late), kinect " + format(cost[1] / 1e3 / frames) + " us/frame average, "
+                + format(cost[2] / 1e3) + " us max, new reading in " + format(cost[4] * 100.0 / frames) + "% of frames";
+    }
+
+    private static String format(double value) {
+        return String.valueOf(Math.round(value * 1000) / 1000.0);
+    }
+}
@@ -0,0 +1,106 @@
+package kinect.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import kinect.input.SkeletonFrame;
+import kinect.input.SkeletonInterpolator;
+import kinect.recording.ReplayInputSource;
+import kinect.recording.SkeletonRecording;
+
+/**
+ *
+ * Simulates the game loop rendering at 60 FPS while a recording comes in as
+ * if from the Kinect at 30 readings per second, with arrival jitter, dropped
+ * readings and duplicated readings, on a virtual clock (no sleeping). Reports
+ * the SkeletonInterpolator counters, and how unevenly the right wrist moves
+ * from render frame to render frame with and without interpolation (RMS of the
+ * frame-to-frame second difference; lower = smoother camera).
+ *
+ * Usage: java kinect.bench.InterpolationBenchmark recording [dropPercent] [duplicatePercent]
+ */
+public class InterpolationBenchmark {
+
+    public static final long RENDER_INTERVAL_NANOS = 1000000000L / 60;
+    public static final long READING_INTERVAL_NANOS = 1000000000L / 30;
+    /**
+     * Arrival jitter of readings, +/-. (Unit: nanoseconds.)
+     */
+    public static final long READING_JITTER_NANOS = 4000000L;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java " + InterpolationBenchmark.class.getName() + " recording [dropPercent] [duplicatePercent]");
+            System.exit(2);
+        }
+        SkeletonRecording recording = ReplayInputSource.openRecording(new File(args[0]));
+        int dropPercent = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+        int duplicatePercent = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+        double steppedJitter = run(recording, null, dropPercent, duplicatePercent);
+        SkeletonInterpolator interpolator = new SkeletonInterpolator();
+        double interpolatedJitter = run(recording, interpolator, dropPercent, duplicatePercent);
+
+        System.out.println(interpolator);
+        System.out.println("Render frames: fresh " + interpolator.getFreshFrames() + ", interpolated " + interpolator.getInterpolatedFrames() + ", held " + interpolator.getHeldFrames());
+        System.out.println("Per-render-frame wrist unevenness (mm): stepped " + steppedJitter + ", interpolated " + interpolatedJitter);
+    }
+
+    /**
+     * @return RMS second difference of the right wrist x/y across render
+     * frames. (Unit: millimeters.)
+     */
+    private static double run(SkeletonRecording recording, SkeletonInterpolator interpolator, int dropPercent, int duplicatePercent) {
+        Random random = new Random(1); // Same readings and timing for both runs
+        SkeletonFrame reading = new SkeletonFrame(), pose = new SkeletonFrame();
+        long nextReadingNanos = READING_INTERVAL_NANOS;
+        int readingIndex = 0;
+        double[] history = new double[4];
+        double sum = 0;
+        long count = 0, renderFrames = 0;
+
+        for (long renderNanos = 0; readingIndex < recording.getFrameCount(); renderNanos += RENDER_INTERVAL_NANOS) {
+            // Readings that arrived since the previous render frame; the game only sees the newest
+            boolean newReading = false;
+            while (nextReadingNanos <= renderNanos && readingIndex < recording.getFrameCount()) {
+                if (random.nextInt(100) >= dropPercent) {
+                    recording.readFrame(readingIndex, reading);
+                    reading.setTimestampNanos(nextReadingNanos);
+                    reading.setSequence(readingIndex);
+                    newReading = true;
+                }
+                if (random.nextInt(100) >= duplicatePercent) {
+                    readingIndex++; // Otherwise the same reading is sent again
+                }
+                nextReadingNanos += READING_INTERVAL_NANOS + (long) ((random.nextDouble() * 2 - 1) * READING_JITTER_NANOS);
+            }
+
+            if (interpolator != null) {
+                if (newReading) {
+                    interpolator.push(reading);
+                }
+                if (!interpolator.sample(renderNanos, pose)) {
+                    continue;
+                }
+            } else if (newReading) {
+                pose.copyFrom(reading);
+            } else if (renderFrames == 0) {
+                continue;
+            }
+
+            // Unevenness of the motion across render frames
+            double x = pose.get(SkeletonFrame.WRIST_RIGHT, SkeletonFrame.KJ_X), y = pose.get(SkeletonFrame.WRIST_RIGHT, SkeletonFrame.KJ_Y);
+            if (renderFrames >= 2) {
+                double ddx = x - 2 * history[0] + history[2], ddy = y - 2 * history[1] + history[3];
+                sum += ddx * ddx + ddy * ddy;
+                count++;
+            }
+            history[2] = history[0];
+            history[3] = history[1];
+            history[0] = x;
+            history[1] = y;
+            renderFrames++;
+        }
+        return (count > 0) ? Math.round(Math.sqrt(sum / count) * 100) / 100.0 : 0;
+    }
+}
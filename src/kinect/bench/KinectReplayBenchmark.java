@@ -0,0 +1,61 @@
+package kinect.bench;
+
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import java.io.File;
+import java.io.IOException;
+import kinect.input.KinectAimMapping;
+import kinect.input.SkeletonFrame;
+import kinect.recording.ReplayInputSource;
+
+/**
+ *
+ * Runs the per-frame Kinect aiming work of FPSGame.updateKinectJointsActions()
+ * (read the newest frame, map it to a look direction, turn the camera) against
+ * a recorded session replayed as fast as possible, headless, and reports the
+ * cost per frame. No Kinect or window is needed.
+ *
+ * Usage: java kinect.bench.KinectReplayBenchmark recording [passes]
+ */
+public class KinectReplayBenchmark {
+
+    public static final int DEFAULT_PASSES = 2000;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java " + KinectReplayBenchmark.class.getName() + " recording [passes]");
+            System.exit(2);
+        }
+        int passes = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_PASSES;
+
+        ReplayInputSource replay = new ReplayInputSource(ReplayInputSource.openRecording(new File(args[0])), ReplayInputSource.AS_FAST_AS_POSSIBLE, true);
+        replay.start();
+        int framesPerPass = replay.getRecording().getFrameCount();
+
+        Camera cam = new Camera(640, 480);
+        Vector3f curCamDir = new Vector3f(), lookDir = new Vector3f();
+
+        // Warm-up pass for the JIT, then the measured passes
+        runFrames(replay, cam, curCamDir, lookDir, framesPerPass * 10);
+        long frames = (long) framesPerPass * passes;
+        long startNanos = System.nanoTime();
+        int trackedFrames = runFrames(replay, cam, curCamDir, lookDir, frames);
+        long elapsedNanos = System.nanoTime() - startNanos;
+        replay.stop();
+
+        System.out.println(replay.getRecording().getFile().getName() + ": " + frames + " frames (" + trackedFrames + " tracked) in " + (elapsedNanos / 1000000) + " ms = " + ((double) elapsedNanos / frames) + " ns/frame. Final camera direction: " + cam.getDirection());
+    }
+
+    private static int runFrames(ReplayInputSource replay, Camera cam, Vector3f curCamDir, Vector3f lookDir, long frames) {
+        int trackedFrames = 0;
+        for (long i = 0; i < frames; i++) {
+            SkeletonFrame frame = replay.getLatestFrame();
+            if (frame.isTracked()) {
+                KinectAimMapping.computeLookDirection(frame, cam.getDirection(curCamDir), lookDir);
+                cam.lookAtDirection(lookDir, Vector3f.UNIT_Y);
+                trackedFrames++;
+            }
+        }
+        return trackedFrames;
+    }
+}
@@ -0,0 +1,98 @@
+package kinect.bench;
+
+import java.io.File;
+import java.io.IOException;
+import kinect.input.KinectTCPInputSource;
+import kinect.input.SkeletonFrame;
+import kinect.recording.ReplayInputSource;
+import kinect.server.KinectStandInServer;
+
+/**
+ *
+ * Runs a KinectStandInServer in-process and reads it through
+ * KinectTCPInputSource while a 60 Hz loop consumes frames the way
+ * FPSGame.updateKinectJointsActions() does. Reports sampler throughput,
+ * reconnects and how often the skeleton was activated and deactivated.
+ * Server options (rate, jitter, bursts, dropouts, disconnects) are the
+ * server's own; it always serves one skeleton on PORT.
+ *
+ * Usage: java kinect.bench.KinectTCPBenchmark recording [seconds] [server options], see
+ * printUsage().
+ */
+public class KinectTCPBenchmark {
+
+    public static final int DEFAULT_SECONDS = 10;
+    /**
+     * Away from KinectTCP's default, so a running server doesn't interfere.
+     */
+    public static final int PORT = 18001;
+    public static final long GAME_FRAME_NANOS = 1000000000L / 60;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            printUsage();
+            System.exit(2);
+        }
+        int seconds = DEFAULT_SECONDS;
+        KinectStandInServer server = new KinectStandInServer(ReplayInputSource.openRecording(new File(args[0])), PORT);
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].matches("\\d+")) {
+                seconds = Integer.parseInt(args[i]);
+            } else if (!server.configure(args[i])) {
+                System.err.println("Unknown option " + args[i]);
+                printUsage();
+                System.exit(2);
+            }
+        }
+        server.start();
+
+        KinectTCPInputSource source = new KinectTCPInputSource(KinectTCPInputSource.DEFAULT_HOST, PORT);
+        source.start();
+
+        long lastSequence = 0;
+        long readings = 0, activations = 0, deactivations = 0;
+        boolean active = false;
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + seconds * 1000000000L;
+        long nextFrameNanos = startNanos;
+        while (System.nanoTime() < endNanos) {
+            SkeletonFrame frame = source.getLatestFrame();
+            if (frame.getSequence() != lastSequence) {
+                lastSequence = frame.getSequence();
+                if (frame.isTracked()) {
+                    readings++;
+                }
+            }
+            if (frame.isTracked() && !active) {
+                active = true;
+                activations++;
+            } else if (!frame.isTracked() && active) {
+                active = false;
+                deactivations++;
+            }
+
+            nextFrameNanos += GAME_FRAME_NANOS;
+            long sleepNanos = nextFrameNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                Thread.sleep(sleepNanos / 1000000, (int) (sleepNanos % 1000000));
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+        source.stop();
+        server.stop();
+
+        System.out.println(server);
+        System.out.println(source);
+        System.out.println("Game loop: " + readings + " new tracked readings = " + Math.round(readings / elapsedSeconds) + "/s"
+                + " (server published " + Math.round(server.getFramesPublished() / elapsedSeconds) + "/s)"
+                + ", activations=" + activations + ", deactivations=" + deactivations);
+    }
+
+    public static void printUsage() {
+        System.err.println("Usage: java " + KinectTCPBenchmark.class.getName() + " recording [seconds] [server options]");
+        System.err.println("  recording                  .poormocap, .skrec or .sksession");
+        System.err.println("  seconds                    Default " + DEFAULT_SECONDS);
+        System.err.println("  server options             --rate, --jitter, --burst, --dropout, --disconnect and --seed, as for "
+                + KinectStandInServer.class.getName() + " (served on port " + PORT + ")");
+    }
+}
@@ -0,0 +1,134 @@
+package kinect.bench;
+
+import java.io.File;
+import java.io.IOException;
+import kinect.gesture.GestureRecognizer;
+import kinect.gesture.GestureTemplate;
+import kinect.input.KinectTCPInputSource;
+import kinect.input.MultiSkeletonSampler;
+import kinect.input.OneEuroSkeletonFilter;
+import kinect.input.PredictionSkeletonFilter;
+import kinect.input.SkeletonFrame;
+import kinect.input.SkeletonInterpolator;
+import kinect.player.KinectPlayerPipeline;
+import kinect.player.KinectPlayerWorker;
+import kinect.recording.ReplayInputSource;
+import kinect.recording.SkeletonRecording;
+import kinect.server.KinectStandInServer;
+
+/**
+ *
+ * Runs a KinectStandInServer in-process serving two skeletons and plays
+ * FPSGame's 60 Hz kinect loop against it twice: one player with all stages on
+ * the game loop (as FPSGame does with one player), then two players through a
+ * MultiSkeletonSampler with a KinectPlayerWorker each (as with
+ * --kinect-players=2). Reports the game loop's kinect time per frame, each
+ * worker's time per reading, activations, and how often the players' skeletons
+ * got swapped (player 2 stands to the right of player 1).
+ *
+ * Usage: java kinect.bench.MultiPlayerBenchmark recording secondRecording [gestureRecording] [seconds]
+ */
+public class MultiPlayerBenchmark {
+
+    public static final int DEFAULT_SECONDS = 10;
+    /**
+     * Away from KinectTCP's default, so a running server doesn't interfere.
+     */
+    public static final int PORT = 18002;
+    public static final long GAME_FRAME_NANOS = 1000000000L / 60;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: java " + MultiPlayerBenchmark.class.getName() + " recording secondRecording [gestureRecording] [seconds]");
+            System.exit(2);
+        }
+        SkeletonRecording gesture = (args.length > 2) ? ReplayInputSource.openRecording(new File(args[2])) : null;
+        int seconds = (args.length > 3) ? Integer.parseInt(args[3]) : DEFAULT_SECONDS;
+        KinectStandInServer server = new KinectStandInServer(ReplayInputSource.openRecording(new File(args[0])),
+                ReplayInputSource.openRecording(new File(args[1])), PORT);
+        server.start();
+
+        // One player, everything on the game loop
+        KinectTCPInputSource singleSource = new KinectTCPInputSource(KinectTCPInputSource.DEFAULT_HOST, PORT);
+        singleSource.start();
+        KinectPlayerPipeline single = createPipeline(0, gesture);
+        long[] singleCost = runGameLoop(new KinectPlayerPipeline[]{single}, null, singleSource, seconds);
+        singleSource.stop();
+        System.out.println("1 player, stages on the game loop: " + format(singleCost) + ", " + single);
+
+        // Two players, per-reading stages on workers
+        KinectTCPInputSource multiSource = new KinectTCPInputSource(KinectTCPInputSource.DEFAULT_HOST, PORT);
+        MultiSkeletonSampler sampler = new MultiSkeletonSampler(multiSource, 2);
+        KinectPlayerPipeline[] players = new KinectPlayerPipeline[]{createPipeline(0, gesture), createPipeline(1, gesture)};
+        KinectPlayerWorker[] workers = new KinectPlayerWorker[players.length];
+        for (int i = 0; i < players.length; i++) {
+            workers[i] = new KinectPlayerWorker(players[i], sampler);
+            workers[i].start();
+        }
+        sampler.start();
+        long[] multiCost = runGameLoop(players, workers, null, seconds);
+        sampler.shutdown();
+        System.out.println("2 players, stages on workers: " + format(multiCost) + ", swapped frames=" + multiCost[3]);
+        for (int i = 0; i < players.length; i++) {
+            workers[i].shutdown();
+            System.out.println(players[i]);
+            System.out.println(workers[i]);
+        }
+        System.out.println(sampler);
+        System.out.println(multiSource);
+        server.stop();
+        System.out.println(server);
+    }
+
+    private static KinectPlayerPipeline createPipeline(int player, SkeletonRecording gesture) {
+        KinectPlayerPipeline pipeline = new KinectPlayerPipeline(player);
+        pipeline.setSmoothingFilter(new OneEuroSkeletonFilter());
+        pipeline.setPredictionFilter(new PredictionSkeletonFilter());
+        pipeline.setInterpolator(new SkeletonInterpolator());
+        if (gesture != null) {
+            GestureRecognizer gestures = new GestureRecognizer();
+            gestures.addTemplate(GestureTemplate.fromRecording("jump", gesture, 60));
+            pipeline.setGestureRecognizer(gestures);
+        }
+        return pipeline;
+    }
+
+    /**
+     * @param workers Null to read singleSource on the game loop.
+     * @return {frames, total kinect nanos, max kinect nanos per frame, frames
+     * with player 1 standing right of player 2}.
+     */
+    private static long[] runGameLoop(KinectPlayerPipeline[] players, KinectPlayerWorker[] workers, KinectTCPInputSource singleSource, int seconds) throws InterruptedException {
+        long frames = 0, totalNanos = 0, maxNanos = 0, swapped = 0;
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + seconds * 1000000000L;
+        long nextFrameNanos = startNanos;
+        while (System.nanoTime() < endNanos) {
+            long frameStartNanos = System.nanoTime();
+            for (int i = 0; i < players.length; i++) {
+                SkeletonFrame latest = (workers != null) ? workers[i].getLatestFrame() : singleSource.getLatestFrame();
+                players[i].update(latest, frameStartNanos);
+            }
+            long kinectNanos = System.nanoTime() - frameStartNanos;
+            frames++;
+            totalNanos += kinectNanos;
+            maxNanos = Math.max(maxNanos, kinectNanos);
+            if (players.length > 1 && players[0].getFrame().isTracked() && players[1].getFrame().isTracked()
+                    && players[0].getFrame().get(SkeletonFrame.SPINE, SkeletonFrame.KJ_X) > players[1].getFrame().get(SkeletonFrame.SPINE, SkeletonFrame.KJ_X)) {
+                swapped++;
+            }
+
+            nextFrameNanos += GAME_FRAME_NANOS;
+            long sleepNanos = nextFrameNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                Thread.sleep(sleepNanos / 1000000, (int) (sleepNanos % 1000000));
+            }
+        }
+        return new long[]{frames, totalNanos, maxNanos, swapped};
+    }
+
+    private static String format(long[] cost) {
+        return cost[0] + " frames, game loop kinect time " + (cost[1] / Math.max(1, cost[0]) / 1000.0) + " us/frame average, "
+                + (cost[2] / 1000.0) + " us max";
+    }
+}
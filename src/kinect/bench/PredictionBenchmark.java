@@ -0,0 +1,138 @@
+package kinect.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import kinect.input.OneEuroSkeletonFilter;
+import kinect.input.PredictionSkeletonFilter;
+import kinect.input.SkeletonFrame;
+import kinect.recording.PoorMocapConverter;
+import kinect.recording.ReplayInputSource;
+import kinect.recording.SkeletonRecording;
+
+/**
+ *
+ * Validates PredictionSkeletonFilter offline: for every reading of a recorded
+ * session, the right wrist and right shoulder are extrapolated by the horizon
+ * and compared with where the recording says they actually were that much
+ * later (interpolated between readings). Reports the mean and 95th percentile
+ * error for several horizons, next to simply holding the last reading (what
+ * the game does without prediction), with and without One-Euro smoothing in
+ * front.
+ *
+ * Usage: java kinect.bench.PredictionBenchmark [recording|directory]...
+ * (defaults to the .poormocap files in the bundled "!PoorMoCap Recordings"
+ * directory)
+ */
+public class PredictionBenchmark {
+
+    public static final String DEFAULT_RECORDINGS_DIRECTORY = "!PoorMoCap Recordings";
+    /**
+     * (Unit: milliseconds.)
+     */
+    public static final int[] HORIZONS_MILLIS = {25, 50, 75, 100, 150};
+    private static final int[] JOINTS = {SkeletonFrame.WRIST_RIGHT, SkeletonFrame.SHOULDER_RIGHT};
+
+    public static void main(String[] args) throws IOException {
+        List<SkeletonRecording> recordings = new ArrayList<SkeletonRecording>();
+        for (String path : (args.length > 0 ? args : new String[]{DEFAULT_RECORDINGS_DIRECTORY})) {
+            File file = new File(path);
+            if (file.isDirectory()) {
+                File[] files = file.listFiles();
+                java.util.Arrays.sort(files);
+                for (File child : files) {
+                    if (child.getName().endsWith(PoorMocapConverter.POORMOCAP_FILE_EXTENSION)) {
+                        recordings.add(ReplayInputSource.openRecording(child));
+                    }
+                }
+            } else {
+                recordings.add(ReplayInputSource.openRecording(file));
+            }
+        }
+        if (recordings.isEmpty()) {
+            System.err.println("No recordings found.");
+            System.exit(2);
+        }
+
+        System.out.println("recording, horizonMs, smoothing, holdMeanMm, holdP95Mm, predictedMeanMm, predictedP95Mm, improvementPercent");
+        for (SkeletonRecording recording : recordings) {
+            for (int horizonMillis : HORIZONS_MILLIS) {
+                for (int smoothing = 0; smoothing <= 1; smoothing++) {
+                    double[] holdErrors = errors(recording, horizonMillis, smoothing == 1, false);
+                    double[] predictedErrors = errors(recording, horizonMillis, smoothing == 1, true);
+                    double holdMean = mean(holdErrors), predictedMean = mean(predictedErrors);
+                    System.out.println(recording.getFile().getName() + ", " + horizonMillis + ", " + (smoothing == 1 ? "on" : "off")
+                            + ", " + format(holdMean) + ", " + format(percentile(holdErrors, 95))
+                            + ", " + format(predictedMean) + ", " + format(percentile(predictedErrors, 95))
+                            + ", " + format(100 * (1 - predictedMean / holdMean)));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The distance between each (possibly predicted) joint and its
+     * actual position horizonMillis later, for every reading and joint where
+     * the recording goes on long enough. (Unit: millimeters.)
+     */
+    private static double[] errors(SkeletonRecording recording, int horizonMillis, boolean smoothing, boolean prediction) {
+        OneEuroSkeletonFilter smoothingFilter = new OneEuroSkeletonFilter();
+        PredictionSkeletonFilter predictionFilter = new PredictionSkeletonFilter(horizonMillis, PredictionSkeletonFilter.DEFAULT_MAX_SPEED_MM_PER_SEC);
+        long horizonNanos = horizonMillis * 1000000L;
+        SkeletonFrame frame = new SkeletonFrame();
+        double[] errors = new double[recording.getFrameCount() * JOINTS.length];
+        int errorCount = 0;
+
+        for (int i = 0; i < recording.getFrameCount(); i++) {
+            recording.readFrame(i, frame);
+            if (smoothing) {
+                smoothingFilter.apply(frame);
+            }
+            if (prediction) {
+                predictionFilter.apply(frame);
+            }
+            long targetNanos = recording.getTimestampNanos(i) + horizonNanos;
+            if (targetNanos > recording.getDurationNanos() || !frame.isTracked()) {
+                continue;
+            }
+            int before = recording.findFrameAt(targetNanos);
+            int after = Math.min(before + 1, recording.getFrameCount() - 1);
+            long beforeNanos = recording.getTimestampNanos(before), afterNanos = recording.getTimestampNanos(after);
+            double fraction = (afterNanos > beforeNanos) ? (double) (targetNanos - beforeNanos) / (afterNanos - beforeNanos) : 0;
+
+            for (int joint : JOINTS) {
+                double squaredDistance = 0;
+                for (int axis = SkeletonFrame.KJ_X; axis <= SkeletonFrame.KJ_Z; axis++) {
+                    double actual = recording.getValue(before, joint, axis)
+                            + fraction * (recording.getValue(after, joint, axis) - recording.getValue(before, joint, axis));
+                    double difference = frame.get(joint, axis) - actual;
+                    squaredDistance += difference * difference;
+                }
+                errors[errorCount++] = Math.sqrt(squaredDistance);
+            }
+        }
+        return java.util.Arrays.copyOf(errors, errorCount);
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return (values.length > 0) ? sum / values.length : 0;
+    }
+
+    private static double percentile(double[] values, int percent) {
+        if (values.length == 0) {
+            return 0;
+        }
+        double[] sorted = values.clone();
+        java.util.Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percent / 100.0 * sorted.length) - 1)];
+    }
+
+    private static String format(double value) {
+        return String.valueOf(Math.round(value * 10) / 10.0);
+    }
+}
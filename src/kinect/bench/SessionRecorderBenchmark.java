@@ -0,0 +1,139 @@
+package kinect.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.BitSet;
+import kinect.input.SkeletonFrame;
+import kinect.recording.ReplayInputSource;
+import kinect.recording.SessionRecorder;
+import kinect.recording.SessionRecordingReader;
+import kinect.recording.SkeletonRecording;
+
+/**
+ *
+ * Records a long synthetic session (a recording looped at 30 frames per
+ * second for the given number of minutes) with SessionRecorder, as the game
+ * would, and reports the file size per frame, the cost of record() on the
+ * calling thread (time, calls over SLOW_RECORD_NANOS, and bytes allocated
+ * inside record() after a warm-up), the writer backlog and dropped
+ * frames. The session is then read back and checked frame by frame against
+ * the frames record() accepted (frames are fed as fast as possible, so the
+ * writer may fall behind and some get dropped; those are counted, not
+ * expected back).
+ *
+ * Usage: java kinect.bench.SessionRecorderBenchmark recording [minutes] [output.sksession]
+ */
+public class SessionRecorderBenchmark {
+
+    public static final int DEFAULT_MINUTES = 30;
+    public static final int FRAMES_PER_SECOND = 30;
+    /**
+     * Frames recorded into a throwaway session first, so record() is
+     * compiled before it's measured (the JIT allocates on the calling thread
+     * while it swaps in compiled code).
+     */
+    public static final int WARM_UP_FRAMES = 20000;
+    /**
+     * record() calls slower than this are counted: with no locks, these are
+     * the thread being descheduled (or paused for GC), not record() waiting.
+     */
+    public static final long SLOW_RECORD_NANOS = 1000000L;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java " + SessionRecorderBenchmark.class.getName() + " recording [minutes] [output.sksession]");
+            System.exit(2);
+        }
+        SkeletonRecording recording = ReplayInputSource.openRecording(new File(args[0]));
+        int minutes = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_MINUTES;
+        File output;
+        if (args.length > 2) {
+            output = new File(args[2]);
+        } else {
+            output = File.createTempFile("session", ".sksession");
+            output.deleteOnExit();
+        }
+        long frames = (long) minutes * 60 * FRAMES_PER_SECOND;
+        long frameIntervalNanos = 1000000000L / FRAMES_PER_SECOND;
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        SkeletonFrame frame = new SkeletonFrame();
+        File warmUpOutput = File.createTempFile("session-warm-up", ".sksession");
+        warmUpOutput.deleteOnExit();
+        SessionRecorder warmUpRecorder = new SessionRecorder(warmUpOutput);
+        long totalWarmUpNanos = 0;
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            recording.readFrame(i % recording.getFrameCount(), frame);
+            frame.setTimestampNanos(i * frameIntervalNanos);
+            long startNanos = System.nanoTime(); // Timed as below, so the timing code is warm too
+            warmUpRecorder.record(frame);
+            totalWarmUpNanos += System.nanoTime() - startNanos;
+        }
+        warmUpRecorder.close();
+
+        SessionRecorder recorder = new SessionRecorder(output);
+        BitSet accepted = new BitSet((int) frames); // Sized up front: set() won't allocate
+        threadBean.getThreadAllocatedBytes(threadId); // Its first call allocates
+        System.out.println("Warm-up: " + WARM_UP_FRAMES + " frames, record() avg " + (totalWarmUpNanos / WARM_UP_FRAMES) + " ns");
+        long maxRecordNanos = 0, totalRecordNanos = 0, allocatedBytes = 0, slowRecords = 0;
+        for (long i = 0; i < frames; i++) {
+            recording.readFrame((int) (i % recording.getFrameCount()), frame);
+            frame.setTimestampNanos(i * frameIntervalNanos);
+            long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+            long startNanos = System.nanoTime();
+            boolean recorded = recorder.record(frame);
+            long recordNanos = System.nanoTime() - startNanos;
+            allocatedBytes += threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            if (recordNanos > SLOW_RECORD_NANOS) {
+                slowRecords++;
+            }
+            if (recorded) {
+                accepted.set((int) i);
+            }
+            totalRecordNanos += recordNanos;
+            if (recordNanos > maxRecordNanos) {
+                maxRecordNanos = recordNanos;
+            }
+        }
+        recorder.close();
+
+        System.out.println(recorder);
+        System.out.println(minutes + " min at " + FRAMES_PER_SECOND + " fps = " + frames + " frames"
+                + " | File: " + output.length() + " bytes (" + ((double) output.length() / frames) + " bytes/frame"
+                + ", uncompressed would be " + (frames * (8 + 4 + SkeletonFrame.VALUE_COUNT * 4)) + " bytes)");
+        System.out.println("record(): avg " + (totalRecordNanos / frames) + " ns, max " + (maxRecordNanos / 1000) + " us, "
+                + slowRecords + " over " + SLOW_RECORD_NANOS / 1000 + " us"
+                + " | Allocated by record(): " + allocatedBytes + " bytes");
+
+        // Read back and compare
+        SessionRecordingReader reader = new SessionRecordingReader(output);
+        SkeletonFrame expected = new SkeletonFrame(), actual = new SkeletonFrame();
+        long readBack = 0;
+        int i = accepted.nextSetBit(0);
+        while (reader.next(actual)) {
+            if (i < 0) {
+                System.err.println("FAILED: read back more frames than were recorded.");
+                System.exit(1);
+            }
+            recording.readFrame(i % recording.getFrameCount(), expected);
+            long expectedTimestampMicros = i * frameIntervalNanos / 1000;
+            if (actual.isTracked() != expected.isTracked() || actual.getTimestampNanos() != expectedTimestampMicros * 1000
+                    || !java.util.Arrays.equals(actual.getValues(), expected.getValues())) {
+                System.err.println("FAILED: frame " + i + " doesn't match after reading back.");
+                System.exit(1);
+            }
+            readBack++;
+            i = accepted.nextSetBit(i + 1);
+        }
+        if (readBack != recorder.getFramesRecorded() || readBack + recorder.getFramesDropped() != frames) {
+            System.err.println("FAILED: read back " + readBack + " frames, recorded " + recorder.getFramesRecorded()
+                    + ", dropped " + recorder.getFramesDropped() + " of " + frames + ".");
+            System.exit(1);
+        }
+        System.out.println("OK: all " + readBack + " recorded frames read back identically (" + recorder.getFramesDropped() + " dropped).");
+    }
+}
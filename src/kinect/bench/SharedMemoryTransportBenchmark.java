@@ -0,0 +1,122 @@
+package kinect.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import kinect.input.SkeletonFrame;
+import kinect.transport.SharedMemorySkeletonInputSource;
+import kinect.transport.SharedMemorySkeletonWriter;
+
+/**
+ *
+ * Starts a SharedMemorySkeletonWriter as a separate JVM publishing a recording
+ * into a ring file, and reads it with a SharedMemorySkeletonInputSource:
+ * - at the Kinect's rate, from a 60 Hz game loop: how old readings are when
+ * the game loop sees them (writer's publish time to game loop, across the
+ * processes), skipped and torn readings;
+ * - with the writer publishing as fast as it can and the reader polling in a
+ * loop: readings handed over per second, the cost and allocation of a
+ * getLatestFrame() call, and how often the writer lapped a slot being read.
+ *
+ * Usage: java kinect.bench.SharedMemoryTransportBenchmark recording [seconds] [ringFile]
+ * (the ring defaults to a file in /dev/shm, or the temp directory without
+ * one)
+ */
+public class SharedMemoryTransportBenchmark {
+
+    public static final int DEFAULT_SECONDS = 10;
+    public static final long GAME_FRAME_NANOS = 1000000000L / 60;
+    /**
+     * Gives the writer JVM time to start before measuring. (Unit:
+     * milliseconds.)
+     */
+    public static final long WRITER_STARTUP_MILLIS = 1500;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: java " + SharedMemoryTransportBenchmark.class.getName() + " recording [seconds] [ringFile]");
+            System.exit(2);
+        }
+        int seconds = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_SECONDS;
+        File ringFile = (args.length > 2) ? new File(args[2])
+                : new File(new File("/dev/shm").isDirectory() ? "/dev/shm" : System.getProperty("java.io.tmpdir"), "kinect-benchmark.ring");
+        ringFile.deleteOnExit();
+
+        // Kinect rate, 60 Hz game loop
+        SharedMemorySkeletonInputSource source = new SharedMemorySkeletonInputSource(ringFile, 0);
+        Process writer = startWriter(args[0], ringFile, "1", seconds);
+        Thread.sleep(WRITER_STARTUP_MILLIS);
+        source.start();
+        long frames = 0, newReadings = 0, totalAgeNanos = 0, maxAgeNanos = 0, lastSequence = 0;
+        long endNanos = System.nanoTime() + (seconds * 1000000000L - WRITER_STARTUP_MILLIS * 1000000L);
+        long nextFrameNanos = System.nanoTime();
+        while (System.nanoTime() < endNanos) {
+            SkeletonFrame frame = source.getLatestFrame();
+            long nowNanos = System.nanoTime();
+            frames++;
+            if (frame.getSequence() != lastSequence && frame.isTracked()) {
+                long ageNanos = nowNanos - frame.getTimestampNanos();
+                newReadings++;
+                totalAgeNanos += ageNanos;
+                maxAgeNanos = Math.max(maxAgeNanos, ageNanos);
+            }
+            lastSequence = frame.getSequence();
+
+            nextFrameNanos += GAME_FRAME_NANOS;
+            long sleepNanos = nextFrameNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                Thread.sleep(sleepNanos / 1000000, (int) (sleepNanos % 1000000));
+            }
+        }
+        writer.waitFor();
+        System.out.println("Kinect rate, 60 Hz game loop: " + frames + " frames, " + newReadings + " new readings, age at game loop "
+                + format(totalAgeNanos / Math.max(1, newReadings) / 1e6) + " ms average, " + format(maxAgeNanos / 1e6) + " ms max");
+        System.out.println(source);
+        source.stop();
+
+        // Flat out
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+        source = new SharedMemorySkeletonInputSource(ringFile, 0);
+        writer = startWriter(args[0], ringFile, "0", seconds);
+        Thread.sleep(WRITER_STARTUP_MILLIS);
+        source.start();
+        long calls = 0;
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        long startNanos = System.nanoTime();
+        endNanos = startNanos + (seconds * 1000000000L - WRITER_STARTUP_MILLIS * 1000000L) / 2;
+        double checksum = 0;
+        while (System.nanoTime() < endNanos) {
+            checksum += source.getLatestFrame().get(SkeletonFrame.SPINE, SkeletonFrame.KJ_X);
+            calls++;
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        writer.waitFor();
+        System.out.println("Flat out, polling: " + format(source.getReadingsRead() / (elapsedNanos / 1e9)) + " readings/s read, "
+                + format((double) elapsedNanos / calls) + " ns per getLatestFrame(), "
+                + format((double) allocatedBytes / calls) + " bytes/call allocated (checksum " + format(checksum) + ")");
+        System.out.println(source);
+        source.stop();
+        ringFile.delete();
+    }
+
+    /**
+     * @return The writer process, which prints to this one's console and runs
+     * for the given seconds.
+     */
+    private static Process startWriter(String recording, File ringFile, String rate, int seconds) throws IOException {
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                SharedMemorySkeletonWriter.class.getName(), recording,
+                "--file=" + ringFile.getPath(), "--rate=" + rate, "--seconds=" + seconds);
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+        return builder.start();
+    }
+
+    private static String format(double value) {
+        return String.valueOf(Math.round(value * 1000) / 1000.0);
+    }
+}
@@ -0,0 +1,188 @@
+package kinect.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import kinect.input.OneEuroSkeletonFilter;
+import kinect.input.SkeletonFrame;
+import kinect.recording.ReplayInputSource;
+import kinect.recording.SkeletonRecording;
+import kinect.recording.SkeletonRecordingFormat;
+
+/**
+ *
+ * Runs OneEuroSkeletonFilter with a few settings over recorded sessions and
+ * reports, for the right wrist minus right shoulder offset that drives the
+ * camera:
+ * - jitter: RMS of the frame-to-frame second difference, raw vs filtered;
+ * - latency: the time shift of the raw signal that best matches the filtered
+ * one (searched in 1 ms steps);
+ * - cost: time per frame and bytes allocated, for all joints and for only the
+ * joints the game uses.
+ *
+ * Usage: java kinect.bench.SmoothingBenchmark [recording|directory]...
+ * (defaults to the bundled "!PoorMoCap Recordings" directory)
+ */
+public class SmoothingBenchmark {
+
+    public static final String DEFAULT_RECORDINGS_DIRECTORY = "!PoorMoCap Recordings";
+    /**
+     * Filter settings tried: {minCutoffHz, beta}.
+     */
+    public static final float[][] SETTINGS = {
+        {0.5f, 0.005f}, {1.0f, 0.005f}, {1.0f, 0.01f}, {1.5f, 0.01f}, {2.0f, 0.02f}, {4.0f, 0.02f}
+    };
+    public static final int MAX_LAG_MILLIS = 400;
+    public static final int TIMING_PASSES = 2000;
+
+    public static void main(String[] args) throws IOException {
+        List<SkeletonRecording> recordings = openRecordings(args.length > 0 ? args : new String[]{DEFAULT_RECORDINGS_DIRECTORY});
+        if (recordings.isEmpty()) {
+            System.err.println("No recordings found.");
+            System.exit(2);
+        }
+
+        System.out.println("recording, minCutoffHz, beta, rawJitterMm, filteredJitterMm, jitterReductionPercent, latencyMs");
+        for (SkeletonRecording recording : recordings) {
+            double[] raw = aimOffsets(recording, null);
+            double rawJitter = jitter(raw);
+            for (float[] setting : SETTINGS) {
+                double[] filtered = aimOffsets(recording, new OneEuroSkeletonFilter(setting[0], setting[1], OneEuroSkeletonFilter.DEFAULT_DERIVATIVE_CUTOFF_HZ));
+                double filteredJitter = jitter(filtered);
+                System.out.println(recording.getFile().getName() + ", " + setting[0] + ", " + setting[1]
+                        + ", " + format(rawJitter) + ", " + format(filteredJitter)
+                        + ", " + format(100 * (1 - filteredJitter / rawJitter))
+                        + ", " + estimateLatencyMillis(raw, filtered, recording));
+            }
+        }
+
+        OneEuroSkeletonFilter usedJointsFilter = new OneEuroSkeletonFilter();
+        usedJointsFilter.setAllJointsFiltered(false);
+        usedJointsFilter.setJointFiltered(SkeletonFrame.SHOULDER_RIGHT, true);
+        usedJointsFilter.setJointFiltered(SkeletonFrame.WRIST_RIGHT, true);
+        usedJointsFilter.setJointFiltered(SkeletonFrame.SHOULDER_CENTER, true);
+        time("all joints", new OneEuroSkeletonFilter(), recordings.get(0));
+        time("used joints only", usedJointsFilter, recordings.get(0));
+    }
+
+    private static List<SkeletonRecording> openRecordings(String[] paths) throws IOException {
+        List<SkeletonRecording> recordings = new ArrayList<SkeletonRecording>();
+        for (String path : paths) {
+            File file = new File(path);
+            if (file.isDirectory()) {
+                File[] files = file.listFiles();
+                java.util.Arrays.sort(files);
+                for (File child : files) {
+                    if (child.getName().endsWith(SkeletonRecordingFormat.FILE_EXTENSION)) {
+                        recordings.add(new SkeletonRecording(child));
+                    }
+                }
+            } else {
+                recordings.add(ReplayInputSource.openRecording(file));
+            }
+        }
+        return recordings;
+    }
+
+    /**
+     * @return x, y, z of the right wrist minus right shoulder for every frame,
+     * after the given filter (if any).
+     */
+    private static double[] aimOffsets(SkeletonRecording recording, OneEuroSkeletonFilter filter) {
+        double[] offsets = new double[recording.getFrameCount() * 3];
+        SkeletonFrame frame = new SkeletonFrame();
+        for (int i = 0; i < recording.getFrameCount(); i++) {
+            recording.readFrame(i, frame);
+            if (filter != null) {
+                filter.apply(frame);
+            }
+            for (int axis = 0; axis < 3; axis++) {
+                offsets[i * 3 + axis] = frame.get(SkeletonFrame.WRIST_RIGHT, SkeletonFrame.KJ_X + axis)
+                        - frame.get(SkeletonFrame.SHOULDER_RIGHT, SkeletonFrame.KJ_X + axis);
+            }
+        }
+        return offsets;
+    }
+
+    private static double jitter(double[] offsets) {
+        int frames = offsets.length / 3;
+        double sum = 0;
+        int count = 0;
+        for (int i = 2; i < frames; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                double secondDifference = offsets[i * 3 + axis] - 2 * offsets[(i - 1) * 3 + axis] + offsets[(i - 2) * 3 + axis];
+                sum += secondDifference * secondDifference;
+                count++;
+            }
+        }
+        return (count > 0) ? Math.sqrt(sum / count) : 0;
+    }
+
+    private static int estimateLatencyMillis(double[] raw, double[] filtered, SkeletonRecording recording) {
+        int frames = raw.length / 3;
+        double frameIntervalMillis = recording.getDurationNanos() / 1e6 / Math.max(1, frames - 1);
+        int bestLagMillis = 0;
+        double bestError = Double.MAX_VALUE;
+        for (int lagMillis = 0; lagMillis <= MAX_LAG_MILLIS; lagMillis++) {
+            double lagFrames = lagMillis / frameIntervalMillis;
+            double error = 0;
+            int count = 0;
+            for (int i = (int) Math.ceil(lagFrames) + 1; i < frames; i++) {
+                double t = i - lagFrames;
+                int i0 = Math.min((int) Math.floor(t), frames - 2);
+                double fraction = t - i0;
+                for (int axis = 0; axis < 3; axis++) {
+                    double delayedRaw = raw[i0 * 3 + axis] + fraction * (raw[(i0 + 1) * 3 + axis] - raw[i0 * 3 + axis]);
+                    double difference = filtered[i * 3 + axis] - delayedRaw;
+                    error += difference * difference;
+                    count++;
+                }
+            }
+            if (count > 0 && error / count < bestError) {
+                bestError = error / count;
+                bestLagMillis = lagMillis;
+            }
+        }
+        return bestLagMillis;
+    }
+
+    private static void time(String label, OneEuroSkeletonFilter filter, SkeletonRecording recording) {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+        SkeletonFrame[] frames = new SkeletonFrame[recording.getFrameCount()];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new SkeletonFrame();
+            recording.readFrame(i, frames[i]);
+        }
+        SkeletonFrame work = new SkeletonFrame();
+
+        runFilter(filter, frames, work, TIMING_PASSES / 10); // JIT warm-up
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        long startNanos = System.nanoTime();
+        long checksum = runFilter(filter, frames, work, TIMING_PASSES);
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        long filteredFrames = (long) frames.length * TIMING_PASSES;
+        System.out.println("Cost, " + label + ": " + format((double) elapsedNanos / filteredFrames) + " ns/frame (including a frame copy), "
+                + format((double) allocatedBytes / filteredFrames) + " bytes/frame allocated (checksum " + checksum + ")");
+    }
+
+    private static long runFilter(OneEuroSkeletonFilter filter, SkeletonFrame[] frames, SkeletonFrame work, int passes) {
+        long checksum = 0;
+        for (int pass = 0; pass < passes; pass++) {
+            for (int i = 0; i < frames.length; i++) {
+                work.copyFrom(frames[i]);
+                filter.apply(work);
+                checksum += work.get(SkeletonFrame.WRIST_RIGHT, SkeletonFrame.KJ_X);
+            }
+        }
+        return checksum;
+    }
+
+    private static String format(double value) {
+        return String.valueOf(Math.round(value * 100) / 100.0);
+    }
+}
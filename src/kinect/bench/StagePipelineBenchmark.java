@@ -0,0 +1,189 @@
+package kinect.bench;
+
+import com.jme3.math.Vector3f;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import kinect.gesture.GestureRecognizer;
+import kinect.gesture.GestureTemplate;
+import kinect.input.OneEuroSkeletonFilter;
+import kinect.input.PredictionSkeletonFilter;
+import kinect.input.SkeletonFrame;
+import kinect.input.SkeletonInterpolator;
+import kinect.pipeline.AimMappingStage;
+import kinect.pipeline.FilterStage;
+import kinect.pipeline.GestureStage;
+import kinect.pipeline.SkeletonSourcePump;
+import kinect.pipeline.SkeletonStageChain;
+import kinect.pipeline.SkeletonStageWorker;
+import kinect.pipeline.ValidationStage;
+import kinect.player.KinectPlayerPipeline;
+import kinect.player.KinectPlayerWorker;
+import kinect.recording.ReplayInputSource;
+import kinect.recording.SkeletonRecording;
+
+/**
+ *
+ * Replays a recording (looping, at the Kinect's rate and REPLAY_SPEEDUP
+ * times faster) through FPSGame's stages (validation, smoothing, gestures,
+ * prediction, then aim mapping on the game loop) laid out three ways, with a
+ * 60 Hz game loop:
+ * - inline: every stage on the game loop (FPSGame's default);
+ * - worker: a SkeletonSourcePump feeding a KinectPlayerWorker
+ * (--kinect-stage-worker);
+ * - split: the pump feeding two chained SkeletonStageWorkers, validation and
+ * smoothing on the first, gestures and prediction on the second.
+ * Reports the game loop's kinect time and bytes allocated per frame, and each
+ * chain's per-stage times, drops and backlog (readings lost to newest-wins
+ * handoffs).
+ *
+ * Usage: java kinect.bench.StagePipelineBenchmark recording [gestureRecording] [seconds]
+ */
+public class StagePipelineBenchmark {
+
+    public static final int DEFAULT_SECONDS = 5;
+    public static final float REPLAY_SPEEDUP = 10;
+    public static final long GAME_FRAME_NANOS = 1000000000L / 60;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: java " + StagePipelineBenchmark.class.getName() + " recording [gestureRecording] [seconds]");
+            System.exit(2);
+        }
+        SkeletonRecording recording = ReplayInputSource.openRecording(new File(args[0]));
+        SkeletonRecording gesture = (args.length > 1) ? ReplayInputSource.openRecording(new File(args[1])) : null;
+        int seconds = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_SECONDS;
+
+        for (float speed : new float[]{1, REPLAY_SPEEDUP}) {
+            System.out.println("Replay at " + speed + "x:");
+
+            // Inline
+            ReplayInputSource source = new ReplayInputSource(recording, speed, true);
+            source.start();
+            KinectPlayerPipeline inline = createPipeline(gesture);
+            SkeletonStageChain aim = createAimChain();
+            System.out.println("  inline: " + format(runGameLoop(inline, null, source, aim, seconds)));
+            source.stop();
+            System.out.println("  " + inline.getStages());
+            System.out.println("  " + aim);
+
+            // One worker
+            source = new ReplayInputSource(recording, speed, true);
+            source.start();
+            SkeletonSourcePump pump = new SkeletonSourcePump(source);
+            KinectPlayerPipeline player = createPipeline(gesture);
+            KinectPlayerWorker worker = new KinectPlayerWorker(player, pump);
+            worker.start();
+            pump.start();
+            aim = createAimChain();
+            System.out.println("  worker: " + format(runGameLoop(player, worker, null, aim, seconds)));
+            pump.shutdown();
+            worker.shutdown();
+            source.stop();
+            System.out.println("  " + worker);
+            System.out.println("  " + aim);
+
+            // Two workers
+            source = new ReplayInputSource(recording, speed, true);
+            source.start();
+            pump = new SkeletonSourcePump(source);
+            KinectPlayerPipeline reference = createPipeline(gesture); // Only for its stages
+            SkeletonStageChain filtering = new SkeletonStageChain("filtering");
+            filtering.setStages(new ValidationStage(), new FilterStage("smoothing", reference.getSmoothingFilter()));
+            SkeletonStageChain detection = new SkeletonStageChain("detection");
+            detection.setStages((gesture != null) ? new GestureStage(reference.getGestureRecognizer()) : null,
+                    new FilterStage("prediction", reference.getPredictionFilter()));
+            SkeletonStageWorker first = new SkeletonStageWorker("FilteringWorker", filtering, pump.getOutput());
+            SkeletonStageWorker second = new SkeletonStageWorker("DetectionWorker", detection, first.getOutput());
+            pump.setConsumer(first);
+            first.setConsumer(second);
+            second.start();
+            first.start();
+            pump.start();
+            aim = createAimChain();
+            System.out.println("  split: " + format(runGameLoop(null, second, null, aim, seconds)));
+            pump.shutdown();
+            first.shutdown();
+            second.shutdown();
+            source.stop();
+            System.out.println("  " + first);
+            System.out.println("  " + second);
+            System.out.println("  " + aim);
+        }
+    }
+
+    private static KinectPlayerPipeline createPipeline(SkeletonRecording gesture) {
+        KinectPlayerPipeline pipeline = new KinectPlayerPipeline(0);
+        pipeline.setValidationStage(new ValidationStage());
+        pipeline.setSmoothingFilter(new OneEuroSkeletonFilter());
+        pipeline.setPredictionFilter(new PredictionSkeletonFilter());
+        pipeline.setInterpolator(new SkeletonInterpolator());
+        if (gesture != null) {
+            GestureRecognizer gestures = new GestureRecognizer();
+            gestures.addTemplate(GestureTemplate.fromRecording("jump", gesture, 60));
+            pipeline.setGestureRecognizer(gestures);
+        }
+        return pipeline;
+    }
+
+    private static SkeletonStageChain createAimChain() {
+        SkeletonStageChain chain = new SkeletonStageChain("camera");
+        chain.setStages(new AimMappingStage(null));
+        return chain;
+    }
+
+    /**
+     * @param player Null to aim straight from the worker's output (split).
+     * @param worker Null to read source on the game loop.
+     * @return {frames, total kinect nanos, max kinect nanos per frame, bytes
+     * allocated on the game loop}.
+     */
+    private static long[] runGameLoop(KinectPlayerPipeline player, SkeletonStageWorker worker, ReplayInputSource source,
+            SkeletonStageChain aim, int seconds) throws InterruptedException {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+        AimMappingStage aimStage = (AimMappingStage) aim.getStage(0);
+        Vector3f cameraDirection = new Vector3f(0, 0, -1);
+        long frames = 0, totalNanos = 0, maxNanos = 0;
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + seconds * 1000000000L;
+        long nextFrameNanos = startNanos;
+        while (System.nanoTime() < endNanos) {
+            long frameStartNanos = System.nanoTime();
+            SkeletonFrame latest = (worker != null) ? worker.getLatestFrame() : source.getLatestFrame();
+            SkeletonFrame frame = latest;
+            if (player != null) {
+                player.update(latest, frameStartNanos);
+                frame = player.getFrame();
+            }
+            aimStage.setFrame(GAME_FRAME_NANOS / 1e9f, cameraDirection);
+            if (aim.process(frame)) {
+                cameraDirection.set(aimStage.getLookDirection());
+            }
+            long kinectNanos = System.nanoTime() - frameStartNanos;
+            frames++;
+            totalNanos += kinectNanos;
+            maxNanos = Math.max(maxNanos, kinectNanos);
+
+            nextFrameNanos += GAME_FRAME_NANOS;
+            long sleepNanos = nextFrameNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                Thread.sleep(sleepNanos / 1000000, (int) (sleepNanos % 1000000));
+            }
+        }
+        long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        return new long[]{frames, totalNanos, maxNanos, allocatedBytes};
+    }
+
+    private static String format(long[] cost) {
+        long frames = Math.max(1, cost[0]);
+        return cost[0] + " frames, game loop kinect time " + format(cost[1] / 1e3 / frames) + " us/frame average, "
+                + format(cost[2] / 1e3) + " us max, " + format((double) cost[3] / frames) + " bytes/frame allocated";
+    }
+
+    private static String format(double value) {
+        return String.valueOf(Math.round(value * 1000) / 1000.0);
+    }
+}
@@ -0,0 +1,134 @@
+package kinect.bench;
+
+import java.io.File;
+import java.io.IOException;
+import kinect.input.SkeletonFrame;
+import kinect.recording.ReplayInputSource;
+import kinect.recording.SkeletonRecording;
+import kinect.transport.UdpSkeletonInputSource;
+import kinect.transport.UdpSkeletonSender;
+
+/**
+ *
+ * Sends a recording over UDP on the loopback interface, in-process, with a
+ * UdpSkeletonSender injecting the given loss, duplicates and reordering, and
+ * reads it with a UdpSkeletonInputSource from a 60 Hz game loop. Reports what
+ * the receiver counted against what was injected, how many readings the game
+ * loop saw, and the one-way latency from send to game loop (both ends share
+ * the clock here). With --restart, the sender is replaced by a new one
+ * halfway through, whose sequence starts over, as when the sending process
+ * restarts; the receiver should count one restart and no more lost readings
+ * than were dropped.
+ *
+ * Usage: java kinect.bench.UdpTransportBenchmark recording [seconds] [--restart] [sender options], see
+ * UdpSkeletonSender.printUsage() for the sender options (--rate, --loss,
+ * --duplicate, --reorder, --seed).
+ */
+public class UdpTransportBenchmark {
+
+    public static final int DEFAULT_SECONDS = 10;
+    /**
+     * Away from the default port, so a running game doesn't interfere.
+     */
+    public static final int PORT = 18003;
+    public static final long GAME_FRAME_NANOS = 1000000000L / 60;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: java " + UdpTransportBenchmark.class.getName() + " recording [seconds] [sender options]");
+            System.exit(2);
+        }
+        SkeletonRecording recording = ReplayInputSource.openRecording(new File(args[0]));
+        int seconds = DEFAULT_SECONDS;
+        boolean restart = false;
+        UdpSkeletonSender sender = createSender(args);
+        for (int i = 1; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                seconds = Integer.parseInt(args[i]);
+            } else if (args[i].equals("--restart")) {
+                restart = true;
+            }
+        }
+
+        UdpSkeletonInputSource receiver = new UdpSkeletonInputSource(PORT, 0);
+        receiver.start();
+        sender.start(recording);
+
+        long frames = 0, newReadings = 0, totalAgeNanos = 0, maxAgeNanos = 0;
+        long lastSequence = 0;
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + seconds * 1000000000L;
+        long nextFrameNanos = startNanos;
+        long restartNanos = restart ? startNanos + (endNanos - startNanos) / 2 : Long.MAX_VALUE;
+        UdpSkeletonSender firstSender = null;
+        while (System.nanoTime() < endNanos) {
+            if (System.nanoTime() >= restartNanos) {
+                sender.stop();
+                firstSender = sender;
+                sender = createSender(args);
+                sender.start(recording);
+                restartNanos = Long.MAX_VALUE;
+            }
+            SkeletonFrame frame = receiver.getLatestFrame();
+            long nowNanos = System.nanoTime();
+            frames++;
+            if (frame.getSequence() != lastSequence && frame.isTracked()) {
+                // Receive time is within microseconds of the send time on loopback
+                long ageNanos = nowNanos - frame.getTimestampNanos();
+                newReadings++;
+                totalAgeNanos += ageNanos;
+                maxAgeNanos = Math.max(maxAgeNanos, ageNanos);
+            }
+            lastSequence = frame.getSequence();
+
+            nextFrameNanos += GAME_FRAME_NANOS;
+            long sleepNanos = nextFrameNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                Thread.sleep(sleepNanos / 1000000, (int) (sleepNanos % 1000000));
+            }
+        }
+        sender.stop();
+        receiver.stop();
+
+        if (firstSender != null) {
+            System.out.println(firstSender);
+        }
+        System.out.println(sender);
+        System.out.println(receiver);
+        System.out.println(frames + " game frames, " + newReadings + " new readings seen, receive-to-game-loop age "
+                + format(totalAgeNanos / Math.max(1, newReadings) / 1e6) + " ms average, " + format(maxAgeNanos / 1e6) + " ms max");
+        long drops = sender.getDropsInjected(), reorders = sender.getReordersInjected(), duplicates = sender.getDuplicatesInjected();
+        if (firstSender != null) {
+            drops += firstSender.getDropsInjected();
+            reorders += firstSender.getReordersInjected();
+            duplicates += firstSender.getDuplicatesInjected();
+        }
+        System.out.println("Injected drops=" + drops + ", reorders=" + reorders + ", duplicates=" + duplicates
+                + (restart ? ", restarts=1" : "")
+                + "; received lost=" + receiver.getLost() + ", reordered=" + receiver.getReordered()
+                + ", duplicates=" + receiver.getDuplicates() + ", restarts=" + receiver.getRestarts());
+        // A reading dropped right before the restart (or at the end) is never seen as a gap
+        if (receiver.getLost() < 0 || receiver.getLost() > drops || receiver.getRestarts() != (restart ? 1 : 0)) {
+            System.err.println("FAILED: the receiver's lost or restart counts don't match what was injected.");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * A sender to PORT with the sender options in args.
+     */
+    private static UdpSkeletonSender createSender(String[] args) throws IOException {
+        UdpSkeletonSender sender = new UdpSkeletonSender(UdpSkeletonSender.DEFAULT_HOST, PORT, 0);
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--") && !args[i].equals("--restart") && !sender.configure(args[i])) {
+                System.err.println("Unknown option " + args[i]);
+                System.exit(2);
+            }
+        }
+        return sender;
+    }
+
+    private static String format(double value) {
+        return String.valueOf(Math.round(value * 1000) / 1000.0);
+    }
+}
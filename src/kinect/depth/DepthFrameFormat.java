@@ -0,0 +1,85 @@
+package kinect.depth;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ *
+ * Layout of a KinectTCP depth frame, the CMD_READDEPTH payload, as
+ * KinectTCPClient.readDepth() decodes it:
+ *
+ * <pre>
+ * one little-endian 16-bit value per pixel, row by row from the top left
+ *   bits 0-12   depth (Unit: millimeters; 0 = unknown)
+ *   bits 13-15  player index (0 = no player, 1-6 = the skeleton the pixel belongs to)
+ * </pre>
+ *
+ * The frame size gives the resolution: the Kinect only has the three below
+ * (picked with CMD_INITDEPTH80X60, ...X240 and ...X480). Frames are kept in
+ * little-endian direct ByteBuffers and read with absolute gets, so nothing
+ * is copied or allocated per pixel.
+ */
+public class DepthFrameFormat {
+
+    public static final int BYTES_PER_PIXEL = 2;
+    public static final int DEPTH_MASK = 0x1FFF;
+    public static final int PLAYER_SHIFT = 13;
+    /**
+     * The Kinect's depth resolutions, smallest first.
+     */
+    public static final int[] WIDTHS = {80, 320, 640},
+            HEIGHTS = {60, 240, 480};
+    public static final int MAX_FRAME_SIZE = 640 * 480 * BYTES_PER_PIXEL;
+
+    private DepthFrameFormat() {
+    }
+
+    public static int getFrameSize(int width, int height) {
+        return width * height * BYTES_PER_PIXEL;
+    }
+
+    /**
+     * @return A frame buffer big enough for any resolution.
+     */
+    public static ByteBuffer allocate() {
+        return ByteBuffer.allocateDirect(MAX_FRAME_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return The width of the resolution whose frames are frameSize bytes,
+     * or -1 if there's none.
+     */
+    public static int getWidth(int frameSize) {
+        for (int i = 0; i < WIDTHS.length; i++) {
+            if (getFrameSize(WIDTHS[i], HEIGHTS[i]) == frameSize) {
+                return WIDTHS[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The height of the resolution whose frames are frameSize bytes,
+     * or -1 if there's none.
+     */
+    public static int getHeight(int frameSize) {
+        for (int i = 0; i < HEIGHTS.length; i++) {
+            if (getFrameSize(WIDTHS[i], HEIGHTS[i]) == frameSize) {
+                return HEIGHTS[i];
+            }
+        }
+        return -1;
+    }
+
+    public static int getDepth(ByteBuffer frame, int pixel) {
+        return frame.getShort(pixel * BYTES_PER_PIXEL) & DEPTH_MASK;
+    }
+
+    public static int getPlayer(ByteBuffer frame, int pixel) {
+        return (frame.getShort(pixel * BYTES_PER_PIXEL) & 0xFFFF) >>> PLAYER_SHIFT;
+    }
+
+    public static void put(ByteBuffer frame, int pixel, int depth, int player) {
+        frame.putShort(pixel * BYTES_PER_PIXEL, (short) ((depth & DEPTH_MASK) | (player << PLAYER_SHIFT)));
+    }
+}
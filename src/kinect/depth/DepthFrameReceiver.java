@@ -0,0 +1,134 @@
+package kinect.depth;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *
+ * Pulls depth frames from a DepthFrameSource on a thread of its own, at most
+ * maxFramesPerSecond of them, into the back buffer of a
+ * DirectBufferTripleBuffer, and wakes the consumer (a DepthSilhouetteWorker)
+ * up for each one. The three buffers are allocated once, big enough for any
+ * resolution, so frames are received without allocating or copying; a frame
+ * the consumer hasn't taken yet is replaced by the next one.
+ *
+ * Keeps the CPU time spent per frame (in the source: socket reads, or drawing
+ * for SyntheticDepthSource), as opposed to time spent waiting for it.
+ */
+public class DepthFrameReceiver extends Thread {
+
+    /*--- SETTINGS ---*/
+    /**
+     * How long to back off when the source has no frame. (Unit:
+     * milliseconds.)
+     */
+    public static final long RETRY_MILLIS = 100;
+    /*--- END SETTINGS ---*/
+    private final DepthFrameSource source;
+    private final float maxFramesPerSecond;
+    private final DirectBufferTripleBuffer output = new DirectBufferTripleBuffer(DepthFrameFormat.MAX_FRAME_SIZE);
+    private volatile Thread consumer = null;
+    private volatile boolean running = true;
+    /**
+     * Written by the receiver thread only, and may be read from any thread.
+     */
+    private volatile long framesReceived = 0, failedReads = 0;
+    private volatile long totalCpuNanos = 0;
+
+    /**
+     * @param maxFramesPerSecond 0 for as many as the source delivers.
+     */
+    public DepthFrameReceiver(DepthFrameSource source, float maxFramesPerSecond) {
+        super("DepthFrameReceiver");
+        this.source = source;
+        this.maxFramesPerSecond = maxFramesPerSecond;
+        setDaemon(true); // Never keep the JVM alive just for the depth stream
+    }
+
+    /**
+     * @param consumer Unparked whenever a frame is published.
+     */
+    public void setConsumer(Thread consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * Frames go to this buffer's back; its front belongs to the one consumer.
+     */
+    public DirectBufferTripleBuffer getOutput() {
+        return output;
+    }
+
+    @Override
+    public void run() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        boolean measureCpu = threadBean.isCurrentThreadCpuTimeSupported();
+        long intervalNanos = (maxFramesPerSecond > 0) ? (long) (1e9 / maxFramesPerSecond) : 0;
+        long nextFrameNanos = System.nanoTime();
+        source.start();
+        while (running) {
+            long cpuNanos = measureCpu ? threadBean.getCurrentThreadCpuTime() : 0;
+            if (source.readFrame(output.getBackBuffer())) {
+                output.publish();
+                if (measureCpu) {
+                    totalCpuNanos = totalCpuNanos + (threadBean.getCurrentThreadCpuTime() - cpuNanos);
+                }
+                framesReceived = framesReceived + 1;
+                Thread wake = consumer;
+                if (wake != null) {
+                    LockSupport.unpark(wake);
+                }
+            } else if (running) {
+                failedReads = failedReads + 1;
+                nextFrameNanos = System.nanoTime() + RETRY_MILLIS * 1000000L;
+            }
+
+            nextFrameNanos += intervalNanos;
+            long sleepNanos = nextFrameNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    Thread.sleep(sleepNanos / 1000000, (int) (sleepNanos % 1000000));
+                } catch (InterruptedException e) {
+                    // shutdown()
+                }
+            } else {
+                nextFrameNanos = System.nanoTime(); // Don't try to catch up
+            }
+        }
+    }
+
+    /**
+     * Stops the receiver and its source. Safe to call from any thread.
+     */
+    public void shutdown() {
+        running = false;
+        source.stop();
+        interrupt();
+    }
+
+    public DepthFrameSource getSource() {
+        return source;
+    }
+
+    public long getFramesReceived() {
+        return framesReceived;
+    }
+
+    /**
+     * @return CPU time the receiver thread spent per frame, on average.
+     * (Unit: nanoseconds.)
+     */
+    public long getAverageCpuNanos() {
+        return totalCpuNanos / Math.max(1, framesReceived);
+    }
+
+    @Override
+    public String toString() {
+        return "DepthFrameReceiver[framesReceived=" + framesReceived
+                + ", failedReads=" + failedReads
+                + ", overwritten=" + output.getOverwrittenCount()
+                + ", cpuMicrosPerFrame=" + (getAverageCpuNanos() / 1000)
+                + ", " + source + "]";
+    }
+}
@@ -0,0 +1,37 @@
+package kinect.depth;
+
+import java.nio.ByteBuffer;
+
+/**
+ *
+ * Anything that can deliver Kinect depth frames (see DepthFrameFormat): a
+ * KinectTCP server, a synthetic scene, ... Frames are pulled one at a time
+ * into a buffer the caller owns, so a source never allocates per frame and
+ * never decides how many frames are kept around.
+ */
+public interface DepthFrameSource {
+
+    /**
+     * Called once, before the first readFrame().
+     */
+    void start();
+
+    /**
+     * Waits for the next frame and reads it into frame, from index 0; the
+     * frame's limit is set to its size, which gives its resolution (see
+     * DepthFrameFormat.getWidth()). Called from one thread only.
+     *
+     * @param frame A buffer of at least DepthFrameFormat.MAX_FRAME_SIZE
+     * bytes, in little-endian order.
+     * @return False if no frame could be read (not connected, stopped, ...);
+     * frame's contents are then undefined, and the caller should back off
+     * before asking again.
+     */
+    boolean readFrame(ByteBuffer frame);
+
+    /**
+     * Stops the source; a readFrame() blocked in another thread returns.
+     * Safe to call from any thread.
+     */
+    void stop();
+}
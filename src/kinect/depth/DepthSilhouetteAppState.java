@@ -0,0 +1,134 @@
+package kinect.depth;
+
+import com.jme3.app.Application;
+import com.jme3.app.SimpleApplication;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.material.Material;
+import com.jme3.material.RenderState;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.shape.Quad;
+import com.jme3.texture.Image;
+import com.jme3.texture.Texture2D;
+import com.jme3.util.BufferUtils;
+import constrainedcamera.ConstrainedSimpleApplication;
+import java.nio.ByteBuffer;
+
+/**
+ *
+ * Shows the player's silhouette from a DepthFrameSource in a corner of the
+ * HUD. Frames are received (DepthFrameReceiver) and turned into silhouettes
+ * (DepthSilhouetteWorker) on threads of their own, at most
+ * FRAMES_PER_SECOND; the render thread only copies the newest silhouette
+ * into the texture, at most UPLOADS_PER_SECOND, so the depth stream costs
+ * the game loop one small texture upload every so often.
+ */
+public class DepthSilhouetteAppState extends AbstractAppState {
+
+    /*--- SETTINGS ---*/
+    public static final float FRAMES_PER_SECOND = 8;
+    public static final float UPLOADS_PER_SECOND = 4;
+    /**
+     * Screen pixels per silhouette pixel.
+     */
+    public static final float HUD_SCALE = 2;
+    /**
+     * Distance from the bottom right corner. (Unit: screen pixels.)
+     */
+    public static final float HUD_MARGIN = 10;
+    /*--- END SETTINGS ---*/
+    private final DepthFrameReceiver receiver;
+    private final DepthSilhouetteWorker worker;
+    private Node guiNode;
+    private Geometry silhouetteGeometry;
+    private Image silhouetteImage;
+    private ByteBuffer silhouetteData;
+    private float secondsSinceUpload = 0;
+    /**
+     * Render thread only.
+     */
+    private long uploads = 0;
+
+    public DepthSilhouetteAppState(DepthFrameSource source) {
+        receiver = new DepthFrameReceiver(source, FRAMES_PER_SECOND);
+        worker = new DepthSilhouetteWorker(receiver);
+    }
+
+    /**
+     * See DepthSilhouetteWorker.setDepthRange().
+     */
+    public void setDepthRange(int nearDepth, int farDepth) {
+        worker.setDepthRange(nearDepth, farDepth);
+    }
+
+    @Override
+    public void initialize(AppStateManager stateManager, Application app) {
+        super.initialize(stateManager, app);
+
+        if (app instanceof ConstrainedSimpleApplication) {
+            guiNode = ((ConstrainedSimpleApplication) app).getGuiNode();
+        } else if (app instanceof SimpleApplication) {
+            guiNode = ((SimpleApplication) app).getGuiNode();
+        } else {
+            throw new RuntimeException("DepthSilhouetteAppState needs an application with a GUI node.");
+        }
+
+        int width = DepthSilhouetteWorker.SILHOUETTE_WIDTH, height = DepthSilhouetteWorker.SILHOUETTE_HEIGHT;
+        silhouetteData = BufferUtils.createByteBuffer(DepthSilhouetteWorker.SILHOUETTE_SIZE); // Transparent until the first upload
+        silhouetteImage = new Image(Image.Format.RGBA8, width, height, silhouetteData);
+        Material material = new Material(app.getAssetManager(), "Common/MatDefs/Misc/Unshaded.j3md");
+        material.setTexture("ColorMap", new Texture2D(silhouetteImage));
+        material.getAdditionalRenderState().setBlendMode(RenderState.BlendMode.Alpha);
+        silhouetteGeometry = new Geometry("KinectDepthSilhouette", new Quad(width * HUD_SCALE, height * HUD_SCALE));
+        silhouetteGeometry.setMaterial(material);
+        silhouetteGeometry.setLocalTranslation(app.getCamera().getWidth() - width * HUD_SCALE - HUD_MARGIN, HUD_MARGIN, 0);
+        guiNode.attachChild(silhouetteGeometry);
+
+        worker.start();
+        receiver.start();
+    }
+
+    @Override
+    public void update(float tpf) {
+        secondsSinceUpload += tpf;
+        if (secondsSinceUpload < 1 / UPLOADS_PER_SECOND) {
+            return;
+        }
+        DirectBufferTripleBuffer silhouettes = worker.getOutput();
+        if (silhouettes.update()) {
+            secondsSinceUpload = 0;
+            ByteBuffer silhouette = silhouettes.getFrontBuffer();
+            silhouette.clear().limit(DepthSilhouetteWorker.SILHOUETTE_SIZE);
+            silhouetteData.clear();
+            silhouetteData.put(silhouette);
+            silhouetteData.flip();
+            silhouetteImage.setUpdateNeeded();
+            uploads++;
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        super.cleanup();
+
+        receiver.shutdown();
+        worker.shutdown();
+        if (silhouetteGeometry != null) {
+            guiNode.detachChild(silhouetteGeometry);
+        }
+    }
+
+    public DepthFrameReceiver getReceiver() {
+        return receiver;
+    }
+
+    public DepthSilhouetteWorker getWorker() {
+        return worker;
+    }
+
+    @Override
+    public String toString() {
+        return "DepthSilhouetteAppState[uploads=" + uploads + ", " + worker + ", " + receiver + "]";
+    }
+}
@@ -0,0 +1,215 @@
+package kinect.depth;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *
+ * Turns the depth frames of a DepthFrameReceiver into small player
+ * silhouettes on a thread of its own, so the render thread only ever uploads
+ * a finished SILHOUETTE_WIDTH x SILHOUETTE_HEIGHT image. Each frame is
+ * thresholded per pixel (a pixel is the player's if the Kinect tagged it with
+ * a player index, or, with a depth range set, if its depth is in that range)
+ * and downsampled to the silhouette size by coverage: a silhouette pixel is
+ * set if more than half of its block of depth pixels is.
+ *
+ * Silhouettes are RGBA8, rows bottom-up like jME images, handed over through
+ * a DirectBufferTripleBuffer (getOutput()). The worker keeps the CPU and
+ * wall time spent per frame.
+ */
+public class DepthSilhouetteWorker extends Thread {
+
+    /*--- SETTINGS ---*/
+    /**
+     * The Kinect's smallest depth resolution; every resolution downsamples
+     * to it by a whole factor.
+     */
+    public static final int SILHOUETTE_WIDTH = 80, SILHOUETTE_HEIGHT = 60;
+    /**
+     * Longest the worker sleeps without being woken up, in case a wake-up
+     * gets lost. (Unit: milliseconds.)
+     */
+    public static final long MAX_PARK_MILLIS = 50;
+    /**
+     * RGB per player index (0 is a pixel picked by depth range only), and the
+     * alpha of silhouette and background pixels.
+     */
+    private static final byte[][] PLAYER_COLORS = {
+        {(byte) 200, (byte) 200, (byte) 200},
+        {(byte) 60, (byte) 255, (byte) 60},
+        {(byte) 60, (byte) 160, (byte) 255},
+        {(byte) 255, (byte) 200, (byte) 40},
+        {(byte) 255, (byte) 80, (byte) 80},
+        {(byte) 220, (byte) 80, (byte) 255},
+        {(byte) 40, (byte) 230, (byte) 230},
+        {(byte) 255, (byte) 255, (byte) 255}};
+    private static final byte SILHOUETTE_ALPHA = (byte) 220, BACKGROUND_ALPHA = (byte) 70;
+    /*--- END SETTINGS ---*/
+    public static final int SILHOUETTE_SIZE = SILHOUETTE_WIDTH * SILHOUETTE_HEIGHT * 4;
+    private final DirectBufferTripleBuffer input;
+    private final DirectBufferTripleBuffer output = new DirectBufferTripleBuffer(SILHOUETTE_SIZE);
+    private volatile int nearDepth = 0, farDepth = 0;
+    private volatile boolean running = true;
+    /**
+     * Written by the worker thread only, and may be read from any thread.
+     */
+    private volatile long framesProcessed = 0, badFrames = 0;
+    private volatile long totalCpuNanos = 0, totalProcessNanos = 0, maxProcessNanos = 0;
+    private volatile int lastCoverage = 0;
+
+    /**
+     * Registers with the receiver, so create the worker before starting it.
+     */
+    public DepthSilhouetteWorker(DepthFrameReceiver receiver) {
+        super("DepthSilhouetteWorker");
+        input = receiver.getOutput();
+        receiver.setConsumer(this);
+        setDaemon(true); // Never keep the JVM alive just for the depth stream
+    }
+
+    /**
+     * Also counts pixels with a depth in [nearDepth, farDepth] as the
+     * player's, for when the Kinect isn't tracking anyone (no player
+     * indices). 0, 0 (the default) only uses player indices. (Unit:
+     * millimeters.)
+     */
+    public void setDepthRange(int nearDepth, int farDepth) {
+        this.nearDepth = nearDepth;
+        this.farDepth = farDepth;
+    }
+
+    /**
+     * Silhouettes go to this buffer's back; its front belongs to the one
+     * consumer.
+     */
+    public DirectBufferTripleBuffer getOutput() {
+        return output;
+    }
+
+    @Override
+    public void run() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        boolean measureCpu = threadBean.isCurrentThreadCpuTimeSupported();
+        while (running) {
+            if (input.update()) {
+                long cpuNanos = measureCpu ? threadBean.getCurrentThreadCpuTime() : 0;
+                long startNanos = System.nanoTime();
+                int coverage = process(input.getFrontBuffer(), output.getBackBuffer(), nearDepth, farDepth);
+                if (coverage < 0) {
+                    badFrames = badFrames + 1;
+                    continue;
+                }
+                output.publish();
+                long processNanos = System.nanoTime() - startNanos;
+                if (measureCpu) {
+                    totalCpuNanos = totalCpuNanos + (threadBean.getCurrentThreadCpuTime() - cpuNanos);
+                }
+                framesProcessed = framesProcessed + 1;
+                totalProcessNanos = totalProcessNanos + processNanos;
+                if (processNanos > maxProcessNanos) {
+                    maxProcessNanos = processNanos;
+                }
+                lastCoverage = coverage;
+            } else {
+                LockSupport.parkNanos(this, MAX_PARK_MILLIS * 1000000L);
+            }
+        }
+    }
+
+    /**
+     * Thresholds and downsamples a depth frame into a silhouette.
+     * Allocation-free.
+     *
+     * @param frame A depth frame (see DepthFrameFormat), from index 0 to its
+     * limit.
+     * @param silhouette At least SILHOUETTE_SIZE bytes; filled from index 0.
+     * @param nearDepth See setDepthRange().
+     * @return Silhouette pixels set, or -1 if the frame has no Kinect
+     * resolution (silhouette is left as it was).
+     */
+    public static int process(ByteBuffer frame, ByteBuffer silhouette, int nearDepth, int farDepth) {
+        int width = DepthFrameFormat.getWidth(frame.limit());
+        if (width < 0) {
+            return -1;
+        }
+        int factor = width / SILHOUETTE_WIDTH;
+        int blockPixels = factor * factor;
+        boolean useDepthRange = farDepth > 0;
+        int coverage = 0;
+        for (int cellY = 0; cellY < SILHOUETTE_HEIGHT; cellY++) {
+            int out = (SILHOUETTE_HEIGHT - 1 - cellY) * SILHOUETTE_WIDTH * 4;
+            for (int cellX = 0; cellX < SILHOUETTE_WIDTH; cellX++, out += 4) {
+                int count = 0, player = 0;
+                for (int y = cellY * factor; y < (cellY + 1) * factor; y++) {
+                    int index = (y * width + cellX * factor) * DepthFrameFormat.BYTES_PER_PIXEL;
+                    for (int x = 0; x < factor; x++, index += DepthFrameFormat.BYTES_PER_PIXEL) {
+                        int value = frame.getShort(index) & 0xFFFF;
+                        int pixelPlayer = value >>> DepthFrameFormat.PLAYER_SHIFT;
+                        if (pixelPlayer != 0) {
+                            count++;
+                            player = pixelPlayer;
+                        } else if (useDepthRange) {
+                            int depth = value & DepthFrameFormat.DEPTH_MASK;
+                            if (depth >= nearDepth && depth <= farDepth) {
+                                count++;
+                            }
+                        }
+                    }
+                }
+                if (count * 2 > blockPixels) {
+                    byte[] color = PLAYER_COLORS[player];
+                    silhouette.put(out, color[0]);
+                    silhouette.put(out + 1, color[1]);
+                    silhouette.put(out + 2, color[2]);
+                    silhouette.put(out + 3, SILHOUETTE_ALPHA);
+                    coverage++;
+                } else {
+                    silhouette.putInt(out, 0);
+                    silhouette.put(out + 3, BACKGROUND_ALPHA);
+                }
+            }
+        }
+        silhouette.clear().limit(SILHOUETTE_SIZE);
+        return coverage;
+    }
+
+    /**
+     * Stops the worker. Safe to call from any thread.
+     */
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(this);
+    }
+
+    public long getFramesProcessed() {
+        return framesProcessed;
+    }
+
+    /**
+     * @return CPU time the worker spent per frame, on average. (Unit:
+     * nanoseconds.)
+     */
+    public long getAverageCpuNanos() {
+        return totalCpuNanos / Math.max(1, framesProcessed);
+    }
+
+    /**
+     * @return Wall time per frame, on average. (Unit: nanoseconds.)
+     */
+    public long getAverageProcessNanos() {
+        return totalProcessNanos / Math.max(1, framesProcessed);
+    }
+
+    @Override
+    public String toString() {
+        return "DepthSilhouetteWorker[framesProcessed=" + framesProcessed
+                + ", badFrames=" + badFrames
+                + ", overwritten=" + output.getOverwrittenCount()
+                + ", cpuMicrosPerFrame=" + (getAverageCpuNanos() / 1000)
+                + ", processMicrosAvg=" + (getAverageProcessNanos() / 1000)
+                + ", processMicrosMax=" + (maxProcessNanos / 1000)
+                + ", lastCoverage=" + lastCoverage + "]";
+    }
+}
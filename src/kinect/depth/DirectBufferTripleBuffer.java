@@ -0,0 +1,73 @@
+package kinect.depth;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import kinect.input.TripleBufferIndex;
+
+/**
+ *
+ * Lock-free single-producer/single-consumer triple buffer of direct
+ * ByteBuffers, the same handoff (TripleBufferIndex) as
+ * kinect.input.SkeletonFrameBuffer: the producer fills its own back buffer
+ * in place and publishes it with one atomic swap; the consumer swaps the
+ * newest published buffer into its own front buffer. Nobody blocks, waits or allocates after construction, and a
+ * buffer published over before the consumer got to it counts as overwritten.
+ */
+public class DirectBufferTripleBuffer {
+
+    private final ByteBuffer[] buffers = new ByteBuffer[3];
+    private final TripleBufferIndex index = new TripleBufferIndex();
+
+    /**
+     * @param capacity Size of each of the three buffers. (Unit: bytes.)
+     */
+    public DirectBufferTripleBuffer(int capacity) {
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Producer side.
+     *
+     * @return The buffer to fill in place before calling publish(). Its
+     * position and limit are whatever they were when it was last published.
+     */
+    public ByteBuffer getBackBuffer() {
+        return buffers[index.getBackIndex()];
+    }
+
+    /**
+     * Producer side. Makes the back buffer the newest one and hands the
+     * producer a fresh back buffer. Never blocks.
+     */
+    public void publish() {
+        index.publish();
+    }
+
+    /**
+     * Consumer side. Wait-free.
+     *
+     * @return True if a newer buffer than the current front buffer was
+     * published and it is now the front buffer.
+     */
+    public boolean update() {
+        return index.update();
+    }
+
+    /**
+     * Consumer side. The returned buffer stays valid and unchanged until the
+     * consumer's next update() call.
+     */
+    public ByteBuffer getFrontBuffer() {
+        return buffers[index.getFrontIndex()];
+    }
+
+    public long getPublishedCount() {
+        return index.getPublishedCount();
+    }
+
+    public long getOverwrittenCount() {
+        return index.getOverwrittenCount();
+    }
+}
@@ -0,0 +1,181 @@
+package kinect.depth;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+
+/**
+ *
+ * Depth source that asks a KinectTCP server for depth frames over a
+ * connection of its own (next to whatever reads the skeletons). It speaks
+ * the protocol itself instead of using KinectTCPClient.readDepth(), which
+ * allocates an int[pixels][2] per frame: requests and replies go through a
+ * blocking SocketChannel, and the payload is read straight into the caller's
+ * direct buffer, so a frame is never copied or decoded on the way in.
+ *
+ * A frame is requested whenever readFrame() is called; the server answers
+ * with its newest one, so the caller's pace decides the frame rate. A lost
+ * connection (or a reply that isn't a depth frame) closes the channel, and
+ * the next readFrame() tries to connect again, at most every
+ * RECONNECT_INTERVAL_MILLIS.
+ */
+public class KinectTCPDepthSource implements DepthFrameSource {
+
+    /*--- SETTINGS ---*/
+    /**
+     * KinectTCPClient's defaults.
+     */
+    public static final String DEFAULT_HOST = "127.0.0.1";
+    public static final int DEFAULT_PORT = 8001;
+    /**
+     * (Unit: milliseconds.)
+     */
+    public static final long RECONNECT_INTERVAL_MILLIS = 250;
+    /*--- END SETTINGS ---*/
+    public static final byte CMD_READDEPTH = 31;
+    /**
+     * Reply header: int length (payload + 4) and int timestamp, little-endian.
+     */
+    private static final int FRAME_HEADER_SIZE = 8;
+    private final String host;
+    private final int port;
+    private final ByteBuffer command = ByteBuffer.allocateDirect(1);
+    private final ByteBuffer header = ByteBuffer.allocateDirect(FRAME_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private volatile SocketChannel channel = null;
+    private volatile boolean running = false;
+    private long nextConnectNanos = 0;
+    private boolean reportedConnectFailure = false;
+    /**
+     * Written by the reading thread only, and may be read from any thread.
+     */
+    private volatile long framesRead = 0, emptyReplies = 0, badReplies = 0;
+    private volatile long connects = 0, connectFailures = 0, disconnects = 0;
+
+    public KinectTCPDepthSource() {
+        this(DEFAULT_HOST, DEFAULT_PORT);
+    }
+
+    public KinectTCPDepthSource(String host, int port) {
+        this.host = host;
+        this.port = port;
+        command.put(0, CMD_READDEPTH);
+    }
+
+    public void start() {
+        running = true;
+    }
+
+    public boolean readFrame(ByteBuffer frame) {
+        if (!running || !connect()) {
+            return false;
+        }
+        SocketChannel connection = channel;
+        try {
+            command.clear();
+            while (command.hasRemaining()) {
+                connection.write(command);
+            }
+            header.clear();
+            readFully(connection, header);
+            int payloadLength = header.getInt(0) - 4;
+            if (payloadLength == 0) {
+                emptyReplies = emptyReplies + 1; // Server doesn't serve depth
+                return false;
+            } else if (payloadLength < 0 || payloadLength > frame.capacity()
+                    || DepthFrameFormat.getWidth(payloadLength) < 0) {
+                badReplies = badReplies + 1;
+                disconnect(); // Out of step with the server; start over
+                return false;
+            }
+            frame.clear().limit(payloadLength);
+            readFully(connection, frame);
+            framesRead = framesRead + 1;
+            return true;
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("Lost kinect depth connection to " + host + ":" + port + " (" + e.getMessage() + ").");
+            }
+            disconnect();
+            return false;
+        }
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("connection closed by the server");
+            }
+        }
+    }
+
+    /**
+     * @return True if connected.
+     */
+    private boolean connect() {
+        if (channel != null) {
+            return true;
+        }
+        if (System.nanoTime() - nextConnectNanos < 0) {
+            return false;
+        }
+        nextConnectNanos = System.nanoTime() + RECONNECT_INTERVAL_MILLIS * 1000000L;
+        try {
+            SocketChannel connection = SocketChannel.open(new InetSocketAddress(host, port));
+            connection.socket().setTcpNoDelay(true);
+            channel = connection;
+            connects = connects + 1;
+            reportedConnectFailure = false;
+            return true;
+        } catch (IOException e) {
+            connectFailures = connectFailures + 1;
+            if (!reportedConnectFailure) {
+                System.err.println("Can't connect to kinect depth at " + host + ":" + port + " (" + e.getMessage() + "); retrying.");
+                reportedConnectFailure = true;
+            }
+            return false;
+        }
+    }
+
+    private void disconnect() {
+        SocketChannel connection = channel;
+        channel = null;
+        if (connection != null) {
+            disconnects = disconnects + 1;
+            try {
+                connection.close();
+            } catch (IOException e) {
+                // Nothing left to do
+            }
+        }
+    }
+
+    public void stop() {
+        running = false;
+        SocketChannel connection = channel;
+        if (connection != null) {
+            try {
+                connection.close(); // Wakes up a blocked readFrame()
+            } catch (IOException e) {
+                // Nothing left to do
+            }
+        }
+    }
+
+    public long getFramesRead() {
+        return framesRead;
+    }
+
+    @Override
+    public String toString() {
+        return "KinectTCPDepthSource[" + host + ":" + port
+                + ", framesRead=" + framesRead
+                + ", emptyReplies=" + emptyReplies
+                + ", badReplies=" + badReplies
+                + ", connects=" + connects
+                + ", connectFailures=" + connectFailures
+                + ", disconnects=" + disconnects + "]";
+    }
+}
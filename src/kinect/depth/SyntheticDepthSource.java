@@ -0,0 +1,168 @@
+package kinect.depth;
+
+import java.nio.ByteBuffer;
+
+/**
+ *
+ * Depth source that draws a scene instead of reading a Kinect, so the depth
+ * path can be tried and measured without the device: a back wall and floor,
+ * and one player (head, torso, legs and two waving arms, tagged with player
+ * index 1) swaying from side to side in front of them, with a sprinkling of
+ * unknown (0) pixels like the Kinect's shadows. Frames come at FRAME_RATE_HZ,
+ * or as fast as they are asked for with a rate of 0.
+ *
+ * render() is also used by kinect.server.KinectStandInServer to serve depth.
+ */
+public class SyntheticDepthSource implements DepthFrameSource {
+
+    /*--- SETTINGS ---*/
+    /**
+     * The Kinect's native depth rate.
+     */
+    public static final float FRAME_RATE_HZ = 30;
+    /**
+     * (Unit: millimeters.)
+     */
+    public static final int WALL_DEPTH = 3800,
+            PLAYER_DEPTH = 2200,
+            NEAREST_FLOOR_DEPTH = 1200;
+    /**
+     * One pixel in this many is unknown.
+     */
+    public static final int UNKNOWN_PIXEL_EVERY = 61;
+    /*--- END SETTINGS ---*/
+    private final int width, height;
+    private final float frameRateHz;
+    private volatile boolean running = false;
+    private long startNanos, nextFrameNanos;
+    private int frameNumber = 0;
+
+    /**
+     * 320x240 at FRAME_RATE_HZ.
+     */
+    public SyntheticDepthSource() {
+        this(DepthFrameFormat.WIDTHS[1], DepthFrameFormat.HEIGHTS[1], FRAME_RATE_HZ);
+    }
+
+    /**
+     * @param width One of DepthFrameFormat.WIDTHS, with the matching height.
+     * @param frameRateHz 0 for as fast as frames are asked for.
+     */
+    public SyntheticDepthSource(int width, int height, float frameRateHz) {
+        if (DepthFrameFormat.getWidth(DepthFrameFormat.getFrameSize(width, height)) != width) {
+            throw new IllegalArgumentException("The Kinect has no " + width + "x" + height + " depth mode");
+        }
+        this.width = width;
+        this.height = height;
+        this.frameRateHz = frameRateHz;
+    }
+
+    public void start() {
+        running = true;
+        startNanos = nextFrameNanos = System.nanoTime();
+    }
+
+    public boolean readFrame(ByteBuffer frame) {
+        if (!running) {
+            return false;
+        }
+        if (frameRateHz > 0) {
+            long sleepNanos = nextFrameNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    Thread.sleep(sleepNanos / 1000000, (int) (sleepNanos % 1000000));
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }
+            nextFrameNanos += (long) (1e9 / frameRateHz);
+        }
+        frame.clear().limit(DepthFrameFormat.getFrameSize(width, height));
+        render(frame, width, height, (System.nanoTime() - startNanos) / 1e9, frameNumber++);
+        return true;
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Draws the scene as it is at the given time into frame (absolute puts,
+     * from index 0). Allocation-free.
+     *
+     * @param frameNumber Moves the unknown pixels around from frame to frame.
+     */
+    public static void render(ByteBuffer frame, int width, int height, double seconds, int frameNumber) {
+        float h = height;
+        float centerX = width * (0.5f + 0.25f * (float) Math.sin(seconds * 0.7));
+        float headY = 0.22f * h, headRadius = 0.07f * h;
+        float shoulderY = 0.34f * h, hipY = 0.6f * h, feetY = 0.92f * h;
+        float torsoHalfWidth = 0.08f * h, legHalfWidth = 0.035f * h, legOffset = 0.045f * h;
+        float armLength = 0.24f * h, armHalfWidth = 0.03f * h;
+        // Arms wave out of phase, between hanging down and pointing up
+        double leftAngle = Math.PI * (0.55 + 0.45 * Math.sin(seconds * 2.1));
+        double rightAngle = Math.PI * (0.55 + 0.45 * Math.sin(seconds * 2.1 + 2));
+        float leftShoulderX = centerX - torsoHalfWidth, rightShoulderX = centerX + torsoHalfWidth;
+        float leftHandX = leftShoulderX - armLength * (float) Math.sin(leftAngle),
+                leftHandY = shoulderY + armLength * (float) Math.cos(leftAngle);
+        float rightHandX = rightShoulderX + armLength * (float) Math.sin(rightAngle),
+                rightHandY = shoulderY + armLength * (float) Math.cos(rightAngle);
+        int horizonY = (int) (0.7f * h);
+
+        int pixel = 0;
+        for (int y = 0; y < height; y++) {
+            int background = WALL_DEPTH;
+            if (y > horizonY) {
+                background = WALL_DEPTH - (WALL_DEPTH - NEAREST_FLOOR_DEPTH) * (y - horizonY) / (height - horizonY);
+            }
+            for (int x = 0; x < width; x++, pixel++) {
+                if ((pixel + frameNumber * 7) % UNKNOWN_PIXEL_EVERY == 0) {
+                    DepthFrameFormat.put(frame, pixel, 0, 0);
+                    continue;
+                }
+                float dx = x - centerX;
+                boolean player;
+                if (y < shoulderY) {
+                    float dy = y - headY;
+                    player = dx * dx + dy * dy <= headRadius * headRadius;
+                } else if (y < hipY) {
+                    player = Math.abs(dx) <= torsoHalfWidth;
+                } else {
+                    player = y < feetY && Math.abs(Math.abs(dx) - legOffset) <= legHalfWidth;
+                }
+                player = player
+                        || isNearSegment(x, y, leftShoulderX, shoulderY, leftHandX, leftHandY, armHalfWidth)
+                        || isNearSegment(x, y, rightShoulderX, shoulderY, rightHandX, rightHandY, armHalfWidth);
+                if (player) {
+                    // Rounded body: edges a bit further away than the middle
+                    DepthFrameFormat.put(frame, pixel, PLAYER_DEPTH + (int) (Math.abs(dx) * 400 / h), 1);
+                } else {
+                    DepthFrameFormat.put(frame, pixel, background, 0);
+                }
+            }
+        }
+    }
+
+    private static boolean isNearSegment(float x, float y, float x0, float y0, float x1, float y1, float distance) {
+        float segmentX = x1 - x0, segmentY = y1 - y0;
+        float t = ((x - x0) * segmentX + (y - y0) * segmentY) / (segmentX * segmentX + segmentY * segmentY);
+        t = Math.max(0, Math.min(1, t));
+        float dx = x - (x0 + t * segmentX), dy = y - (y0 + t * segmentY);
+        return dx * dx + dy * dy <= distance * distance;
+    }
+
+    @Override
+    public String toString() {
+        return "SyntheticDepthSource[" + width + "x" + height
+                + ", rateHz=" + frameRateHz
+                + ", frames=" + frameNumber + "]";
+    }
+}
@@ -0,0 +1,16 @@
+package kinect.gesture;
+
+/**
+ *
+ * Gets told about gestures the GestureRecognizer matched. Called on the
+ * thread that feeds the recognizer (the game loop).
+ */
+public interface GestureListener {
+
+    /**
+     * @param averageDistance How closely the movement followed the template:
+     * average distance per warping step, at most the gesture's threshold.
+     * (Unit: millimeters.)
+     */
+    void onGesture(GestureTemplate gesture, float averageDistance);
+}
@@ -0,0 +1,255 @@
+package kinect.gesture;
+
+import java.util.ArrayList;
+import java.util.List;
+import kinect.input.SkeletonFrame;
+
+/**
+ *
+ * Matches the live skeleton stream against gesture templates with
+ * incremental, windowed subsequence dynamic time warping (the SPRING
+ * approach): every template keeps one column of the DTW matrix, which each
+ * new reading updates in O(template points), so the full matrix is never
+ * recomputed. Matches may start at any reading and must last between the
+ * template's minimum and maximum match duration (the window); paths that grow
+ * longer are dropped. A gesture fires when the average distance per warping
+ * step falls to its threshold, after which it's quiet for half its duration.
+ *
+ * CPU use per update() can be capped: templates are then served round-robin
+ * until the budget is used up, and the ones that didn't get a turn catch up
+ * from a short history of readings next time (or skip readings if they fall
+ * more than HISTORY_SIZE behind). update() allocates nothing.
+ */
+public class GestureRecognizer {
+
+    /**
+     * Features per reading: the right wrist relative to the right shoulder
+     * (x, y, z), in millimeters.
+     */
+    public static final int FEATURE_SIZE = 3;
+    /*--- SETTINGS ---*/
+    /**
+     * Readings kept for templates that fell behind because of the CPU budget.
+     */
+    public static final int HISTORY_SIZE = 8;
+    /**
+     * No CPU limit.
+     */
+    public static final long UNLIMITED_BUDGET = 0;
+    /*--- END SETTINGS ---*/
+    private final List<GestureTemplate> templates = new ArrayList<GestureTemplate>();
+    private GestureListener listener = null;
+    private long budgetNanos = UNLIMITED_BUDGET;
+    private final float[] historyFeatures = new float[HISTORY_SIZE * FEATURE_SIZE];
+    private final long[] historyTimestampsNanos = new long[HISTORY_SIZE];
+    private long readingsPushed = 0;
+    private int nextTemplate = 0;
+    private long updates = 0, budgetOverruns = 0, readingsSkipped = 0;
+    private long totalUpdateNanos = 0, maxUpdateNanos = 0;
+
+    public static void extractFeatures(SkeletonFrame frame, float[] store) {
+        extractFeatures(frame, store, 0);
+    }
+
+    /**
+     * Writes FEATURE_SIZE features of the frame into store, from offset on.
+     */
+    public static void extractFeatures(SkeletonFrame frame, float[] store, int offset) {
+        for (int axis = 0; axis < FEATURE_SIZE; axis++) {
+            store[offset + axis] = frame.get(SkeletonFrame.WRIST_RIGHT, SkeletonFrame.KJ_X + axis)
+                    - frame.get(SkeletonFrame.SHOULDER_RIGHT, SkeletonFrame.KJ_X + axis);
+        }
+    }
+
+    public void addTemplate(GestureTemplate template) {
+        templates.add(template);
+        resetTemplate(template);
+        template.readingsProcessed = readingsPushed;
+    }
+
+    public List<GestureTemplate> getTemplates() {
+        return templates;
+    }
+
+    public void setListener(GestureListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @param budgetNanos Most time update() should spend, or
+     * UNLIMITED_BUDGET. (Unit: nanoseconds.)
+     */
+    public void setBudgetNanos(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+    }
+
+    public long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+    /**
+     * Feeds a new reading (call once per reading, not per render frame).
+     * Untracked readings reset all matches in progress.
+     */
+    public void update(SkeletonFrame frame) {
+        long startNanos = System.nanoTime();
+        int templateCount = templates.size();
+        if (!frame.isTracked()) {
+            for (int i = 0; i < templateCount; i++) {
+                GestureTemplate template = templates.get(i);
+                resetTemplate(template);
+                template.readingsProcessed = readingsPushed;
+            }
+            return;
+        }
+
+        int slot = (int) (readingsPushed % HISTORY_SIZE);
+        extractFeatures(frame, historyFeatures, slot * FEATURE_SIZE);
+        historyTimestampsNanos[slot] = frame.getTimestampNanos();
+        readingsPushed++;
+
+        boolean overBudget = false;
+        for (int served = 0; served < templateCount && !overBudget; served++) {
+            GestureTemplate template = templates.get(nextTemplate);
+            if (readingsPushed - template.readingsProcessed > HISTORY_SIZE) {
+                // Too far behind to catch up; continue from the oldest reading kept
+                readingsSkipped += readingsPushed - HISTORY_SIZE - template.readingsProcessed;
+                resetTemplate(template);
+                template.readingsProcessed = readingsPushed - HISTORY_SIZE;
+            }
+            while (template.readingsProcessed < readingsPushed) {
+                step(template, (int) (template.readingsProcessed % HISTORY_SIZE));
+                template.readingsProcessed++;
+                if (budgetNanos > UNLIMITED_BUDGET && System.nanoTime() - startNanos > budgetNanos) {
+                    overBudget = true;
+                    break;
+                }
+            }
+            if (template.readingsProcessed == readingsPushed) {
+                nextTemplate = (nextTemplate + 1) % templateCount;
+            }
+        }
+        if (overBudget) {
+            budgetOverruns++;
+        }
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        updates++;
+        totalUpdateNanos += elapsedNanos;
+        if (elapsedNanos > maxUpdateNanos) {
+            maxUpdateNanos = elapsedNanos;
+        }
+    }
+
+    /**
+     * Advances one template's DTW column by one reading.
+     */
+    private void step(GestureTemplate template, int historySlot) {
+        int pointCount = template.getPointCount();
+        long timestampNanos = historyTimestampsNanos[historySlot];
+        int featureBase = historySlot * FEATURE_SIZE;
+        float[] cost = template.cost, previousCost = template.previousCost;
+        int[] pathLength = template.pathLength, previousPathLength = template.previousPathLength;
+        long[] start = template.startNanos, previousStart = template.previousStartNanos;
+        System.arraycopy(cost, 0, previousCost, 0, pointCount + 1);
+        System.arraycopy(pathLength, 0, previousPathLength, 0, pointCount + 1);
+        System.arraycopy(start, 0, previousStart, 0, pointCount + 1);
+
+        // The empty prefix: a match can start at every reading
+        cost[0] = 0;
+        pathLength[0] = 0;
+        start[0] = timestampNanos;
+        long maxMatchNanos = template.getMaxMatchNanos();
+
+        for (int i = 1; i <= pointCount; i++) {
+            float distanceSquared = 0;
+            for (int f = 0; f < FEATURE_SIZE; f++) {
+                float difference = historyFeatures[featureBase + f] - template.getPoint(i - 1, f);
+                distanceSquared += difference * difference;
+            }
+            float distance = (float) Math.sqrt(distanceSquared);
+
+            // Diagonal (next point, next reading), with a new match starting now for the first point
+            float best = (i == 1) ? 0 : previousCost[i - 1];
+            int bestLength = (i == 1) ? 0 : previousPathLength[i - 1];
+            long bestStart = (i == 1) ? timestampNanos : previousStart[i - 1];
+            // Same point held over another reading
+            if (previousCost[i] < best) {
+                best = previousCost[i];
+                bestLength = previousPathLength[i];
+                bestStart = previousStart[i];
+            }
+            // Next point within the same reading
+            if (i > 1 && cost[i - 1] < best) {
+                best = cost[i - 1];
+                bestLength = pathLength[i - 1];
+                bestStart = start[i - 1];
+            }
+
+            if (timestampNanos - bestStart > maxMatchNanos) {
+                cost[i] = Float.POSITIVE_INFINITY; // Outside the window
+            } else {
+                cost[i] = best + distance;
+            }
+            pathLength[i] = bestLength + 1;
+            start[i] = bestStart;
+        }
+
+        if (cost[pointCount] == Float.POSITIVE_INFINITY || timestampNanos < template.cooldownUntilNanos) {
+            return;
+        }
+        float averageDistance = cost[pointCount] / pathLength[pointCount];
+        if (averageDistance <= template.getThreshold() && timestampNanos - start[pointCount] >= template.getMinMatchNanos()) {
+            template.matches++;
+            template.cooldownUntilNanos = timestampNanos + template.getDurationNanos() / 2;
+            resetTemplate(template);
+            if (listener != null) {
+                listener.onGesture(template, averageDistance);
+            }
+        }
+    }
+
+    private static void resetTemplate(GestureTemplate template) {
+        for (int i = 0; i <= template.getPointCount(); i++) {
+            template.cost[i] = Float.POSITIVE_INFINITY;
+            template.pathLength[i] = 0;
+            template.startNanos[i] = 0;
+        }
+    }
+
+    public long getUpdates() {
+        return updates;
+    }
+
+    /**
+     * @return Updates cut short by the CPU budget.
+     */
+    public long getBudgetOverruns() {
+        return budgetOverruns;
+    }
+
+    /**
+     * @return Readings templates had to skip because they fell too far behind.
+     */
+    public long getReadingsSkipped() {
+        return readingsSkipped;
+    }
+
+    public long getAverageUpdateNanos() {
+        return (updates > 0) ? totalUpdateNanos / updates : 0;
+    }
+
+    public long getMaxUpdateNanos() {
+        return maxUpdateNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "GestureRecognizer[templates=" + templates.size()
+                + ", updates=" + updates
+                + ", averageUpdateMicros=" + (getAverageUpdateNanos() / 1000f)
+                + ", maxUpdateMicros=" + (maxUpdateNanos / 1000f)
+                + ", budgetOverruns=" + budgetOverruns
+                + ", readingsSkipped=" + readingsSkipped + "]";
+    }
+}
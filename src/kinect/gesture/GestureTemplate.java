@@ -0,0 +1,177 @@
+package kinect.gesture;
+
+import java.util.Arrays;
+import kinect.input.SkeletonFrame;
+import kinect.recording.SkeletonRecording;
+
+/**
+ *
+ * A gesture to look for in the live skeleton stream: a short sequence of
+ * feature points (see GestureRecognizer.extractFeatures()) cut from a
+ * recording, plus how closely a movement has to follow it to count.
+ *
+ * Also holds the template's incremental dynamic time warping state, which
+ * only GestureRecognizer touches.
+ */
+public class GestureTemplate {
+
+    /*--- SETTINGS ---*/
+    /**
+     * Templates are resampled to at most this many points, which bounds the
+     * per-reading matching cost.
+     */
+    public static final int MAX_POINTS = 32;
+    /**
+     * Matches may take between these fractions of the template's recorded
+     * duration (the DTW window).
+     */
+    public static final float DEFAULT_MIN_DURATION_FACTOR = 0.5f,
+            DEFAULT_MAX_DURATION_FACTOR = 2.0f;
+    /*--- END SETTINGS ---*/
+    private final String name;
+    private final float[] points;
+    private final int pointCount;
+    private final long durationNanos;
+    private float threshold;
+    private float minDurationFactor = DEFAULT_MIN_DURATION_FACTOR, maxDurationFactor = DEFAULT_MAX_DURATION_FACTOR;
+    /**
+     * DTW state (subsequence matching, as in SPRING): for every template
+     * point, the cheapest accumulated distance of a warping path ending at the
+     * current reading, that path's length and the time its match started.
+     * Index 0 is the empty prefix.
+     */
+    final float[] cost, previousCost;
+    final int[] pathLength, previousPathLength;
+    final long[] startNanos, previousStartNanos;
+    /**
+     * Readings of the recognizer's history this template has caught up on.
+     */
+    long readingsProcessed = 0;
+    long cooldownUntilNanos = 0;
+    int matches = 0;
+
+    /**
+     * @param points Feature points, GestureRecognizer.FEATURE_SIZE floats
+     * each.
+     * @param threshold Highest average distance per warping step that still
+     * counts as a match. (Unit: millimeters.)
+     */
+    public GestureTemplate(String name, float[] points, long durationNanos, float threshold) {
+        this.name = name;
+        this.points = points;
+        this.pointCount = points.length / GestureRecognizer.FEATURE_SIZE;
+        this.durationNanos = durationNanos;
+        this.threshold = threshold;
+        cost = new float[pointCount + 1];
+        previousCost = new float[pointCount + 1];
+        pathLength = new int[pointCount + 1];
+        previousPathLength = new int[pointCount + 1];
+        startNanos = new long[pointCount + 1];
+        previousStartNanos = new long[pointCount + 1];
+    }
+
+    /**
+     * Cuts a template out of a recording. Frames where the skeleton wasn't
+     * tracked are left out (their joints are zeroes); a point whose frames
+     * are all untracked is dropped.
+     *
+     * @param fromFrame First frame of the gesture.
+     * @param toFrame Frame after the gesture's last one.
+     */
+    public static GestureTemplate fromRecording(String name, SkeletonRecording recording, int fromFrame, int toFrame, float threshold) {
+        int frameCount = toFrame - fromFrame;
+        int pointCount = Math.min(frameCount, MAX_POINTS);
+        float[] points = new float[pointCount * GestureRecognizer.FEATURE_SIZE];
+        float[] feature = new float[GestureRecognizer.FEATURE_SIZE];
+        SkeletonFrame frame = new SkeletonFrame();
+
+        // Each point averages the tracked ones of its share of the frames
+        int trackedPoints = 0;
+        int firstTracked = -1, lastTracked = -1;
+        for (int point = 0; point < pointCount; point++) {
+            int first = fromFrame + (int) ((long) point * frameCount / pointCount);
+            int last = fromFrame + (int) ((long) (point + 1) * frameCount / pointCount);
+            int offset = trackedPoints * GestureRecognizer.FEATURE_SIZE;
+            int tracked = 0;
+            for (int i = first; i < last; i++) {
+                recording.readFrame(i, frame);
+                if (!frame.isTracked()) {
+                    continue;
+                }
+                GestureRecognizer.extractFeatures(frame, feature);
+                for (int f = 0; f < feature.length; f++) {
+                    points[offset + f] += feature[f];
+                }
+                tracked++;
+                if (firstTracked < 0) {
+                    firstTracked = i;
+                }
+                lastTracked = i;
+            }
+            if (tracked > 0) {
+                for (int f = 0; f < feature.length; f++) {
+                    points[offset + f] /= tracked;
+                }
+                trackedPoints++;
+            }
+        }
+        if (trackedPoints < pointCount) {
+            points = Arrays.copyOf(points, trackedPoints * GestureRecognizer.FEATURE_SIZE);
+        }
+        long durationNanos = (firstTracked < 0) ? 0 : recording.getTimestampNanos(lastTracked) - recording.getTimestampNanos(firstTracked);
+        return new GestureTemplate(name, points, durationNanos, threshold);
+    }
+
+    /**
+     * Uses a whole recording as the template.
+     */
+    public static GestureTemplate fromRecording(String name, SkeletonRecording recording, float threshold) {
+        return fromRecording(name, recording, 0, recording.getFrameCount(), threshold);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    float getPoint(int point, int feature) {
+        return points[point * GestureRecognizer.FEATURE_SIZE + feature];
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public float getThreshold() {
+        return threshold;
+    }
+
+    public void setThreshold(float threshold) {
+        this.threshold = threshold;
+    }
+
+    public void setDurationWindow(float minDurationFactor, float maxDurationFactor) {
+        this.minDurationFactor = minDurationFactor;
+        this.maxDurationFactor = maxDurationFactor;
+    }
+
+    long getMinMatchNanos() {
+        return (long) (durationNanos * minDurationFactor);
+    }
+
+    long getMaxMatchNanos() {
+        return (long) (durationNanos * maxDurationFactor);
+    }
+
+    public int getMatches() {
+        return matches;
+    }
+
+    @Override
+    public String toString() {
+        return "GestureTemplate[" + name + ", points=" + pointCount + ", threshold=" + threshold + ", matches=" + matches + "]";
+    }
+}
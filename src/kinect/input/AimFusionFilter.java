@@ -0,0 +1,187 @@
+package kinect.input;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+
+/**
+ *
+ * Fuses the absolute aim of the Kinect skeleton (where the right arm points,
+ * see KinectAimMapping) with relative mouse deltas (e.g. a handheld wireless
+ * mouse) into one aim per render frame, as yaw and pitch angles. It's a
+ * complementary filter:
+ * - mouse deltas are applied right away, and also add up into a correction
+ * offset (at most maxMouseOffset either way) that stays on top of the Kinect
+ * aim, so a correction isn't pulled back;
+ * - the aim follows Kinect aim + offset through a first-order low-pass with
+ * the given time constant, which takes the edge off sensor jitter and makes
+ * the skeleton being found a smooth turn instead of a jump.
+ * Without a Kinect aim, the mouse deltas are all there is.
+ *
+ * Yaw is the turn to the left from looking down -Z (jME's default camera
+ * direction), pitch the angle above the horizon, both in radians. Nothing is
+ * allocated; call from the render thread only.
+ */
+public class AimFusionFilter {
+
+    /*--- SETTINGS ---*/
+    /**
+     * (Unit: seconds.)
+     */
+    public static final float DEFAULT_TIME_CONSTANT = 0.04f;
+    /**
+     * (Unit: radians.) 30 degrees.
+     */
+    public static final float DEFAULT_MAX_MOUSE_OFFSET = FastMath.PI / 6;
+    /**
+     * Keep away from straight up/down, where yaw is undefined. (Unit:
+     * radians.) 80 degrees.
+     */
+    public static final float MAX_PITCH = FastMath.PI * 4 / 9;
+    /*--- END SETTINGS ---*/
+    private float timeConstant = DEFAULT_TIME_CONSTANT;
+    private float maxMouseOffset = DEFAULT_MAX_MOUSE_OFFSET;
+    private float yaw = 0, pitch = 0;
+    private float kinectYaw = 0, kinectPitch = 0;
+    private boolean kinectAimSet = false;
+    private float offsetYaw = 0, offsetPitch = 0;
+    private float pendingMouseYaw = 0, pendingMousePitch = 0;
+
+    public AimFusionFilter() {
+    }
+
+    /**
+     * @param timeConstant How long the aim takes to get 63% of the way to a
+     * new Kinect aim; 0 follows it exactly. (Unit: seconds.)
+     * @param maxMouseOffset (Unit: radians.)
+     */
+    public AimFusionFilter(float timeConstant, float maxMouseOffset) {
+        this.timeConstant = timeConstant;
+        this.maxMouseOffset = maxMouseOffset;
+    }
+
+    public void setTimeConstant(float timeConstant) {
+        this.timeConstant = timeConstant;
+    }
+
+    public float getTimeConstant() {
+        return timeConstant;
+    }
+
+    /**
+     * Starts over from the given direction (e.g. the camera's, whenever the
+     * filter isn't in charge of it), dropping the mouse correction and any
+     * Kinect aim.
+     */
+    public void reset(Vector3f direction) {
+        yaw = toYaw(direction);
+        pitch = toPitch(direction);
+        kinectAimSet = false;
+        offsetYaw = 0;
+        offsetPitch = 0;
+        pendingMouseYaw = 0;
+        pendingMousePitch = 0;
+    }
+
+    /**
+     * Adds a mouse movement; applied by the next update().
+     *
+     * @param yawDelta To the left. (Unit: radians.)
+     * @param pitchDelta Up. (Unit: radians.)
+     */
+    public void addMouseDelta(float yawDelta, float pitchDelta) {
+        pendingMouseYaw += yawDelta;
+        pendingMousePitch += pitchDelta;
+    }
+
+    /**
+     * Sets the Kinect aim from a tracked frame: the direction from the right
+     * shoulder to the right wrist (KinectAimMapping's mapping).
+     */
+    public void setKinectAim(SkeletonFrame frame) {
+        float x = frame.get(SkeletonFrame.WRIST_RIGHT, SkeletonFrame.KJ_X) - frame.get(SkeletonFrame.SHOULDER_RIGHT, SkeletonFrame.KJ_X),
+                y = frame.get(SkeletonFrame.WRIST_RIGHT, SkeletonFrame.KJ_Y) - frame.get(SkeletonFrame.SHOULDER_RIGHT, SkeletonFrame.KJ_Y),
+                z = frame.get(SkeletonFrame.WRIST_RIGHT, SkeletonFrame.KJ_Z) - frame.get(SkeletonFrame.SHOULDER_RIGHT, SkeletonFrame.KJ_Z);
+        if (x == 0 && y == 0 && z == 0) {
+            return; // No direction; keep the previous aim
+        }
+        kinectYaw = FastMath.atan2(-x, -z);
+        kinectPitch = FastMath.atan2(y, FastMath.sqrt(x * x + z * z));
+        kinectAimSet = true;
+    }
+
+    /**
+     * The Kinect aim is gone (skeleton lost); the mouse correction goes with
+     * it.
+     */
+    public void clearKinectAim() {
+        kinectAimSet = false;
+        offsetYaw = 0;
+        offsetPitch = 0;
+    }
+
+    /**
+     * Advances the filter by one render frame.
+     *
+     * @param tpf Time since the last update. (Unit: seconds.)
+     */
+    public void update(float tpf) {
+        yaw += pendingMouseYaw;
+        pitch += pendingMousePitch;
+        if (kinectAimSet) {
+            offsetYaw = clamp(offsetYaw + pendingMouseYaw, maxMouseOffset);
+            offsetPitch = clamp(offsetPitch + pendingMousePitch, maxMouseOffset);
+            float alpha = (timeConstant > 0) ? 1 - FastMath.exp(-tpf / timeConstant) : 1;
+            yaw += alpha * wrapAngle(kinectYaw + offsetYaw - yaw);
+            pitch += alpha * (kinectPitch + offsetPitch - pitch);
+        }
+        pendingMouseYaw = 0;
+        pendingMousePitch = 0;
+        yaw = wrapAngle(yaw);
+        pitch = clamp(pitch, MAX_PITCH);
+    }
+
+    /**
+     * @return The fused aim as a unit vector, in store.
+     */
+    public Vector3f getDirection(Vector3f store) {
+        float cosPitch = FastMath.cos(pitch);
+        return store.set(-FastMath.sin(yaw) * cosPitch, FastMath.sin(pitch), -FastMath.cos(yaw) * cosPitch);
+    }
+
+    public float getYaw() {
+        return yaw;
+    }
+
+    public float getPitch() {
+        return pitch;
+    }
+
+    public boolean hasKinectAim() {
+        return kinectAimSet;
+    }
+
+    public static float toYaw(Vector3f direction) {
+        return FastMath.atan2(-direction.x, -direction.z);
+    }
+
+    public static float toPitch(Vector3f direction) {
+        return FastMath.atan2(direction.y, FastMath.sqrt(direction.x * direction.x + direction.z * direction.z));
+    }
+
+    /**
+     * @return The angle in [-PI, PI].
+     */
+    public static float wrapAngle(float angle) {
+        while (angle > FastMath.PI) {
+            angle -= FastMath.TWO_PI;
+        }
+        while (angle < -FastMath.PI) {
+            angle += FastMath.TWO_PI;
+        }
+        return angle;
+    }
+
+    private static float clamp(float value, float limit) {
+        return Math.max(-limit, Math.min(value, limit));
+    }
+}
@@ -0,0 +1,18 @@
+package kinect.input;
+
+/**
+ *
+ * Anything a KinectSampler can drain: hands out the newest skeleton the way
+ * PoorMoCap's Mocap.getJoints() does.
+ */
+public interface JointsSource {
+
+    /**
+     * Called from the sampler thread only.
+     *
+     * @return The newest joints[joint][axis] reading (KinectTCP's layout), or
+     * null if no skeleton is tracked. A new reading must come as a new array;
+     * returning the same array again means nothing new arrived.
+     */
+    int[][] getJoints();
+}
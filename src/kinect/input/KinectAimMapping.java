@@ -0,0 +1,37 @@
+package kinect.input;
+
+import com.jme3.math.Vector3f;
+
+/**
+ *
+ * Maps a skeleton frame to a camera look direction. The right wrist's offset
+ * from the right shoulder (in millimeters) is added onto the current camera
+ * direction, so pointing the right arm is what aims.
+ * Everything is written into caller-supplied vectors; nothing is allocated.
+ */
+public class KinectAimMapping {
+
+    /**
+     * @param frame A tracked skeleton frame.
+     * @param currentCamDirection The camera's current direction.
+     * @param store Receives the new look direction (not normalized).
+     * @return store
+     */
+    public static Vector3f computeLookDirection(SkeletonFrame frame, Vector3f currentCamDirection, Vector3f store) {
+        int xRightWristOffsetFromRightShoulder = frame.get(SkeletonFrame.WRIST_RIGHT, SkeletonFrame.KJ_X) - frame.get(SkeletonFrame.SHOULDER_RIGHT, SkeletonFrame.KJ_X),
+                yRightWristOffsetFromRightShoulder = frame.get(SkeletonFrame.WRIST_RIGHT, SkeletonFrame.KJ_Y) - frame.get(SkeletonFrame.SHOULDER_RIGHT, SkeletonFrame.KJ_Y),
+                zRightWristOffsetFromRightShoulder = frame.get(SkeletonFrame.WRIST_RIGHT, SkeletonFrame.KJ_Z) - frame.get(SkeletonFrame.SHOULDER_RIGHT, SkeletonFrame.KJ_Z);
+
+        return store.set(currentCamDirection.x + xRightWristOffsetFromRightShoulder,
+                currentCamDirection.y + yRightWristOffsetFromRightShoulder,
+                currentCamDirection.z + zRightWristOffsetFromRightShoulder);
+    }
+
+    /**
+     * @return The right wrist's x-axis offset from the center shoulder.
+     * (Unit: millimeters.)
+     */
+    public static int getRightWristXOffsetFromCenterShoulder(SkeletonFrame frame) {
+        return frame.get(SkeletonFrame.WRIST_RIGHT, SkeletonFrame.KJ_X) - frame.get(SkeletonFrame.SHOULDER_CENTER, SkeletonFrame.KJ_X);
+    }
+}
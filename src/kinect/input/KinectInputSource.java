@@ -0,0 +1,32 @@
+package kinect.input;
+
+/**
+ *
+ * Anything that can feed skeleton frames into the game: the live Kinect (via
+ * PoorMoCap), a recorded session, etc. The game loop only ever talks to this
+ * interface, so the Kinect controls path runs the same no matter where the
+ * skeletons come from.
+ */
+public interface KinectInputSource {
+
+    /**
+     * Starts producing frames. Called once, before the first
+     * getLatestFrame().
+     */
+    void start();
+
+    /**
+     * Must be wait-free and allocation-free; called from the game loop (the
+     * only consumer) every frame.
+     *
+     * @return The newest frame. It stays unchanged until the next call; check
+     * isTracked() before using its joints.
+     */
+    SkeletonFrame getLatestFrame();
+
+    /**
+     * Stops producing frames and releases the source. Safe to call from any
+     * thread.
+     */
+    void stop();
+}
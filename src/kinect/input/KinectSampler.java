@@ -0,0 +1,150 @@
+package kinect.input;
+
+/**
+ *
+ * Dedicated thread that keeps draining a JointsSource (PoorMoCap's Mocap, or
+ * KinectTCPClient directly) and hands the newest skeleton over to the game
+ * loop through a SkeletonFrameBuffer. This keeps any stall in
+ * Mocap/KinectTCPClient off the render thread: simpleUpdate() only ever does
+ * a wait-free read of the buffer.
+ *
+ * Sensor-side counters (frames received, frames overwritten before the game
+ * loop got to them, longest sampler stall and longest gap between skeletons)
+ * are kept here so sensor jitter can be told apart from frame time.
+ */
+public class KinectSampler extends Thread {
+
+    /*--- SETTINGS ---*/
+    /**
+     * How long to sleep between polls of Mocap. Mocap itself refreshes about
+     * every 50 milliseconds, so this just needs to be comfortably smaller.
+     * (Unit: milliseconds.)
+     */
+    public static final long DEFAULT_POLL_INTERVAL_MILLIS = 5;
+    /*--- END SETTINGS ---*/
+    private final JointsSource source;
+    private final SkeletonFrameBuffer frameBuffer = new SkeletonFrameBuffer();
+    private final long pollIntervalMillis;
+    private volatile boolean running = true;
+    /**
+     * All counters below are written by the sampler thread only, and may be
+     * read from any thread.
+     */
+    private volatile long framesReceived = 0;
+    private volatile long trackingLostCount = 0;
+    /**
+     * Longest single getJoints() call. (Unit: nanoseconds.)
+     */
+    private volatile long maxSamplerStallNanos = 0;
+    /**
+     * Longest time between two consecutive new skeletons. (Unit: nanoseconds.)
+     */
+    private volatile long maxFrameIntervalNanos = 0;
+
+    public KinectSampler(JointsSource source) {
+        this(source, DEFAULT_POLL_INTERVAL_MILLIS);
+    }
+
+    public KinectSampler(JointsSource source, long pollIntervalMillis) {
+        super("KinectSampler");
+        this.source = source;
+        this.pollIntervalMillis = pollIntervalMillis;
+        setDaemon(true); // Never keep the JVM alive just for sampling
+    }
+
+    @Override
+    public void run() {
+        int[][] previousJoints = null;
+        long lastFrameNanos = 0;
+        long sequence = 0;
+
+        while (running) {
+            long callStartNanos = System.nanoTime();
+            int[][] joints = source.getJoints();
+            long callEndNanos = System.nanoTime();
+
+            long stallNanos = callEndNanos - callStartNanos;
+            if (stallNanos > maxSamplerStallNanos) {
+                maxSamplerStallNanos = stallNanos;
+            }
+
+            // Sources hand out a fresh array for every new reading, so a
+            // different reference means a different skeleton frame.
+            if (joints != previousJoints) {
+                if (joints != null) {
+                    framesReceived = framesReceived + 1;
+                    if (lastFrameNanos != 0 && (callEndNanos - lastFrameNanos) > maxFrameIntervalNanos) {
+                        maxFrameIntervalNanos = callEndNanos - lastFrameNanos;
+                    }
+                    lastFrameNanos = callEndNanos;
+                } else {
+                    trackingLostCount = trackingLostCount + 1;
+                    lastFrameNanos = 0; // Don't count the untracked time as jitter
+                }
+                frameBuffer.getBackFrame().setFrom(joints, callEndNanos, ++sequence);
+                frameBuffer.publish();
+                previousJoints = joints;
+            }
+
+            try {
+                Thread.sleep(pollIntervalMillis);
+            } catch (InterruptedException e) {
+                // Only happens on shutdown
+                running = false;
+            }
+        }
+    }
+
+    /**
+     * Stops sampling. Safe to call from any thread.
+     */
+    public void shutdown() {
+        running = false;
+        interrupt();
+    }
+
+    /**
+     * Wait-free and allocation-free; meant to be called from the game loop
+     * only (single consumer).
+     *
+     * @return The newest frame. It stays unchanged until the next call; check
+     * isTracked() before using its joints.
+     */
+    public SkeletonFrame getLatestFrame() {
+        frameBuffer.update();
+        return frameBuffer.getFrontFrame();
+    }
+
+    public long getFramesReceived() {
+        return framesReceived;
+    }
+
+    /**
+     * @return How many received skeletons were replaced by a newer one before
+     * the game loop read them.
+     */
+    public long getFramesOverwritten() {
+        return frameBuffer.getOverwrittenCount();
+    }
+
+    public long getTrackingLostCount() {
+        return trackingLostCount;
+    }
+
+    public long getMaxSamplerStallNanos() {
+        return maxSamplerStallNanos;
+    }
+
+    public long getMaxFrameIntervalNanos() {
+        return maxFrameIntervalNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "KinectSampler[framesReceived=" + framesReceived
+                + ", framesOverwritten=" + getFramesOverwritten()
+                + ", trackingLost=" + trackingLostCount
+                + ", maxSamplerStallMillis=" + (maxSamplerStallNanos / 1000000.0)
+                + ", maxFrameIntervalMillis=" + (maxFrameIntervalNanos / 1000000.0) + "]";
+    }
+}
@@ -0,0 +1,187 @@
+package kinect.input;
+
+import java.util.Arrays;
+import kinecttcpclient.KinectTCPClient;
+
+/**
+ *
+ * Live input source that talks to the KinectTCP server straight through
+ * KinectTCPClient, without PoorMoCap's Mocap: no window, no fixed 50 ms
+ * polling (the KinectSampler polls as fast as its interval allows), and lost
+ * connections are re-established. That makes it usable headless, e.g. against
+ * kinect.server.KinectStandInServer.
+ *
+ * Every poll asks the server for the current skeleton; a reply identical to
+ * the previous one is the same reading asked for twice and not passed on. While
+ * disconnected, the skeleton is reported as not tracked, and reconnecting is
+ * tried every RECONNECT_INTERVAL_MILLIS.
+ * As a KinectInputSource it reports the first skeleton; a MultiSkeletonSampler
+ * can drain all of them through getSkeletons() instead.
+ * KinectTCPClient has no way to close its socket, so a dropped connection's
+ * socket is left to the garbage collector.
+ */
+public class KinectTCPInputSource implements KinectInputSource, JointsSource, SkeletonsSource {
+
+    /*--- SETTINGS ---*/
+    /**
+     * KinectTCPClient's defaults.
+     */
+    public static final String DEFAULT_HOST = "127.0.0.1";
+    public static final int DEFAULT_PORT = 8001;
+    /**
+     * (Unit: milliseconds.)
+     */
+    public static final long RECONNECT_INTERVAL_MILLIS = 250;
+    /*--- END SETTINGS ---*/
+    private final String host;
+    private final int port;
+    private KinectSampler sampler = null;
+    /**
+     * Sampler thread only.
+     */
+    private KinectTCPClient client = null;
+    private int[] previousData = null;
+    private int[][][] previousSkeletons = null;
+    private long nextConnectNanos = 0;
+    private long disconnectedAtNanos = 0;
+    /**
+     * Written by the sampler thread only, and may be read from any thread.
+     */
+    private volatile long connects = 0, connectFailures = 0, disconnects = 0;
+    private volatile long duplicateReplies = 0;
+    /**
+     * Longest time from noticing a lost connection to being connected again.
+     * (Unit: nanoseconds.)
+     */
+    private volatile long maxReconnectNanos = 0;
+
+    public KinectTCPInputSource() {
+        this(DEFAULT_HOST, DEFAULT_PORT);
+    }
+
+    public KinectTCPInputSource(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    public void start() {
+        sampler = new KinectSampler(this);
+        sampler.start();
+    }
+
+    public SkeletonFrame getLatestFrame() {
+        return sampler.getLatestFrame();
+    }
+
+    public void stop() {
+        if (sampler != null) {
+            sampler.shutdown();
+        }
+    }
+
+    /**
+     * Called by the sampler thread; one request/reply round trip per call
+     * while connected.
+     */
+    public int[][] getJoints() {
+        int[][][] skeletons = getSkeletons();
+        // The same skeletons array gives the same joints array, as it should
+        return (skeletons != null && skeletons.length > 0) ? skeletons[0] : null;
+    }
+
+    /**
+     * Called by the sampler thread; one request/reply round trip per call
+     * while connected.
+     */
+    public int[][][] getSkeletons() {
+        if (client == null && !connect()) {
+            return null;
+        }
+
+        int[] data = client.readSkeleton();
+        if (data == null) {
+            // KinectTCPClient has already reported the error
+            client = null;
+            disconnects = disconnects + 1;
+            disconnectedAtNanos = System.nanoTime();
+            nextConnectNanos = disconnectedAtNanos;
+            previousData = null;
+            previousSkeletons = null;
+            return null;
+        }
+        if (previousData != null && Arrays.equals(data, previousData)) {
+            duplicateReplies = duplicateReplies + 1;
+            return previousSkeletons;
+        }
+        previousData = data;
+        // data[0] is the number of skeletons; getJointPositions() is 1-based
+        int count = (data.length > 0) ? data[0] : 0;
+        int[][][] skeletons = new int[count][][];
+        for (int i = 0; i < count; i++) {
+            skeletons[i] = KinectTCPClient.getJointPositions(data, i + 1);
+        }
+        previousSkeletons = skeletons;
+        return previousSkeletons;
+    }
+
+    private boolean connect() {
+        long nowNanos = System.nanoTime();
+        if (nowNanos < nextConnectNanos) {
+            return false;
+        }
+        KinectTCPClient newClient = new KinectTCPClient(host, port);
+        if (!newClient.isConnected) {
+            connectFailures = connectFailures + 1;
+            nextConnectNanos = nowNanos + RECONNECT_INTERVAL_MILLIS * 1000000L;
+            return false;
+        }
+        client = newClient;
+        connects = connects + 1;
+        if (disconnectedAtNanos != 0) {
+            long reconnectNanos = System.nanoTime() - disconnectedAtNanos;
+            if (reconnectNanos > maxReconnectNanos) {
+                maxReconnectNanos = reconnectNanos;
+            }
+            disconnectedAtNanos = 0;
+        }
+        return true;
+    }
+
+    public KinectSampler getSampler() {
+        return sampler;
+    }
+
+    public long getConnects() {
+        return connects;
+    }
+
+    public long getConnectFailures() {
+        return connectFailures;
+    }
+
+    public long getDisconnects() {
+        return disconnects;
+    }
+
+    /**
+     * @return Polls that got the same reading as the poll before.
+     */
+    public long getDuplicateReplies() {
+        return duplicateReplies;
+    }
+
+    public long getMaxReconnectNanos() {
+        return maxReconnectNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "KinectTCPInputSource[" + host + ":" + port
+                + ", connects=" + connects
+                + ", connectFailures=" + connectFailures
+                + ", disconnects=" + disconnects
+                + ", maxReconnectMillis=" + (maxReconnectNanos / 1000000.0)
+                + ", duplicateReplies=" + duplicateReplies
+                + ", " + sampler + "]";
+    }
+}
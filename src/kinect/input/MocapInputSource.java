@@ -0,0 +1,47 @@
+package kinect.input;
+
+import poormocap.Mocap;
+
+/**
+ *
+ * Live input source: the Kinect, read through PoorMoCap's Mocap (which in
+ * turn talks to the KinectTCP server) and drained by a KinectSampler thread.
+ */
+public class MocapInputSource implements KinectInputSource {
+
+    private Mocap mocap = null;
+    private KinectSampler sampler = null;
+
+    /**
+     * Connects to the Kinect (this also opens PoorMoCap's window) and starts
+     * sampling.
+     */
+    public void start() {
+        mocap = new Mocap();
+        sampler = new KinectSampler(new JointsSource() {
+            public int[][] getJoints() {
+                return mocap.getJoints();
+            }
+        });
+        sampler.start();
+    }
+
+    public SkeletonFrame getLatestFrame() {
+        return sampler.getLatestFrame();
+    }
+
+    public void stop() {
+        if (sampler != null) {
+            sampler.shutdown();
+        }
+    }
+
+    public KinectSampler getSampler() {
+        return sampler;
+    }
+
+    @Override
+    public String toString() {
+        return "MocapInputSource[" + sampler + "]";
+    }
+}
@@ -0,0 +1,243 @@
+package kinect.input;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *
+ * KinectSampler for more than one player: a dedicated thread keeps draining a
+ * SkeletonsSource and hands each player's newest skeleton over through its
+ * own SkeletonFrameBuffer, so every player can be read (and processed) on its
+ * own.
+ *
+ * The sensor lists skeletons in no particular order, so they are matched to
+ * players by where they stand: a player keeps the skeleton whose spine is
+ * nearest to where the player's spine was last, and skeletons left over go to
+ * players without one. A player whose skeleton is gone gets an untracked
+ * frame.
+ */
+public class MultiSkeletonSampler extends Thread {
+
+    /*--- SETTINGS ---*/
+    /**
+     * See KinectSampler.DEFAULT_POLL_INTERVAL_MILLIS. (Unit: milliseconds.)
+     */
+    public static final long DEFAULT_POLL_INTERVAL_MILLIS = KinectSampler.DEFAULT_POLL_INTERVAL_MILLIS;
+    /*--- END SETTINGS ---*/
+    private final SkeletonsSource source;
+    private final int playerCount;
+    private final long pollIntervalMillis;
+    private final SkeletonFrameBuffer[] frameBuffers;
+    /**
+     * Woken up after a player's frame is published; null entries for players
+     * read straight from the game loop.
+     */
+    private final Thread[] consumers;
+    private volatile boolean running = true;
+    /**
+     * Sampler thread only: which skeleton of the current reading each player
+     * got (-1 for none), and where each player's spine was last.
+     */
+    private final int[] assignedSkeletons;
+    private final int[][] lastSpines;
+    private final boolean[] hadSkeleton;
+    /**
+     * Written by the sampler thread only, and may be read from any thread.
+     */
+    private volatile long readingsReceived = 0;
+    private volatile long maxSkeletonsSeen = 0;
+    /**
+     * Readings with more skeletons than players; the extra ones are ignored.
+     */
+    private volatile long readingsWithExtraSkeletons = 0;
+    /**
+     * Longest single getSkeletons() call. (Unit: nanoseconds.)
+     */
+    private volatile long maxSamplerStallNanos = 0;
+
+    public MultiSkeletonSampler(SkeletonsSource source, int playerCount) {
+        this(source, playerCount, DEFAULT_POLL_INTERVAL_MILLIS);
+    }
+
+    public MultiSkeletonSampler(SkeletonsSource source, int playerCount, long pollIntervalMillis) {
+        super("MultiSkeletonSampler");
+        this.source = source;
+        this.playerCount = playerCount;
+        this.pollIntervalMillis = pollIntervalMillis;
+        frameBuffers = new SkeletonFrameBuffer[playerCount];
+        consumers = new Thread[playerCount];
+        assignedSkeletons = new int[playerCount];
+        lastSpines = new int[playerCount][3];
+        hadSkeleton = new boolean[playerCount];
+        for (int player = 0; player < playerCount; player++) {
+            frameBuffers[player] = new SkeletonFrameBuffer();
+        }
+        setDaemon(true); // Never keep the JVM alive just for sampling
+    }
+
+    /**
+     * Has the given thread unparked (LockSupport.unpark()) whenever a new
+     * frame for the player is published. Set before start().
+     */
+    public void setConsumer(int player, Thread consumer) {
+        consumers[player] = consumer;
+    }
+
+    @Override
+    public void run() {
+        int[][][] previousSkeletons = null;
+        long sequence = 0;
+
+        while (running) {
+            long callStartNanos = System.nanoTime();
+            int[][][] skeletons = source.getSkeletons();
+            long callEndNanos = System.nanoTime();
+
+            if (callEndNanos - callStartNanos > maxSamplerStallNanos) {
+                maxSamplerStallNanos = callEndNanos - callStartNanos;
+            }
+
+            // Sources hand out a fresh array for every new reading
+            if (skeletons != previousSkeletons) {
+                int count = (skeletons != null) ? skeletons.length : 0;
+                if (skeletons != null) {
+                    readingsReceived = readingsReceived + 1;
+                }
+                if (count > maxSkeletonsSeen) {
+                    maxSkeletonsSeen = count;
+                }
+                if (count > playerCount) {
+                    readingsWithExtraSkeletons = readingsWithExtraSkeletons + 1;
+                }
+                assignSkeletons(skeletons, count);
+                sequence++;
+                for (int player = 0; player < playerCount; player++) {
+                    int skeleton = assignedSkeletons[player];
+                    // Every player gets a new frame, so a lost skeleton shows as untracked
+                    frameBuffers[player].getBackFrame().setFrom((skeleton >= 0) ? skeletons[skeleton] : null, callEndNanos, sequence);
+                    frameBuffers[player].publish();
+                    if (consumers[player] != null) {
+                        LockSupport.unpark(consumers[player]);
+                    }
+                }
+                previousSkeletons = skeletons;
+            }
+
+            try {
+                Thread.sleep(pollIntervalMillis);
+            } catch (InterruptedException e) {
+                // Only happens on shutdown
+                running = false;
+            }
+        }
+    }
+
+    /**
+     * Fills assignedSkeletons: players that had a skeleton take the nearest
+     * one first, then the rest are handed out in sensor order. Allocation-free.
+     */
+    private void assignSkeletons(int[][][] skeletons, int count) {
+        for (int player = 0; player < playerCount; player++) {
+            assignedSkeletons[player] = -1;
+        }
+        for (int player = 0; player < playerCount; player++) {
+            if (!hadSkeleton[player]) {
+                continue;
+            }
+            long bestDistance = Long.MAX_VALUE;
+            for (int skeleton = 0; skeleton < count; skeleton++) {
+                if (isAssigned(skeleton)) {
+                    continue;
+                }
+                long distance = spineDistanceSquared(skeletons[skeleton], lastSpines[player]);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    assignedSkeletons[player] = skeleton;
+                }
+            }
+        }
+        for (int player = 0; player < playerCount; player++) {
+            for (int skeleton = 0; skeleton < count && assignedSkeletons[player] < 0; skeleton++) {
+                if (!isAssigned(skeleton)) {
+                    assignedSkeletons[player] = skeleton;
+                }
+            }
+            int skeleton = assignedSkeletons[player];
+            hadSkeleton[player] = (skeleton >= 0);
+            if (skeleton >= 0) {
+                for (int axis = 0; axis < 3; axis++) {
+                    lastSpines[player][axis] = skeletons[skeleton][SkeletonFrame.SPINE][SkeletonFrame.KJ_X + axis];
+                }
+            }
+        }
+    }
+
+    private boolean isAssigned(int skeleton) {
+        for (int player = 0; player < playerCount; player++) {
+            if (assignedSkeletons[player] == skeleton) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long spineDistanceSquared(int[][] joints, int[] spine) {
+        long distance = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            long difference = joints[SkeletonFrame.SPINE][SkeletonFrame.KJ_X + axis] - spine[axis];
+            distance += difference * difference;
+        }
+        return distance;
+    }
+
+    /**
+     * Stops sampling. Safe to call from any thread.
+     */
+    public void shutdown() {
+        running = false;
+        interrupt();
+    }
+
+    public int getPlayerCount() {
+        return playerCount;
+    }
+
+    /**
+     * Wait-free and allocation-free; meant to be called from the player's one
+     * consumer thread only.
+     *
+     * @return The player's newest frame. It stays unchanged until the next
+     * call; check isTracked() before using its joints.
+     */
+    public SkeletonFrame getLatestFrame(int player) {
+        frameBuffers[player].update();
+        return frameBuffers[player].getFrontFrame();
+    }
+
+    /**
+     * Consumer side, like getLatestFrame().
+     *
+     * @return The player's buffer, for consumers that want to know whether
+     * anything new was published (SkeletonFrameBuffer.update()).
+     */
+    public SkeletonFrameBuffer getFrameBuffer(int player) {
+        return frameBuffers[player];
+    }
+
+    public long getReadingsReceived() {
+        return readingsReceived;
+    }
+
+    @Override
+    public String toString() {
+        long overwritten = 0;
+        for (SkeletonFrameBuffer frameBuffer : frameBuffers) {
+            overwritten += frameBuffer.getOverwrittenCount();
+        }
+        return "MultiSkeletonSampler[players=" + playerCount
+                + ", readingsReceived=" + readingsReceived
+                + ", framesOverwritten=" + overwritten
+                + ", maxSkeletonsSeen=" + maxSkeletonsSeen
+                + ", readingsWithExtraSkeletons=" + readingsWithExtraSkeletons
+                + ", maxSamplerStallMillis=" + (maxSamplerStallNanos / 1000000.0) + "]";
+    }
+}
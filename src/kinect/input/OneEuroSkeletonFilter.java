@@ -0,0 +1,155 @@
+package kinect.input;
+
+/**
+ *
+ * One-Euro filter (Casiez et al., CHI 2012) for skeleton joints: an adaptive
+ * low-pass filter whose cutoff frequency rises with joint speed. Slow or
+ * resting joints get smoothed heavily (no jitter), fast movements get little
+ * smoothing (little lag).
+ *
+ * State is kept per joint coordinate in preallocated arrays; apply() does a
+ * constant amount of work per filtered joint and allocates nothing. Joints can
+ * be excluded so that only the ones the game actually reads are filtered.
+ * Excluded joints keep their raw values.
+ */
+public class OneEuroSkeletonFilter implements SkeletonFilter {
+
+    /*--- SETTINGS ---*/
+    /**
+     * Cutoff for a resting joint; lower = smoother but laggier when starting
+     * to move. (Unit: Hz.)
+     */
+    public static final float DEFAULT_MIN_CUTOFF_HZ = 1.0f;
+    /**
+     * How fast the cutoff grows with joint speed; higher = less lag during
+     * fast movements. (Unit: Hz per mm/s.)
+     */
+    public static final float DEFAULT_BETA = 0.01f;
+    /**
+     * Cutoff for smoothing the speed estimate itself. (Unit: Hz.)
+     */
+    public static final float DEFAULT_DERIVATIVE_CUTOFF_HZ = 1.0f;
+    /**
+     * Frame interval assumed when timestamps don't advance. (Unit:
+     * nanoseconds.)
+     */
+    public static final long DEFAULT_FRAME_INTERVAL_NANOS = 1000000000L / 30;
+    /*--- END SETTINGS ---*/
+    private float minCutoffHz, beta, derivativeCutoffHz;
+    private final boolean[] jointFiltered = new boolean[SkeletonFrame.JOINT_COUNT];
+    private final float[] filteredValues = new float[SkeletonFrame.VALUE_COUNT];
+    private final float[] filteredDerivatives = new float[SkeletonFrame.VALUE_COUNT];
+    private boolean hasHistory = false;
+    private long lastTimestampNanos = 0;
+
+    public OneEuroSkeletonFilter() {
+        this(DEFAULT_MIN_CUTOFF_HZ, DEFAULT_BETA, DEFAULT_DERIVATIVE_CUTOFF_HZ);
+    }
+
+    public OneEuroSkeletonFilter(float minCutoffHz, float beta, float derivativeCutoffHz) {
+        setParameters(minCutoffHz, beta, derivativeCutoffHz);
+        setAllJointsFiltered(true);
+    }
+
+    public final void setParameters(float minCutoffHz, float beta, float derivativeCutoffHz) {
+        this.minCutoffHz = minCutoffHz;
+        this.beta = beta;
+        this.derivativeCutoffHz = derivativeCutoffHz;
+    }
+
+    public float getMinCutoffHz() {
+        return minCutoffHz;
+    }
+
+    public float getBeta() {
+        return beta;
+    }
+
+    public float getDerivativeCutoffHz() {
+        return derivativeCutoffHz;
+    }
+
+    public final void setAllJointsFiltered(boolean filtered) {
+        for (int joint = 0; joint < jointFiltered.length; joint++) {
+            jointFiltered[joint] = filtered;
+        }
+        reset();
+    }
+
+    /**
+     * Includes or excludes one joint, e.g. to filter only the joints the
+     * camera mapping reads: setAllJointsFiltered(false) followed by
+     * setJointFiltered(joint, true) for each of them.
+     */
+    public void setJointFiltered(int joint, boolean filtered) {
+        jointFiltered[joint] = filtered;
+        reset();
+    }
+
+    public boolean isJointFiltered(int joint) {
+        return jointFiltered[joint];
+    }
+
+    public void apply(SkeletonFrame frame) {
+        if (!frame.isTracked()) {
+            reset();
+            return;
+        }
+        int[] values = frame.getValues();
+
+        if (!hasHistory) {
+            // First reading: nothing to smooth against yet
+            for (int i = 0; i < values.length; i++) {
+                filteredValues[i] = values[i];
+                filteredDerivatives[i] = 0;
+            }
+            hasHistory = true;
+            lastTimestampNanos = frame.getTimestampNanos();
+            return;
+        }
+
+        long intervalNanos = frame.getTimestampNanos() - lastTimestampNanos;
+        if (intervalNanos <= 0) {
+            intervalNanos = DEFAULT_FRAME_INTERVAL_NANOS;
+        }
+        lastTimestampNanos = frame.getTimestampNanos();
+        float dt = intervalNanos / 1e9f;
+        float derivativeAlpha = alpha(derivativeCutoffHz, dt);
+
+        for (int joint = 0; joint < SkeletonFrame.JOINT_COUNT; joint++) {
+            if (!jointFiltered[joint]) {
+                continue;
+            }
+            int i = joint * SkeletonFrame.JOINT_STRIDE + SkeletonFrame.KJ_X;
+            int end = joint * SkeletonFrame.JOINT_STRIDE + SkeletonFrame.KJ_Z;
+            for (; i <= end; i++) {
+                float value = values[i];
+                float previous = filteredValues[i];
+                float derivative = filteredDerivatives[i] + derivativeAlpha * ((value - previous) / dt - filteredDerivatives[i]);
+                float cutoff = minCutoffHz + beta * Math.abs(derivative);
+                float filtered = previous + alpha(cutoff, dt) * (value - previous);
+                filteredDerivatives[i] = derivative;
+                filteredValues[i] = filtered;
+                values[i] = Math.round(filtered);
+            }
+        }
+    }
+
+    /**
+     * Smoothing factor of an exponential low-pass filter with the given cutoff
+     * frequency, for samples dt seconds apart.
+     */
+    private static float alpha(float cutoffHz, float dt) {
+        float tau = 1 / (2 * (float) Math.PI * cutoffHz);
+        return 1 / (1 + tau / dt);
+    }
+
+    public void reset() {
+        hasHistory = false;
+    }
+
+    @Override
+    public String toString() {
+        return "OneEuroSkeletonFilter[minCutoffHz=" + minCutoffHz + ", beta=" + beta + ", derivativeCutoffHz=" + derivativeCutoffHz + "]";
+    }
+}
@@ -0,0 +1,179 @@
+package kinect.input;
+
+/**
+ *
+ * Latency compensation for skeleton joints: estimates each predicted joint's
+ * velocity from the last few readings (least-squares slope over
+ * HISTORY_SIZE readings) and extrapolates the joint to where it should be
+ * after the prediction horizon, i.e. roughly when the frame is displayed.
+ * The velocity is clamped so a tracking glitch can't fling the aim.
+ *
+ * History is kept for the raw (un-extrapolated) positions in preallocated
+ * arrays, so apply() allocates nothing and does a constant amount of work per
+ * predicted joint. By default the right wrist and right shoulder are
+ * predicted, which is what the camera mapping reads. Prediction can be
+ * switched off and on at runtime; history keeps being collected while it's
+ * off, so switching it on takes effect immediately.
+ */
+public class PredictionSkeletonFilter implements SkeletonFilter {
+
+    /*--- SETTINGS ---*/
+    /**
+     * Readings used for the velocity estimate. More = steadier but slower to
+     * react to changes of direction.
+     */
+    public static final int HISTORY_SIZE = 3;
+    /**
+     * (Unit: milliseconds.)
+     */
+    public static final float DEFAULT_HORIZON_MILLIS = 50;
+    /**
+     * (Unit: millimeters per second.)
+     */
+    public static final float DEFAULT_MAX_SPEED_MM_PER_SEC = 3000;
+    /*--- END SETTINGS ---*/
+    private float horizonMillis, maxSpeedMmPerSec;
+    private boolean enabled = true;
+    private final boolean[] jointPredicted = new boolean[SkeletonFrame.JOINT_COUNT];
+    /**
+     * Ring buffers of the last HISTORY_SIZE readings: positions (indexed
+     * slot * VALUE_COUNT + SkeletonFrame.index(joint, axis)) and their
+     * timestamps.
+     */
+    private final float[] historyValues = new float[HISTORY_SIZE * SkeletonFrame.VALUE_COUNT];
+    private final long[] historyTimestampsNanos = new long[HISTORY_SIZE];
+    private final float[] historySeconds = new float[HISTORY_SIZE];
+    private int historyCount = 0, newestSlot = -1;
+
+    public PredictionSkeletonFilter() {
+        this(DEFAULT_HORIZON_MILLIS, DEFAULT_MAX_SPEED_MM_PER_SEC);
+    }
+
+    public PredictionSkeletonFilter(float horizonMillis, float maxSpeedMmPerSec) {
+        this.horizonMillis = horizonMillis;
+        this.maxSpeedMmPerSec = maxSpeedMmPerSec;
+        jointPredicted[SkeletonFrame.WRIST_RIGHT] = true;
+        jointPredicted[SkeletonFrame.SHOULDER_RIGHT] = true;
+    }
+
+    public float getHorizonMillis() {
+        return horizonMillis;
+    }
+
+    public void setHorizonMillis(float horizonMillis) {
+        this.horizonMillis = horizonMillis;
+    }
+
+    public float getMaxSpeedMmPerSec() {
+        return maxSpeedMmPerSec;
+    }
+
+    public void setMaxSpeedMmPerSec(float maxSpeedMmPerSec) {
+        this.maxSpeedMmPerSec = maxSpeedMmPerSec;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setJointPredicted(int joint, boolean predicted) {
+        jointPredicted[joint] = predicted;
+        reset();
+    }
+
+    public boolean isJointPredicted(int joint) {
+        return jointPredicted[joint];
+    }
+
+    public void apply(SkeletonFrame frame) {
+        if (!frame.isTracked()) {
+            reset();
+            return;
+        }
+        int[] values = frame.getValues();
+
+        // Remember the raw reading
+        newestSlot = (newestSlot + 1) % HISTORY_SIZE;
+        int base = newestSlot * SkeletonFrame.VALUE_COUNT;
+        for (int joint = 0; joint < SkeletonFrame.JOINT_COUNT; joint++) {
+            if (jointPredicted[joint]) {
+                for (int axis = SkeletonFrame.KJ_X; axis <= SkeletonFrame.KJ_Z; axis++) {
+                    int i = SkeletonFrame.index(joint, axis);
+                    historyValues[base + i] = values[i];
+                }
+            }
+        }
+        historyTimestampsNanos[newestSlot] = frame.getTimestampNanos();
+        if (historyCount < HISTORY_SIZE) {
+            historyCount++;
+        }
+
+        if (!enabled || historyCount < 2 || horizonMillis == 0) {
+            return;
+        }
+
+        // Sample times relative to the newest reading, centered on their mean
+        float meanSeconds = 0;
+        for (int n = 0; n < historyCount; n++) {
+            int slot = (newestSlot - n + HISTORY_SIZE) % HISTORY_SIZE;
+            historySeconds[slot] = (historyTimestampsNanos[slot] - historyTimestampsNanos[newestSlot]) / 1e9f;
+            meanSeconds += historySeconds[slot];
+        }
+        meanSeconds /= historyCount;
+        float timeVariance = 0;
+        for (int n = 0; n < historyCount; n++) {
+            int slot = (newestSlot - n + HISTORY_SIZE) % HISTORY_SIZE;
+            historySeconds[slot] -= meanSeconds;
+            timeVariance += historySeconds[slot] * historySeconds[slot];
+        }
+        if (timeVariance <= 0) {
+            return; // Readings without distinct timestamps; nothing to go on
+        }
+        float horizonSeconds = horizonMillis / 1000;
+
+        for (int joint = 0; joint < SkeletonFrame.JOINT_COUNT; joint++) {
+            if (!jointPredicted[joint]) {
+                continue;
+            }
+            float velocityX = velocity(SkeletonFrame.index(joint, SkeletonFrame.KJ_X), timeVariance);
+            float velocityY = velocity(SkeletonFrame.index(joint, SkeletonFrame.KJ_Y), timeVariance);
+            float velocityZ = velocity(SkeletonFrame.index(joint, SkeletonFrame.KJ_Z), timeVariance);
+            float speed = (float) Math.sqrt(velocityX * velocityX + velocityY * velocityY + velocityZ * velocityZ);
+            float scale = horizonSeconds;
+            if (speed > maxSpeedMmPerSec) {
+                scale *= maxSpeedMmPerSec / speed;
+            }
+            int i = SkeletonFrame.index(joint, SkeletonFrame.KJ_X);
+            values[i] = Math.round(values[i] + velocityX * scale);
+            values[i + 1] = Math.round(values[i + 1] + velocityY * scale);
+            values[i + 2] = Math.round(values[i + 2] + velocityZ * scale);
+        }
+    }
+
+    /**
+     * Least-squares slope of one coordinate over the history, using the
+     * mean-centered sample times in historySeconds. (Unit: mm per second.)
+     */
+    private float velocity(int valueIndex, float timeVariance) {
+        float covariance = 0;
+        for (int n = 0; n < historyCount; n++) {
+            int slot = (newestSlot - n + HISTORY_SIZE) % HISTORY_SIZE;
+            covariance += historySeconds[slot] * historyValues[slot * SkeletonFrame.VALUE_COUNT + valueIndex];
+        }
+        return covariance / timeVariance;
+    }
+
+    public void reset() {
+        historyCount = 0;
+        newestSlot = -1;
+    }
+
+    @Override
+    public String toString() {
+        return "PredictionSkeletonFilter[enabled=" + enabled + ", horizonMillis=" + horizonMillis + ", maxSpeedMmPerSec=" + maxSpeedMmPerSec + "]";
+    }
+}
@@ -0,0 +1,22 @@
+package kinect.input;
+
+/**
+ *
+ * A processing stage for skeleton frames (smoothing, prediction, ...) that
+ * runs in place on a frame the game owns. Stages keep their state between
+ * frames, so each new reading must be passed exactly once, in order.
+ * Implementations must not allocate in apply().
+ */
+public interface SkeletonFilter {
+
+    /**
+     * Processes a new reading in place. Untracked frames are passed through
+     * unchanged and should reset the stage's history.
+     */
+    void apply(SkeletonFrame frame);
+
+    /**
+     * Forgets all history, e.g. when the skeleton is lost.
+     */
+    void reset();
+}
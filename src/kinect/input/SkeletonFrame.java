@@ -0,0 +1,141 @@
+package kinect.input;
+
+/**
+ *
+ * One Kinect skeleton reading, stored flat in a single primitive int array so
+ * it can be reused and filled in place without any per-frame allocation.
+ * This is the one format that live input, recordings and replay all use.
+ *
+ * Layout follows KinectTCP's joint [array] index system: every joint takes
+ * JOINT_STRIDE ints (tracking state, x, y, z), so e.g. the right wrist's x
+ * coordinate is at index(WRIST_RIGHT, KJ_X). Coordinates are in millimeters.
+ *
+ * Instances are NOT thread-safe; hand them between threads through
+ * SkeletonFrameBuffer.
+ */
+public class SkeletonFrame {
+
+    /**
+     * Number of joints KinectTCP reports per skeleton.
+     */
+    public static final int JOINT_COUNT = 20;
+    /**
+     * Ints stored per joint: tracking state followed by x, y and z.
+     */
+    public static final int JOINT_STRIDE = 4;
+    public static final int VALUE_COUNT = JOINT_COUNT * JOINT_STRIDE;
+    /**
+     * Mapping for KinectTCP's skeleton Joint [Array] Index System
+     */
+    public static final int SPINE = 1,
+            SHOULDER_LEFT = 4,
+            WRIST_LEFT = 6,
+            SHOULDER_CENTER = 2,
+            SHOULDER_RIGHT = 8,
+            WRIST_RIGHT = 10;
+    /**
+     * Mapping for any joint's tracking state and X, Y, and Z coordinates'
+     * offsets within the joint's stride.
+     */
+    public static final int KJ_STATE = 0,
+            KJ_X = 1,
+            KJ_Y = 2,
+            KJ_Z = 3;
+    private final int[] values = new int[VALUE_COUNT];
+    /**
+     * When false, the sensor had no tracked skeleton and values are stale.
+     */
+    private boolean tracked = false;
+    /**
+     * When the reading was taken, from System.nanoTime(). (Unit: nanoseconds.)
+     */
+    private long timestampNanos = 0;
+    /**
+     * Increases by one for every reading a source produces.
+     */
+    private long sequence = 0;
+
+    public static int index(int joint, int axis) {
+        return joint * JOINT_STRIDE + axis;
+    }
+
+    public int get(int joint, int axis) {
+        return values[joint * JOINT_STRIDE + axis];
+    }
+
+    public void set(int joint, int axis, int value) {
+        values[joint * JOINT_STRIDE + axis] = value;
+    }
+
+    /**
+     * Direct access to the backing array, mainly for bulk readers/writers
+     * such as recordings and transports. Index it with index(joint, axis).
+     */
+    public int[] getValues() {
+        return values;
+    }
+
+    public boolean isTracked() {
+        return tracked;
+    }
+
+    public void setTracked(boolean tracked) {
+        this.tracked = tracked;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public void setTimestampNanos(long timestampNanos) {
+        this.timestampNanos = timestampNanos;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Fills this frame in place from KinectTCP's/Mocap's joints[joint][axis]
+     * layout.
+     *
+     * @param joints The joints reading, or null if no skeleton is tracked (in
+     * which case the old values are kept but the frame is marked untracked).
+     */
+    public void setFrom(int[][] joints, long timestampNanos, long sequence) {
+        this.timestampNanos = timestampNanos;
+        this.sequence = sequence;
+        if (joints == null) {
+            tracked = false;
+            return;
+        }
+        int jointCount = Math.min(joints.length, JOINT_COUNT);
+        for (int joint = 0; joint < jointCount; joint++) {
+            System.arraycopy(joints[joint], 0, values, joint * JOINT_STRIDE, JOINT_STRIDE);
+        }
+        tracked = true;
+    }
+
+    public void copyFrom(SkeletonFrame other) {
+        System.arraycopy(other.values, 0, values, 0, VALUE_COUNT);
+        tracked = other.tracked;
+        timestampNanos = other.timestampNanos;
+        sequence = other.sequence;
+    }
+
+    /**
+     * @return A new joints[joint][axis] array, as used by PoorMoCap. Allocates;
+     * meant for tools and compatibility, not for the per-frame path.
+     */
+    public int[][] toJointsArray() {
+        int[][] joints = new int[JOINT_COUNT][JOINT_STRIDE];
+        for (int joint = 0; joint < JOINT_COUNT; joint++) {
+            System.arraycopy(values, joint * JOINT_STRIDE, joints[joint], 0, JOINT_STRIDE);
+        }
+        return joints;
+    }
+}
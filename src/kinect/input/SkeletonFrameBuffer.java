@@ -0,0 +1,61 @@
+package kinect.input;
+
+/**
+ *
+ * Lock-free single-producer/single-consumer triple buffer of SkeletonFrames.
+ * The producer fills its own back frame in place and publishes it with one
+ * atomic swap; the consumer swaps the newest published frame into its own
+ * front frame. Neither side ever blocks, waits or allocates, and only the
+ * newest frame is kept: a frame that is published over before the consumer
+ * got to it is counted as overwritten (dropped). The index swapping is
+ * TripleBufferIndex's, shared with kinect.depth.DirectBufferTripleBuffer.
+ */
+public class SkeletonFrameBuffer {
+
+    private final SkeletonFrame[] frames = new SkeletonFrame[]{
+        new SkeletonFrame(), new SkeletonFrame(), new SkeletonFrame()};
+    private final TripleBufferIndex index = new TripleBufferIndex();
+
+    /**
+     * Producer side.
+     *
+     * @return The frame to fill in place before calling publish().
+     */
+    public SkeletonFrame getBackFrame() {
+        return frames[index.getBackIndex()];
+    }
+
+    /**
+     * Producer side. Makes the back frame the newest one and hands the
+     * producer a fresh back frame. Never blocks.
+     */
+    public void publish() {
+        index.publish();
+    }
+
+    /**
+     * Consumer side. Wait-free.
+     *
+     * @return True if a newer frame than the current front frame was published
+     * and it is now the front frame.
+     */
+    public boolean update() {
+        return index.update();
+    }
+
+    /**
+     * Consumer side. The returned frame stays valid and unchanged until the
+     * consumer's next update() call.
+     */
+    public SkeletonFrame getFrontFrame() {
+        return frames[index.getFrontIndex()];
+    }
+
+    public long getPublishedCount() {
+        return index.getPublishedCount();
+    }
+
+    public long getOverwrittenCount() {
+        return index.getOverwrittenCount();
+    }
+}
@@ -0,0 +1,189 @@
+package kinect.input;
+
+import java.util.Arrays;
+
+/**
+ *
+ * Upsamples skeleton readings (about 30 per second from the Kinect) to the
+ * render rate: keeps the last two timestamped readings and, for every render
+ * frame, blends their joint positions according to how far the render time
+ * is past the newest reading, as a fraction of the interval between the two.
+ * The pose thus trails the sensor by one reading interval but moves every
+ * render frame instead of every other one.
+ *
+ * Dropped readings just make the interval longer (timestamps are used, not
+ * counts); when no new reading comes in time the newest one is held.
+ * Duplicated readings (not newer than the newest one, or identical to it)
+ * are ignored.
+ * Everything is copied into preallocated frames; nothing is allocated.
+ */
+public class SkeletonInterpolator {
+
+    /*--- SETTINGS ---*/
+    /**
+     * A gap longer than this many typical reading intervals counts as
+     * dropped readings.
+     */
+    public static final float DROPPED_READING_INTERVAL_FACTOR = 1.5f;
+    /**
+     * Longest interval that is still interpolated over; after a longer gap
+     * (e.g. the skeleton was just found again) the new reading is used as is.
+     * (Unit: nanoseconds.)
+     */
+    public static final long MAX_INTERPOLATION_INTERVAL_NANOS = 250000000L;
+    /*--- END SETTINGS ---*/
+    private final SkeletonFrame previous = new SkeletonFrame(), latest = new SkeletonFrame();
+    private boolean hasPrevious = false, hasLatest = false;
+    private boolean freshSincePreviousSample = false;
+    /**
+     * Running estimate of the reading interval. (Unit: nanoseconds.)
+     */
+    private long typicalIntervalNanos = 0;
+    private long freshFrames = 0, interpolatedFrames = 0, heldFrames = 0;
+    private long readings = 0, duplicateReadings = 0, droppedReadings = 0;
+
+    /**
+     * Adds a new (already filtered) reading. Untracked readings reset the
+     * history.
+     */
+    public void push(SkeletonFrame reading) {
+        if (!reading.isTracked()) {
+            latest.copyFrom(reading);
+            hasLatest = true;
+            hasPrevious = false;
+            freshSincePreviousSample = true;
+            return;
+        }
+        if (hasLatest && latest.isTracked()
+                && (reading.getTimestampNanos() <= latest.getTimestampNanos()
+                || Arrays.equals(reading.getValues(), latest.getValues()))) {
+            // The same reading again (Kinect noise makes real readings never
+            // match exactly); keep the original's timestamp
+            duplicateReadings++;
+            return;
+        }
+        readings++;
+
+        if (hasLatest && latest.isTracked()) {
+            long intervalNanos = reading.getTimestampNanos() - latest.getTimestampNanos();
+            if (typicalIntervalNanos > 0 && intervalNanos > typicalIntervalNanos * DROPPED_READING_INTERVAL_FACTOR) {
+                droppedReadings += Math.round((double) intervalNanos / typicalIntervalNanos) - 1;
+            } else {
+                // Only undisturbed intervals update the estimate
+                typicalIntervalNanos = (typicalIntervalNanos == 0) ? intervalNanos : (typicalIntervalNanos * 7 + intervalNanos) / 8;
+            }
+            previous.copyFrom(latest);
+            hasPrevious = intervalNanos <= MAX_INTERPOLATION_INTERVAL_NANOS;
+        } else {
+            hasPrevious = false;
+        }
+        latest.copyFrom(reading);
+        hasLatest = true;
+        freshSincePreviousSample = true;
+    }
+
+    /**
+     * Writes the pose for a render frame into the given frame.
+     *
+     * @param renderNanos The render frame's time, from System.nanoTime().
+     * @return False if there's no reading at all yet (the frame is then left
+     * untouched).
+     */
+    public boolean sample(long renderNanos, SkeletonFrame into) {
+        if (!hasLatest) {
+            return false;
+        }
+        boolean fresh = freshSincePreviousSample;
+        freshSincePreviousSample = false;
+
+        if (!latest.isTracked() || !hasPrevious) {
+            into.copyFrom(latest);
+            if (fresh) {
+                freshFrames++;
+            } else {
+                heldFrames++;
+            }
+            return true;
+        }
+
+        long intervalNanos = latest.getTimestampNanos() - previous.getTimestampNanos();
+        float alpha = (float) (renderNanos - latest.getTimestampNanos()) / intervalNanos;
+        if (alpha >= 1) {
+            into.copyFrom(latest);
+            heldFrames++; // Next reading is late or was dropped
+            return true;
+        }
+        if (alpha < 0) {
+            alpha = 0;
+        }
+
+        int[] from = previous.getValues(), to = latest.getValues(), values = into.getValues();
+        for (int joint = 0; joint < SkeletonFrame.JOINT_COUNT; joint++) {
+            int i = joint * SkeletonFrame.JOINT_STRIDE;
+            values[i + SkeletonFrame.KJ_STATE] = to[i + SkeletonFrame.KJ_STATE];
+            for (int axis = SkeletonFrame.KJ_X; axis <= SkeletonFrame.KJ_Z; axis++) {
+                values[i + axis] = from[i + axis] + Math.round(alpha * (to[i + axis] - from[i + axis]));
+            }
+        }
+        into.setTracked(true);
+        into.setTimestampNanos(previous.getTimestampNanos() + (long) (alpha * intervalNanos));
+        into.setSequence(latest.getSequence());
+        if (fresh) {
+            freshFrames++;
+        } else {
+            interpolatedFrames++;
+        }
+        return true;
+    }
+
+    public void reset() {
+        hasPrevious = false;
+        hasLatest = false;
+        freshSincePreviousSample = false;
+    }
+
+    /**
+     * @return Render frames sampled right after a new reading came in.
+     */
+    public long getFreshFrames() {
+        return freshFrames;
+    }
+
+    /**
+     * @return Render frames that got a pose blended between two readings.
+     */
+    public long getInterpolatedFrames() {
+        return interpolatedFrames;
+    }
+
+    /**
+     * @return Render frames that repeated the newest reading because the next
+     * one hadn't come yet.
+     */
+    public long getHeldFrames() {
+        return heldFrames;
+    }
+
+    public long getDuplicateReadings() {
+        return duplicateReadings;
+    }
+
+    public long getDroppedReadings() {
+        return droppedReadings;
+    }
+
+    public long getTypicalIntervalNanos() {
+        return typicalIntervalNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "SkeletonInterpolator[readings=" + readings
+                + ", freshFrames=" + freshFrames
+                + ", interpolatedFrames=" + interpolatedFrames
+                + ", heldFrames=" + heldFrames
+                + ", duplicateReadings=" + duplicateReadings
+                + ", droppedReadings=" + droppedReadings
+                + ", typicalIntervalMillis=" + (typicalIntervalNanos / 1e6f) + "]";
+    }
+}
@@ -0,0 +1,19 @@
+package kinect.input;
+
+/**
+ *
+ * Anything a MultiSkeletonSampler can drain: hands out every skeleton of the
+ * newest reading, for more than one player.
+ */
+public interface SkeletonsSource {
+
+    /**
+     * Called from the sampler thread only.
+     *
+     * @return The joints[joint][axis] of every skeleton in the newest reading
+     * (KinectTCP's layout and order), or null if there is no reading. A new
+     * reading must come as a new array; returning the same array again means
+     * nothing new arrived.
+     */
+    int[][][] getSkeletons();
+}
@@ -0,0 +1,275 @@
+package kinect.input;
+
+/**
+ *
+ * Makes up skeleton readings from a few motion parameters, for load-testing
+ * the input path at rates and with motions the recordings don't have:
+ * - sweep: the right arm (the one that aims) traces a figure in front of the
+ * right shoulder, sideways with the given amplitude and period and up and
+ * down at half the amplitude and 1.5 times the rate;
+ * - shake: a fast wobble of the right wrist and hand on top of that (a shaky
+ * hand);
+ * - noise: random jitter on every joint (sensor noise);
+ * - dropouts: periodically, a body isn't tracked for a while;
+ * - joint loss: a share of readings where the right wrist isn't tracked (the
+ * Kinect then reports it at 0, 0, 0 with state 0);
+ * - bodies: up to MAX_BODIES people, BODY_SPACING_MILLIMETERS apart, each
+ * moving out of step with the others.
+ *
+ * A reading depends only on its index, the rate and the body, so any reading
+ * can be made again in any order (and by several generators with the same
+ * settings) without keeping state. Randomness comes from hashing the index,
+ * not from a Random. Generating is allocation-free; call a generator from
+ * one thread at a time.
+ */
+public class SyntheticSkeletonGenerator {
+
+    /*--- SETTINGS ---*/
+    /**
+     * Standing in front of the sensor with the right arm pointing ahead, as
+     * in the recordings: {state, x, y, z} per joint. (Unit: millimeters.)
+     */
+    public static final int[][] REST_POSE = {
+        {2, -157, -402, 2181}, {2, -155, -350, 2169}, {2, -144, -93, 2122}, {2, -172, 71, 2028},
+        {2, -338, -158, 2161}, {2, -354, -407, 2172}, {2, -294, -594, 2035}, {1, -281, -638, 1993},
+        {2, -14, -133, 2085}, {2, 11, -221, 1897}, {2, -8, -296, 1640}, {2, -20, -325, 1562},
+        {2, -236, -473, 2208}, {2, -256, -717, 2036}, {1, -279, -990, 1836}, {1, -295, -1018, 1756},
+        {2, -81, -477, 2178}, {2, -24, -729, 2079}, {1, 50, -1049, 1947}, {1, 39, -1083, 1869}
+    };
+    /**
+     * The Kinect tracks at most 6 people. (Unit: bodies.)
+     */
+    public static final int MAX_BODIES = 6;
+    /**
+     * How far to the side (x) each further body stands; the same as
+     * KinectStandInServer's second skeleton. (Unit: millimeters.)
+     */
+    public static final int BODY_SPACING_MILLIMETERS = 1000;
+    public static final float DEFAULT_SWEEP_MILLIMETERS = 400,
+            DEFAULT_SWEEP_PERIOD_SECONDS = 4;
+    /*--- END SETTINGS ---*/
+    public static final int ELBOW_RIGHT = 9,
+            HAND_RIGHT = 11;
+    private static final int JOINT_NOT_TRACKED = 0;
+    private int bodies = 1;
+    private float sweepMillimeters = DEFAULT_SWEEP_MILLIMETERS, sweepPeriodSeconds = DEFAULT_SWEEP_PERIOD_SECONDS;
+    private float shakeMillimeters = 0, shakeHz = 0;
+    private int noiseMillimeters = 0;
+    private long dropoutEveryMillis = 0, dropoutMillis = 0;
+    private float jointLossPercent = 0;
+    private long seed = 1;
+    private final int[] scratch = new int[SkeletonFrame.VALUE_COUNT];
+
+    /**
+     * @param bodies 1 to MAX_BODIES.
+     */
+    public void setBodies(int bodies) {
+        if (bodies < 1 || bodies > MAX_BODIES) {
+            throw new IllegalArgumentException("Between 1 and " + MAX_BODIES + " bodies, not " + bodies);
+        }
+        this.bodies = bodies;
+    }
+
+    public int getBodies() {
+        return bodies;
+    }
+
+    /**
+     * @param millimeters 0 keeps the arm still.
+     */
+    public void setSweep(float millimeters, float periodSeconds) {
+        this.sweepMillimeters = millimeters;
+        this.sweepPeriodSeconds = periodSeconds;
+    }
+
+    /**
+     * @param millimeters 0 turns shaking off.
+     */
+    public void setShake(float millimeters, float hz) {
+        this.shakeMillimeters = millimeters;
+        this.shakeHz = hz;
+    }
+
+    /**
+     * @param millimeters Most a joint is off by on each axis; 0 turns noise
+     * off.
+     */
+    public void setNoise(int millimeters) {
+        this.noiseMillimeters = millimeters;
+    }
+
+    /**
+     * Every everyMillis, each body goes untracked for dropoutMillis (bodies
+     * drop out at different times). 0 turns dropouts off.
+     */
+    public void setDropouts(long everyMillis, long dropoutMillis) {
+        this.dropoutEveryMillis = everyMillis;
+        this.dropoutMillis = dropoutMillis;
+    }
+
+    /**
+     * @param percent Share of tracked readings with the right wrist lost.
+     */
+    public void setJointLoss(float percent) {
+        this.jointLossPercent = percent;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Applies one command line option (see printUsage()).
+     *
+     * @return False if it isn't one of the generator's options.
+     */
+    public boolean configure(String option) {
+        if (option.startsWith("--bodies=")) {
+            setBodies(Integer.parseInt(option.substring("--bodies=".length())));
+        } else if (option.startsWith("--sweep=")) {
+            float[] values = parsePair(option.substring("--sweep=".length()));
+            setSweep(values[0], values[1]);
+        } else if (option.startsWith("--shake=")) {
+            float[] values = parsePair(option.substring("--shake=".length()));
+            setShake(values[0], values[1]);
+        } else if (option.startsWith("--noise=")) {
+            setNoise(Integer.parseInt(option.substring("--noise=".length())));
+        } else if (option.startsWith("--dropout=")) {
+            float[] values = parsePair(option.substring("--dropout=".length()));
+            setDropouts((long) values[0], (long) values[1]);
+        } else if (option.startsWith("--joint-loss=")) {
+            setJointLoss(Float.parseFloat(option.substring("--joint-loss=".length())));
+        } else if (option.startsWith("--seed=")) {
+            setSeed(Long.parseLong(option.substring("--seed=".length())));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static float[] parsePair(String value) {
+        String[] parts = value.split(":");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Expected A:B, got " + value);
+        }
+        return new float[]{Float.parseFloat(parts[0]), Float.parseFloat(parts[1])};
+    }
+
+    public static void printUsage() {
+        System.err.println("  --bodies=N                 1 to " + MAX_BODIES + " (default 1), " + BODY_SPACING_MILLIMETERS + " mm apart");
+        System.err.println("  --sweep=MM:SECONDS         Right arm sweep (default " + DEFAULT_SWEEP_MILLIMETERS + ":" + DEFAULT_SWEEP_PERIOD_SECONDS + "; 0:1 keeps it still)");
+        System.err.println("  --shake=MM:HZ              Right wrist shake (default off)");
+        System.err.println("  --noise=MM                 Jitter on every joint (default off)");
+        System.err.println("  --dropout=EVERY_MS:MS      Each body untracked for MS, every EVERY_MS");
+        System.err.println("  --joint-loss=PERCENT       Readings with the right wrist lost");
+        System.err.println("  --seed=N                   Noise and joint loss random seed");
+    }
+
+    /**
+     * Fills a frame with one body's reading; the sequence is index + 1 and
+     * the timestamp index / rateHz after 0 (sources restamp it).
+     *
+     * @return Whether the body is tracked in this reading (then also the
+     * frame's tracked flag; the joints are filled either way).
+     */
+    public boolean generate(long index, double rateHz, int body, SkeletonFrame into) {
+        boolean tracked = generate(index, rateHz, body, into.getValues());
+        into.setTracked(tracked);
+        into.setSequence(index + 1);
+        into.setTimestampNanos((long) (index * 1e9 / rateHz));
+        return tracked;
+    }
+
+    /**
+     * Fills joints[joint][axis] (KinectTCP's/Mocap's layout) with one body's
+     * reading.
+     *
+     * @return Whether the body is tracked in this reading.
+     */
+    public boolean generate(long index, double rateHz, int body, int[][] joints) {
+        boolean tracked = generate(index, rateHz, body, scratch);
+        for (int joint = 0; joint < SkeletonFrame.JOINT_COUNT; joint++) {
+            System.arraycopy(scratch, joint * SkeletonFrame.JOINT_STRIDE, joints[joint], 0, SkeletonFrame.JOINT_STRIDE);
+        }
+        return tracked;
+    }
+
+    /**
+     * Fills values in SkeletonFrame's flat layout.
+     */
+    private boolean generate(long index, double rateHz, int body, int[] values) {
+        double seconds = index / rateHz;
+        double phase = body * 0.37 * sweepPeriodSeconds; // Out of step with the other bodies
+        double sweepAngle = 2 * Math.PI * (seconds + phase) / sweepPeriodSeconds;
+        double armX = sweepMillimeters * Math.sin(sweepAngle);
+        double armY = sweepMillimeters / 2 * Math.sin(1.5 * sweepAngle);
+        double shakeX = 0, shakeY = 0;
+        if (shakeMillimeters > 0) {
+            double shakeAngle = 2 * Math.PI * shakeHz * seconds;
+            shakeX = shakeMillimeters * Math.sin(shakeAngle);
+            shakeY = shakeMillimeters * Math.cos(1.3 * shakeAngle);
+        }
+        int offsetX = body * BODY_SPACING_MILLIMETERS;
+        for (int joint = 0; joint < SkeletonFrame.JOINT_COUNT; joint++) {
+            double x = REST_POSE[joint][SkeletonFrame.KJ_X] + offsetX, y = REST_POSE[joint][SkeletonFrame.KJ_Y];
+            if (joint == ELBOW_RIGHT) {
+                x += armX / 2;
+                y += armY / 2;
+            } else if (joint == SkeletonFrame.WRIST_RIGHT || joint == HAND_RIGHT) {
+                x += armX + shakeX;
+                y += armY + shakeY;
+            }
+            values[SkeletonFrame.index(joint, SkeletonFrame.KJ_STATE)] = REST_POSE[joint][SkeletonFrame.KJ_STATE];
+            values[SkeletonFrame.index(joint, SkeletonFrame.KJ_X)] = (int) Math.round(x) + noise(index, body, joint, SkeletonFrame.KJ_X);
+            values[SkeletonFrame.index(joint, SkeletonFrame.KJ_Y)] = (int) Math.round(y) + noise(index, body, joint, SkeletonFrame.KJ_Y);
+            values[SkeletonFrame.index(joint, SkeletonFrame.KJ_Z)] = REST_POSE[joint][SkeletonFrame.KJ_Z] + noise(index, body, joint, SkeletonFrame.KJ_Z);
+        }
+        if (jointLossPercent > 0 && (random(index, body, -1) + 1) * 50 < jointLossPercent) {
+            values[SkeletonFrame.index(SkeletonFrame.WRIST_RIGHT, SkeletonFrame.KJ_STATE)] = JOINT_NOT_TRACKED;
+            values[SkeletonFrame.index(SkeletonFrame.WRIST_RIGHT, SkeletonFrame.KJ_X)] = 0;
+            values[SkeletonFrame.index(SkeletonFrame.WRIST_RIGHT, SkeletonFrame.KJ_Y)] = 0;
+            values[SkeletonFrame.index(SkeletonFrame.WRIST_RIGHT, SkeletonFrame.KJ_Z)] = 0;
+        }
+        return isTracked(index, rateHz, body);
+    }
+
+    /**
+     * @return False while the body is dropped out.
+     */
+    public boolean isTracked(long index, double rateHz, int body) {
+        if (dropoutEveryMillis <= 0) {
+            return true;
+        }
+        long millis = (long) (index * 1000 / rateHz) + body * dropoutEveryMillis / bodies;
+        return millis % dropoutEveryMillis < dropoutEveryMillis - dropoutMillis; // Tracked at first
+    }
+
+    private int noise(long index, int body, int joint, int axis) {
+        if (noiseMillimeters == 0) {
+            return 0;
+        }
+        return (int) Math.round(random(index, body, joint * SkeletonFrame.JOINT_STRIDE + axis) * noiseMillimeters);
+    }
+
+    /**
+     * @return A value in [-1, 1) that depends only on the arguments and the
+     * seed (SplitMix64's mixing).
+     */
+    private double random(long index, int body, int slot) {
+        long z = seed + index * 0x9E3779B97F4A7C15L + body * 0xBF58476D1CE4E5B9L + slot * 0x94D049BB133111EBL;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return (z >>> 11) * (2.0 / (1L << 53)) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "SyntheticSkeletonGenerator[bodies=" + bodies
+                + ", sweep=" + sweepMillimeters + "mm/" + sweepPeriodSeconds + "s"
+                + ", shake=" + shakeMillimeters + "mm@" + shakeHz + "Hz"
+                + ", noise=" + noiseMillimeters + "mm"
+                + ", dropout=" + dropoutMillis + "ms every " + dropoutEveryMillis + "ms"
+                + ", jointLoss=" + jointLossPercent + "%]";
+    }
+}
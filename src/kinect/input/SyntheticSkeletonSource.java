@@ -0,0 +1,168 @@
+package kinect.input;
+
+/**
+ *
+ * Input source that makes its skeletons up with a SyntheticSkeletonGenerator,
+ * at any rate (up to thousands of readings per second), for finding where
+ * the input path stops keeping up. Readings are clock-driven: whenever it is
+ * asked, the source hands out the reading that is due by now, so a consumer
+ * that polls too slowly skips readings (counted in getReadingsSkipped())
+ * instead of falling behind.
+ *
+ * Like KinectTCPInputSource, it is drained by a KinectSampler through
+ * getJoints() (Mocap's interface) as a KinectInputSource, or by a
+ * MultiSkeletonSampler through getSkeletons() for more than one player.
+ * Readings come in arrays reused every other reading (the samplers only
+ * compare a reading to the one before), so generating allocates nothing.
+ *
+ * For the other transports (KinectStandInServer, i.e. KinectTCP and Mocap
+ * framing, UdpSkeletonSender, SharedMemorySkeletonWriter), write the motion
+ * to recordings with kinect.recording.SyntheticRecordingWriter.
+ */
+public class SyntheticSkeletonSource implements KinectInputSource, JointsSource, SkeletonsSource {
+
+    /*--- SETTINGS ---*/
+    public static final double DEFAULT_RATE_HZ = 30;
+    /*--- END SETTINGS ---*/
+    private final SyntheticSkeletonGenerator generator;
+    private final double rateHz;
+    private KinectSampler sampler = null;
+    /**
+     * Sampler thread only: two sets of arrays, used in turn, and per set one
+     * skeletons array for every number of tracked bodies.
+     */
+    private final int[][][][] jointSets;
+    private final int[][][][][] skeletonSets;
+    private int currentSet = 0;
+    private int[][][] currentSkeletons = null;
+    private long startNanos = 0;
+    private long lastIndex = -1;
+    /**
+     * Written by the sampler thread only, and may be read from any thread.
+     */
+    private volatile long readingsGenerated = 0, readingsSkipped = 0;
+
+    public SyntheticSkeletonSource(SyntheticSkeletonGenerator generator, double rateHz) {
+        this.generator = generator;
+        this.rateHz = rateHz;
+        int bodies = generator.getBodies();
+        jointSets = new int[2][bodies][SkeletonFrame.JOINT_COUNT][SkeletonFrame.JOINT_STRIDE];
+        skeletonSets = new int[2][bodies + 1][][][];
+        for (int set = 0; set < 2; set++) {
+            for (int count = 0; count <= bodies; count++) {
+                skeletonSets[set][count] = new int[count][][];
+            }
+        }
+    }
+
+    /**
+     * Starts a KinectSampler polling often enough for the rate: every
+     * KinectSampler.DEFAULT_POLL_INTERVAL_MILLIS at the Kinect's rate, as
+     * often as it can (a 0 ms sleep) from 1000 Hz on.
+     */
+    public void start() {
+        sampler = new KinectSampler(this, getPollIntervalMillis(rateHz));
+        sampler.start();
+    }
+
+    /**
+     * @return A sampler poll interval that sees (nearly) every reading at
+     * rateHz. (Unit: milliseconds.)
+     */
+    public static long getPollIntervalMillis(double rateHz) {
+        return Math.min(KinectSampler.DEFAULT_POLL_INTERVAL_MILLIS, (long) (1000 / rateHz / 2));
+    }
+
+    public SkeletonFrame getLatestFrame() {
+        return sampler.getLatestFrame();
+    }
+
+    public void stop() {
+        if (sampler != null) {
+            sampler.shutdown();
+        }
+    }
+
+    /**
+     * Called by the sampler thread.
+     *
+     * @return The first tracked body of the reading due now, or null.
+     */
+    public int[][] getJoints() {
+        int[][][] skeletons = getSkeletons();
+        // The same skeletons array gives the same joints array, as it should
+        return (skeletons != null && skeletons.length > 0) ? skeletons[0] : null;
+    }
+
+    /**
+     * Called by the sampler thread; the clock starts at the first call.
+     *
+     * @return Every tracked body of the reading due now (the same array as
+     * last time if none is due yet), or null if no body is tracked.
+     */
+    public int[][][] getSkeletons() {
+        long nowNanos = System.nanoTime();
+        if (lastIndex < 0) {
+            startNanos = nowNanos;
+        }
+        long index = (long) ((nowNanos - startNanos) * rateHz / 1e9);
+        if (index == lastIndex) {
+            return currentSkeletons;
+        }
+        if (lastIndex >= 0 && index > lastIndex + 1) {
+            readingsSkipped = readingsSkipped + (index - lastIndex - 1);
+        }
+        lastIndex = index;
+        readingsGenerated = readingsGenerated + 1;
+
+        currentSet = 1 - currentSet;
+        int[][][] joints = jointSets[currentSet];
+        int count = 0;
+        for (int body = 0; body < joints.length; body++) {
+            if (generator.generate(index, rateHz, body, joints[count])) {
+                count++; // Untracked bodies get overwritten by the next one
+            }
+        }
+        if (count == 0) {
+            currentSkeletons = null;
+            return null;
+        }
+        int[][][] skeletons = skeletonSets[currentSet][count];
+        System.arraycopy(joints, 0, skeletons, 0, count);
+        currentSkeletons = skeletons;
+        return skeletons;
+    }
+
+    public SyntheticSkeletonGenerator getGenerator() {
+        return generator;
+    }
+
+    public double getRateHz() {
+        return rateHz;
+    }
+
+    public KinectSampler getSampler() {
+        return sampler;
+    }
+
+    public long getReadingsGenerated() {
+        return readingsGenerated;
+    }
+
+    /**
+     * @return Readings that came due between two polls and were never handed
+     * out.
+     */
+    public long getReadingsSkipped() {
+        return readingsSkipped;
+    }
+
+    @Override
+    public String toString() {
+        return "SyntheticSkeletonSource[rateHz=" + rateHz
+                + ", readingsGenerated=" + readingsGenerated
+                + ", readingsSkipped=" + readingsSkipped
+                + ", " + generator
+                + ((sampler != null) ? ", " + sampler : "") + "]";
+    }
+}
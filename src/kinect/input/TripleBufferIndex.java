@@ -0,0 +1,95 @@
+package kinect.input;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ * The index swapping behind a lock-free single-producer/single-consumer
+ * triple buffer, for whatever the three slots hold (SkeletonFrameBuffer,
+ * kinect.depth.DirectBufferTripleBuffer). The producer fills slot
+ * getBackIndex() in place and publishes it with one atomic swap; the
+ * consumer swaps the newest published slot in as getFrontIndex(). Neither
+ * side ever blocks, waits or allocates, and only the newest slot is kept: one
+ * that is published over before the consumer got to it is counted as
+ * overwritten (dropped).
+ */
+public class TripleBufferIndex {
+
+    /**
+     * Set on the shared index when it holds a slot the consumer hasn't seen.
+     */
+    private static final int FRESH_BIT = 4;
+    private static final int INDEX_MASK = 3;
+    /**
+     * Index of the slot sitting between producer and consumer, plus
+     * FRESH_BIT.
+     */
+    private final AtomicInteger shared = new AtomicInteger(1);
+    /**
+     * Owned by the producer thread.
+     */
+    private int backIndex = 0;
+    /**
+     * Owned by the consumer thread.
+     */
+    private int frontIndex = 2;
+    /**
+     * Written by the producer only.
+     */
+    private volatile long publishedCount = 0;
+    private volatile long overwrittenCount = 0;
+
+    /**
+     * Producer side.
+     *
+     * @return The slot (0 to 2) to fill in place before calling publish().
+     */
+    public int getBackIndex() {
+        return backIndex;
+    }
+
+    /**
+     * Producer side. Makes the back slot the newest one and hands the
+     * producer a fresh back slot. Never blocks.
+     */
+    public void publish() {
+        int previous = shared.getAndSet(backIndex | FRESH_BIT);
+        if ((previous & FRESH_BIT) != 0) {
+            overwrittenCount = overwrittenCount + 1; // Consumer never saw it
+        }
+        backIndex = previous & INDEX_MASK;
+        publishedCount = publishedCount + 1;
+    }
+
+    /**
+     * Consumer side. Wait-free.
+     *
+     * @return True if a newer slot than the current front slot was published
+     * and it is now the front slot.
+     */
+    public boolean update() {
+        if ((shared.get() & FRESH_BIT) == 0) {
+            return false;
+        }
+        int previous = shared.getAndSet(frontIndex);
+        frontIndex = previous & INDEX_MASK;
+        return true;
+    }
+
+    /**
+     * Consumer side.
+     *
+     * @return The slot (0 to 2) the consumer owns until its next update().
+     */
+    public int getFrontIndex() {
+        return frontIndex;
+    }
+
+    public long getPublishedCount() {
+        return publishedCount;
+    }
+
+    public long getOverwrittenCount() {
+        return overwrittenCount;
+    }
+}
@@ -0,0 +1,64 @@
+package kinect.pipeline;
+
+import com.jme3.math.Vector3f;
+import kinect.input.AimFusionFilter;
+import kinect.input.KinectAimMapping;
+import kinect.input.SkeletonFrame;
+
+/**
+ *
+ * Last stage, on the game loop, run on the render frame's pose: maps it to a
+ * camera look direction, through an AimFusionFilter (fused with the mouse)
+ * or straight with KinectAimMapping. Set the frame's time and the camera's
+ * current direction before each process(); read the result with
+ * getLookDirection(). Drops (does nothing for) untracked frames.
+ */
+public class AimMappingStage implements SkeletonStage {
+
+    private final AimFusionFilter fusion;
+    private final Vector3f cameraDirection = new Vector3f();
+    private final Vector3f lookDirection = new Vector3f();
+    private float tpf = 0;
+
+    /**
+     * @param fusion Null to map the skeleton straight to the camera.
+     */
+    public AimMappingStage(AimFusionFilter fusion) {
+        this.fusion = fusion;
+    }
+
+    public String getName() {
+        return "aim";
+    }
+
+    /**
+     * @param tpf The render frame's time. (Unit: seconds.)
+     * @param cameraDirection Copied.
+     */
+    public void setFrame(float tpf, Vector3f cameraDirection) {
+        this.tpf = tpf;
+        this.cameraDirection.set(cameraDirection);
+    }
+
+    public boolean process(SkeletonFrame frame) {
+        if (!frame.isTracked()) {
+            return false;
+        }
+        if (fusion != null) {
+            fusion.setKinectAim(frame);
+            fusion.update(tpf);
+            fusion.getDirection(lookDirection);
+        } else {
+            KinectAimMapping.computeLookDirection(frame, cameraDirection, lookDirection);
+        }
+        return true;
+    }
+
+    /**
+     * @return The direction from the last process() that kept its frame.
+     * Owned by the stage; don't modify.
+     */
+    public Vector3f getLookDirection() {
+        return lookDirection;
+    }
+}
@@ -0,0 +1,33 @@
+package kinect.pipeline;
+
+import kinect.input.SkeletonFilter;
+import kinect.input.SkeletonFrame;
+
+/**
+ *
+ * Runs a SkeletonFilter (smoothing, prediction, ...) as a stage. Never drops
+ * a reading.
+ */
+public class FilterStage implements SkeletonStage {
+
+    private final String name;
+    private final SkeletonFilter filter;
+
+    public FilterStage(String name, SkeletonFilter filter) {
+        this.name = name;
+        this.filter = filter;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public SkeletonFilter getFilter() {
+        return filter;
+    }
+
+    public boolean process(SkeletonFrame reading) {
+        filter.apply(reading);
+        return true;
+    }
+}
@@ -0,0 +1,31 @@
+package kinect.pipeline;
+
+import kinect.gesture.GestureRecognizer;
+import kinect.input.SkeletonFrame;
+
+/**
+ *
+ * Feeds readings to a GestureRecognizer, whose listener is called from this
+ * stage's thread. Never changes or drops a reading.
+ */
+public class GestureStage implements SkeletonStage {
+
+    private final GestureRecognizer gestures;
+
+    public GestureStage(GestureRecognizer gestures) {
+        this.gestures = gestures;
+    }
+
+    public String getName() {
+        return "gestures";
+    }
+
+    public GestureRecognizer getGestureRecognizer() {
+        return gestures;
+    }
+
+    public boolean process(SkeletonFrame reading) {
+        gestures.update(reading);
+        return true;
+    }
+}
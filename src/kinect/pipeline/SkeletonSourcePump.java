@@ -0,0 +1,88 @@
+package kinect.pipeline;
+
+import java.util.concurrent.locks.LockSupport;
+import kinect.input.KinectInputSource;
+import kinect.input.SkeletonFrame;
+import kinect.input.SkeletonFrameBuffer;
+
+/**
+ *
+ * Head of a push pipeline: takes readings from any KinectInputSource (as its
+ * only consumer, on a thread of its own) and publishes each new one into a
+ * SkeletonFrameBuffer, unparking the consumer (a SkeletonStageWorker), so
+ * sources that are read by polling getLatestFrame() can feed workers.
+ * Polls every POLL_INTERVAL_MICROS, which bounds the latency it adds.
+ * Starting and stopping the source is up to the caller.
+ *
+ * The pump must be the source's only reader: a stepped source (a
+ * ReplayInputSource replaying AS_FAST_AS_POSSIBLE) moves on to the next
+ * reading on every getLatestFrame() call, so any other call skips one.
+ */
+public class SkeletonSourcePump extends Thread {
+
+    /*--- SETTINGS ---*/
+    /**
+     * (Unit: microseconds.)
+     */
+    public static final long POLL_INTERVAL_MICROS = 1000;
+    /*--- END SETTINGS ---*/
+    private final KinectInputSource source;
+    private final SkeletonFrameBuffer output = new SkeletonFrameBuffer();
+    private volatile Thread consumer = null;
+    private volatile boolean running = true;
+    /**
+     * Written by the pump thread only, and may be read from any thread.
+     */
+    private volatile long readingsPumped = 0;
+
+    public SkeletonSourcePump(KinectInputSource source) {
+        super("SkeletonSourcePump");
+        this.source = source;
+        setDaemon(true); // Never keep the JVM alive just for skeleton input
+    }
+
+    public void setConsumer(Thread consumer) {
+        this.consumer = consumer;
+    }
+
+    public SkeletonFrameBuffer getOutput() {
+        return output;
+    }
+
+    @Override
+    public void run() {
+        long lastSequence = -1; // No reading has it: the first poll is pumped, whatever it is
+        while (running) {
+            SkeletonFrame latest = source.getLatestFrame();
+            if (latest.getSequence() != lastSequence) {
+                lastSequence = latest.getSequence();
+                output.getBackFrame().copyFrom(latest);
+                output.publish();
+                readingsPumped = readingsPumped + 1;
+                Thread wake = consumer;
+                if (wake != null) {
+                    LockSupport.unpark(wake);
+                }
+            }
+            LockSupport.parkNanos(this, POLL_INTERVAL_MICROS * 1000L);
+        }
+    }
+
+    /**
+     * Stops the pump. Safe to call from any thread.
+     */
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(this);
+    }
+
+    public long getReadingsPumped() {
+        return readingsPumped;
+    }
+
+    @Override
+    public String toString() {
+        return "SkeletonSourcePump[readingsPumped=" + readingsPumped
+                + ", framesOverwritten=" + output.getOverwrittenCount() + "]";
+    }
+}
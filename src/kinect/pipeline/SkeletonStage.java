@@ -0,0 +1,28 @@
+package kinect.pipeline;
+
+import kinect.input.SkeletonFrame;
+
+/**
+ *
+ * One step kinect readings go through on their way to the camera
+ * (validation, smoothing, gesture detection, prediction, aim mapping, ...).
+ * Stages are strung together in a SkeletonStageChain, which times each of
+ * them; a chain runs wherever it is called from, the game loop or a
+ * SkeletonStageWorker's thread.
+ */
+public interface SkeletonStage {
+
+    /**
+     * For metrics.
+     */
+    String getName();
+
+    /**
+     * Processes a reading in place. Called from one thread at a time, once
+     * per reading, in order. Must not allocate.
+     *
+     * @return False to drop the reading: later stages don't see it and it
+     * isn't passed on.
+     */
+    boolean process(SkeletonFrame reading);
+}
@@ -0,0 +1,206 @@
+package kinect.pipeline;
+
+import kinect.input.SkeletonFrame;
+import kinect.input.SkeletonFrameBuffer;
+
+/**
+ *
+ * SkeletonStages run one after the other on a reading, with metrics per
+ * stage (readings, drops, average and worst time, queue depth) and for the
+ * chain's input: the backlog, i.e. how many readings the source produced
+ * since the chain last ran (from the readings' sequence numbers). A backlog
+ * of 1 means the chain keeps up; more means newest-wins handoffs in front of
+ * it threw readings away because it (or its thread) was busy.
+ *
+ * A stage's queue depth is how many readings were published into the
+ * chain's input buffer (see setInput()) between the chain taking the
+ * reading and the stage starting on it: what piled up behind the reading
+ * while the stages before it ran. Handoffs are newest-wins, so all but the
+ * newest of those get overwritten; a stage whose depth is above 0 on average
+ * comes after stages too slow for the source's rate. Without an input
+ * buffer (a chain run on the game loop, straight from an input source) it
+ * isn't measured.
+ *
+ * Not thread-safe: process() must be called from one thread at a time.
+ * Metrics are written by that thread only; other threads (toString()) may
+ * see slightly old values. Nothing is allocated per reading.
+ */
+public class SkeletonStageChain {
+
+    private final String name;
+    private SkeletonStage[] stages = new SkeletonStage[0];
+    private long[] processed = new long[0], dropped = new long[0];
+    private long[] totalNanos = new long[0], maxNanos = new long[0];
+    private long[] totalQueued = new long[0], maxQueued = new long[0];
+    private SkeletonFrameBuffer input = null;
+    private long readings = 0;
+    private long lastSequence = -1;
+    private long totalBacklog = 0, maxBacklog = 0;
+
+    public SkeletonStageChain(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param input The buffer readings are taken from (e.g. by a
+     * SkeletonStageWorker), to measure the stages' queue depth; null for
+     * none.
+     */
+    public void setInput(SkeletonFrameBuffer input) {
+        this.input = input;
+    }
+
+    /**
+     * Replaces the stages (nulls are skipped) and resets the metrics. Call
+     * before readings start flowing.
+     */
+    public void setStages(SkeletonStage... newStages) {
+        int count = 0;
+        for (SkeletonStage stage : newStages) {
+            if (stage != null) {
+                count++;
+            }
+        }
+        SkeletonStage[] kept = new SkeletonStage[count];
+        count = 0;
+        for (SkeletonStage stage : newStages) {
+            if (stage != null) {
+                kept[count++] = stage;
+            }
+        }
+        processed = new long[kept.length];
+        dropped = new long[kept.length];
+        totalNanos = new long[kept.length];
+        maxNanos = new long[kept.length];
+        totalQueued = new long[kept.length];
+        maxQueued = new long[kept.length];
+        readings = totalBacklog = maxBacklog = 0;
+        lastSequence = -1;
+        stages = kept;
+    }
+
+    /**
+     * Runs the stages on reading, in place, until one drops it.
+     *
+     * @return False if a stage dropped the reading.
+     */
+    public boolean process(SkeletonFrame reading) {
+        readings++;
+        if (lastSequence >= 0 && reading.getSequence() > lastSequence) {
+            long backlog = reading.getSequence() - lastSequence;
+            totalBacklog += backlog;
+            if (backlog > maxBacklog) {
+                maxBacklog = backlog;
+            }
+        }
+        lastSequence = reading.getSequence();
+
+        long takenAt = (input != null) ? input.getPublishedCount() : 0;
+        for (int i = 0; i < stages.length; i++) {
+            if (input != null) {
+                long queued = input.getPublishedCount() - takenAt;
+                totalQueued[i] += queued;
+                if (queued > maxQueued[i]) {
+                    maxQueued[i] = queued;
+                }
+            }
+            long startNanos = System.nanoTime();
+            boolean kept = stages[i].process(reading);
+            long stageNanos = System.nanoTime() - startNanos;
+            processed[i]++;
+            totalNanos[i] += stageNanos;
+            if (stageNanos > maxNanos[i]) {
+                maxNanos[i] = stageNanos;
+            }
+            if (!kept) {
+                dropped[i]++;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getStageCount() {
+        return stages.length;
+    }
+
+    public SkeletonStage getStage(int index) {
+        return stages[index];
+    }
+
+    public long getProcessed(int index) {
+        return processed[index];
+    }
+
+    public long getDropped(int index) {
+        return dropped[index];
+    }
+
+    /**
+     * (Unit: nanoseconds.)
+     */
+    public long getAverageNanos(int index) {
+        return totalNanos[index] / Math.max(1, processed[index]);
+    }
+
+    /**
+     * (Unit: nanoseconds.)
+     */
+    public long getMaxNanos(int index) {
+        return maxNanos[index];
+    }
+
+    /**
+     * @return Readings published into the input while this reading waited
+     * for the stage, on average; 0 without an input buffer.
+     */
+    public double getAverageQueued(int index) {
+        return (double) totalQueued[index] / Math.max(1, processed[index]);
+    }
+
+    public long getMaxQueued(int index) {
+        return maxQueued[index];
+    }
+
+    public long getReadings() {
+        return readings;
+    }
+
+    /**
+     * @return Readings produced per reading processed, on average; 1 when
+     * nothing is lost in front of the chain.
+     */
+    public double getAverageBacklog() {
+        return (double) totalBacklog / Math.max(1, readings - 1);
+    }
+
+    public long getMaxBacklog() {
+        return maxBacklog;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("SkeletonStageChain[").append(name)
+                .append(", readings=").append(readings)
+                .append(", backlogAvg=").append(Math.round(getAverageBacklog() * 100) / 100.0)
+                .append(", backlogMax=").append(maxBacklog);
+        for (int i = 0; i < stages.length; i++) {
+            text.append(", ").append(stages[i].getName())
+                    .append("={avgMicros=").append(getAverageNanos(i) / 1000.0)
+                    .append(", maxMicros=").append(maxNanos[i] / 1000.0);
+            if (input != null) {
+                text.append(", queuedAvg=").append(Math.round(getAverageQueued(i) * 100) / 100.0)
+                        .append(", queuedMax=").append(maxQueued[i]);
+            }
+            if (dropped[i] > 0) {
+                text.append(", dropped=").append(dropped[i]);
+            }
+            text.append("}");
+        }
+        return text.append("]").toString();
+    }
+}
@@ -0,0 +1,137 @@
+package kinect.pipeline;
+
+import java.util.concurrent.locks.LockSupport;
+import kinect.input.SkeletonFrame;
+import kinect.input.SkeletonFrameBuffer;
+
+/**
+ *
+ * Runs a SkeletonStageChain on a thread of its own, between two
+ * SkeletonFrameBuffers: whoever publishes into the input buffer unparks the
+ * worker (see setConsumer() on SkeletonSourcePump, MultiSkeletonSampler or
+ * another worker), the worker copies the newest reading into its output's
+ * back frame, runs the chain on it in place and publishes it, unparking its
+ * own consumer. Buffers hold only the newest reading, so a slow stage never
+ * makes the ones in front of it wait or queue up: readings it couldn't get
+ * to are overwritten, and show up as the chain's backlog.
+ *
+ * Workers can be chained to split the stages over several threads; the last
+ * one is read by the game loop with getLatestFrame().
+ */
+public class SkeletonStageWorker extends Thread {
+
+    /*--- SETTINGS ---*/
+    /**
+     * Longest the worker sleeps without being woken up, in case a wake-up
+     * gets lost. (Unit: milliseconds.)
+     */
+    public static final long MAX_PARK_MILLIS = 50;
+    /*--- END SETTINGS ---*/
+    private final SkeletonStageChain chain;
+    private final SkeletonFrameBuffer input;
+    private final SkeletonFrameBuffer output = new SkeletonFrameBuffer();
+    private volatile Thread consumer = null;
+    private volatile boolean running = true;
+    /**
+     * Written by the worker thread only, and may be read from any thread.
+     */
+    private volatile long readingsProcessed = 0, readingsDropped = 0;
+    private volatile long totalProcessNanos = 0, maxProcessNanos = 0;
+
+    public SkeletonStageWorker(String name, SkeletonStageChain chain, SkeletonFrameBuffer input) {
+        super(name);
+        this.chain = chain;
+        this.input = input;
+        chain.setInput(input); // For the stages' queue depth
+        setDaemon(true); // Never keep the JVM alive just for skeleton processing
+    }
+
+    /**
+     * @param consumer Unparked whenever a processed reading is published;
+     * e.g. the next worker.
+     */
+    public void setConsumer(Thread consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * Processed readings go to this buffer's back; its front belongs to the
+     * one consumer (the next worker, or getLatestFrame()).
+     */
+    public SkeletonFrameBuffer getOutput() {
+        return output;
+    }
+
+    public SkeletonStageChain getChain() {
+        return chain;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            if (input.update()) {
+                long startNanos = System.nanoTime();
+                SkeletonFrame reading = output.getBackFrame();
+                reading.copyFrom(input.getFrontFrame());
+                if (chain.process(reading)) {
+                    output.publish();
+                    Thread wake = consumer;
+                    if (wake != null) {
+                        LockSupport.unpark(wake);
+                    }
+                } else {
+                    readingsDropped = readingsDropped + 1;
+                }
+                long processNanos = System.nanoTime() - startNanos;
+                readingsProcessed = readingsProcessed + 1;
+                totalProcessNanos = totalProcessNanos + processNanos;
+                if (processNanos > maxProcessNanos) {
+                    maxProcessNanos = processNanos;
+                }
+            } else {
+                LockSupport.parkNanos(this, MAX_PARK_MILLIS * 1000000L);
+            }
+        }
+    }
+
+    /**
+     * Stops the worker. Safe to call from any thread.
+     */
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(this);
+    }
+
+    /**
+     * Wait-free and allocation-free; for the one consumer of the output
+     * (usually the game loop).
+     *
+     * @return The newest processed reading.
+     */
+    public SkeletonFrame getLatestFrame() {
+        output.update();
+        return output.getFrontFrame();
+    }
+
+    public long getReadingsProcessed() {
+        return readingsProcessed;
+    }
+
+    public long getAverageProcessNanos() {
+        return (readingsProcessed > 0) ? totalProcessNanos / readingsProcessed : 0;
+    }
+
+    public long getMaxProcessNanos() {
+        return maxProcessNanos;
+    }
+
+    @Override
+    public String toString() {
+        return getName() + "[readingsProcessed=" + readingsProcessed
+                + ", readingsDropped=" + readingsDropped
+                + ", framesOverwritten=" + output.getOverwrittenCount()
+                + ", averageProcessMicros=" + (getAverageProcessNanos() / 1000.0)
+                + ", maxProcessMicros=" + (maxProcessNanos / 1000.0)
+                + ", " + chain + "]";
+    }
+}
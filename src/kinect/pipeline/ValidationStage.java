@@ -0,0 +1,89 @@
+package kinect.pipeline;
+
+import kinect.input.SkeletonFrame;
+
+/**
+ *
+ * First stage of a chain: drops readings that would only do harm further
+ * on.
+ * - Readings that don't come after the previous one (sequence not higher):
+ * replays of the same reading, or ones overtaken on the way.
+ * - Tracked readings where one of the checked joints isn't tracked at all
+ * (the Kinect then reports it at 0, 0, 0) or is out of the sensor's range.
+ * The aim would jump to wherever such a joint is. Untracked readings are
+ * passed on, since activation tracking needs them.
+ * A dropped reading leaves the previous one in effect.
+ */
+public class ValidationStage implements SkeletonStage {
+
+    /*--- SETTINGS ---*/
+    /**
+     * The joints aiming depends on.
+     */
+    public static final int[] DEFAULT_JOINTS = {SkeletonFrame.SPINE, SkeletonFrame.SHOULDER_CENTER,
+        SkeletonFrame.SHOULDER_LEFT, SkeletonFrame.SHOULDER_RIGHT, SkeletonFrame.WRIST_LEFT, SkeletonFrame.WRIST_RIGHT};
+    /**
+     * The Kinect's depth range, with some slack. (Unit: millimeters.)
+     */
+    public static final int MIN_Z = 400, MAX_Z = 4500;
+    /**
+     * Farthest a joint can be to the side of or above/below the sensor.
+     * (Unit: millimeters.)
+     */
+    public static final int MAX_XY = 3000;
+    /*--- END SETTINGS ---*/
+    /**
+     * A joint's tracking state when the Kinect has no idea where it is.
+     */
+    public static final int JOINT_NOT_TRACKED = 0;
+    private final int[] joints;
+    private long lastSequence = -1;
+    private long outOfOrder = 0, badJoints = 0;
+
+    public ValidationStage() {
+        this(DEFAULT_JOINTS);
+    }
+
+    public ValidationStage(int[] joints) {
+        this.joints = joints.clone();
+    }
+
+    public String getName() {
+        return "validation";
+    }
+
+    public boolean process(SkeletonFrame reading) {
+        if (reading.getSequence() <= lastSequence) {
+            outOfOrder++;
+            return false;
+        }
+        lastSequence = reading.getSequence();
+        if (!reading.isTracked()) {
+            return true;
+        }
+        for (int joint : joints) {
+            int z = reading.get(joint, SkeletonFrame.KJ_Z);
+            if (reading.get(joint, SkeletonFrame.KJ_STATE) == JOINT_NOT_TRACKED
+                    || z < MIN_Z || z > MAX_Z
+                    || Math.abs(reading.get(joint, SkeletonFrame.KJ_X)) > MAX_XY
+                    || Math.abs(reading.get(joint, SkeletonFrame.KJ_Y)) > MAX_XY) {
+                badJoints++;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getOutOfOrder() {
+        return outOfOrder;
+    }
+
+    public long getBadJoints() {
+        return badJoints;
+    }
+
+    @Override
+    public String toString() {
+        return "ValidationStage[outOfOrder=" + outOfOrder + ", badJoints=" + badJoints + "]";
+    }
+}
@@ -0,0 +1,173 @@
+package kinect.player;
+
+/**
+ *
+ * Decides whether a player is present from the tracked flag of their
+ * readings, with hysteresis, so a flickering skeleton doesn't switch the
+ * game between kinect and mouse controls every few frames:
+ *
+ * <pre>
+ * INACTIVE      tracked                                 -> ACTIVATING
+ * ACTIVATING    untracked                               -> INACTIVE
+ * ACTIVATING    activateReadings tracked in a row       -> ACTIVE (reports ACTIVATED)
+ * ACTIVE        untracked                               -> DEACTIVATING
+ * DEACTIVATING  tracked                                 -> ACTIVE
+ * DEACTIVATING  deactivateNanos since the untracked one -> INACTIVE (reports DEACTIVATED)
+ * </pre>
+ *
+ * Deactivation goes by time, not by readings: input sources publish one
+ * untracked reading when the skeleton is lost and then nothing new until
+ * it's back, so counting untracked readings would never get there. update()
+ * takes readings, updateTime() the passing time (every render frame).
+ *
+ * Only those two transitions are reported, once each; isActive() is
+ * true in ACTIVE and DEACTIVATING. With 1 reading and 0 ns it follows the
+ * readings exactly. Raw transitions (every flip of the tracked flag) are
+ * counted too, to see how much churn the hysteresis takes out.
+ */
+public class ActivationDebouncer {
+
+    /**
+     * States.
+     */
+    public static final int INACTIVE = 0,
+            ACTIVATING = 1,
+            ACTIVE = 2,
+            DEACTIVATING = 3;
+    /**
+     * update() results.
+     */
+    public static final int UNCHANGED = 0,
+            ACTIVATED = 1,
+            DEACTIVATED = 2;
+    private final int activateReadings;
+    private final long deactivateNanos;
+    private int state = INACTIVE;
+    /**
+     * Tracked readings in a row while ACTIVATING.
+     */
+    private int streak = 0;
+    /**
+     * When DEACTIVATING started.
+     */
+    private long untrackedSinceNanos = 0;
+    private boolean lastTracked = false;
+    private long readings = 0, rawTransitions = 0;
+    private long activations = 0, deactivations = 0;
+
+    /**
+     * @param activateReadings Tracked readings in a row it takes to become
+     * active (at least 1).
+     * @param deactivateNanos How long an active player's skeleton has to
+     * stay untracked to become inactive again (0: on the first untracked
+     * reading).
+     */
+    public ActivationDebouncer(int activateReadings, long deactivateNanos) {
+        if (activateReadings < 1) {
+            throw new IllegalArgumentException("Need at least one reading to activate");
+        }
+        if (deactivateNanos < 0) {
+            throw new IllegalArgumentException("Negative deactivation time");
+        }
+        this.activateReadings = activateReadings;
+        this.deactivateNanos = deactivateNanos;
+    }
+
+    /**
+     * Called once per reading. Allocation-free.
+     *
+     * @param nowNanos From System.nanoTime(), on the same clock as
+     * updateTime().
+     * @return ACTIVATED or DEACTIVATED if this reading completed a
+     * transition; otherwise UNCHANGED.
+     */
+    public int update(boolean tracked, long nowNanos) {
+        readings++;
+        if (tracked != lastTracked) {
+            lastTracked = tracked;
+            rawTransitions++;
+        }
+        if (tracked == isActive()) {
+            streak = 0;
+            state = tracked ? ACTIVE : INACTIVE;
+            return UNCHANGED;
+        }
+        if (tracked) {
+            streak++;
+            if (streak < activateReadings) {
+                state = ACTIVATING;
+                return UNCHANGED;
+            }
+            streak = 0;
+            state = ACTIVE;
+            activations++;
+            return ACTIVATED;
+        }
+        if (state == ACTIVE) {
+            state = DEACTIVATING;
+            untrackedSinceNanos = nowNanos;
+        }
+        return updateTime(nowNanos);
+    }
+
+    /**
+     * Called as time passes (every render frame), readings or not. Allocation-free.
+     *
+     * @return DEACTIVATED if the skeleton has now been untracked for
+     * deactivateNanos; otherwise UNCHANGED.
+     */
+    public int updateTime(long nowNanos) {
+        if (state != DEACTIVATING || nowNanos - untrackedSinceNanos < deactivateNanos) {
+            return UNCHANGED;
+        }
+        state = INACTIVE;
+        deactivations++;
+        return DEACTIVATED;
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    public boolean isActive() {
+        return state == ACTIVE || state == DEACTIVATING;
+    }
+
+    public int getActivateReadings() {
+        return activateReadings;
+    }
+
+    /**
+     * @return (Unit: nanoseconds.)
+     */
+    public long getDeactivateNanos() {
+        return deactivateNanos;
+    }
+
+    public long getReadings() {
+        return readings;
+    }
+
+    /**
+     * @return Flips of the readings' tracked flag, debounced or not.
+     */
+    public long getRawTransitions() {
+        return rawTransitions;
+    }
+
+    public long getActivations() {
+        return activations;
+    }
+
+    public long getDeactivations() {
+        return deactivations;
+    }
+
+    @Override
+    public String toString() {
+        return "ActivationDebouncer[" + activateReadings + " in/" + deactivateNanos / 1000000 + " ms out"
+                + ", readings=" + readings
+                + ", rawTransitions=" + rawTransitions
+                + ", transitions=" + (activations + deactivations) + "]";
+    }
+}
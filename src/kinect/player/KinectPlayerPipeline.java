@@ -0,0 +1,322 @@
+package kinect.player;
+
+import kinect.gesture.GestureListener;
+import kinect.gesture.GestureRecognizer;
+import kinect.gesture.GestureTemplate;
+import kinect.input.OneEuroSkeletonFilter;
+import kinect.input.PredictionSkeletonFilter;
+import kinect.input.SkeletonFrame;
+import kinect.input.SkeletonInterpolator;
+import kinect.pipeline.FilterStage;
+import kinect.pipeline.GestureStage;
+import kinect.pipeline.SkeletonStageChain;
+import kinect.pipeline.ValidationStage;
+
+/**
+ *
+ * Everything one tracked player's skeleton goes through, with its own state,
+ * so several players can be tracked side by side without sharing filter
+ * history, gesture windows or activation:
+ * - per reading: validation, smoothing, gesture recognition and prediction,
+ * as a SkeletonStageChain with per-stage metrics (getStages());
+ * - per render frame: interpolation to the render time and activation
+ * tracking (update()), debounced by an ActivationDebouncer so a flickering
+ * skeleton is reported as one activation and one deactivation.
+ * All stages are optional (null). By default both halves run on the game
+ * loop; with a KinectPlayerWorker, the per-reading chain runs on the worker's
+ * thread instead, and gestures matched there are handed to the game loop
+ * through a small lock-free queue, so the GestureListener is always called on
+ * the game loop. Nothing here allocates per reading or per frame.
+ */
+public class KinectPlayerPipeline {
+
+    /**
+     * Flags returned by update().
+     */
+    public static final int NEW_READING = 1,
+            ACTIVATED = 2,
+            DEACTIVATED = 4;
+    /*--- SETTINGS ---*/
+    /**
+     * Matched gestures that can wait for the game loop; more are dropped.
+     */
+    public static final int GESTURE_QUEUE_SIZE = 8;
+    /**
+     * Tracked readings in a row before a player becomes active: about 100 ms
+     * of Kinect readings.
+     */
+    public static final int DEFAULT_ACTIVATE_READINGS = 3;
+    /**
+     * How long a player's skeleton stays lost before they become inactive
+     * again. (Unit: milliseconds.)
+     */
+    public static final long DEFAULT_DEACTIVATE_MILLIS = 200;
+    /*--- END SETTINGS ---*/
+    private final int player;
+    private final SkeletonStageChain stages;
+    private ValidationStage validation = null;
+    private OneEuroSkeletonFilter smoothingFilter = null;
+    private GestureRecognizer gestures = null;
+    private PredictionSkeletonFilter predictionFilter = null;
+    private SkeletonInterpolator interpolator = null;
+    private GestureListener gestureListener = null;
+    /**
+     * True when a KinectPlayerWorker runs the stages.
+     */
+    private volatile boolean processedByWorker = false;
+    /**
+     * Game loop only.
+     */
+    private final SkeletonFrame incoming = new SkeletonFrame();
+    private final SkeletonFrame reading = new SkeletonFrame();
+    private final SkeletonFrame frame = new SkeletonFrame();
+    private long lastSequence = -1;
+    private ActivationDebouncer activation = new ActivationDebouncer(DEFAULT_ACTIVATE_READINGS, DEFAULT_DEACTIVATE_MILLIS * 1000000L);
+    /**
+     * Single-producer (whoever runs the stages) single-consumer (game
+     * loop) queue of matched gestures.
+     */
+    private final GestureTemplate[] queuedGestures = new GestureTemplate[GESTURE_QUEUE_SIZE];
+    private final float[] queuedDistances = new float[GESTURE_QUEUE_SIZE];
+    private volatile long gesturesQueued = 0;
+    private volatile long gesturesDelivered = 0;
+    private volatile long gesturesDropped = 0;
+
+    /**
+     * @param player 0 for the first player, 1 for the second, ...
+     */
+    public KinectPlayerPipeline(int player) {
+        this.player = player;
+        stages = new SkeletonStageChain("player " + (player + 1));
+    }
+
+    public int getPlayer() {
+        return player;
+    }
+
+    /**
+     * Drops readings with joints the Kinect lost (see ValidationStage); null
+     * (the default) passes everything on.
+     */
+    public void setValidationStage(ValidationStage validation) {
+        this.validation = validation;
+        rebuildStages();
+    }
+
+    public ValidationStage getValidationStage() {
+        return validation;
+    }
+
+    public void setSmoothingFilter(OneEuroSkeletonFilter smoothingFilter) {
+        this.smoothingFilter = smoothingFilter;
+        rebuildStages();
+    }
+
+    public OneEuroSkeletonFilter getSmoothingFilter() {
+        return smoothingFilter;
+    }
+
+    /**
+     * Takes over the recognizer's listener; see setGestureListener().
+     */
+    public void setGestureRecognizer(GestureRecognizer gestures) {
+        this.gestures = gestures;
+        if (gestures != null) {
+            gestures.setListener(new GestureListener() {
+                public void onGesture(GestureTemplate gesture, float averageDistance) {
+                    queueGesture(gesture, averageDistance);
+                }
+            });
+        }
+        rebuildStages();
+    }
+
+    public GestureRecognizer getGestureRecognizer() {
+        return gestures;
+    }
+
+    public void setPredictionFilter(PredictionSkeletonFilter predictionFilter) {
+        this.predictionFilter = predictionFilter;
+        rebuildStages();
+    }
+
+    public PredictionSkeletonFilter getPredictionFilter() {
+        return predictionFilter;
+    }
+
+    public void setInterpolator(SkeletonInterpolator interpolator) {
+        this.interpolator = interpolator;
+    }
+
+    public SkeletonInterpolator getInterpolator() {
+        return interpolator;
+    }
+
+    /**
+     * Replaces the activation hysteresis (see ActivationDebouncer); 1, 0
+     * follows the readings' tracked flag exactly. Call before the first
+     * update().
+     */
+    public void setActivationHysteresis(int activateReadings, long deactivateMillis) {
+        activation = new ActivationDebouncer(activateReadings, deactivateMillis * 1000000L);
+    }
+
+    public ActivationDebouncer getActivation() {
+        return activation;
+    }
+
+    /**
+     * Called on the game loop, from update(), for this player's gestures.
+     */
+    public void setGestureListener(GestureListener gestureListener) {
+        this.gestureListener = gestureListener;
+    }
+
+    void setProcessedByWorker(boolean processedByWorker) {
+        this.processedByWorker = processedByWorker;
+    }
+
+    /**
+     * The per-reading stages, in order: validation, smoothing, gestures,
+     * prediction (those that are set). Set up the stages before readings
+     * start flowing; a worker keeps this chain.
+     */
+    public SkeletonStageChain getStages() {
+        return stages;
+    }
+
+    private void rebuildStages() {
+        stages.setStages(validation,
+                (smoothingFilter != null) ? new FilterStage("smoothing", smoothingFilter) : null,
+                (gestures != null) ? new GestureStage(gestures) : null,
+                (predictionFilter != null) ? new FilterStage("prediction", predictionFilter) : null);
+    }
+
+    /**
+     * Runs the per-reading stages on reading, in place. Called from one
+     * thread only: the game loop (from update()), or the player's
+     * KinectPlayerWorker.
+     *
+     * @return False if a stage (validation) dropped the reading.
+     */
+    public boolean processReading(SkeletonFrame reading) {
+        return stages.process(reading);
+    }
+
+    private void queueGesture(GestureTemplate gesture, float averageDistance) {
+        long queued = gesturesQueued;
+        if (queued - gesturesDelivered >= GESTURE_QUEUE_SIZE) {
+            gesturesDropped = gesturesDropped + 1; // Game loop is that far behind
+            return;
+        }
+        int slot = (int) (queued % GESTURE_QUEUE_SIZE);
+        queuedGestures[slot] = gesture;
+        queuedDistances[slot] = averageDistance;
+        gesturesQueued = queued + 1; // Publishes the slot
+    }
+
+    /**
+     * Game loop, once per render frame. Feeds a new reading through the
+     * stages (unless a worker already did), updates the render frame pose,
+     * calls the gesture listener for gestures matched since the last call,
+     * and tracks whether the player is active (has had a tracked skeleton
+     * long enough; see ActivationDebouncer).
+     *
+     * @param latest The newest reading for this player (raw, or already
+     * processed if a worker does that).
+     * @param renderNanos The render frame's time, from System.nanoTime().
+     * @return NEW_READING, ACTIVATED and DEACTIVATED, or-ed together as they
+     * happened. NEW_READING is set for every new reading, including one the
+     * stages dropped (which changes nothing else).
+     */
+    public int update(SkeletonFrame latest, long renderNanos) {
+        int flags = 0;
+        if (latest.getSequence() != lastSequence) {
+            lastSequence = latest.getSequence();
+            flags |= NEW_READING;
+            incoming.copyFrom(latest);
+            if (processedByWorker || processReading(incoming)) {
+                reading.copyFrom(incoming);
+                int transition = activation.update(reading.isTracked(), renderNanos);
+                if (transition == ActivationDebouncer.ACTIVATED) {
+                    flags |= ACTIVATED;
+                } else if (transition == ActivationDebouncer.DEACTIVATED) {
+                    flags |= DEACTIVATED;
+                }
+                if (interpolator != null) {
+                    interpolator.push(reading);
+                } else {
+                    frame.copyFrom(reading);
+                }
+            }
+        }
+        if (activation.updateTime(renderNanos) == ActivationDebouncer.DEACTIVATED) {
+            flags |= DEACTIVATED; // Lost for long enough, with or without new readings
+        }
+        if (interpolator != null) {
+            // Pose for this render frame, blended between the last two readings
+            interpolator.sample(renderNanos, frame);
+        }
+
+        for (long delivered = gesturesDelivered; delivered < gesturesQueued; delivered++) {
+            int slot = (int) (delivered % GESTURE_QUEUE_SIZE);
+            GestureTemplate gesture = queuedGestures[slot];
+            float averageDistance = queuedDistances[slot];
+            gesturesDelivered = delivered + 1; // Frees the slot
+            if (gestureListener != null) {
+                gestureListener.onGesture(gesture, averageDistance);
+            }
+        }
+        return flags;
+    }
+
+    /**
+     * @return The newest reading that made it through the per-reading stages.
+     * Game loop only.
+     */
+    public SkeletonFrame getReading() {
+        return reading;
+    }
+
+    /**
+     * @return The pose for the current render frame. Game loop only.
+     */
+    public SkeletonFrame getFrame() {
+        return frame;
+    }
+
+    /**
+     * @return True from the update() that reported ACTIVATED until the one
+     * that reports DEACTIVATED; the frame may be untracked for up to the
+     * deactivation time in between.
+     */
+    public boolean isActive() {
+        return activation.isActive();
+    }
+
+    public long getActivations() {
+        return activation.getActivations();
+    }
+
+    public long getDeactivations() {
+        return activation.getDeactivations();
+    }
+
+    public long getGesturesDropped() {
+        return gesturesDropped;
+    }
+
+    @Override
+    public String toString() {
+        return "KinectPlayerPipeline[player=" + (player + 1)
+                + ", activations=" + activation.getActivations()
+                + ", deactivations=" + activation.getDeactivations()
+                + ", rawTransitions=" + activation.getRawTransitions()
+                + ", gesturesDelivered=" + gesturesDelivered
+                + ", gesturesDropped=" + gesturesDropped
+                + (processedByWorker ? ", on worker" : "")
+                + (processedByWorker ? "" : ", " + stages)
+                + ((interpolator != null) ? ", " + interpolator : "")
+                + ((gestures != null) ? ", " + gestures : "") + "]";
+    }
+}
@@ -0,0 +1,44 @@
+package kinect.player;
+
+import kinect.input.MultiSkeletonSampler;
+import kinect.pipeline.SkeletonSourcePump;
+import kinect.pipeline.SkeletonStageWorker;
+
+/**
+ *
+ * Runs one player's per-reading stages (KinectPlayerPipeline.getStages()) on
+ * a thread of its own, so players are processed in parallel and the game
+ * loop only does the cheap per-frame half. The MultiSkeletonSampler (or, for
+ * one player, a SkeletonSourcePump) wakes the worker up whenever it
+ * publishes a reading for the player; the processed reading goes to the game
+ * loop through another SkeletonFrameBuffer, read with getLatestFrame() and
+ * passed on to KinectPlayerPipeline.update().
+ */
+public class KinectPlayerWorker extends SkeletonStageWorker {
+
+    private final KinectPlayerPipeline pipeline;
+
+    /**
+     * Registers with the sampler, so create workers before starting it.
+     */
+    public KinectPlayerWorker(KinectPlayerPipeline pipeline, MultiSkeletonSampler sampler) {
+        super("KinectPlayerWorker-" + (pipeline.getPlayer() + 1), pipeline.getStages(), sampler.getFrameBuffer(pipeline.getPlayer()));
+        this.pipeline = pipeline;
+        pipeline.setProcessedByWorker(true);
+        sampler.setConsumer(pipeline.getPlayer(), this);
+    }
+
+    /**
+     * Registers with the pump, so create the worker before starting it.
+     */
+    public KinectPlayerWorker(KinectPlayerPipeline pipeline, SkeletonSourcePump pump) {
+        super("KinectPlayerWorker-" + (pipeline.getPlayer() + 1), pipeline.getStages(), pump.getOutput());
+        this.pipeline = pipeline;
+        pipeline.setProcessedByWorker(true);
+        pump.setConsumer(this);
+    }
+
+    public KinectPlayerPipeline getPipeline() {
+        return pipeline;
+    }
+}
@@ -0,0 +1,193 @@
+package kinect.recording;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * Command-line converter from PoorMoCap's .poormocap recordings (a
+ * Java-serialized java.util.LinkedList of int[joint][axis] frames) to the
+ * indexed binary recording format (.skrec). Every converted file is mapped
+ * back in and compared value by value against the original list, so a
+ * conversion only counts as done if it is lossless.
+ *
+ * PoorMoCap doesn't store timestamps; it samples every
+ * POORMOCAP_FRAME_INTERVAL_MILLIS, so frame timestamps are derived from that.
+ *
+ * Usage: java kinect.recording.PoorMocapConverter [-o outputDir] (file.poormocap | directory)...
+ * Output files go next to their inputs unless -o is given.
+ * There's no need to run it first: ReplayInputSource.openRecording()
+ * converts a .poormocap on demand (again whenever it's newer than its .skrec),
+ * which is why the .skrec files of the bundled recordings aren't checked in.
+ */
+public class PoorMocapConverter {
+
+    public static final String POORMOCAP_FILE_EXTENSION = ".poormocap";
+    /**
+     * How often PoorMoCap's Mocap thread samples the Kinect. (Unit:
+     * milliseconds.)
+     */
+    public static final long POORMOCAP_FRAME_INTERVAL_MILLIS = 50;
+
+    public static void main(String[] args) {
+        File outputDir = null;
+        List<File> inputs = new ArrayList<File>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-o") && i + 1 < args.length) {
+                outputDir = new File(args[++i]);
+            } else {
+                collectInputs(new File(args[i]), inputs);
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.err.println("Usage: java " + PoorMocapConverter.class.getName() + " [-o outputDir] (file" + POORMOCAP_FILE_EXTENSION + " | directory)...");
+            System.exit(2);
+        }
+        if (outputDir != null) {
+            outputDir.mkdirs();
+        }
+
+        int failures = 0;
+        for (File input : inputs) {
+            File output = new File(outputDir != null ? outputDir : input.getAbsoluteFile().getParentFile(), toOutputName(input));
+            try {
+                int frameCount = convert(input, output);
+                System.out.println("Converted " + input.getName() + " -> " + output.getName() + " (" + frameCount + " frames, " + input.length() + " -> " + output.length() + " bytes, verified)");
+            } catch (Exception e) {
+                failures++;
+                System.err.println("FAILED " + input + ": " + e.getMessage());
+            }
+        }
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void collectInputs(File path, List<File> inputs) {
+        if (path.isDirectory()) {
+            File[] files = path.listFiles(new FileFilter() {
+                public boolean accept(File file) {
+                    return file.isFile() && file.getName().endsWith(POORMOCAP_FILE_EXTENSION);
+                }
+            });
+            if (files != null) {
+                for (File file : files) {
+                    inputs.add(file);
+                }
+            }
+        } else {
+            inputs.add(path);
+        }
+    }
+
+    public static String toOutputName(File input) {
+        String name = input.getName();
+        if (name.endsWith(POORMOCAP_FILE_EXTENSION)) {
+            name = name.substring(0, name.length() - POORMOCAP_FILE_EXTENSION.length());
+        }
+        return name + SkeletonRecordingFormat.FILE_EXTENSION;
+    }
+
+    /**
+     * Reads a whole PoorMoCap recording. Null frames (no skeleton tracked) are
+     * kept as null.
+     */
+    @SuppressWarnings("unchecked")
+    public static List<int[][]> readPoorMocapFrames(File input) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(input)));
+        try {
+            Object recording = in.readObject();
+            if (!(recording instanceof List)) {
+                throw new IOException("Expected a serialized list of frames, got " + recording.getClass().getName() + ".");
+            }
+            return (List<int[][]>) recording;
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Not a PoorMoCap recording: " + e.getMessage());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Converts one recording and verifies the result.
+     *
+     * @return The number of frames converted.
+     * @throws IOException On read/write problems, if frames don't share one
+     * shape, or if the written recording doesn't match the original.
+     */
+    public static int convert(File input, File output) throws IOException {
+        List<int[][]> frames = readPoorMocapFrames(input);
+
+        // All frames of a PoorMoCap recording have the same [joint][axis] shape
+        int jointCount = -1, jointStride = -1;
+        for (int[][] joints : frames) {
+            if (joints != null) {
+                jointCount = joints.length;
+                jointStride = joints[0].length;
+                break;
+            }
+        }
+        if (jointCount < 0) {
+            throw new IOException("No tracked frames to take the joint layout from.");
+        }
+
+        SkeletonRecordingWriter writer = new SkeletonRecordingWriter(output, jointCount, jointStride);
+        try {
+            int[] values = new int[jointCount * jointStride];
+            long frameIntervalNanos = POORMOCAP_FRAME_INTERVAL_MILLIS * 1000000L;
+            int frameIndex = 0;
+            for (int[][] joints : frames) {
+                if (joints != null) {
+                    if (joints.length != jointCount) {
+                        throw new IOException("Frame " + frameIndex + " has " + joints.length + " joints instead of " + jointCount + ".");
+                    }
+                    for (int joint = 0; joint < jointCount; joint++) {
+                        if (joints[joint].length != jointStride) {
+                            throw new IOException("Frame " + frameIndex + ", joint " + joint + " has " + joints[joint].length + " values instead of " + jointStride + ".");
+                        }
+                        System.arraycopy(joints[joint], 0, values, joint * jointStride, jointStride);
+                    }
+                }
+                writer.writeFrame(frameIndex * frameIntervalNanos, joints != null, values);
+                frameIndex++;
+            }
+        } finally {
+            writer.close();
+        }
+
+        verify(frames, new SkeletonRecording(output));
+        return frames.size();
+    }
+
+    /**
+     * @throws IOException If the recording doesn't hold exactly the given
+     * frames.
+     */
+    public static void verify(List<int[][]> frames, SkeletonRecording recording) throws IOException {
+        if (recording.getFrameCount() != frames.size()) {
+            throw new IOException("Round-trip mismatch: " + recording.getFrameCount() + " frames written, " + frames.size() + " expected.");
+        }
+        int frameIndex = 0;
+        for (int[][] joints : frames) {
+            if (recording.isTracked(frameIndex) != (joints != null)) {
+                throw new IOException("Round-trip mismatch: tracking flag of frame " + frameIndex + ".");
+            }
+            if (joints != null) {
+                for (int joint = 0; joint < joints.length; joint++) {
+                    for (int axis = 0; axis < joints[joint].length; axis++) {
+                        if (recording.getValue(frameIndex, joint, axis) != joints[joint][axis]) {
+                            throw new IOException("Round-trip mismatch: frame " + frameIndex + ", joint " + joint + ", axis " + axis + ".");
+                        }
+                    }
+                }
+            }
+            frameIndex++;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package kinect.recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import kinect.input.SkeletonFrame;
+
+/**
+ *
+ * Reads any kind of recording front to back, one frame at a time, into a
+ * caller-supplied SkeletonFrame. Frames get their recorded (relative)
+ * timestamps and their index as sequence.
+ *
+ * .skrec and .sksession files are memory-mapped and decoded as they're read;
+ * PoorMoCap's .poormocap files are serialized Java lists, so those are read
+ * whole when opened.
+ */
+public abstract class RecordingFrameReader {
+
+    /**
+     * @return False at the end of the recording (the frame is left untouched).
+     */
+    public abstract boolean next(SkeletonFrame into) throws IOException;
+
+    public abstract File getFile();
+
+    /**
+     * @return True if open() can read the file.
+     */
+    public static boolean isRecording(File file) {
+        String name = file.getName();
+        return name.endsWith(SkeletonRecordingFormat.FILE_EXTENSION)
+                || name.endsWith(SessionRecordingFormat.FILE_EXTENSION)
+                || name.endsWith(PoorMocapConverter.POORMOCAP_FILE_EXTENSION);
+    }
+
+    /**
+     * Opens a reader for the file's format (by extension). Unlike
+     * ReplayInputSource.openRecording(), nothing is converted or written.
+     */
+    public static RecordingFrameReader open(File file) throws IOException {
+        String name = file.getName();
+        if (name.endsWith(SessionRecordingFormat.FILE_EXTENSION)) {
+            return new SessionRecordingReader(file);
+        } else if (name.endsWith(PoorMocapConverter.POORMOCAP_FILE_EXTENSION)) {
+            return new PoorMocapReader(file, PoorMocapConverter.readPoorMocapFrames(file));
+        }
+        return new IndexedRecordingReader(new SkeletonRecording(file));
+    }
+
+    private static class IndexedRecordingReader extends RecordingFrameReader {
+
+        private final SkeletonRecording recording;
+        private int nextFrame = 0;
+
+        IndexedRecordingReader(SkeletonRecording recording) {
+            this.recording = recording;
+        }
+
+        public boolean next(SkeletonFrame into) {
+            if (nextFrame >= recording.getFrameCount()) {
+                return false;
+            }
+            recording.readFrame(nextFrame++, into);
+            return true;
+        }
+
+        public File getFile() {
+            return recording.getFile();
+        }
+    }
+
+    private static class PoorMocapReader extends RecordingFrameReader {
+
+        private final File file;
+        /**
+         * PoorMoCap saves a LinkedList, so no indexed access.
+         */
+        private final Iterator<int[][]> frames;
+        private int nextFrame = 0;
+
+        PoorMocapReader(File file, List<int[][]> frames) {
+            this.file = file;
+            this.frames = frames.iterator();
+        }
+
+        public boolean next(SkeletonFrame into) {
+            if (!frames.hasNext()) {
+                return false;
+            }
+            into.setFrom(frames.next(), nextFrame * PoorMocapConverter.POORMOCAP_FRAME_INTERVAL_MILLIS * 1000000L, nextFrame);
+            nextFrame++;
+            return true;
+        }
+
+        public File getFile() {
+            return file;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package kinect.recording;
+
+import java.io.File;
+import java.io.IOException;
+import kinect.input.KinectInputSource;
+import kinect.input.SkeletonFrame;
+import kinect.input.SkeletonFrameBuffer;
+
+/**
+ *
+ * Input source that replays a recorded session instead of reading the Kinect,
+ * so the Kinect controls path can be run and benchmarked without the device.
+ * Frames are streamed lazily from the memory-mapped recording.
+ *
+ * Timing: with a speed factor above 0, a replay thread publishes each frame
+ * at its recorded time divided by the speed factor (1 = original timing, 2 =
+ * twice as fast, ...), exactly like the live sampler would. With a speed
+ * factor of AS_FAST_AS_POSSIBLE, there's no thread at all: every
+ * getLatestFrame() call steps to the next recorded frame, which makes runs
+ * deterministic.
+ * Published frames are stamped with System.nanoTime() at publish time, like
+ * live frames.
+ */
+public class ReplayInputSource implements KinectInputSource {
+
+    public static final float AS_FAST_AS_POSSIBLE = 0;
+    private final SkeletonRecording recording;
+    private final float speed;
+    private final boolean loop;
+    private final SkeletonFrameBuffer frameBuffer = new SkeletonFrameBuffer();
+    /**
+     * Only used when replaying as fast as possible.
+     */
+    private final SkeletonFrame steppedFrame = new SkeletonFrame();
+    private int steppedFrameIndex = 0;
+    private long sequence = 0;
+    private volatile boolean running = false;
+    private volatile boolean finished = false;
+    private Thread replayThread = null;
+
+    /**
+     * @param speed Replay speed factor, or AS_FAST_AS_POSSIBLE.
+     * @param loop When true, start over after the last frame; otherwise the
+     * skeleton is reported as lost after the last frame.
+     */
+    public ReplayInputSource(SkeletonRecording recording, float speed, boolean loop) {
+        this.recording = recording;
+        this.speed = speed;
+        this.loop = loop;
+    }
+
+    /**
+     * Opens a recording for replay. PoorMoCap's .poormocap files and session
+     * recordings (.sksession) are converted first (once, next to the
+     * original) if they have no .skrec counterpart yet.
+     */
+    public static SkeletonRecording openRecording(File file) throws IOException {
+        if (file.getName().endsWith(PoorMocapConverter.POORMOCAP_FILE_EXTENSION)) {
+            File converted = new File(file.getAbsoluteFile().getParentFile(), PoorMocapConverter.toOutputName(file));
+            if (!converted.isFile() || converted.lastModified() < file.lastModified()) {
+                PoorMocapConverter.convert(file, converted);
+            }
+            file = converted;
+        } else if (file.getName().endsWith(SessionRecordingFormat.FILE_EXTENSION)) {
+            File converted = new File(file.getAbsoluteFile().getParentFile(), SessionRecordingReader.toOutputName(file));
+            if (!converted.isFile() || converted.lastModified() < file.lastModified()) {
+                SessionRecordingReader.convert(file, converted);
+            }
+            file = converted;
+        }
+        return new SkeletonRecording(file);
+    }
+
+    public void start() {
+        running = true;
+        if (speed <= AS_FAST_AS_POSSIBLE) {
+            return; // Frames get stepped by getLatestFrame()
+        }
+
+        replayThread = new Thread("KinectReplay") {
+            @Override
+            public void run() {
+                replayTimed();
+            }
+        };
+        replayThread.setDaemon(true);
+        replayThread.start();
+    }
+
+    private void replayTimed() {
+        int frameCount = recording.getFrameCount();
+        do {
+            long replayStartNanos = System.nanoTime();
+            for (int i = 0; i < frameCount && running; i++) {
+                long dueNanos = replayStartNanos + (long) (recording.getTimestampNanos(i) / speed);
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    try {
+                        Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+                    } catch (InterruptedException e) {
+                        running = false; // Only happens on stop()
+                        return;
+                    }
+                }
+                SkeletonFrame back = frameBuffer.getBackFrame();
+                recording.readFrame(i, back);
+                back.setTimestampNanos(System.nanoTime());
+                back.setSequence(++sequence);
+                frameBuffer.publish();
+            }
+        } while (loop && running && frameCount > 0);
+
+        publishSkeletonLost();
+        finished = true;
+    }
+
+    private void publishSkeletonLost() {
+        SkeletonFrame back = frameBuffer.getBackFrame();
+        back.setTracked(false);
+        back.setTimestampNanos(System.nanoTime());
+        back.setSequence(++sequence);
+        frameBuffer.publish();
+    }
+
+    public SkeletonFrame getLatestFrame() {
+        if (speed > AS_FAST_AS_POSSIBLE) {
+            frameBuffer.update();
+            return frameBuffer.getFrontFrame();
+        }
+
+        // As fast as possible: one recorded frame per call
+        if (steppedFrameIndex >= recording.getFrameCount()) {
+            if (loop && recording.getFrameCount() > 0) {
+                steppedFrameIndex = 0;
+            } else {
+                if (!finished) {
+                    // A new reading, once, as the timed replay publishes it
+                    steppedFrame.setTracked(false);
+                    steppedFrame.setTimestampNanos(System.nanoTime());
+                    steppedFrame.setSequence(++sequence);
+                    finished = true;
+                }
+                return steppedFrame;
+            }
+        }
+        recording.readFrame(steppedFrameIndex++, steppedFrame);
+        steppedFrame.setTimestampNanos(System.nanoTime());
+        steppedFrame.setSequence(++sequence);
+        return steppedFrame;
+    }
+
+    public void stop() {
+        running = false;
+        if (replayThread != null) {
+            replayThread.interrupt();
+        }
+    }
+
+    /**
+     * @return True once a non-looping replay has gone past its last frame.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public SkeletonRecording getRecording() {
+        return recording;
+    }
+
+    @Override
+    public String toString() {
+        return "ReplayInputSource[" + recording.getFile().getName()
+                + ", speed=" + (speed > AS_FAST_AS_POSSIBLE ? String.valueOf(speed) : "as fast as possible")
+                + ", loop=" + loop
+                + ", framesPublished=" + sequence
+                + ", framesOverwritten=" + frameBuffer.getOverwrittenCount() + "]";
+    }
+}
@@ -0,0 +1,317 @@
+package kinect.recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+import kinect.input.SkeletonFrame;
+
+/**
+ *
+ * Records whole play sessions of skeleton frames into the compressed session
+ * format (see SessionRecordingFormat) without ever touching the disk from the
+ * render thread.
+ *
+ * record() delta/varint-encodes a frame into the current block, a
+ * preallocated direct ByteBuffer. Full blocks are handed to a background
+ * writer thread and a free block is taken back, through two single-producer
+ * single-consumer rings (BlockRing) that take no locks and allocate nothing;
+ * the writer parks when it has nothing to write. If the writer falls so far
+ * behind that no free block is left, frames are dropped (and counted) rather
+ * than stalling the caller.
+ */
+public class SessionRecorder {
+
+    /*--- SETTINGS ---*/
+    public static final int DEFAULT_BLOCK_SIZE_BYTES = 64 * 1024;
+    public static final int DEFAULT_BLOCK_COUNT = 8;
+    /**
+     * How long the writer sleeps at most when there's nothing to write, in
+     * case a wake-up is missed. (Unit: nanoseconds.)
+     */
+    private static final long WRITER_IDLE_NANOS = 10000000L;
+    /*--- END SETTINGS ---*/
+    private final File file;
+    private final int jointCount = SkeletonFrame.JOINT_COUNT, jointStride = SkeletonFrame.JOINT_STRIDE;
+    private final int maxFrameSize = SessionRecordingFormat.getMaxFrameSize(jointCount, jointStride);
+    /**
+     * Free blocks go writer to recording thread, full ones the other way.
+     */
+    private final BlockRing freeBlocks, fullBlocks;
+    /**
+     * Marks the end of the session on the full blocks queue.
+     */
+    private final ByteBuffer endOfSession = ByteBuffer.allocate(0);
+    private final RandomAccessFile output;
+    private final FileChannel channel;
+    private final Thread writerThread;
+    /**
+     * Recording-thread state: the block being filled, and the previous frame
+     * within it that deltas are taken from.
+     */
+    private ByteBuffer currentBlock;
+    private int currentBlockFrameCount = 0;
+    private final int[] previousValues = new int[SkeletonFrame.VALUE_COUNT];
+    private long previousTimestampMicros = 0;
+    private boolean closed = false;
+    /**
+     * Counters; written by the recording thread (or the writer thread for
+     * bytesWritten) and readable from anywhere.
+     */
+    private volatile long framesRecorded = 0, framesDropped = 0, bytesEncoded = 0;
+    private volatile long bytesWritten = 0;
+    private volatile int maxWriterBacklog = 0;
+    private volatile IOException writeError = null;
+
+    public SessionRecorder(File file) throws IOException {
+        this(file, DEFAULT_BLOCK_SIZE_BYTES, DEFAULT_BLOCK_COUNT);
+    }
+
+    public SessionRecorder(File file, int blockSizeBytes, int blockCount) throws IOException {
+        this.file = file;
+        freeBlocks = new BlockRing(blockCount);
+        fullBlocks = new BlockRing(blockCount + 1); // + endOfSession
+        for (int i = 0; i < blockCount; i++) {
+            freeBlocks.offer(ByteBuffer.allocateDirect(blockSizeBytes).order(ByteOrder.LITTLE_ENDIAN));
+        }
+        currentBlock = freeBlocks.poll();
+        startBlock();
+
+        output = new RandomAccessFile(file, "rw");
+        output.setLength(0);
+        channel = output.getChannel();
+        ByteBuffer header = ByteBuffer.allocate(SessionRecordingFormat.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(SessionRecordingFormat.MAGIC).putInt(SessionRecordingFormat.VERSION).putInt(jointCount).putInt(jointStride);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+
+        writerThread = new Thread("KinectSessionWriter") {
+            @Override
+            public void run() {
+                writeBlocks();
+            }
+        };
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    private void startBlock() {
+        currentBlock.clear();
+        currentBlock.position(SessionRecordingFormat.BLOCK_HEADER_SIZE); // Filled in when the block is handed off
+        currentBlockFrameCount = 0;
+        previousTimestampMicros = 0;
+        for (int i = 0; i < previousValues.length; i++) {
+            previousValues[i] = 0;
+        }
+    }
+
+    /**
+     * Appends a frame. Takes no locks and never waits for the writer, and
+     * allocates nothing once compiled (the first calls may, while the JIT
+     * swaps code in); meant to be called from the render thread. It can
+     * still be descheduled like any code: on a single core, for the writer's
+     * time slice.
+     *
+     * @return False if the frame had to be dropped because the writer is too
+     * far behind (or the recorder is closed).
+     */
+    public boolean record(SkeletonFrame frame) {
+        if (closed) {
+            return false;
+        }
+        if (currentBlock == null) { // Still waiting for the writer to hand a block back
+            currentBlock = freeBlocks.poll();
+            if (currentBlock == null) {
+                framesDropped = framesDropped + 1;
+                return false;
+            }
+            startBlock();
+        }
+        if (currentBlock.remaining() < maxFrameSize) {
+            handOffCurrentBlock();
+            return record(frame);
+        }
+
+        int startPosition = currentBlock.position();
+        long timestampMicros = frame.getTimestampNanos() / 1000;
+        SessionRecordingFormat.putVarint(currentBlock, SessionRecordingFormat.zigZagEncode(timestampMicros - previousTimestampMicros));
+        previousTimestampMicros = timestampMicros;
+        currentBlock.put((byte) (frame.isTracked() ? SkeletonRecordingFormat.FLAG_TRACKED : 0));
+        int[] values = frame.getValues();
+        for (int i = 0; i < values.length; i++) {
+            SessionRecordingFormat.putVarint(currentBlock, SessionRecordingFormat.zigZagEncode(values[i] - previousValues[i]));
+            previousValues[i] = values[i];
+        }
+        currentBlockFrameCount++;
+
+        framesRecorded = framesRecorded + 1;
+        bytesEncoded = bytesEncoded + (currentBlock.position() - startPosition);
+        return true;
+    }
+
+    private void handOffCurrentBlock() {
+        currentBlock.putInt(0, currentBlock.position() - SessionRecordingFormat.BLOCK_HEADER_SIZE);
+        currentBlock.putInt(4, currentBlockFrameCount);
+        currentBlock.flip();
+        fullBlocks.offer(currentBlock); // Always fits: there are only as many blocks as slots
+        LockSupport.unpark(writerThread);
+
+        int backlog = fullBlocks.size();
+        if (backlog > maxWriterBacklog) {
+            maxWriterBacklog = backlog;
+        }
+
+        currentBlock = freeBlocks.poll();
+        if (currentBlock != null) {
+            startBlock();
+        }
+    }
+
+    private void writeBlocks() {
+        while (true) {
+            ByteBuffer block = fullBlocks.poll();
+            if (block == null) {
+                // Interrupts only cut the nap short; keep going until endOfSession
+                LockSupport.parkNanos(WRITER_IDLE_NANOS);
+                continue;
+            }
+            if (block == endOfSession) {
+                return;
+            }
+            try {
+                while (block.hasRemaining()) {
+                    bytesWritten = bytesWritten + channel.write(block);
+                }
+            } catch (IOException e) {
+                writeError = e;
+            }
+            freeBlocks.offer(block);
+        }
+    }
+
+    /**
+     * Writes out whatever is left, waits for the writer thread and closes the
+     * file. Call from the recording thread.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (currentBlock != null && currentBlockFrameCount > 0) {
+            handOffCurrentBlock();
+        }
+        try {
+            fullBlocks.offer(endOfSession); // Its own slot
+            LockSupport.unpark(writerThread);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            output.close();
+        }
+        if (writeError != null) {
+            throw writeError;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getFramesRecorded() {
+        return framesRecorded;
+    }
+
+    public long getFramesDropped() {
+        return framesDropped;
+    }
+
+    public double getBytesPerFrame() {
+        long frames = framesRecorded;
+        return (frames > 0) ? (double) bytesEncoded / frames : 0;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return How many full blocks are currently waiting for the writer.
+     */
+    public int getWriterBacklog() {
+        return fullBlocks.size();
+    }
+
+    public int getMaxWriterBacklog() {
+        return maxWriterBacklog;
+    }
+
+    /**
+     *
+     * Fixed-size ring of blocks for exactly one producing and one consuming
+     * thread: each end only writes its own index, and the volatile indices
+     * publish the slots.
+     */
+    private static final class BlockRing {
+
+        private final ByteBuffer[] slots;
+        private volatile long head = 0, tail = 0;
+
+        BlockRing(int capacity) {
+            slots = new ByteBuffer[capacity];
+        }
+
+        /**
+         * Producer only.
+         *
+         * @return False if the ring is full.
+         */
+        boolean offer(ByteBuffer block) {
+            long t = tail;
+            if (t - head == slots.length) {
+                return false;
+            }
+            slots[(int) (t % slots.length)] = block;
+            tail = t + 1;
+            return true;
+        }
+
+        /**
+         * Consumer only.
+         *
+         * @return Null if the ring is empty.
+         */
+        ByteBuffer poll() {
+            long h = head;
+            if (h == tail) {
+                return null;
+            }
+            int slot = (int) (h % slots.length);
+            ByteBuffer block = slots[slot];
+            slots[slot] = null;
+            head = h + 1;
+            return block;
+        }
+
+        int size() {
+            return (int) (tail - head);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SessionRecorder[" + file.getName()
+                + ", framesRecorded=" + framesRecorded
+                + ", framesDropped=" + framesDropped
+                + ", bytesPerFrame=" + getBytesPerFrame()
+                + ", bytesWritten=" + bytesWritten
+                + ", writerBacklog=" + getWriterBacklog()
+                + ", maxWriterBacklog=" + maxWriterBacklog + "]";
+    }
+}
@@ -0,0 +1,102 @@
+package kinect.recording;
+
+import java.nio.ByteBuffer;
+
+/**
+ *
+ * Layout of the compressed long-session recording format (.sksession), as
+ * written by SessionRecorder. Meant for capturing whole play sessions: frames
+ * are stored as per-value deltas from the previous frame, zig-zag varint
+ * encoded, so a mostly-still skeleton costs a few bytes per frame.
+ *
+ * <pre>
+ * HEADER (HEADER_SIZE bytes, little-endian)
+ *   int magic          MAGIC ("SKSS")
+ *   int version        VERSION
+ *   int jointCount
+ *   int jointStride
+ * BLOCKS (until end of file)
+ *   int blockLength    bytes of frame data that follow (little-endian)
+ *   int frameCount     frames in this block (little-endian)
+ *   frames...
+ * FRAME
+ *   varint timestampDelta   zig-zag, microseconds since the previous frame
+ *   byte   flags            SkeletonRecordingFormat.FLAG_TRACKED
+ *   varint valueDelta[jointCount * jointStride]   zig-zag, from previous frame
+ * </pre>
+ *
+ * Every block starts over from all-zero values and timestamp 0, so blocks
+ * can be decoded on their own.
+ */
+public class SessionRecordingFormat {
+
+    public static final String FILE_EXTENSION = ".sksession";
+    public static final int MAGIC = 0x53534B53; // "SKSS" when read as little-endian bytes
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int BLOCK_HEADER_SIZE = 8;
+    /**
+     * Longest possible zig-zag varint of an int. (Unit: bytes.)
+     */
+    public static final int MAX_VARINT_INT_SIZE = 5;
+    public static final int MAX_VARINT_LONG_SIZE = 10;
+
+    public static int getMaxFrameSize(int jointCount, int jointStride) {
+        return MAX_VARINT_LONG_SIZE + 1 + jointCount * jointStride * MAX_VARINT_INT_SIZE;
+    }
+
+    public static int zigZagEncode(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    public static int zigZagDecode(int encoded) {
+        return (encoded >>> 1) ^ -(encoded & 1);
+    }
+
+    public static long zigZagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long zigZagDecode(long encoded) {
+        return (encoded >>> 1) ^ -(encoded & 1);
+    }
+
+    public static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static int getVarint(ByteBuffer buffer) {
+        int value = 0, shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    public static long getVarintLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,158 @@
+package kinect.recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import kinect.input.SkeletonFrame;
+
+/**
+ *
+ * Sequential reader for session recordings written by SessionRecorder. The
+ * file is memory-mapped and decoded frame by frame into a caller-supplied
+ * SkeletonFrame.
+ *
+ * Session recordings can't be seeked, so for replay they're converted to the
+ * indexed .skrec format first (see convert(), or just pass the .sksession file
+ * to ReplayInputSource.openRecording()).
+ *
+ * Usage: java kinect.recording.SessionRecordingReader file.sksession...
+ * (converts each file to a .skrec next to it)
+ */
+public class SessionRecordingReader extends RecordingFrameReader {
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final int jointCount, jointStride;
+    private final int[] values;
+    private int blockFramesLeft = 0;
+    private long timestampMicros = 0;
+    private long framesRead = 0;
+
+    public SessionRecordingReader(File file) throws IOException {
+        this.file = file;
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            input.close(); // The mapping stays valid
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.remaining() < SessionRecordingFormat.HEADER_SIZE
+                || buffer.getInt() != SessionRecordingFormat.MAGIC) {
+            throw new IOException(file + " is not a session recording");
+        }
+        int version = buffer.getInt();
+        if (version != SessionRecordingFormat.VERSION) {
+            throw new IOException(file + ": unsupported session recording version " + version);
+        }
+        jointCount = buffer.getInt();
+        jointStride = buffer.getInt();
+        if (jointCount * jointStride != SkeletonFrame.VALUE_COUNT) {
+            throw new IOException(file + ": unsupported skeleton layout " + jointCount + "x" + jointStride);
+        }
+        values = new int[jointCount * jointStride];
+    }
+
+    /**
+     * Decodes the next frame into the given frame. Its timestamp is relative
+     * to the session start (of the block it's in, which is the same unless the
+     * recorder's clock was reset) and its sequence is its index in the file.
+     *
+     * @return False at the end of the recording (the frame is left untouched).
+     */
+    public boolean next(SkeletonFrame into) throws IOException {
+        while (blockFramesLeft == 0) {
+            if (buffer.remaining() < SessionRecordingFormat.BLOCK_HEADER_SIZE) {
+                return false; // A truncated trailing block is ignored, like a cut-off session
+            }
+            int blockLength = buffer.getInt();
+            blockFramesLeft = buffer.getInt();
+            if (blockLength > buffer.remaining()) {
+                blockFramesLeft = 0;
+                return false;
+            }
+            timestampMicros = 0;
+            for (int i = 0; i < values.length; i++) {
+                values[i] = 0;
+            }
+        }
+
+        timestampMicros += SessionRecordingFormat.zigZagDecode(SessionRecordingFormat.getVarintLong(buffer));
+        boolean tracked = (buffer.get() & SkeletonRecordingFormat.FLAG_TRACKED) != 0;
+        int[] frameValues = into.getValues();
+        for (int i = 0; i < values.length; i++) {
+            values[i] += SessionRecordingFormat.zigZagDecode(SessionRecordingFormat.getVarint(buffer));
+            frameValues[i] = values[i];
+        }
+        into.setTracked(tracked);
+        into.setTimestampNanos(timestampMicros * 1000);
+        into.setSequence(framesRead++);
+        blockFramesLeft--;
+        return true;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getFramesRead() {
+        return framesRead;
+    }
+
+    /**
+     * Converts a session recording to an indexed .skrec recording, with
+     * timestamps rebased so the first frame is at 0.
+     *
+     * @return The number of frames converted.
+     */
+    public static int convert(File in, File out) throws IOException {
+        SessionRecordingReader reader = new SessionRecordingReader(in);
+        SkeletonRecordingWriter writer = new SkeletonRecordingWriter(out);
+        SkeletonFrame frame = new SkeletonFrame();
+        long firstTimestampNanos = -1;
+        try {
+            while (reader.next(frame)) {
+                if (firstTimestampNanos < 0) {
+                    firstTimestampNanos = frame.getTimestampNanos();
+                }
+                writer.writeFrame(frame.getTimestampNanos() - firstTimestampNanos, frame.isTracked(), frame.getValues());
+            }
+        } finally {
+            writer.close();
+        }
+        return writer.getFrameCount();
+    }
+
+    public static String toOutputName(File sessionFile) {
+        String name = sessionFile.getName();
+        if (name.endsWith(SessionRecordingFormat.FILE_EXTENSION)) {
+            name = name.substring(0, name.length() - SessionRecordingFormat.FILE_EXTENSION.length());
+        }
+        return name + SkeletonRecordingFormat.FILE_EXTENSION;
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: java " + SessionRecordingReader.class.getName() + " file" + SessionRecordingFormat.FILE_EXTENSION + "...");
+            System.exit(2);
+        }
+        int failures = 0;
+        for (String arg : args) {
+            File in = new File(arg);
+            File out = new File(in.getAbsoluteFile().getParentFile(), toOutputName(in));
+            try {
+                int frames = convert(in, out);
+                System.out.println(in + " -> " + out + " (" + frames + " frames, " + in.length() + " -> " + out.length() + " bytes)");
+            } catch (IOException e) {
+                System.err.println(in + ": " + e.getMessage());
+                failures++;
+            }
+        }
+        System.exit(failures > 0 ? 1 : 0);
+    }
+}
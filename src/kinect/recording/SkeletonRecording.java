@@ -0,0 +1,145 @@
+package kinect.recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import kinect.input.SkeletonFrame;
+
+/**
+ *
+ * Read-only view of a recording in the indexed binary format (see
+ * SkeletonRecordingFormat). Opening one is a single memory map; frames are
+ * only read when asked for, straight into a caller-supplied SkeletonFrame, so
+ * reading allocates nothing and any frame can be seeked to directly.
+ */
+public class SkeletonRecording {
+
+    private final File file;
+    private final MappedByteBuffer map;
+    private final int jointCount, jointStride, frameCount, frameSize;
+    private final long indexOffset;
+
+    public SkeletonRecording(File file) throws IOException {
+        this.file = file;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            randomAccessFile.close(); // The mapping stays valid after closing
+        }
+        map.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (map.capacity() < SkeletonRecordingFormat.HEADER_SIZE
+                || map.getInt(SkeletonRecordingFormat.MAGIC_OFFSET) != SkeletonRecordingFormat.MAGIC) {
+            throw new IOException(file + " is not a skeleton recording.");
+        }
+        int version = map.getInt(SkeletonRecordingFormat.VERSION_OFFSET);
+        if (version != SkeletonRecordingFormat.VERSION) {
+            throw new IOException(file + " has unsupported recording version " + version + ".");
+        }
+        jointCount = map.getInt(SkeletonRecordingFormat.JOINT_COUNT_OFFSET);
+        jointStride = map.getInt(SkeletonRecordingFormat.JOINT_STRIDE_OFFSET);
+        frameCount = map.getInt(SkeletonRecordingFormat.FRAME_COUNT_OFFSET);
+        indexOffset = map.getLong(SkeletonRecordingFormat.INDEX_OFFSET_OFFSET);
+        frameSize = SkeletonRecordingFormat.getFrameSize(jointCount, jointStride);
+
+        if (indexOffset + (long) frameCount * SkeletonRecordingFormat.INDEX_ENTRY_SIZE > map.capacity()) {
+            throw new IOException(file + " is truncated.");
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public int getJointCount() {
+        return jointCount;
+    }
+
+    public int getJointStride() {
+        return jointStride;
+    }
+
+    private int getFrameOffset(int frameIndex) {
+        return (int) map.getLong((int) indexOffset + frameIndex * SkeletonRecordingFormat.INDEX_ENTRY_SIZE + 8);
+    }
+
+    /**
+     * @return The frame's timestamp, relative to the first frame. (Unit:
+     * nanoseconds.)
+     */
+    public long getTimestampNanos(int frameIndex) {
+        return map.getLong((int) indexOffset + frameIndex * SkeletonRecordingFormat.INDEX_ENTRY_SIZE);
+    }
+
+    public long getDurationNanos() {
+        return (frameCount > 0) ? getTimestampNanos(frameCount - 1) : 0;
+    }
+
+    public boolean isTracked(int frameIndex) {
+        return (map.getInt(getFrameOffset(frameIndex) + 8) & SkeletonRecordingFormat.FLAG_TRACKED) != 0;
+    }
+
+    /**
+     * @return One joint value, e.g. getValue(i, WRIST_RIGHT, KJ_X).
+     */
+    public int getValue(int frameIndex, int joint, int axis) {
+        return map.getInt(getFrameOffset(frameIndex) + SkeletonRecordingFormat.FRAME_HEADER_SIZE + (joint * jointStride + axis) * 4);
+    }
+
+    /**
+     * Reads a frame in place. The frame's timestamp is set to the recorded
+     * (relative) timestamp and its sequence to frameIndex.
+     */
+    public void readFrame(int frameIndex, SkeletonFrame into) {
+        int offset = getFrameOffset(frameIndex);
+        into.setTimestampNanos(map.getLong(offset));
+        into.setTracked((map.getInt(offset + 8) & SkeletonRecordingFormat.FLAG_TRACKED) != 0);
+        into.setSequence(frameIndex);
+
+        int[] values = into.getValues();
+        int valueCount = Math.min(jointCount * jointStride, values.length);
+        int valueOffset = offset + SkeletonRecordingFormat.FRAME_HEADER_SIZE;
+        if (jointStride == SkeletonFrame.JOINT_STRIDE) {
+            for (int i = 0; i < valueCount; i++) {
+                values[i] = map.getInt(valueOffset + i * 4);
+            }
+        } else { // Copy joint by joint so values still land on the right joint
+            int copiedJoints = Math.min(jointCount, SkeletonFrame.JOINT_COUNT),
+                    copiedAxes = Math.min(jointStride, SkeletonFrame.JOINT_STRIDE);
+            for (int joint = 0; joint < copiedJoints; joint++) {
+                for (int axis = 0; axis < copiedAxes; axis++) {
+                    values[SkeletonFrame.index(joint, axis)] = map.getInt(valueOffset + (joint * jointStride + axis) * 4);
+                }
+            }
+        }
+    }
+
+    /**
+     * Binary search through the frame index.
+     *
+     * @return Index of the last frame recorded at or before timestampNanos (0
+     * if timestampNanos is before the first frame).
+     */
+    public int findFrameAt(long timestampNanos) {
+        int low = 0, high = frameCount - 1, found = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (getTimestampNanos(middle) <= timestampNanos) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+}
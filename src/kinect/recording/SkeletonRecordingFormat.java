@@ -0,0 +1,49 @@
+package kinect.recording;
+
+/**
+ *
+ * Layout of the indexed binary skeleton recording format (.skrec). Everything
+ * is little-endian and made of primitives only, so a whole recording can be
+ * memory-mapped and read frame by frame without any deserialization.
+ *
+ * <pre>
+ * HEADER (HEADER_SIZE bytes)
+ *   int  magic           MAGIC ("SKRC")
+ *   int  version         VERSION
+ *   int  jointCount      joints per frame (20 for KinectTCP)
+ *   int  jointStride     ints per joint (4: tracking state, x, y, z)
+ *   int  frameCount
+ *   int  reserved        0
+ *   long indexOffset     file offset of the frame index
+ * FRAMES (frameCount fixed-size records, starting at HEADER_SIZE)
+ *   long timestampNanos  relative to the first frame
+ *   int  flags           FLAG_TRACKED if the skeleton was tracked
+ *   int  values[jointCount * jointStride]
+ * FRAME INDEX (frameCount entries, starting at indexOffset)
+ *   long timestampNanos
+ *   long frameOffset     file offset of the frame record
+ * </pre>
+ */
+public class SkeletonRecordingFormat {
+
+    public static final String FILE_EXTENSION = ".skrec";
+    public static final int MAGIC = 0x43524B53; // "SKRC" when read as little-endian bytes
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int MAGIC_OFFSET = 0,
+            VERSION_OFFSET = 4,
+            JOINT_COUNT_OFFSET = 8,
+            JOINT_STRIDE_OFFSET = 12,
+            FRAME_COUNT_OFFSET = 16,
+            INDEX_OFFSET_OFFSET = 24;
+    /**
+     * Bytes before the joint values in every frame record.
+     */
+    public static final int FRAME_HEADER_SIZE = 12;
+    public static final int INDEX_ENTRY_SIZE = 16;
+    public static final int FLAG_TRACKED = 1;
+
+    public static int getFrameSize(int jointCount, int jointStride) {
+        return FRAME_HEADER_SIZE + jointCount * jointStride * 4;
+    }
+}
@@ -0,0 +1,118 @@
+package kinect.recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import kinect.input.SkeletonFrame;
+
+/**
+ *
+ * Writes skeleton frames into the indexed binary recording format (see
+ * SkeletonRecordingFormat). Frames are appended as they come; the frame index
+ * and final header are written by close().
+ */
+public class SkeletonRecordingWriter {
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int jointCount, jointStride, frameSize;
+    private final ByteBuffer frameBuffer;
+    /**
+     * Timestamps and offsets of the frames written so far, kept for the index.
+     * Grown by doubling.
+     */
+    private long[] indexTimestamps = new long[1024], indexOffsets = new long[1024];
+    private int frameCount = 0;
+    private long nextFrameOffset = SkeletonRecordingFormat.HEADER_SIZE;
+
+    public SkeletonRecordingWriter(File outputFile) throws IOException {
+        this(outputFile, SkeletonFrame.JOINT_COUNT, SkeletonFrame.JOINT_STRIDE);
+    }
+
+    public SkeletonRecordingWriter(File outputFile, int jointCount, int jointStride) throws IOException {
+        this.jointCount = jointCount;
+        this.jointStride = jointStride;
+        this.frameSize = SkeletonRecordingFormat.getFrameSize(jointCount, jointStride);
+        this.frameBuffer = ByteBuffer.allocateDirect(frameSize).order(ByteOrder.LITTLE_ENDIAN);
+
+        file = new RandomAccessFile(outputFile, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+        channel.position(SkeletonRecordingFormat.HEADER_SIZE); // Header is written last
+    }
+
+    /**
+     * @param timestampNanos Relative to the first frame.
+     * @param tracked Whether a skeleton was tracked; values are still written
+     * either way.
+     * @param values jointCount * jointStride ints, joint-major.
+     */
+    public void writeFrame(long timestampNanos, boolean tracked, int[] values) throws IOException {
+        frameBuffer.clear();
+        frameBuffer.putLong(timestampNanos);
+        frameBuffer.putInt(tracked ? SkeletonRecordingFormat.FLAG_TRACKED : 0);
+        int valueCount = jointCount * jointStride;
+        for (int i = 0; i < valueCount; i++) {
+            frameBuffer.putInt(values[i]);
+        }
+        frameBuffer.flip();
+        while (frameBuffer.hasRemaining()) {
+            channel.write(frameBuffer);
+        }
+
+        if (frameCount == indexTimestamps.length) {
+            long[] grownTimestamps = new long[frameCount * 2], grownOffsets = new long[frameCount * 2];
+            System.arraycopy(indexTimestamps, 0, grownTimestamps, 0, frameCount);
+            System.arraycopy(indexOffsets, 0, grownOffsets, 0, frameCount);
+            indexTimestamps = grownTimestamps;
+            indexOffsets = grownOffsets;
+        }
+        indexTimestamps[frameCount] = timestampNanos;
+        indexOffsets[frameCount] = nextFrameOffset;
+        frameCount++;
+        nextFrameOffset += frameSize;
+    }
+
+    public void writeFrame(long timestampNanos, SkeletonFrame frame) throws IOException {
+        writeFrame(timestampNanos, frame.isTracked(), frame.getValues());
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Writes the frame index and the header, then closes the file.
+     */
+    public void close() throws IOException {
+        try {
+            ByteBuffer index = ByteBuffer.allocate(frameCount * SkeletonRecordingFormat.INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < frameCount; i++) {
+                index.putLong(indexTimestamps[i]);
+                index.putLong(indexOffsets[i]);
+            }
+            index.flip();
+            channel.position(nextFrameOffset);
+            while (index.hasRemaining()) {
+                channel.write(index);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(SkeletonRecordingFormat.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(SkeletonRecordingFormat.MAGIC_OFFSET, SkeletonRecordingFormat.MAGIC);
+            header.putInt(SkeletonRecordingFormat.VERSION_OFFSET, SkeletonRecordingFormat.VERSION);
+            header.putInt(SkeletonRecordingFormat.JOINT_COUNT_OFFSET, jointCount);
+            header.putInt(SkeletonRecordingFormat.JOINT_STRIDE_OFFSET, jointStride);
+            header.putInt(SkeletonRecordingFormat.FRAME_COUNT_OFFSET, frameCount);
+            header.putLong(SkeletonRecordingFormat.INDEX_OFFSET_OFFSET, nextFrameOffset);
+            channel.position(0);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        } finally {
+            file.close();
+        }
+    }
+}
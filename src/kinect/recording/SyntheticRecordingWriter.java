@@ -0,0 +1,97 @@
+package kinect.recording;
+
+import java.io.File;
+import java.io.IOException;
+import kinect.input.SkeletonFrame;
+import kinect.input.SyntheticSkeletonGenerator;
+
+/**
+ *
+ * Writes a SyntheticSkeletonGenerator's motion to skeleton recordings
+ * (.skrec), one per body (the first body to the given file, body n to
+ * FILE-n.skrec), so everything that plays recordings can be fed made-up
+ * motion: ReplayInputSource, KinectStandInServer (KinectTCP framing, which
+ * Mocap and KinectTCPClient read; --second= for body 2), UdpSkeletonSender
+ * and SharedMemorySkeletonWriter.
+ *
+ * Those serve at 30 Hz times their --rate= multiplier whatever the
+ * recording's timestamps, so for motion that looks right at R readings per
+ * second, write with --rate=R and serve with --rate=R/30.
+ *
+ * Usage: java kinect.recording.SyntheticRecordingWriter output.skrec [options], see
+ * printUsage().
+ */
+public class SyntheticRecordingWriter {
+
+    public static final double DEFAULT_RATE_HZ = 30;
+    public static final double DEFAULT_SECONDS = 60;
+
+    public static void printUsage(String command) {
+        System.err.println("Usage: " + command + " output" + SkeletonRecordingFormat.FILE_EXTENSION + " [options]");
+        System.err.println("  --rate=HZ                  Readings per second (default " + DEFAULT_RATE_HZ + ")");
+        System.err.println("  --seconds=N                Length (default " + DEFAULT_SECONDS + ")");
+        SyntheticSkeletonGenerator.printUsage();
+    }
+
+    /**
+     * @return The files written, one per body.
+     */
+    public static File[] write(SyntheticSkeletonGenerator generator, double rateHz, double seconds, File output) throws IOException {
+        File[] files = new File[generator.getBodies()];
+        SkeletonFrame frame = new SkeletonFrame();
+        long frameCount = (long) (rateHz * seconds);
+        for (int body = 0; body < files.length; body++) {
+            files[body] = (body == 0) ? output : toBodyFile(output, body);
+            SkeletonRecordingWriter writer = new SkeletonRecordingWriter(files[body]);
+            try {
+                for (long index = 0; index < frameCount; index++) {
+                    generator.generate(index, rateHz, body, frame);
+                    writer.writeFrame(frame.getTimestampNanos(), frame);
+                }
+            } finally {
+                writer.close();
+            }
+        }
+        return files;
+    }
+
+    /**
+     * @param body 0-based; body 1 (the second) goes to FILE-2.skrec.
+     */
+    public static File toBodyFile(File output, int body) {
+        String name = output.getName();
+        if (name.endsWith(SkeletonRecordingFormat.FILE_EXTENSION)) {
+            name = name.substring(0, name.length() - SkeletonRecordingFormat.FILE_EXTENSION.length());
+        }
+        return new File(output.getAbsoluteFile().getParentFile(), name + "-" + (body + 1) + SkeletonRecordingFormat.FILE_EXTENSION);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            printUsage("java " + SyntheticRecordingWriter.class.getName());
+            System.exit(2);
+        }
+        SyntheticSkeletonGenerator generator = new SyntheticSkeletonGenerator();
+        double rateHz = DEFAULT_RATE_HZ, seconds = DEFAULT_SECONDS;
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("--rate=")) {
+                rateHz = Double.parseDouble(arg.substring("--rate=".length()));
+            } else if (arg.startsWith("--seconds=")) {
+                seconds = Double.parseDouble(arg.substring("--seconds=".length()));
+            } else if (!generator.configure(arg)) {
+                System.err.println("Unknown option " + arg);
+                printUsage("java " + SyntheticRecordingWriter.class.getName());
+                System.exit(2);
+            }
+        }
+
+        long startNanos = System.nanoTime();
+        File[] files = write(generator, rateHz, seconds, new File(args[0]));
+        long elapsedNanos = System.nanoTime() - startNanos;
+        for (File file : files) {
+            System.out.println("Wrote " + file + " (" + (long) (rateHz * seconds) + " frames at " + rateHz + " Hz, " + file.length() + " bytes)");
+        }
+        System.out.println(generator + " in " + (elapsedNanos / 1000000) + " ms");
+    }
+}
@@ -0,0 +1,611 @@
+package kinect.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import kinect.depth.DepthFrameFormat;
+import kinect.depth.SyntheticDepthSource;
+import kinect.input.SkeletonFrame;
+import kinect.recording.ReplayInputSource;
+import kinect.recording.SkeletonRecording;
+
+/**
+ *
+ * Local stand-in for the (Windows-side) KinectTCP server: speaks the skeleton
+ * part of the protocol KinectTCPClient expects and serves the frames of a
+ * recording, looped, so Mocap/KinectTCPClient and everything behind them can
+ * be driven and load-tested without a Kinect.
+ *
+ * Protocol, as KinectTCPClient uses it: the client sends a one-byte command.
+ * Data commands (CMD_READSKELETON, CMD_READDEPTH, ...) are answered with a
+ * little-endian int length (payload length + 4), a little-endian int timestamp
+ * and the payload; all other commands with a single byte. The skeleton payload
+ * starts with the number of skeletons, then HEADER_SIZE + SKELETON_SIZE * n
+ * bytes, with each joint stored as its tracking state followed by x, y and z
+ * as unsigned little-endian shorts offset by 32768. With setServeDepth(),
+ * CMD_READDEPTH is answered with a kinect.depth.SyntheticDepthSource scene
+ * (see kinect.depth.DepthFrameFormat), drawn at request time in the
+ * resolution the client picked with CMD_INITDEPTH80X60/320X240/640X480
+ * (320x240 until it does). RGB and audio aren't served, nor is depth without
+ * setServeDepth() (data commands other than the skeleton get an empty
+ * payload, which also satisfies Mocap's one-off readDepth() probe).
+ *
+ * A clock thread advances through the recording at FRAME_RATE_HZ times the
+ * rate multiplier; every skeleton request gets the current frame. On top of
+ * that, faults can be injected:
+ * - jitter: each frame interval is stretched by up to this many milliseconds;
+ * - bursts: periodically, replies are held back for a while and then all sent
+ * at once;
+ * - dropouts: periodically, no skeleton is reported for a while;
+ * - disconnects: periodically, every connection is dropped and the server
+ * stops listening for a while (connecting is refused).
+ *
+ * Usage: java kinect.server.KinectStandInServer recording [options], see
+ * printUsage().
+ */
+public class KinectStandInServer {
+
+    /*--- SETTINGS ---*/
+    /**
+     * The Kinect's native skeleton rate.
+     */
+    public static final float FRAME_RATE_HZ = 30;
+    public static final int DEFAULT_PORT = 8001;
+    /**
+     * How far to the side (x) the second skeleton stands. (Unit:
+     * millimeters.)
+     */
+    public static final int SECOND_SKELETON_OFFSET_MILLIMETERS = 1000;
+    /*--- END SETTINGS ---*/
+    /**
+     * KinectTCPClient's command codes.
+     */
+    public static final int CMD_INITDEPTH80X60 = 23,
+            CMD_INITDEPTH320X240 = 24,
+            CMD_INITDEPTH640X480 = 25,
+            CMD_READRGB = 30,
+            CMD_READDEPTH = 31,
+            CMD_READDEPTHXYZ = 32,
+            CMD_READDEPTHRGB = 33,
+            CMD_READDEPTHXYZRGB = 34,
+            CMD_READSKELETON = 35;
+    /**
+     * Skeleton payload layout: KinectTCPClient.getJointPositions() finds
+     * skeleton n's (1-based) joints at HEADER_SIZE + SKELETON_SIZE * (n - 1) +
+     * SKELETON_HEADER_SIZE.
+     */
+    public static final int HEADER_SIZE = 17,
+            SKELETON_HEADER_SIZE = 9,
+            JOINT_SIZE = 7,
+            SKELETON_SIZE = SKELETON_HEADER_SIZE + SkeletonFrame.JOINT_COUNT * JOINT_SIZE;
+    public static final int COORDINATE_OFFSET = 32768;
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final byte COMMAND_ACK = 1;
+    private final SkeletonRecording recording;
+    private final int port;
+    /**
+     * Encoded once up front; serving a request only copies bytes.
+     */
+    private final byte[][] skeletonPayloads;
+    private final int skeletonsPerFrame;
+    private final byte[] noSkeletonPayload = new byte[HEADER_SIZE];
+    private float rateMultiplier = 1;
+    private long jitterMillis = 0;
+    private long burstEveryMillis = 0, burstMillis = 0;
+    private long dropoutEveryMillis = 0, dropoutMillis = 0;
+    private long disconnectEveryMillis = 0, downMillis = 0;
+    private long seed = 1;
+    private boolean serveDepth = false;
+    /**
+     * Null while the server is down for a disconnect.
+     */
+    private volatile ServerSocket serverSocket = null;
+    private final List<Socket> clients = new ArrayList<Socket>();
+    private volatile boolean running = false;
+    private long startNanos;
+    /**
+     * Written by the clock thread, read by the client threads.
+     */
+    private volatile int currentFrame = 0;
+    private volatile boolean currentTracked = true;
+    private volatile int currentTimestampMillis = 0;
+    private volatile long burstUntilNanos = 0, downUntilNanos = 0;
+    private volatile long framesPublished = 0;
+    private volatile long burstsInjected = 0, dropoutsInjected = 0, disconnectsInjected = 0;
+    private volatile long connectionsAccepted = 0;
+    /**
+     * Written by several client threads; only ever approximately right, which
+     * is enough for reporting.
+     */
+    private volatile long skeletonRequests = 0, depthRequests = 0, otherRequests = 0;
+
+    public KinectStandInServer(SkeletonRecording recording, int port) {
+        this(recording, null, port);
+    }
+
+    /**
+     * @param secondRecording A second skeleton to serve alongside the first
+     * (looped on its own), standing SECOND_SKELETON_OFFSET_MILLIMETERS to the
+     * side; null for one skeleton.
+     */
+    public KinectStandInServer(SkeletonRecording recording, SkeletonRecording secondRecording, int port) {
+        this.recording = recording;
+        this.port = port;
+        skeletonsPerFrame = (secondRecording != null) ? 2 : 1;
+        skeletonPayloads = new byte[recording.getFrameCount()][];
+        SkeletonFrame[] frames = new SkeletonFrame[]{new SkeletonFrame(), new SkeletonFrame()};
+        for (int i = 0; i < skeletonPayloads.length; i++) {
+            int count = 0;
+            recording.readFrame(i, frames[count]);
+            if (frames[count].isTracked()) {
+                count++;
+            }
+            if (secondRecording != null && secondRecording.getFrameCount() > 0) {
+                secondRecording.readFrame(i % secondRecording.getFrameCount(), frames[count]);
+                if (frames[count].isTracked()) {
+                    offsetX(frames[count], SECOND_SKELETON_OFFSET_MILLIMETERS);
+                    count++;
+                }
+            }
+            skeletonPayloads[i] = (count > 0) ? encodeSkeletons(frames, count) : noSkeletonPayload;
+        }
+    }
+
+    private static void offsetX(SkeletonFrame frame, int millimeters) {
+        for (int joint = 0; joint < SkeletonFrame.JOINT_COUNT; joint++) {
+            frame.set(joint, SkeletonFrame.KJ_X, frame.get(joint, SkeletonFrame.KJ_X) + millimeters);
+        }
+    }
+
+    /**
+     * @return A one-skeleton payload for CMD_READSKELETON.
+     */
+    public static byte[] encodeSkeleton(SkeletonFrame frame) {
+        return encodeSkeletons(new SkeletonFrame[]{frame}, 1);
+    }
+
+    /**
+     * @return A payload for CMD_READSKELETON with the first count frames as
+     * its skeletons.
+     */
+    public static byte[] encodeSkeletons(SkeletonFrame[] frames, int count) {
+        byte[] payload = new byte[HEADER_SIZE + SKELETON_SIZE * count];
+        payload[0] = (byte) count; // Number of skeletons
+        for (int skeleton = 0; skeleton < count; skeleton++) {
+            int offset = HEADER_SIZE + SKELETON_SIZE * skeleton + SKELETON_HEADER_SIZE;
+            for (int joint = 0; joint < SkeletonFrame.JOINT_COUNT; joint++) {
+                payload[offset++] = (byte) frames[skeleton].get(joint, SkeletonFrame.KJ_STATE);
+                for (int axis = SkeletonFrame.KJ_X; axis <= SkeletonFrame.KJ_Z; axis++) {
+                    int value = frames[skeleton].get(joint, axis) + COORDINATE_OFFSET;
+                    payload[offset++] = (byte) value;
+                    payload[offset++] = (byte) (value >> 8);
+                }
+            }
+        }
+        return payload;
+    }
+
+    /**
+     * @param rateMultiplier Frames are served at FRAME_RATE_HZ times this.
+     */
+    public void setRateMultiplier(float rateMultiplier) {
+        this.rateMultiplier = rateMultiplier;
+    }
+
+    /**
+     * @param jitterMillis Most a frame can come late; each frame's delay is
+     * random between 0 and this. (Unit: milliseconds.)
+     */
+    public void setJitterMillis(long jitterMillis) {
+        this.jitterMillis = jitterMillis;
+    }
+
+    /**
+     * Every everyMillis, hold all replies back for burstMillis. 0 turns bursts
+     * off.
+     */
+    public void setBursts(long everyMillis, long burstMillis) {
+        this.burstEveryMillis = everyMillis;
+        this.burstMillis = burstMillis;
+    }
+
+    /**
+     * Every everyMillis, report no skeleton for dropoutMillis. 0 turns
+     * dropouts off.
+     */
+    public void setDropouts(long everyMillis, long dropoutMillis) {
+        this.dropoutEveryMillis = everyMillis;
+        this.dropoutMillis = dropoutMillis;
+    }
+
+    /**
+     * Every everyMillis, drop all connections and stop listening for
+     * downMillis. 0 turns disconnects off.
+     */
+    public void setDisconnects(long everyMillis, long downMillis) {
+        this.disconnectEveryMillis = everyMillis;
+        this.downMillis = downMillis;
+    }
+
+    /**
+     * Answer CMD_READDEPTH with synthetic depth frames instead of an empty
+     * payload.
+     */
+    public void setServeDepth(boolean serveDepth) {
+        this.serveDepth = serveDepth;
+    }
+
+    /**
+     * Seed for the jitter, so runs can be repeated.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Applies one command line option (see printUsage()).
+     *
+     * @return False if it isn't one of the server's options.
+     */
+    public boolean configure(String option) {
+        if (option.startsWith("--rate=")) {
+            setRateMultiplier(Float.parseFloat(option.substring("--rate=".length())));
+        } else if (option.startsWith("--jitter=")) {
+            setJitterMillis(Long.parseLong(option.substring("--jitter=".length())));
+        } else if (option.startsWith("--burst=")) {
+            long[] values = parsePair(option.substring("--burst=".length()));
+            setBursts(values[0], values[1]);
+        } else if (option.startsWith("--dropout=")) {
+            long[] values = parsePair(option.substring("--dropout=".length()));
+            setDropouts(values[0], values[1]);
+        } else if (option.startsWith("--disconnect=")) {
+            long[] values = parsePair(option.substring("--disconnect=".length()));
+            setDisconnects(values[0], values[1]);
+        } else if (option.equals("--depth")) {
+            setServeDepth(true);
+        } else if (option.startsWith("--seed=")) {
+            setSeed(Long.parseLong(option.substring("--seed=".length())));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static long[] parsePair(String value) {
+        String[] parts = value.split(":");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Expected EVERY_MS:LENGTH_MS, got " + value);
+        }
+        return new long[]{Long.parseLong(parts[0]), Long.parseLong(parts[1])};
+    }
+
+    public static void printUsage(String command) {
+        System.err.println("Usage: " + command + " recording [options]");
+        System.err.println("  recording                  .poormocap, .skrec or .sksession");
+        System.err.println("  --port=N                   Default " + DEFAULT_PORT);
+        System.err.println("  --second=RECORDING         Also serve a second skeleton, " + SECOND_SKELETON_OFFSET_MILLIMETERS + " mm to the side");
+        System.err.println("  --rate=X                   Serve at " + FRAME_RATE_HZ + " Hz times X (default 1)");
+        System.err.println("  --jitter=MS                Delay each frame randomly by up to MS");
+        System.err.println("  --burst=EVERY_MS:MS        Hold replies back for MS, every EVERY_MS");
+        System.err.println("  --dropout=EVERY_MS:MS      Report no skeleton for MS, every EVERY_MS");
+        System.err.println("  --disconnect=EVERY_MS:MS   Drop all connections and stop listening for MS, every EVERY_MS");
+        System.err.println("  --depth                    Serve synthetic depth frames");
+        System.err.println("  --seed=N                   Jitter random seed");
+    }
+
+    /**
+     * Starts listening on the port (loopback only) and serving frames.
+     */
+    public void start() throws IOException {
+        serverSocket = openServerSocket();
+        running = true;
+        startNanos = System.nanoTime();
+
+        Thread clockThread = new Thread("KinectStandInClock") {
+            @Override
+            public void run() {
+                runClock();
+            }
+        };
+        clockThread.setDaemon(true);
+        clockThread.start();
+
+        Thread acceptThread = new Thread("KinectStandInAccept") {
+            @Override
+            public void run() {
+                acceptClients();
+            }
+        };
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    private void runClock() {
+        Random random = new Random(seed);
+        long frameIntervalNanos = (long) (1e9 / (FRAME_RATE_HZ * rateMultiplier));
+        long nextFrameNanos = startNanos;
+        long nextBurstNanos = startNanos + burstEveryMillis * 1000000L;
+        long nextDropoutNanos = startNanos + dropoutEveryMillis * 1000000L;
+        long dropoutUntilNanos = 0;
+        long nextDisconnectNanos = startNanos + disconnectEveryMillis * 1000000L;
+        int frame = 0;
+
+        while (running) {
+            long nowNanos = System.nanoTime();
+            if (burstEveryMillis > 0 && nowNanos >= nextBurstNanos) {
+                burstUntilNanos = nowNanos + burstMillis * 1000000L;
+                nextBurstNanos += burstEveryMillis * 1000000L;
+                burstsInjected++;
+            }
+            if (dropoutEveryMillis > 0 && nowNanos >= nextDropoutNanos) {
+                dropoutUntilNanos = nowNanos + dropoutMillis * 1000000L;
+                nextDropoutNanos += dropoutEveryMillis * 1000000L;
+                dropoutsInjected++;
+            }
+            if (disconnectEveryMillis > 0 && nowNanos >= nextDisconnectNanos) {
+                downUntilNanos = nowNanos + downMillis * 1000000L;
+                nextDisconnectNanos += disconnectEveryMillis * 1000000L;
+                disconnectsInjected++;
+                closeServerSocket();
+                dropClients();
+            }
+
+            currentFrame = frame;
+            currentTracked = nowNanos >= dropoutUntilNanos;
+            currentTimestampMillis = (int) ((nowNanos - startNanos) / 1000000);
+            framesPublished++;
+            frame = (frame + 1) % skeletonPayloads.length;
+
+            nextFrameNanos += frameIntervalNanos;
+            long sleepNanos = nextFrameNanos - System.nanoTime();
+            if (jitterMillis > 0) {
+                // Late by up to jitterMillis, without drifting off the base rate
+                sleepNanos += (long) (random.nextDouble() * jitterMillis * 1000000L);
+            }
+            if (sleepNanos > 0) {
+                try {
+                    Thread.sleep(sleepNanos / 1000000, (int) (sleepNanos % 1000000));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private ServerSocket openServerSocket() throws IOException {
+        return new ServerSocket(port, 8, InetAddress.getByName("127.0.0.1"));
+    }
+
+    private void closeServerSocket() {
+        ServerSocket socket = serverSocket;
+        serverSocket = null;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing left to do
+            }
+        }
+    }
+
+    private void acceptClients() {
+        int clientNumber = 0;
+        while (running) {
+            final Socket socket;
+            try {
+                long downNanos = downUntilNanos - System.nanoTime();
+                if (downNanos > 0) {
+                    Thread.sleep(downNanos / 1000000, (int) (downNanos % 1000000));
+                    continue;
+                }
+                ServerSocket listening = serverSocket;
+                if (listening == null) {
+                    listening = serverSocket = openServerSocket();
+                }
+                socket = listening.accept();
+            } catch (IOException e) {
+                if (!running) {
+                    return;
+                } else if (System.nanoTime() < downUntilNanos) {
+                    continue; // Closed for a disconnect
+                }
+                System.err.println("Kinect stand-in server stopped accepting: " + e.getMessage());
+                return;
+            } catch (InterruptedException e) {
+                return;
+            }
+            connectionsAccepted++;
+            synchronized (clients) {
+                clients.add(socket);
+            }
+            Thread clientThread = new Thread("KinectStandInClient-" + (++clientNumber)) {
+                @Override
+                public void run() {
+                    serveClient(socket);
+                }
+            };
+            clientThread.setDaemon(true);
+            clientThread.start();
+        }
+    }
+
+    private void serveClient(Socket socket) {
+        byte[] reply = new byte[FRAME_HEADER_SIZE + HEADER_SIZE + SKELETON_SIZE * skeletonsPerFrame];
+        byte[] depthReply = null;
+        ByteBuffer depthFrame = null;
+        int depthWidth = DepthFrameFormat.WIDTHS[1], depthHeight = DepthFrameFormat.HEIGHTS[1];
+        int depthFrameNumber = 0;
+        try {
+            socket.setTcpNoDelay(true);
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            int command;
+            while (running && (command = in.read()) >= 0) {
+                long holdNanos = burstUntilNanos - System.nanoTime();
+                if (holdNanos > 0) {
+                    Thread.sleep(holdNanos / 1000000, (int) (holdNanos % 1000000));
+                }
+
+                if (command == CMD_READSKELETON) {
+                    skeletonRequests++;
+                    byte[] payload = currentTracked ? skeletonPayloads[currentFrame] : noSkeletonPayload;
+                    int length = putFrameHeader(reply, payload.length, currentTimestampMillis);
+                    System.arraycopy(payload, 0, reply, FRAME_HEADER_SIZE, payload.length);
+                    out.write(reply, 0, length);
+                } else if (command == CMD_READDEPTH && serveDepth) {
+                    depthRequests++;
+                    if (depthReply == null) {
+                        depthReply = new byte[FRAME_HEADER_SIZE + DepthFrameFormat.MAX_FRAME_SIZE];
+                        depthFrame = ByteBuffer.wrap(depthReply, FRAME_HEADER_SIZE, DepthFrameFormat.MAX_FRAME_SIZE).slice().order(ByteOrder.LITTLE_ENDIAN);
+                    }
+                    SyntheticDepthSource.render(depthFrame, depthWidth, depthHeight, (System.nanoTime() - startNanos) / 1e9, depthFrameNumber++);
+                    out.write(depthReply, 0, putFrameHeader(depthReply, DepthFrameFormat.getFrameSize(depthWidth, depthHeight), currentTimestampMillis));
+                } else if (command >= CMD_READRGB && command < CMD_READSKELETON) {
+                    otherRequests++;
+                    out.write(reply, 0, putFrameHeader(reply, 0, currentTimestampMillis));
+                } else {
+                    if (command >= CMD_INITDEPTH80X60 && command <= CMD_INITDEPTH640X480) {
+                        depthWidth = DepthFrameFormat.WIDTHS[command - CMD_INITDEPTH80X60];
+                        depthHeight = DepthFrameFormat.HEIGHTS[command - CMD_INITDEPTH80X60];
+                    }
+                    otherRequests++;
+                    out.write(COMMAND_ACK);
+                }
+                out.flush();
+            }
+        } catch (SocketException e) {
+            // Dropped by the client or by dropClients()
+        } catch (IOException e) {
+            System.err.println("Kinect stand-in client " + socket.getRemoteSocketAddress() + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            // Only happens on stop()
+        } finally {
+            synchronized (clients) {
+                clients.remove(socket);
+            }
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * @return Bytes of the whole reply (header + payload).
+     */
+    private static int putFrameHeader(byte[] reply, int payloadLength, int timestampMillis) {
+        putIntLE(reply, 0, payloadLength + 4);
+        putIntLE(reply, 4, timestampMillis);
+        return FRAME_HEADER_SIZE + payloadLength;
+    }
+
+    private static void putIntLE(byte[] array, int offset, int value) {
+        array[offset] = (byte) value;
+        array[offset + 1] = (byte) (value >> 8);
+        array[offset + 2] = (byte) (value >> 16);
+        array[offset + 3] = (byte) (value >> 24);
+    }
+
+    private void dropClients() {
+        synchronized (clients) {
+            for (Socket socket : clients) {
+                closeQuietly(socket);
+            }
+            clients.clear();
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing left to do
+        }
+    }
+
+    public void stop() {
+        running = false;
+        closeServerSocket();
+        dropClients();
+    }
+
+    public int getConnectionCount() {
+        synchronized (clients) {
+            return clients.size();
+        }
+    }
+
+    public long getFramesPublished() {
+        return framesPublished;
+    }
+
+    public long getSkeletonRequests() {
+        return skeletonRequests;
+    }
+
+    public long getDisconnectsInjected() {
+        return disconnectsInjected;
+    }
+
+    public long getDropoutsInjected() {
+        return dropoutsInjected;
+    }
+
+    public long getBurstsInjected() {
+        return burstsInjected;
+    }
+
+    @Override
+    public String toString() {
+        return "KinectStandInServer[" + recording.getFile().getName()
+                + ", port=" + port
+                + ", rateHz=" + (FRAME_RATE_HZ * rateMultiplier)
+                + ", framesPublished=" + framesPublished
+                + ", skeletonRequests=" + skeletonRequests
+                + ", depthRequests=" + depthRequests
+                + ", otherRequests=" + otherRequests
+                + ", connections=" + getConnectionCount()
+                + ", accepted=" + connectionsAccepted
+                + ", bursts=" + burstsInjected
+                + ", dropouts=" + dropoutsInjected
+                + ", disconnects=" + disconnectsInjected + "]";
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            printUsage("java " + KinectStandInServer.class.getName());
+            System.exit(2);
+        }
+        int port = DEFAULT_PORT;
+        SkeletonRecording secondRecording = null;
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--second=")) {
+                secondRecording = ReplayInputSource.openRecording(new File(arg.substring("--second=".length())));
+            }
+        }
+        KinectStandInServer server = new KinectStandInServer(ReplayInputSource.openRecording(new File(args[0])), secondRecording, port);
+        for (int i = 1; i < args.length; i++) {
+            if (!args[i].startsWith("--port=") && !args[i].startsWith("--second=") && !server.configure(args[i])) {
+                System.err.println("Unknown option " + args[i]);
+                printUsage("java " + KinectStandInServer.class.getName());
+                System.exit(2);
+            }
+        }
+
+        server.start();
+        System.out.println("Serving " + args[0] + " on 127.0.0.1:" + port + "; stop with Ctrl+C.");
+        while (true) {
+            Thread.sleep(5000);
+            System.out.println(server);
+        }
+    }
+}
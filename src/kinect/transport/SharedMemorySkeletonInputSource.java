@@ -0,0 +1,144 @@
+package kinect.transport;
+
+import java.io.File;
+import java.io.IOException;
+import kinect.input.KinectInputSource;
+import kinect.input.SkeletonFrame;
+
+/**
+ *
+ * Input source that takes skeletons from a SharedMemorySkeletonRing written
+ * by another process (e.g. a Kinect bridge, or SharedMemorySkeletonWriter).
+ * There is no thread and nothing to wake up: getLatestFrame() looks at the
+ * ring's write sequence and, if there's a newer reading, decodes it straight
+ * out of the mapping, so a reading reaches the game at the first frame after
+ * it was published, with no serialization or system call in between.
+ *
+ * Only the newest reading is ever read; readings published in between count
+ * as skipped. A reading the writer overwrote while it was being decoded is
+ * dropped (counted as torn) and the previous frame is kept until the next
+ * call. If the write sequence doesn't move for STALE_MILLIS, the skeleton is
+ * reported as not tracked. Frames keep the writer's timestamps (see
+ * SharedMemorySkeletonRing).
+ */
+public class SharedMemorySkeletonInputSource implements KinectInputSource {
+
+    /*--- SETTINGS ---*/
+    /**
+     * (Unit: milliseconds.)
+     */
+    public static final long STALE_MILLIS = 500;
+    /*--- END SETTINGS ---*/
+    private final File file;
+    private final int player;
+    private SharedMemorySkeletonRing ring = null;
+    /**
+     * Frame handed out, and the one the next reading is decoded into; swapped
+     * once a reading was decoded whole.
+     */
+    private SkeletonFrame frontFrame = new SkeletonFrame(), backFrame = new SkeletonFrame();
+    private long lastRingSequence = 0;
+    private long publishedSequence = 0;
+    private long lastReadingNanos = 0;
+    private boolean stale = true;
+    /**
+     * Game loop only; toString() may see slightly old values from other
+     * threads.
+     */
+    private long readingsRead = 0, skipped = 0, torn = 0, otherPlayers = 0, restarts = 0, staleTimeouts = 0;
+
+    public SharedMemorySkeletonInputSource() {
+        this(new File(SharedMemorySkeletonRing.DEFAULT_FILE), 0);
+    }
+
+    /**
+     * @param player Only readings for this player are used.
+     */
+    public SharedMemorySkeletonInputSource(File file, int player) {
+        this.file = file;
+        this.player = player;
+    }
+
+    public void start() {
+        try {
+            ring = SharedMemorySkeletonRing.open(file, SharedMemorySkeletonRing.DEFAULT_SLOT_COUNT);
+            lastRingSequence = ring.getWriteSequence(); // Only readings from now on
+        } catch (IOException e) {
+            System.err.println("Can't map kinect skeleton ring " + file + " (" + e.getMessage() + "); no skeletons will arrive.");
+        }
+    }
+
+    public SkeletonFrame getLatestFrame() {
+        if (ring == null) {
+            return frontFrame;
+        }
+        long nowNanos = System.nanoTime();
+        long ringSequence = ring.getWriteSequence();
+        if (ringSequence != lastRingSequence) {
+            if (ringSequence < lastRingSequence) {
+                restarts++; // Writer re-created the ring
+            } else if (lastRingSequence > 0) {
+                skipped += ringSequence - lastRingSequence - 1;
+            }
+            lastRingSequence = ringSequence;
+            int readingPlayer = ring.read(ringSequence, backFrame);
+            if (readingPlayer == SharedMemorySkeletonRing.NOT_READ) {
+                torn++;
+                lastRingSequence--; // Try again next time, if it's still the newest
+            } else if (readingPlayer != player) {
+                otherPlayers++;
+            } else {
+                SkeletonFrame frame = backFrame;
+                backFrame = frontFrame;
+                frontFrame = frame;
+                frontFrame.setSequence(++publishedSequence);
+                readingsRead++;
+                lastReadingNanos = nowNanos;
+                stale = false;
+            }
+        } else if (!stale && nowNanos - lastReadingNanos > STALE_MILLIS * 1000000L) {
+            // Writer gone; report the skeleton as lost
+            frontFrame.setTracked(false);
+            frontFrame.setSequence(++publishedSequence);
+            staleTimeouts++;
+            stale = true;
+        }
+        return frontFrame;
+    }
+
+    public void stop() {
+        // The mapping goes away with the ring once it's unreachable
+        ring = null;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getReadingsRead() {
+        return readingsRead;
+    }
+
+    /**
+     * @return Readings published while the game loop was busy, never read.
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public long getTorn() {
+        return torn;
+    }
+
+    @Override
+    public String toString() {
+        return "SharedMemorySkeletonInputSource[" + file
+                + ", player=" + (player + 1)
+                + ", readingsRead=" + readingsRead
+                + ", skipped=" + skipped
+                + ", torn=" + torn
+                + ", otherPlayers=" + otherPlayers
+                + ", restarts=" + restarts
+                + ", staleTimeouts=" + staleTimeouts + "]";
+    }
+}
@@ -0,0 +1,209 @@
+package kinect.transport;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import kinect.input.SkeletonFrame;
+
+/**
+ *
+ * A ring of skeleton readings in a memory-mapped file, for handing skeletons
+ * from a Kinect driver process to the game without sockets: one writer
+ * process publishes readings into the slots in turn, and readers (in other
+ * processes) map the same file and pick up the newest one whenever they
+ * like. On Linux, a file in /dev/shm keeps the pages in memory only.
+ *
+ * <pre>
+ * HEADER (HEADER_SIZE bytes, little-endian)
+ *   int  magic           MAGIC ("SKSM")
+ *   int  version         VERSION
+ *   int  slotCount
+ *   int  slotSize        SLOT_SIZE
+ *   long writeSequence   newest published reading; 0 before the first
+ * SLOTS (slotCount, reading n goes into slot n % slotCount)
+ *   long slotSequence    n once the slot holds reading n; -n while it's being written
+ *   SkeletonDatagramFormat datagram (sequence n, timestamp in System.nanoTime() microseconds)
+ * </pre>
+ *
+ * Handoff is lock-free, seqlock style: the writer marks the slot as being
+ * written, fills it, marks it done and then bumps writeSequence; a reader
+ * reads writeSequence, checks the slot's sequence, decodes the joints
+ * straight out of the mapping, and checks the slot's sequence again, so a
+ * slot the writer lapped in the meantime is noticed and skipped instead of
+ * being read torn. Java 7 has no explicit memory fences, so a volatile write
+ * stands in for one: the barrier the JIT emits for it keeps both the compiler
+ * and the CPU from moving the slot accesses across it, which is what the
+ * other process relies on.
+ *
+ * Timestamps are System.nanoTime() of the writer; on Linux, all JVMs (and
+ * CLOCK_MONOTONIC in native writers) share that clock, so readers can use it
+ * as is. Header and slots are on 64-byte boundaries, so the writer never
+ * touches the cache line of a slot being read unless it laps it.
+ */
+public class SharedMemorySkeletonRing {
+
+    /*--- SETTINGS ---*/
+    /**
+     * About 4 seconds of Kinect readings; a reader only has to keep up with
+     * the newest one, so this just has to be more than a few.
+     */
+    public static final int DEFAULT_SLOT_COUNT = 128;
+    public static final String DEFAULT_FILE = "/dev/shm/kinect-skeletons.ring";
+    /*--- END SETTINGS ---*/
+    public static final int MAGIC = 0x4D534B53; // "SKSM" when read as little-endian bytes
+    public static final int VERSION = 1;
+    public static final int MAGIC_OFFSET = 0,
+            VERSION_OFFSET = 4,
+            SLOT_COUNT_OFFSET = 8,
+            SLOT_SIZE_OFFSET = 12,
+            WRITE_SEQUENCE_OFFSET = 16;
+    public static final int HEADER_SIZE = 64;
+    public static final int SLOT_SEQUENCE_OFFSET = 0,
+            SLOT_DATAGRAM_OFFSET = 8;
+    /**
+     * The slot's sequence and a datagram, rounded up to 64 bytes.
+     */
+    public static final int SLOT_SIZE = (SLOT_DATAGRAM_OFFSET + SkeletonDatagramFormat.DATAGRAM_SIZE + 63) / 64 * 64;
+    /**
+     * read()'s result for a reading it couldn't read whole.
+     */
+    public static final int NOT_READ = -1;
+    /**
+     * Written (never read) for the ordering a volatile write gives.
+     */
+    private static volatile int fence;
+    private final File file;
+    private final MappedByteBuffer mapping;
+    private final int slotCount;
+    /**
+     * One view per slot's datagram, so encoding and decoding don't allocate.
+     */
+    private final ByteBuffer[] datagrams;
+
+    private SharedMemorySkeletonRing(File file, MappedByteBuffer mapping, int slotCount) {
+        this.file = file;
+        this.mapping = mapping;
+        this.slotCount = slotCount;
+        mapping.order(ByteOrder.LITTLE_ENDIAN);
+        datagrams = new ByteBuffer[slotCount];
+        for (int slot = 0; slot < slotCount; slot++) {
+            ByteBuffer view = mapping.duplicate();
+            view.position(getSlotOffset(slot) + SLOT_DATAGRAM_OFFSET);
+            view.limit(getSlotOffset(slot) + SLOT_DATAGRAM_OFFSET + SkeletonDatagramFormat.DATAGRAM_SIZE);
+            datagrams[slot] = view.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Maps the ring in file, creating (or re-creating, if it isn't a ring of
+     * this version) it with slotCount slots first if needed. The file must
+     * already hold a valid ring, or not exist at all, when a writer and a
+     * reader open it at the same time.
+     */
+    public static SharedMemorySkeletonRing open(File file, int slotCount) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (raf.length() >= HEADER_SIZE) {
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+                header.order(ByteOrder.LITTLE_ENDIAN);
+                int existingSlots = header.getInt(SLOT_COUNT_OFFSET);
+                if (header.getInt(MAGIC_OFFSET) == MAGIC && header.getInt(VERSION_OFFSET) == VERSION
+                        && header.getInt(SLOT_SIZE_OFFSET) == SLOT_SIZE && existingSlots > 0
+                        && raf.length() == HEADER_SIZE + (long) existingSlots * SLOT_SIZE) {
+                    return new SharedMemorySkeletonRing(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, raf.length()), existingSlots);
+                }
+            }
+
+            raf.setLength(0);
+            raf.setLength(HEADER_SIZE + (long) slotCount * SLOT_SIZE); // Zero-filled
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            mapping.order(ByteOrder.LITTLE_ENDIAN);
+            mapping.putInt(VERSION_OFFSET, VERSION);
+            mapping.putInt(SLOT_COUNT_OFFSET, slotCount);
+            mapping.putInt(SLOT_SIZE_OFFSET, SLOT_SIZE);
+            mapping.putLong(WRITE_SEQUENCE_OFFSET, 0);
+            fence = 0;
+            mapping.putInt(MAGIC_OFFSET, MAGIC); // Last, so a half-made ring isn't taken for a ring
+            return new SharedMemorySkeletonRing(file, mapping, slotCount);
+        } finally {
+            raf.close(); // The mapping stays valid
+        }
+    }
+
+    private static int getSlotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * @return The newest published reading's sequence number; 0 before the
+     * first.
+     */
+    public long getWriteSequence() {
+        long sequence = mapping.getLong(WRITE_SEQUENCE_OFFSET);
+        fence = 0;
+        return sequence;
+    }
+
+    /**
+     * Writer side: publishes a reading as the next sequence number. Only one
+     * writer may use a ring at a time. Allocation-free.
+     *
+     * @return The reading's sequence number.
+     */
+    public long publish(SkeletonFrame frame, int player, long timestampNanos) {
+        long sequence = mapping.getLong(WRITE_SEQUENCE_OFFSET) + 1;
+        int slot = (int) (sequence % slotCount);
+        int offset = getSlotOffset(slot);
+        mapping.putLong(offset + SLOT_SEQUENCE_OFFSET, -sequence);
+        fence = 0;
+        SkeletonDatagramFormat.encode(frame, player, 0, sequence, timestampNanos / 1000, datagrams[slot]); // The ring's sequence never restarts
+        fence = 0;
+        mapping.putLong(offset + SLOT_SEQUENCE_OFFSET, sequence);
+        fence = 0;
+        mapping.putLong(WRITE_SEQUENCE_OFFSET, sequence);
+        fence = 0;
+        return sequence;
+    }
+
+    /**
+     * Reader side: decodes reading sequence into frame (joints, tracked flag,
+     * timestamp and sequence), straight out of the mapping. Allocation-free.
+     *
+     * @return The reading's player, or NOT_READ if the slot doesn't hold that
+     * reading (anymore) or the writer overwrote it while it was being read;
+     * frame is then partly overwritten and must not be used.
+     */
+    public int read(long sequence, SkeletonFrame frame) {
+        int slot = (int) (sequence % slotCount);
+        int offset = getSlotOffset(slot);
+        if (mapping.getLong(offset + SLOT_SEQUENCE_OFFSET) != sequence) {
+            return NOT_READ;
+        }
+        fence = 0;
+        ByteBuffer datagram = datagrams[slot];
+        SkeletonDatagramFormat.decodeJoints(datagram, frame);
+        frame.setTimestampNanos(SkeletonDatagramFormat.getTimestampMicros(datagram) * 1000);
+        frame.setSequence(sequence);
+        int player = SkeletonDatagramFormat.getPlayer(datagram);
+        fence = 0;
+        return (mapping.getLong(offset + SLOT_SEQUENCE_OFFSET) == sequence) ? player : NOT_READ;
+    }
+
+    @Override
+    public String toString() {
+        return "SharedMemorySkeletonRing[" + file + ", slots=" + slotCount + ", writeSequence=" + getWriteSequence() + "]";
+    }
+}
@@ -0,0 +1,112 @@
+package kinect.transport;
+
+import java.io.File;
+import java.io.IOException;
+import kinect.input.SkeletonFrame;
+import kinect.recording.ReplayInputSource;
+import kinect.recording.SkeletonRecording;
+
+/**
+ *
+ * Test writer for SharedMemorySkeletonRing: publishes a recording, looped,
+ * into the ring at the Kinect's 30 readings per second (or a multiple of it,
+ * or as fast as it can), standing in for a Kinect driver process, so
+ * SharedMemorySkeletonInputSource can be tried and measured without the
+ * device. Run it as its own process, next to the game
+ * (--kinect-source=shm[:FILE]) or SharedMemoryTransportBenchmark.
+ *
+ * Usage: java kinect.transport.SharedMemorySkeletonWriter recording [options], see
+ * printUsage().
+ */
+public class SharedMemorySkeletonWriter {
+
+    /*--- SETTINGS ---*/
+    /**
+     * The Kinect's native skeleton rate.
+     */
+    public static final float FRAME_RATE_HZ = 30;
+    /**
+     * (Unit: seconds.)
+     */
+    public static final int REPORT_INTERVAL_SECONDS = 5;
+    /*--- END SETTINGS ---*/
+
+    public static void printUsage(String command) {
+        System.err.println("Usage: " + command + " recording [options]");
+        System.err.println("  recording          .poormocap, .skrec or .sksession");
+        System.err.println("  --file=FILE        Default " + SharedMemorySkeletonRing.DEFAULT_FILE);
+        System.err.println("  --player=N         1 (default) or 2");
+        System.err.println("  --rate=X           Publish at " + FRAME_RATE_HZ + " Hz times X (default 1; 0 = as fast as possible)");
+        System.err.println("  --seconds=N        Stop after N seconds (default: run until killed)");
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            printUsage("java " + SharedMemorySkeletonWriter.class.getName());
+            System.exit(2);
+        }
+        File file = new File(SharedMemorySkeletonRing.DEFAULT_FILE);
+        int player = 0;
+        float rateMultiplier = 1;
+        long seconds = Long.MAX_VALUE / 1000000000L;
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("--file=")) {
+                file = new File(arg.substring("--file=".length()));
+            } else if (arg.startsWith("--player=")) {
+                player = Integer.parseInt(arg.substring("--player=".length())) - 1;
+            } else if (arg.startsWith("--rate=")) {
+                rateMultiplier = Float.parseFloat(arg.substring("--rate=".length()));
+            } else if (arg.startsWith("--seconds=")) {
+                seconds = Long.parseLong(arg.substring("--seconds=".length()));
+            } else {
+                System.err.println("Unknown option " + arg);
+                printUsage("java " + SharedMemorySkeletonWriter.class.getName());
+                System.exit(2);
+            }
+        }
+
+        SkeletonRecording recording = ReplayInputSource.openRecording(new File(args[0]));
+        SharedMemorySkeletonRing ring = SharedMemorySkeletonRing.open(file, SharedMemorySkeletonRing.DEFAULT_SLOT_COUNT);
+        SkeletonFrame[] frames = new SkeletonFrame[recording.getFrameCount()];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new SkeletonFrame();
+            recording.readFrame(i, frames[i]);
+        }
+        System.out.println("Publishing " + args[0] + " into " + ring + "; stop with Ctrl+C.");
+
+        long intervalNanos = (rateMultiplier > 0) ? (long) (1e9 / (FRAME_RATE_HZ * rateMultiplier)) : 0;
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + seconds * 1000000000L;
+        long nextNanos = startNanos, nextReportNanos = startNanos + REPORT_INTERVAL_SECONDS * 1000000000L;
+        long published = 0, publishedAtReport = 0, publishNanos = 0;
+        int index = 0;
+        while (frames.length > 0) {
+            long nowNanos = System.nanoTime();
+            if (nowNanos - endNanos >= 0) {
+                break;
+            }
+            ring.publish(frames[index], player, nowNanos);
+            publishNanos += System.nanoTime() - nowNanos;
+            published++;
+            index = (index + 1) % frames.length;
+
+            if (nowNanos - nextReportNanos >= 0) {
+                System.out.println((published - publishedAtReport) / REPORT_INTERVAL_SECONDS + " readings/s, "
+                        + (publishNanos / published) + " ns per publish on average, " + ring);
+                publishedAtReport = published;
+                nextReportNanos += REPORT_INTERVAL_SECONDS * 1000000000L;
+            }
+            if (intervalNanos > 0) {
+                nextNanos += intervalNanos;
+                long sleepNanos = nextNanos - System.nanoTime();
+                if (sleepNanos > 0) {
+                    Thread.sleep(sleepNanos / 1000000, (int) (sleepNanos % 1000000));
+                }
+            }
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        System.out.println("Published " + published + " readings in " + (elapsedNanos / 1000000) + " ms ("
+                + (long) (published / (elapsedNanos / 1e9)) + " readings/s, " + (publishNanos / Math.max(1, published)) + " ns per publish)");
+    }
+}
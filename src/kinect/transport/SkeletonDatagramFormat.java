@@ -0,0 +1,125 @@
+package kinect.transport;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import kinect.input.SkeletonFrame;
+
+/**
+ *
+ * Layout of the UDP skeleton datagram: one skeleton reading per datagram,
+ * always DATAGRAM_SIZE bytes, little-endian, so it fits any MTU, never gets
+ * fragmented, and can be read in place without any deserialization.
+ *
+ * <pre>
+ *   int   magic            MAGIC ("SKDG")
+ *   byte  version          VERSION
+ *   byte  flags            FLAG_TRACKED if the skeleton was tracked
+ *   byte  player           0 for player 1, 1 for player 2, ...
+ *   byte  session          picked at random by each sender (1 to 255), so
+ *                          a restarted sender is told from late datagrams;
+ *                          0 if the sender has no sessions
+ *   long  sequence         per sender and player, increases by one per reading
+ *   long  timestampMicros  when the sender took the reading, on its own clock
+ *   JOINTS (SkeletonFrame.JOINT_COUNT)
+ *     byte  state          0 not tracked, 1 inferred, 2 tracked
+ *     short x, y, z        millimeters
+ * </pre>
+ *
+ * Sequence numbers let the receiver keep only the newest reading and count
+ * lost and reordered datagrams, until the session changes; the timestamp lets it measure arrival jitter
+ * (the clocks of sender and receiver don't need to agree).
+ */
+public class SkeletonDatagramFormat {
+
+    public static final int MAGIC = 0x47444B53; // "SKDG" when read as little-endian bytes
+    public static final int VERSION = 1;
+    public static final int MAGIC_OFFSET = 0,
+            VERSION_OFFSET = 4,
+            FLAGS_OFFSET = 5,
+            PLAYER_OFFSET = 6,
+            SESSION_OFFSET = 7,
+            SEQUENCE_OFFSET = 8,
+            TIMESTAMP_OFFSET = 16,
+            JOINTS_OFFSET = 24;
+    public static final int JOINT_SIZE = 7;
+    public static final int DATAGRAM_SIZE = JOINTS_OFFSET + SkeletonFrame.JOINT_COUNT * JOINT_SIZE;
+    public static final int FLAG_TRACKED = 1;
+
+    /**
+     * @return A buffer for one datagram, in the format's byte order.
+     */
+    public static ByteBuffer allocate() {
+        return ByteBuffer.allocateDirect(DATAGRAM_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Writes a whole datagram into buffer (from 0, leaving it flipped for
+     * sending). Coordinates outside the range of a short are clamped.
+     */
+    public static void encode(SkeletonFrame frame, int player, int session, long sequence, long timestampMicros, ByteBuffer buffer) {
+        buffer.clear();
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        buffer.put(VERSION_OFFSET, (byte) VERSION);
+        buffer.put(FLAGS_OFFSET, (byte) (frame.isTracked() ? FLAG_TRACKED : 0));
+        buffer.put(PLAYER_OFFSET, (byte) player);
+        buffer.put(SESSION_OFFSET, (byte) session);
+        buffer.putLong(SEQUENCE_OFFSET, sequence);
+        buffer.putLong(TIMESTAMP_OFFSET, timestampMicros);
+        int offset = JOINTS_OFFSET;
+        for (int joint = 0; joint < SkeletonFrame.JOINT_COUNT; joint++) {
+            buffer.put(offset, (byte) frame.get(joint, SkeletonFrame.KJ_STATE));
+            for (int axis = SkeletonFrame.KJ_X; axis <= SkeletonFrame.KJ_Z; axis++) {
+                int value = Math.max(Short.MIN_VALUE, Math.min(frame.get(joint, axis), Short.MAX_VALUE));
+                buffer.putShort(offset + 1 + (axis - SkeletonFrame.KJ_X) * 2, (short) value);
+            }
+            offset += JOINT_SIZE;
+        }
+        buffer.position(0);
+        buffer.limit(DATAGRAM_SIZE);
+    }
+
+    /**
+     * @param length Bytes received.
+     * @return True if buffer holds a datagram of this format and version.
+     */
+    public static boolean isValid(ByteBuffer buffer, int length) {
+        return length == DATAGRAM_SIZE
+                && buffer.getInt(MAGIC_OFFSET) == MAGIC
+                && buffer.get(VERSION_OFFSET) == VERSION;
+    }
+
+    public static int getPlayer(ByteBuffer buffer) {
+        return buffer.get(PLAYER_OFFSET);
+    }
+
+    /**
+     * @return 0 to 255.
+     */
+    public static int getSession(ByteBuffer buffer) {
+        return buffer.get(SESSION_OFFSET) & 0xFF;
+    }
+
+    public static long getSequence(ByteBuffer buffer) {
+        return buffer.getLong(SEQUENCE_OFFSET);
+    }
+
+    public static long getTimestampMicros(ByteBuffer buffer) {
+        return buffer.getLong(TIMESTAMP_OFFSET);
+    }
+
+    /**
+     * Fills frame's joints and tracked flag from a valid datagram; the
+     * frame's timestamp and sequence are left to the caller.
+     */
+    public static void decodeJoints(ByteBuffer buffer, SkeletonFrame frame) {
+        frame.setTracked((buffer.get(FLAGS_OFFSET) & FLAG_TRACKED) != 0);
+        int offset = JOINTS_OFFSET;
+        for (int joint = 0; joint < SkeletonFrame.JOINT_COUNT; joint++) {
+            frame.set(joint, SkeletonFrame.KJ_STATE, buffer.get(offset));
+            for (int axis = SkeletonFrame.KJ_X; axis <= SkeletonFrame.KJ_Z; axis++) {
+                frame.set(joint, axis, buffer.getShort(offset + 1 + (axis - SkeletonFrame.KJ_X) * 2));
+            }
+            offset += JOINT_SIZE;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package kinect.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import kinect.input.KinectInputSource;
+import kinect.input.SkeletonFrame;
+import kinect.input.SkeletonFrameBuffer;
+
+/**
+ *
+ * Input source that receives skeletons as UDP datagrams
+ * (SkeletonDatagramFormat), e.g. from UdpSkeletonSender. Unlike KinectTCP, a
+ * lost datagram only loses that one reading instead of holding up every
+ * reading behind it until it's retransmitted.
+ *
+ * A receiver thread waits on a Selector and drains the non-blocking
+ * DatagramChannel whenever datagrams are queued; of a batch, only the newest
+ * reading (highest sequence number) is published, through a
+ * SkeletonFrameBuffer, so the game loop never waits on the network. Older
+ * datagrams arriving after a newer one are dropped and counted as reordered;
+ * gaps in the sequence are counted as lost (until the missing datagram turns
+ * up, at most LATE_WINDOW readings late). The sender restarted (and its
+ * sequence starts over) when the datagram's session changes, or when the
+ * sequence goes backwards after STALE_MILLIS without datagrams or by more
+ * than RESTART_SEQUENCE_GAP. If nothing arrives for STALE_MILLIS, the
+ * skeleton is reported as not tracked.
+ *
+ * Frames are stamped with the local receive time; the sender's timestamps
+ * are only used for the arrival jitter estimate (RFC 3550's).
+ */
+public class UdpSkeletonInputSource implements KinectInputSource {
+
+    /*--- SETTINGS ---*/
+    public static final int DEFAULT_PORT = 8002;
+    /**
+     * (Unit: milliseconds.)
+     */
+    public static final long STALE_MILLIS = 500;
+    /**
+     * A sequence number this far behind the newest one is a restarted
+     * sender, not a late datagram.
+     */
+    public static final long RESTART_SEQUENCE_GAP = 1000;
+    /**
+     * Readings counted as lost stop being tracked once the sequence is this
+     * far past them: if they turn up later, they're reordered but stay lost.
+     * At most 64 (one bit each).
+     */
+    public static final int LATE_WINDOW = 64;
+    /**
+     * How long the receiver thread waits for datagrams at most, so it notices
+     * stop() and staleness. (Unit: milliseconds.)
+     */
+    public static final long SELECT_TIMEOUT_MILLIS = 50;
+    /*--- END SETTINGS ---*/
+    private final int port;
+    private final int player;
+    private final SkeletonFrameBuffer frameBuffer = new SkeletonFrameBuffer();
+    private DatagramChannel channel = null;
+    private Selector selector = null;
+    private Thread receiverThread = null;
+    private volatile boolean running = false;
+    /**
+     * Written by the receiver thread only, and may be read from any thread.
+     */
+    private volatile long datagramsReceived = 0, readingsPublished = 0;
+    private volatile long lost = 0, reordered = 0, duplicates = 0;
+    private volatile long invalid = 0, otherPlayers = 0, restarts = 0, staleTimeouts = 0;
+    /**
+     * Datagrams that were newer than the newest one but replaced by an even
+     * newer one of the same batch before being published.
+     */
+    private volatile long supersededInBatch = 0;
+    /**
+     * Smoothed arrival jitter. (Unit: microseconds.)
+     */
+    private volatile double jitterMicros = 0;
+
+    public UdpSkeletonInputSource() {
+        this(DEFAULT_PORT, 0);
+    }
+
+    /**
+     * @param player Only datagrams for this player are used.
+     */
+    public UdpSkeletonInputSource(int port, int player) {
+        this.port = port;
+        this.player = player;
+    }
+
+    public void start() {
+        try {
+            channel = DatagramChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().bind(new InetSocketAddress(port));
+            selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            System.err.println("Can't receive kinect skeletons on UDP port " + port + " (" + e.getMessage() + "); no skeletons will arrive.");
+            closeChannel();
+            return;
+        }
+        running = true;
+        receiverThread = new Thread("UdpSkeletonReceiver") {
+            @Override
+            public void run() {
+                receive();
+            }
+        };
+        receiverThread.setDaemon(true); // Never keep the JVM alive just for receiving
+        receiverThread.start();
+    }
+
+    private void receive() {
+        ByteBuffer buffer = SkeletonDatagramFormat.allocate();
+        long newestSequence = -1;
+        int newestSession = 0, previousSession = -1;
+        // Bit k: reading newestSequence - 1 - k was counted as lost
+        long missing = 0;
+        long lastSenderMicros = 0, lastArrivalMicros = 0;
+        long lastReadingNanos = System.nanoTime();
+        boolean stale = true;
+        long publishedSequence = 0;
+
+        while (running) {
+            try {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+                selector.selectedKeys().clear();
+
+                boolean newReading = false;
+                long readingNanos = 0;
+                buffer.clear();
+                while (channel.receive(buffer) != null) {
+                    long arrivalNanos = System.nanoTime();
+                    int length = buffer.position();
+                    buffer.clear();
+                    datagramsReceived = datagramsReceived + 1;
+                    if (!SkeletonDatagramFormat.isValid(buffer, length)) {
+                        invalid = invalid + 1;
+                        continue;
+                    }
+                    if (SkeletonDatagramFormat.getPlayer(buffer) != player) {
+                        otherPlayers = otherPlayers + 1;
+                        continue;
+                    }
+
+                    long sequence = SkeletonDatagramFormat.getSequence(buffer);
+                    int session = SkeletonDatagramFormat.getSession(buffer);
+                    if (session == previousSession && session != newestSession) {
+                        reordered = reordered + 1; // Sent before the restart, arrived after it
+                        continue;
+                    }
+                    if (newestSequence >= 0 && (session != newestSession
+                            || (sequence < newestSequence && (stale || newestSequence - sequence > RESTART_SEQUENCE_GAP)))) {
+                        restarts = restarts + 1;
+                        newestSequence = -1;
+                        previousSession = newestSession;
+                    }
+                    if (newestSequence >= 0 && sequence <= newestSequence) {
+                        long behind = newestSequence - sequence;
+                        if (behind == 0) {
+                            duplicates = duplicates + 1;
+                        } else if (behind > LATE_WINDOW) {
+                            reordered = reordered + 1; // Too late to tell; stays lost
+                        } else if ((missing & (1L << (behind - 1))) != 0) {
+                            reordered = reordered + 1;
+                            lost = lost - 1; // Was counted as lost when the gap showed up
+                            missing &= ~(1L << (behind - 1));
+                        } else {
+                            duplicates = duplicates + 1; // Of one that turned up late already
+                        }
+                        continue;
+                    }
+                    if (newestSequence >= 0) {
+                        long advance = sequence - newestSequence;
+                        lost = lost + (advance - 1);
+                        missing = (advance >= LATE_WINDOW) ? 0 : missing << advance;
+                        missing |= (advance - 1 >= LATE_WINDOW) ? -1L : (1L << (advance - 1)) - 1;
+                    } else {
+                        missing = 0;
+                    }
+                    newestSession = session;
+
+                    long senderMicros = SkeletonDatagramFormat.getTimestampMicros(buffer);
+                    long arrivalMicros = arrivalNanos / 1000;
+                    if (newestSequence >= 0 && sequence == newestSequence + 1) {
+                        long transitChange = (arrivalMicros - lastArrivalMicros) - (senderMicros - lastSenderMicros);
+                        jitterMicros = jitterMicros + (Math.abs(transitChange) - jitterMicros) / 16;
+                    }
+                    lastSenderMicros = senderMicros;
+                    lastArrivalMicros = arrivalMicros;
+                    newestSequence = sequence;
+
+                    if (newReading) {
+                        supersededInBatch = supersededInBatch + 1;
+                    }
+                    // Newest wins: decode straight into the frame to publish
+                    SkeletonDatagramFormat.decodeJoints(buffer, frameBuffer.getBackFrame());
+                    newReading = true;
+                    readingNanos = arrivalNanos;
+                }
+
+                if (newReading) {
+                    SkeletonFrame frame = frameBuffer.getBackFrame();
+                    frame.setTimestampNanos(readingNanos);
+                    frame.setSequence(++publishedSequence);
+                    frameBuffer.publish();
+                    readingsPublished = readingsPublished + 1;
+                    lastReadingNanos = readingNanos;
+                    stale = false;
+                } else if (!stale && System.nanoTime() - lastReadingNanos > STALE_MILLIS * 1000000L) {
+                    // Sender gone; report the skeleton as lost
+                    SkeletonFrame frame = frameBuffer.getBackFrame();
+                    frame.setTracked(false);
+                    frame.setTimestampNanos(System.nanoTime());
+                    frame.setSequence(++publishedSequence);
+                    frameBuffer.publish();
+                    staleTimeouts = staleTimeouts + 1;
+                    stale = true;
+                }
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Kinect UDP receive failed: " + e.getMessage());
+                }
+            }
+        }
+        closeChannel();
+    }
+
+    private void closeChannel() {
+        try {
+            if (selector != null) {
+                selector.close();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            // Nothing left to do with it
+        }
+    }
+
+    public SkeletonFrame getLatestFrame() {
+        frameBuffer.update();
+        return frameBuffer.getFrontFrame();
+    }
+
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public long getDatagramsReceived() {
+        return datagramsReceived;
+    }
+
+    public long getReadingsPublished() {
+        return readingsPublished;
+    }
+
+    /**
+     * @return Readings skipped in the sequence that didn't turn up within
+     * LATE_WINDOW readings. Never more than were skipped.
+     */
+    public long getLost() {
+        return lost;
+    }
+
+    /**
+     * @return Readings that arrived after a newer one (and were dropped).
+     */
+    public long getReordered() {
+        return reordered;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    public long getInvalid() {
+        return invalid;
+    }
+
+    public long getRestarts() {
+        return restarts;
+    }
+
+    /**
+     * @return Readings replaced by a newer one of the same batch, plus the
+     * ones the game loop didn't get to before a newer one was published.
+     */
+    public long getOverwritten() {
+        return supersededInBatch + frameBuffer.getOverwrittenCount();
+    }
+
+    /**
+     * @return (Unit: microseconds.)
+     */
+    public double getJitterMicros() {
+        return jitterMicros;
+    }
+
+    @Override
+    public String toString() {
+        return "UdpSkeletonInputSource[port=" + port
+                + ", player=" + (player + 1)
+                + ", datagramsReceived=" + datagramsReceived
+                + ", readingsPublished=" + readingsPublished
+                + ", lost=" + lost
+                + ", reordered=" + reordered
+                + ", duplicates=" + duplicates
+                + ", overwritten=" + getOverwritten()
+                + ", invalid=" + invalid
+                + ", otherPlayers=" + otherPlayers
+                + ", restarts=" + restarts
+                + ", staleTimeouts=" + staleTimeouts
+                + ", jitterMillis=" + Math.round(jitterMicros) / 1000.0 + "]";
+    }
+}
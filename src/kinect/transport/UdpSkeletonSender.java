@@ -0,0 +1,265 @@
+package kinect.transport;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Random;
+import kinect.input.SkeletonFrame;
+import kinect.recording.ReplayInputSource;
+import kinect.recording.SkeletonRecording;
+
+/**
+ *
+ * Sends skeletons as UDP datagrams (SkeletonDatagramFormat) to a
+ * UdpSkeletonInputSource: either one at a time through send() (e.g. bridging
+ * a live source), or a recording, looped, at FRAME_RATE_HZ times the rate
+ * multiplier from a sender thread. To see how the receiver copes with a bad
+ * network, datagrams can be dropped, sent twice, or held back and sent after
+ * the next one (reordered), at random.
+ *
+ * Usage: java kinect.transport.UdpSkeletonSender recording [options], see
+ * printUsage().
+ */
+public class UdpSkeletonSender {
+
+    /*--- SETTINGS ---*/
+    /**
+     * The Kinect's native skeleton rate.
+     */
+    public static final float FRAME_RATE_HZ = 30;
+    public static final String DEFAULT_HOST = "127.0.0.1";
+    /*--- END SETTINGS ---*/
+    private final InetSocketAddress target;
+    private final int player;
+    private final DatagramChannel channel;
+    private final ByteBuffer buffer = SkeletonDatagramFormat.allocate();
+    private final ByteBuffer heldBuffer = SkeletonDatagramFormat.allocate();
+    /**
+     * Tells this sender's sequence from the one of an earlier run (see
+     * SkeletonDatagramFormat).
+     */
+    private final int session = 1 + new Random().nextInt(255);
+    private boolean holding = false;
+    private long sequence = 0;
+    private float rateMultiplier = 1;
+    private int lossPercent = 0, duplicatePercent = 0, reorderPercent = 0;
+    private Random random = new Random(1);
+    private volatile boolean running = false;
+    private Thread senderThread = null;
+    /**
+     * Written by the sending thread only, and may be read from any thread.
+     */
+    private volatile long readingsSent = 0, datagramsSent = 0;
+    private volatile long dropsInjected = 0, duplicatesInjected = 0, reordersInjected = 0;
+
+    public UdpSkeletonSender(String host, int port, int player) throws IOException {
+        this.target = new InetSocketAddress(host, port);
+        this.player = player;
+        channel = DatagramChannel.open();
+    }
+
+    public void setRateMultiplier(float rateMultiplier) {
+        this.rateMultiplier = rateMultiplier;
+    }
+
+    /**
+     * Faults to inject, each as a percentage of readings.
+     */
+    public void setFaults(int lossPercent, int duplicatePercent, int reorderPercent) {
+        this.lossPercent = lossPercent;
+        this.duplicatePercent = duplicatePercent;
+        this.reorderPercent = reorderPercent;
+    }
+
+    public void setSeed(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * Applies one command line option (see printUsage()).
+     *
+     * @return False if it isn't one of the sender's options.
+     */
+    public boolean configure(String option) {
+        if (option.startsWith("--rate=")) {
+            setRateMultiplier(Float.parseFloat(option.substring("--rate=".length())));
+        } else if (option.startsWith("--loss=")) {
+            lossPercent = Integer.parseInt(option.substring("--loss=".length()));
+        } else if (option.startsWith("--duplicate=")) {
+            duplicatePercent = Integer.parseInt(option.substring("--duplicate=".length()));
+        } else if (option.startsWith("--reorder=")) {
+            reorderPercent = Integer.parseInt(option.substring("--reorder=".length()));
+        } else if (option.startsWith("--seed=")) {
+            setSeed(Long.parseLong(option.substring("--seed=".length())));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    public static void printUsage(String command) {
+        System.err.println("Usage: " + command + " recording [options]");
+        System.err.println("  recording          .poormocap, .skrec or .sksession");
+        System.err.println("  --host=HOST        Default " + DEFAULT_HOST);
+        System.err.println("  --port=N           Default " + UdpSkeletonInputSource.DEFAULT_PORT);
+        System.err.println("  --player=N         1 (default) or 2");
+        System.err.println("  --rate=X           Send at " + FRAME_RATE_HZ + " Hz times X (default 1)");
+        System.err.println("  --loss=PCT         Drop PCT% of the datagrams");
+        System.err.println("  --duplicate=PCT    Send PCT% of the datagrams twice");
+        System.err.println("  --reorder=PCT      Send PCT% of the datagrams after the next one");
+        System.err.println("  --seed=N           Fault random seed");
+    }
+
+    /**
+     * Sends one reading, with the faults set up. Not thread-safe; call from
+     * one thread at a time.
+     */
+    public void send(SkeletonFrame frame) throws IOException {
+        SkeletonDatagramFormat.encode(frame, player, session, ++sequence, System.nanoTime() / 1000, buffer);
+        readingsSent = readingsSent + 1;
+        if (random.nextInt(100) < lossPercent) {
+            dropsInjected = dropsInjected + 1;
+        } else if (!holding && random.nextInt(100) < reorderPercent) {
+            heldBuffer.clear();
+            heldBuffer.put(buffer);
+            heldBuffer.flip();
+            holding = true;
+            reordersInjected = reordersInjected + 1;
+            return; // Goes out after the next one
+        } else {
+            sendDatagram(buffer);
+            if (random.nextInt(100) < duplicatePercent) {
+                buffer.rewind();
+                sendDatagram(buffer);
+                duplicatesInjected = duplicatesInjected + 1;
+            }
+        }
+        if (holding) {
+            sendDatagram(heldBuffer);
+            holding = false;
+        }
+    }
+
+    private void sendDatagram(ByteBuffer datagram) throws IOException {
+        channel.send(datagram, target);
+        datagramsSent = datagramsSent + 1;
+    }
+
+    /**
+     * Starts sending the recording, looped, from a sender thread.
+     */
+    public void start(final SkeletonRecording recording) {
+        running = true;
+        senderThread = new Thread("UdpSkeletonSender") {
+            @Override
+            public void run() {
+                sendRecording(recording);
+            }
+        };
+        senderThread.setDaemon(true);
+        senderThread.start();
+    }
+
+    private void sendRecording(SkeletonRecording recording) {
+        SkeletonFrame frame = new SkeletonFrame();
+        long intervalNanos = (long) (1e9 / (FRAME_RATE_HZ * rateMultiplier));
+        long nextNanos = System.nanoTime();
+        int index = 0;
+        while (running && recording.getFrameCount() > 0) {
+            recording.readFrame(index, frame);
+            index = (index + 1) % recording.getFrameCount();
+            try {
+                send(frame);
+            } catch (IOException e) {
+                System.err.println("Kinect UDP send failed: " + e.getMessage());
+            }
+            nextNanos += intervalNanos;
+            long sleepNanos = nextNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    Thread.sleep(sleepNanos / 1000000, (int) (sleepNanos % 1000000));
+                } catch (InterruptedException e) {
+                    return; // Only happens on stop()
+                }
+            }
+        }
+    }
+
+    public void stop() {
+        running = false;
+        if (senderThread != null) {
+            senderThread.interrupt();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing left to do with it
+        }
+    }
+
+    public long getReadingsSent() {
+        return readingsSent;
+    }
+
+    public long getDropsInjected() {
+        return dropsInjected;
+    }
+
+    public long getDuplicatesInjected() {
+        return duplicatesInjected;
+    }
+
+    public long getReordersInjected() {
+        return reordersInjected;
+    }
+
+    @Override
+    public String toString() {
+        return "UdpSkeletonSender[" + target.getHostString() + ":" + target.getPort()
+                + ", player=" + (player + 1)
+                + ", session=" + session
+                + ", rateHz=" + (FRAME_RATE_HZ * rateMultiplier)
+                + ", readingsSent=" + readingsSent
+                + ", datagramsSent=" + datagramsSent
+                + ", drops=" + dropsInjected
+                + ", duplicates=" + duplicatesInjected
+                + ", reorders=" + reordersInjected + "]";
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            printUsage("java " + UdpSkeletonSender.class.getName());
+            System.exit(2);
+        }
+        String host = DEFAULT_HOST;
+        int port = UdpSkeletonInputSource.DEFAULT_PORT;
+        int player = 0;
+        for (String arg : args) {
+            if (arg.startsWith("--host=")) {
+                host = arg.substring("--host=".length());
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--player=")) {
+                player = Integer.parseInt(arg.substring("--player=".length())) - 1;
+            }
+        }
+        UdpSkeletonSender sender = new UdpSkeletonSender(host, port, player);
+        for (int i = 1; i < args.length; i++) {
+            if (!args[i].startsWith("--host=") && !args[i].startsWith("--port=") && !args[i].startsWith("--player=")
+                    && !sender.configure(args[i])) {
+                System.err.println("Unknown option " + args[i]);
+                printUsage("java " + UdpSkeletonSender.class.getName());
+                System.exit(2);
+            }
+        }
+
+        sender.start(ReplayInputSource.openRecording(new File(args[0])));
+        System.out.println("Sending " + args[0] + " to " + host + ":" + port + "; stop with Ctrl+C.");
+        while (true) {
+            Thread.sleep(5000);
+            System.out.println(sender);
+        }
+    }
+}